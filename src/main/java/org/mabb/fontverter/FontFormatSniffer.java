@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter;
+
+import org.mabb.fontverter.FontVerter.FontFormat;
+
+/**
+ * Classifies font data from it's first few bytes so we can go straight to the right font adapter instead of trial
+ * parsing the data with every adapter.
+ */
+public class FontFormatSniffer {
+    private static final int SFNT_VERSION_1 = 0x00010000;
+    private static final int SFNT_VERSION_2 = 0x00020000;
+    private static final int SFNT_VERSION_2_5 = 0x00020500;
+    private static final int SFNT_CFF_FLAVOR = 0x4F54544F; // 'OTTO'
+    private static final int SFNT_APPLE_TRUE = 0x74727565; // 'true'
+    private static final int WOFF_1_SIGNATURE = 0x774F4646; // 'wOFF'
+    private static final int WOFF_2_SIGNATURE = 0x774F4632; // 'wOF2'
+
+    private static final int EOT_VERSION_OFFSET = 8;
+    private static final int EOT_MAGIC_NUMBER_OFFSET = 34;
+    private static final int EOT_MAGIC_NUMBER = 0x504C;
+    private static final int EOT_VERSION_ONE = 0x00010000;
+    private static final int EOT_VERSION_TWO = 0x00020001;
+    private static final int EOT_VERSION_THREE = 0x00020002;
+
+    private static final int CFF_HEADER_MIN_SIZE = 4;
+
+    /**
+     * @param data font file data
+     * @return detected format or null if the data doesn't start with any known magic number
+     */
+    public static FontFormat sniff(byte[] data) {
+        if (data == null || data.length < 4)
+            return null;
+
+        int tag = readBigEndianInt(data, 0);
+        if (tag == WOFF_1_SIGNATURE)
+            return FontFormat.WOFF1;
+        if (tag == WOFF_2_SIGNATURE)
+            return FontFormat.WOFF2;
+        if (isSfntVersion(tag))
+            return FontFormat.OTF;
+
+        // eot and cff have to be last since they don't start with a fixed magic number
+        if (isEot(data))
+            return FontFormat.EOT;
+        if (isCff(data))
+            return FontFormat.BARE_CFF;
+
+        return null;
+    }
+
+    public static boolean isSfnt(byte[] data) {
+        return data != null && data.length >= 4 && isSfntVersion(readBigEndianInt(data, 0));
+    }
+
+    public static boolean isEot(byte[] data) {
+        if (data == null || data.length < EOT_MAGIC_NUMBER_OFFSET + 2)
+            return false;
+
+        int version = readLittleEndianInt(data, EOT_VERSION_OFFSET);
+        boolean versionMatches = version == EOT_VERSION_ONE || version == EOT_VERSION_TWO
+                || version == EOT_VERSION_THREE;
+
+        return versionMatches && readLittleEndianUnsignedShort(data, EOT_MAGIC_NUMBER_OFFSET) == EOT_MAGIC_NUMBER;
+    }
+
+    public static boolean isCff(byte[] data) {
+        // bare cff has no magic number, so sanity check the header's major version, header size and absolute
+        // offset size instead. Header is followed by the name INDEX so there has to be data past the header.
+        if (data == null || data.length < CFF_HEADER_MIN_SIZE)
+            return false;
+
+        int major = data[0] & 0xFF;
+        int hdrSize = data[2] & 0xFF;
+        int offSize = data[3] & 0xFF;
+
+        return major == 1 && hdrSize >= CFF_HEADER_MIN_SIZE && offSize >= 1 && offSize <= 4
+                && data.length > hdrSize;
+    }
+
+    private static boolean isSfntVersion(int tag) {
+        return tag == SFNT_VERSION_1 || tag == SFNT_CFF_FLAVOR || tag == SFNT_VERSION_2
+                || tag == SFNT_VERSION_2_5 || tag == SFNT_APPLE_TRUE;
+    }
+
+    private static int readBigEndianInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static int readLittleEndianInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8)
+                | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int readLittleEndianUnsignedShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+}
@@ -18,23 +18,20 @@
 package org.mabb.fontverter;
 
 import org.apache.commons.io.FileUtils;
+import org.mabb.fontverter.cff.CffFontAdapter;
 import org.mabb.fontverter.converter.FontConverter;
-import org.reflections.Reflections;
+import org.mabb.fontverter.eot.EotFont;
+import org.mabb.fontverter.opentype.OpenTypeFont;
+import org.mabb.fontverter.woff.Woff1Font;
+import org.mabb.fontverter.woff.Woff2Font;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Set;
 
 public class FontVerter {
     private static Logger log = LoggerFactory.getLogger(FontVerter.class);
-    private static List<Class> adapters;
-    private static final Object adapterLock = new Object();
 
     public enum FontFormat {
         OTF,
@@ -90,85 +87,38 @@ public class FontVerter {
     }
 
     public static FVFont readFont(byte[] fontData) throws IOException {
-        registerFontAdapters();
+        // sniff the format from the first few bytes and go straight to the matching adapter, trial parsing with
+        // every adapter made detection cost as much as the actual parse.
+        FontFormat format = FontFormatSniffer.sniff(fontData);
+        if (format == null)
+            throw new IOException("FontVerter could not detect the input font's type.");
 
-        // loop through and use first one to read without an error
-        for (Class<? extends FVFont> adapterOn : adapters) {
-            FVFont adapter = tryReadFontAdapter(fontData, adapterOn);
-            if (adapter != null)
-                return adapter;
-        }
-
-        // screwy double loop since CFF fonts don't have magic number header and was try catching around every font
-        // adapter that matched in detectFormat, think just having CFF adapter always try last fixes this, but what if
-        // a CFF starts with 'wOF2' or something? font-box bare CFF parser will often work on non CFF fonts anyway which
-        // causes issues with that too, needa write own base CFF parser sometime.
-
-        // if nothing can read go at it again and use the first one to throw an exception
-        // as the exception message for debugging.
-        for (Class<? extends FVFont> adapterOn : adapters) {
-
-            try {
-                FVFont adapter = parseFont(fontData, adapterOn);
-                if (adapter != null)
-                    return adapter;
-            } catch (Exception ex) {
-                throw new IOException("FontVerter could not read the given font file.", ex);
-            }
-        }
-
-        throw new IOException("FontVerter could not detect the input font's type.");
+        return readFont(fontData, createAdapterForFormat(format));
     }
 
-    private static FVFont tryReadFontAdapter(byte[] fontData, Class<? extends FVFont> adapterOn) throws IOException {
+    private static FVFont readFont(byte[] fontData, FVFont adapter) throws IOException {
         try {
-            return parseFont(fontData, adapterOn);
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
-    }
-
-    private static FVFont parseFont(byte[] fontData, Class<? extends FVFont> adapterOn) throws InstantiationException, IllegalAccessException, IOException {
-        FVFont adapter = adapterOn.newInstance();
-        if (adapter.detectFormat(fontData)) {
             adapter.read(fontData);
             return adapter;
-        }
-
-        return null;
-    }
-
-    private static void registerFontAdapters() {
-        synchronized (adapterLock) {
-            if (adapters == null) {
-                Reflections reflections = new Reflections("org.mabb.fontverter");
-                Set<Class<? extends FVFont>> adapterClasses = reflections.getSubTypesOf(FVFont.class);
-                Class[] adapterArr = adapterClasses.toArray(new Class[adapterClasses.size()]);
-                adapters = Arrays.asList(adapterArr);
-
-                // CFF always last to try
-                Class cffAdapter = null;
-                for (Class adapterOn : adapters) {
-                    if (adapterOn.getSimpleName().contains("CffFont"))
-                        cffAdapter = adapterOn;
-                }
-
-                int cffIndex = adapters.indexOf(cffAdapter);
-                adapters.set(cffIndex, adapters.get(adapters.size() - 1));
-                adapters.set(adapters.size() - 1, cffAdapter);
-
-                adapters = removeAbstractClasses(adapters);
-            }
+        } catch (Exception ex) {
+            throw new IOException("FontVerter could not read the given font file.", ex);
         }
     }
 
-    private static List<Class> removeAbstractClasses(List<Class> classes) {
-        List<Class> filtered = new ArrayList<Class>();
-        for (Class adapterOn : classes) {
-            if (!Modifier.isAbstract(adapterOn.getModifiers()))
-                filtered.add(adapterOn);
+    private static FVFont createAdapterForFormat(FontFormat format) throws IOException {
+        switch (format) {
+            case OTF:
+                return new OpenTypeFont();
+            case WOFF1:
+                return new Woff1Font();
+            case WOFF2:
+                return new Woff2Font();
+            case EOT:
+                return new EotFont();
+            case BARE_CFF:
+                return new CffFontAdapter();
+            default:
+                throw new FontNotSupportedException("No font adapter for format " + format);
         }
-
-        return filtered;
     }
 }
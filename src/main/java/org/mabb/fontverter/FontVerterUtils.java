@@ -17,7 +17,6 @@
 
 package org.mabb.fontverter;
 
-import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.io.FontDataOutputStream;
 
 import java.io.IOException;
@@ -53,23 +52,45 @@ public class FontVerterUtils {
     }
 
     public static boolean bytesStartsWith(byte[] data, String... startsWith) {
-        String dataAsString = new String(data, FontDataOutputStream.OPEN_TYPE_CHARSET);
+        // only compare the prefix bytes, converting the whole font to a string just to check a magic number is slow
         for (String matchOn : startsWith)
-            if (dataAsString.startsWith(matchOn))
+            if (bytesStartsWith(data, matchOn.getBytes(FontDataOutputStream.OPEN_TYPE_CHARSET)))
                 return true;
 
         return false;
     }
 
+    public static boolean bytesStartsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++)
+            if (data[i] != prefix[i])
+                return false;
+
+        return true;
+    }
+
     public static long getTableChecksum(byte[] tableData) throws IOException {
-        FontDataInputStream is = new FontDataInputStream(tableData);
+        return getTableChecksum(tableData, 0, tableData.length);
+    }
 
+    /**
+     * Checksum of length bytes of data starting at offset, so a table can be checksummed where it sits in a font.
+     */
+    public static long getTableChecksum(byte[] data, int offset, int length) throws IOException {
+        // sum of big endian uint32s, a trailing partial uint32 is treated as if zero padded
         long checksum = 0;
-        while (is.available() >= 4)
-            checksum = checksum + is.readUnsignedInt();
+        int fullEnd = offset + (length & ~3);
+        for (int i = offset; i < fullEnd; i += 4)
+            checksum += ((data[i] & 0xFFL) << 24) | ((data[i + 1] & 0xFF) << 16)
+                    | ((data[i + 2] & 0xFF) << 8) | (data[i + 3] & 0xFF);
+
+        long tail = 0;
+        for (int i = fullEnd; i < offset + length; i++)
+            tail |= (data[i] & 0xFFL) << (24 - 8 * (i - fullEnd));
 
-        is.close();
-        return checksum;
+        return checksum + tail;
     }
 
     public static byte[] tablePaddingNeeded(byte[] tableData) {
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.brotli;
+
+import java.util.Arrays;
+
+/**
+ * Writes bits least significant first the way brotli streams are packed. The write position can be saved and
+ * rolled back so a meta-block can be rewritten when compressing it didn't pay off.
+ */
+class BrotliBitWriter {
+    private byte[] data;
+    private int length;
+    private long buffer;
+    private int bufferBits;
+
+    BrotliBitWriter(int initialSize) {
+        data = new byte[Math.max(initialSize, 16)];
+    }
+
+    void writeBits(int count, long value) {
+        buffer |= value << bufferBits;
+        bufferBits += count;
+        if (bufferBits >= 32)
+            flush(32);
+    }
+
+    void alignToByte() {
+        bufferBits = (bufferBits + 7) & ~7;
+        flush(bufferBits);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int count) {
+        alignToByte();
+        ensureSpace(count);
+        System.arraycopy(bytes, offset, data, length, count);
+        length += count;
+    }
+
+    /**
+     * @return current position in bits, for use with {@link #rollback(long)}
+     */
+    long getPosition() {
+        flush(bufferBits & ~7);
+        return (long) length * 8 + bufferBits;
+    }
+
+    void rollback(long position) {
+        flush(bufferBits & ~7);
+        length = (int) (position / 8);
+        bufferBits = (int) (position % 8);
+        buffer = bufferBits == 0 ? 0 : data[length] & ((1 << bufferBits) - 1);
+    }
+
+    byte[] toByteArray() {
+        alignToByte();
+        return Arrays.copyOf(data, length);
+    }
+
+    private void flush(int bits) {
+        ensureSpace(bits / 8 + 1);
+        while (bits >= 8) {
+            data[length++] = (byte) buffer;
+            buffer >>>= 8;
+            bufferBits -= 8;
+            bits -= 8;
+        }
+
+        // keep the partial byte in the array too so a rollback into the middle of it can restore its bits
+        if (bufferBits > 0 && bufferBits < 8)
+            data[length] = (byte) buffer;
+    }
+
+    private void ensureSpace(int count) {
+        if (length + count >= data.length)
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + count + 1));
+    }
+}
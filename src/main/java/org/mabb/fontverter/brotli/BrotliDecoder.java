@@ -0,0 +1,639 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.brotli;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.mabb.fontverter.brotli.BrotliTables.*;
+
+/**
+ * Pure java brotli decompressor, RFC 7932. Decodes a whole stream held in memory, the output is kept in one array
+ * so back references read straight from it rather than from a separate ring buffer.
+ */
+public class BrotliDecoder {
+    private static final int MAX_LITERAL_CONTEXTS = 64;
+    private static final int MAX_DISTANCE_CONTEXTS = 4;
+    private static final int INITIAL_OUTPUT_SIZE = 4096;
+
+    private final BitReader in;
+    private byte[] out;
+    private int outLength;
+    private final boolean isFixedSize;
+
+    private int windowBits;
+    private final int[] distanceRing = {16, 15, 11, 4};
+    private int distanceRingIndex = 0;
+
+    /* per meta-block state, index 0 literals, 1 insert and copy commands, 2 distances */
+    private final int[] numBlockTypes = new int[3];
+    private final int[][] blockTypeTables = new int[3][];
+    private final int[][] blockLengthTables = new int[3][];
+    private final int[] blockTypes = new int[3];
+    private final int[] lastBlockTypes = new int[3];
+    private final int[] blockLengths = new int[3];
+
+    private int postfixBits;
+    private int directDistances;
+    private int[] contextModes;
+    private int[] literalContextMap;
+    private int[] distanceContextMap;
+    private int[][] literalTables;
+    private int[][] commandTables;
+    private int[][] distanceTables;
+
+    private BrotliDecoder(byte[] compressed, byte[] out, boolean isFixedSize) {
+        in = new BitReader(compressed);
+        this.out = out;
+        this.isFixedSize = isFixedSize;
+    }
+
+    public static byte[] decompress(byte[] compressed) throws IOException {
+        byte[] out = new byte[Math.max(INITIAL_OUTPUT_SIZE, compressed.length * 4)];
+        BrotliDecoder decoder = new BrotliDecoder(compressed, out, false);
+        decoder.decode();
+        return Arrays.copyOf(decoder.out, decoder.outLength);
+    }
+
+    /**
+     * Decompresses into an array of exactly the given length. Each meta-block's length is checked against the space
+     * left before it's decoded so a stream longer than expected is rejected without decoding past the end.
+     *
+     * @param length decompressed length the stream has to have
+     * @throws IOException on invalid data or data that doesn't decompress to exactly length bytes
+     */
+    public static byte[] decompress(byte[] compressed, int length) throws IOException {
+        BrotliDecoder decoder = new BrotliDecoder(compressed, new byte[length], true);
+        decoder.decode();
+        if (decoder.outLength != length)
+            throw new IOException("Brotli data decompressed to " + decoder.outLength + " bytes, expected " + length);
+
+        return decoder.out;
+    }
+
+    private void decode() throws IOException {
+        windowBits = readWindowBits();
+
+        boolean isLast = false;
+        while (!isLast) {
+            isLast = in.readBits(1) == 1;
+            if (isLast && in.readBits(1) == 1)
+                break;
+
+            readMetaBlock(isLast);
+        }
+
+        in.checkNotTruncated();
+    }
+
+    private int readWindowBits() throws IOException {
+        if (in.readBits(1) == 0)
+            return 16;
+
+        int bits = in.readBits(3);
+        if (bits != 0)
+            return 17 + bits;
+
+        bits = in.readBits(3);
+        if (bits == 1)
+            throw new IOException("Invalid brotli window size");
+        return bits == 0 ? 17 : 8 + bits;
+    }
+
+    private void readMetaBlock(boolean isLast) throws IOException {
+        int nibbles = in.readBits(2) + 4;
+        if (nibbles == 7) {
+            skipMetadata();
+            return;
+        }
+
+        int length = 0;
+        for (int i = 0; i < nibbles; i++) {
+            int nibble = in.readBits(4);
+            if (i == nibbles - 1 && i > 3 && nibble == 0)
+                throw new IOException("Invalid brotli meta-block length, extra leading zero nibble");
+            length |= nibble << (i * 4);
+        }
+        length++;
+
+        boolean isUncompressed = !isLast && in.readBits(1) == 1;
+        ensureOutputSpace(length);
+
+        if (isUncompressed) {
+            in.alignToByte();
+            in.readBytes(out, outLength, length);
+            outLength += length;
+            return;
+        }
+
+        readMetaBlockHeader();
+        decodeCommands(outLength + length);
+    }
+
+    private void skipMetadata() throws IOException {
+        if (in.readBits(1) != 0)
+            throw new IOException("Invalid brotli metadata block, reserved bit set");
+
+        int skipBytes = in.readBits(2);
+        int length = 0;
+        for (int i = 0; i < skipBytes; i++) {
+            int b = in.readBits(8);
+            if (i == skipBytes - 1 && i > 0 && b == 0)
+                throw new IOException("Invalid brotli metadata length, extra leading zero byte");
+            length |= b << (i * 8);
+        }
+        if (skipBytes > 0)
+            length++;
+
+        in.alignToByte();
+        in.skipBytes(length);
+    }
+
+    private void readMetaBlockHeader() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            numBlockTypes[i] = readVariableLength() + 1;
+            blockTypes[i] = 0;
+            lastBlockTypes[i] = 1;
+            if (numBlockTypes[i] >= 2) {
+                blockTypeTables[i] = readPrefixCode(numBlockTypes[i] + 2);
+                blockLengthTables[i] = readPrefixCode(NUM_BLOCK_LENGTH_SYMBOLS);
+                blockLengths[i] = readBlockLength(blockLengthTables[i]);
+            } else {
+                blockLengths[i] = Integer.MAX_VALUE;
+            }
+        }
+
+        postfixBits = in.readBits(2);
+        directDistances = in.readBits(4) << postfixBits;
+
+        contextModes = new int[numBlockTypes[0]];
+        for (int i = 0; i < contextModes.length; i++)
+            contextModes[i] = in.readBits(2);
+
+        int numLiteralTrees = readVariableLength() + 1;
+        literalContextMap = readContextMap(numBlockTypes[0] * MAX_LITERAL_CONTEXTS, numLiteralTrees);
+
+        int numDistanceTrees = readVariableLength() + 1;
+        distanceContextMap = readContextMap(numBlockTypes[2] * MAX_DISTANCE_CONTEXTS, numDistanceTrees);
+
+        literalTables = new int[numLiteralTrees][];
+        for (int i = 0; i < numLiteralTrees; i++)
+            literalTables[i] = readPrefixCode(NUM_LITERAL_SYMBOLS);
+
+        commandTables = new int[numBlockTypes[1]][];
+        for (int i = 0; i < commandTables.length; i++)
+            commandTables[i] = readPrefixCode(NUM_COMMAND_SYMBOLS);
+
+        int distanceAlphabetSize = NUM_DISTANCE_SHORT_CODES + directDistances + (48 << postfixBits);
+        distanceTables = new int[numDistanceTrees][];
+        for (int i = 0; i < numDistanceTrees; i++)
+            distanceTables[i] = readPrefixCode(distanceAlphabetSize);
+    }
+
+    private void decodeCommands(int metaBlockEnd) throws IOException {
+        byte[] dictionaryWord = null;
+
+        while (outLength < metaBlockEnd) {
+            if (blockLengths[1] == 0)
+                switchBlockType(1);
+            blockLengths[1]--;
+
+            int command = readSymbol(commandTables[blockTypes[1]]);
+            int cell = command >> 6;
+            boolean implicitDistance = cell < 2;
+            int insertCode = CELL_INSERT_OFFSET[cell] + ((command >> 3) & 7);
+            int copyCode = CELL_COPY_OFFSET[cell] + (command & 7);
+            int insertLength = INSERT_LENGTH_OFFSET[insertCode] + in.readBits(INSERT_LENGTH_EXTRA_BITS[insertCode]);
+            int copyLength = COPY_LENGTH_OFFSET[copyCode] + in.readBits(COPY_LENGTH_EXTRA_BITS[copyCode]);
+
+            if (insertLength > metaBlockEnd - outLength)
+                throw new IOException("Invalid brotli data, insert runs past the end of the meta-block");
+            decodeLiterals(insertLength);
+            if (outLength == metaBlockEnd)
+                break;
+
+            int distance;
+            boolean isDistanceCodeZero;
+            if (implicitDistance) {
+                distance = distanceRing[(distanceRingIndex - 1) & 3];
+                isDistanceCodeZero = true;
+            } else {
+                if (blockLengths[2] == 0)
+                    switchBlockType(2);
+                blockLengths[2]--;
+
+                int context = copyLength > 4 ? 3 : copyLength - 2;
+                int tree = distanceContextMap[blockTypes[2] * MAX_DISTANCE_CONTEXTS + context];
+                int distanceCode = readSymbol(distanceTables[tree]);
+                distance = readDistance(distanceCode);
+                isDistanceCodeZero = distanceCode == 0;
+            }
+
+            int maxDistance = Math.min(outLength, (1 << windowBits) - 16);
+            if (distance > maxDistance) {
+                if (dictionaryWord == null)
+                    dictionaryWord = new byte[BrotliDictionary.MAX_WORD_LENGTH + 16];
+                copyDictionaryWord(distance - maxDistance - 1, copyLength, dictionaryWord, metaBlockEnd);
+            } else {
+                if (copyLength > metaBlockEnd - outLength)
+                    throw new IOException("Invalid brotli data, copy runs past the end of the meta-block");
+                if (!isDistanceCodeZero)
+                    distanceRing[distanceRingIndex++ & 3] = distance;
+                copyBackReference(distance, copyLength);
+            }
+        }
+
+        if (outLength > metaBlockEnd)
+            throw new IOException("Invalid brotli data, meta-block longer than its declared length");
+    }
+
+    private void decodeLiterals(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (blockLengths[0] == 0)
+                switchBlockType(0);
+            blockLengths[0]--;
+
+            int last = outLength > 0 ? out[outLength - 1] & 0xFF : 0;
+            int secondLast = outLength > 1 ? out[outLength - 2] & 0xFF : 0;
+            int lookup = contextModes[blockTypes[0]] * 512;
+            int context = CONTEXT_LOOKUP[lookup + last] | CONTEXT_LOOKUP[lookup + 256 + secondLast];
+
+            int tree = literalContextMap[blockTypes[0] * MAX_LITERAL_CONTEXTS + context];
+            out[outLength++] = (byte) readSymbol(literalTables[tree]);
+        }
+    }
+
+    private int readDistance(int code) throws IOException {
+        if (code < NUM_DISTANCE_SHORT_CODES) {
+            int distance = distanceRing[(distanceRingIndex - 1 - DISTANCE_SHORT_CODE_INDEX[code]) & 3]
+                    + DISTANCE_SHORT_CODE_DELTA[code];
+            if (distance <= 0)
+                throw new IOException("Invalid brotli distance " + distance);
+            return distance;
+        }
+
+        if (code < NUM_DISTANCE_SHORT_CODES + directDistances)
+            return code - NUM_DISTANCE_SHORT_CODES + 1;
+
+        int postfixMask = (1 << postfixBits) - 1;
+        int code2 = code - directDistances - NUM_DISTANCE_SHORT_CODES;
+        int highCode = code2 >> postfixBits;
+        int lowCode = code2 & postfixMask;
+        int extraBits = 1 + (highCode >> 1);
+        int offset = ((2 + (highCode & 1)) << extraBits) - 4;
+
+        return ((offset + in.readBits(extraBits)) << postfixBits) + lowCode + directDistances + 1;
+    }
+
+    private void copyDictionaryWord(int wordId, int copyLength, byte[] word, int metaBlockEnd) throws IOException {
+        if (copyLength < BrotliDictionary.MIN_WORD_LENGTH || copyLength > BrotliDictionary.MAX_WORD_LENGTH)
+            throw new IOException("Invalid brotli distance, beyond the window with copy length " + copyLength);
+
+        int sizeBits = BrotliDictionary.SIZE_BITS_BY_LENGTH[copyLength];
+        int index = wordId & ((1 << sizeBits) - 1);
+        int transform = wordId >>> sizeBits;
+        if (transform >= BrotliDictionary.NUM_TRANSFORMS)
+            throw new IOException("Invalid brotli dictionary reference, transform " + transform);
+
+        int wordOffset = BrotliDictionary.OFFSETS_BY_LENGTH[copyLength] + index * copyLength;
+        int length = BrotliDictionary.transformWord(word, 0, wordOffset, copyLength, transform);
+        if (length > metaBlockEnd - outLength)
+            throw new IOException("Invalid brotli data, dictionary word runs past the end of the meta-block");
+
+        System.arraycopy(word, 0, out, outLength, length);
+        outLength += length;
+    }
+
+    private void copyBackReference(int distance, int length) {
+        int from = outLength - distance;
+        if (distance >= length) {
+            System.arraycopy(out, from, out, outLength, length);
+            outLength += length;
+        } else {
+            // overlapping copy repeats the last distance bytes
+            for (int i = 0; i < length; i++)
+                out[outLength++] = out[from + i];
+        }
+    }
+
+    private void switchBlockType(int category) throws IOException {
+        int code = readSymbol(blockTypeTables[category]);
+        int type;
+        if (code == 0)
+            type = lastBlockTypes[category];
+        else if (code == 1)
+            type = blockTypes[category] + 1;
+        else
+            type = code - 2;
+
+        if (type >= numBlockTypes[category])
+            type -= numBlockTypes[category];
+
+        lastBlockTypes[category] = blockTypes[category];
+        blockTypes[category] = type;
+        blockLengths[category] = readBlockLength(blockLengthTables[category]);
+    }
+
+    private int readBlockLength(int[] table) throws IOException {
+        int code = readSymbol(table);
+        return BLOCK_LENGTH_OFFSET[code] + in.readBits(BLOCK_LENGTH_EXTRA_BITS[code]);
+    }
+
+    private int readVariableLength() throws IOException {
+        if (in.readBits(1) == 0)
+            return 0;
+
+        int bits = in.readBits(3);
+        if (bits == 0)
+            return 1;
+        return (1 << bits) + in.readBits(bits);
+    }
+
+    private int[] readContextMap(int size, int numTrees) throws IOException {
+        int[] map = new int[size];
+        if (numTrees < 2)
+            return map;
+
+        int maxRunLengthPrefix = in.readBits(1) == 1 ? in.readBits(4) + 1 : 0;
+        int[] table = readPrefixCode(numTrees + maxRunLengthPrefix);
+
+        int i = 0;
+        while (i < size) {
+            int code = readSymbol(table);
+            if (code == 0) {
+                map[i++] = 0;
+            } else if (code <= maxRunLengthPrefix) {
+                int run = (1 << code) + in.readBits(code);
+                if (run > size - i)
+                    throw new IOException("Invalid brotli context map, zero run past the end of the map");
+                i += run;
+            } else {
+                map[i++] = code - maxRunLengthPrefix;
+            }
+        }
+
+        if (in.readBits(1) == 1)
+            inverseMoveToFront(map);
+
+        for (int treeOn : map) {
+            if (treeOn >= numTrees)
+                throw new IOException("Invalid brotli context map, tree " + treeOn + " of " + numTrees);
+        }
+        return map;
+    }
+
+    private static void inverseMoveToFront(int[] values) {
+        int[] mtf = new int[256];
+        for (int i = 0; i < 256; i++)
+            mtf[i] = i;
+
+        for (int i = 0; i < values.length; i++) {
+            int index = values[i];
+            int value = mtf[index];
+            values[i] = value;
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = value;
+        }
+    }
+
+    private int[] readPrefixCode(int alphabetSize) throws IOException {
+        int[] codeLengths = new int[alphabetSize];
+        int kind = in.readBits(2);
+        if (kind == 1)
+            return readSimplePrefixCode(alphabetSize, codeLengths);
+
+        readComplexCodeLengths(kind, alphabetSize, codeLengths);
+        return BrotliHuffman.buildTable(codeLengths, alphabetSize);
+    }
+
+    private int[] readSimplePrefixCode(int alphabetSize, int[] codeLengths) throws IOException {
+        int numSymbols = in.readBits(2) + 1;
+        int alphabetBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+
+        int[] symbols = new int[numSymbols];
+        for (int i = 0; i < numSymbols; i++) {
+            symbols[i] = in.readBits(alphabetBits);
+            if (symbols[i] >= alphabetSize)
+                throw new IOException("Invalid brotli prefix code, symbol " + symbols[i] + " out of range");
+            for (int j = 0; j < i; j++) {
+                if (symbols[j] == symbols[i])
+                    throw new IOException("Invalid brotli prefix code, duplicate symbol " + symbols[i]);
+            }
+        }
+
+        if (numSymbols == 1)
+            return BrotliHuffman.buildSingleSymbolTable(symbols[0]);
+
+        int[] lengths;
+        if (numSymbols == 2)
+            lengths = new int[]{1, 1};
+        else if (numSymbols == 3)
+            lengths = new int[]{1, 2, 2};
+        else if (in.readBits(1) == 0)
+            lengths = new int[]{2, 2, 2, 2};
+        else
+            lengths = new int[]{1, 2, 3, 3};
+
+        for (int i = 0; i < numSymbols; i++)
+            codeLengths[symbols[i]] = lengths[i];
+        return BrotliHuffman.buildTable(codeLengths, alphabetSize);
+    }
+
+    private void readComplexCodeLengths(int skip, int alphabetSize, int[] codeLengths) throws IOException {
+        int[] codeLengthCodeLengths = new int[CODE_LENGTH_CODES];
+        int space = 32;
+        int numCodes = 0;
+        for (int i = skip; i < CODE_LENGTH_CODES && space > 0; i++) {
+            int peek = in.peekBits(4);
+            in.readBits(CODE_LENGTH_PREFIX_LENGTH[peek]);
+            int length = CODE_LENGTH_PREFIX_VALUE[peek];
+
+            codeLengthCodeLengths[CODE_LENGTH_CODE_ORDER[i]] = length;
+            if (length != 0) {
+                space -= 32 >> length;
+                numCodes++;
+            }
+        }
+        if (numCodes != 1 && space != 0)
+            throw new IOException("Invalid brotli code length code");
+
+        int[] codeLengthTable = numCodes == 1
+                ? BrotliHuffman.buildSingleSymbolTable(singleUsedSymbol(codeLengthCodeLengths))
+                : BrotliHuffman.buildTable(codeLengthCodeLengths, CODE_LENGTH_CODES);
+
+        int symbol = 0;
+        int previousLength = DEFAULT_CODE_LENGTH;
+        int repeat = 0;
+        int repeatLength = 0;
+        space = 1 << 15;
+        while (symbol < alphabetSize && space > 0) {
+            int code = readSymbol(codeLengthTable);
+            if (code < REPEAT_PREVIOUS_CODE_LENGTH) {
+                repeat = 0;
+                codeLengths[symbol++] = code;
+                if (code != 0) {
+                    previousLength = code;
+                    space -= 32768 >> code;
+                }
+                continue;
+            }
+
+            int extraBits = code == REPEAT_PREVIOUS_CODE_LENGTH ? 2 : 3;
+            int newLength = code == REPEAT_PREVIOUS_CODE_LENGTH ? previousLength : 0;
+            if (repeatLength != newLength) {
+                repeat = 0;
+                repeatLength = newLength;
+            }
+
+            int oldRepeat = repeat;
+            if (repeat > 0)
+                repeat = (repeat - 2) << extraBits;
+            repeat += in.readBits(extraBits) + 3;
+            int delta = repeat - oldRepeat;
+            if (symbol + delta > alphabetSize)
+                throw new IOException("Invalid brotli code lengths, repeat past the end of the alphabet");
+
+            for (int i = 0; i < delta; i++)
+                codeLengths[symbol++] = repeatLength;
+            if (repeatLength != 0)
+                space -= delta << (15 - repeatLength);
+        }
+
+        if (space != 0)
+            throw new IOException("Invalid brotli code lengths, space left " + space);
+    }
+
+    private static int singleUsedSymbol(int[] codeLengths) {
+        for (int i = 0; i < codeLengths.length; i++) {
+            if (codeLengths[i] != 0)
+                return i;
+        }
+        return 0;
+    }
+
+    private int readSymbol(int[] table) throws IOException {
+        int bits = in.peekBits(16);
+        int entry = table[bits & 0xFF];
+        if (BrotliHuffman.isSubtable(entry)) {
+            in.skipBits(BrotliHuffman.ROOT_BITS);
+            int subBits = entry & 0xFF;
+            entry = table[(entry >>> 16) + ((bits >>> BrotliHuffman.ROOT_BITS) & ((1 << subBits) - 1))];
+        }
+
+        in.skipBits(entry & 0xFF);
+        return entry >>> 16;
+    }
+
+    private void ensureOutputSpace(int length) throws IOException {
+        long needed = (long) outLength + length;
+        if (needed > Integer.MAX_VALUE - 8)
+            throw new IOException("Brotli output too large");
+        if (needed <= out.length)
+            return;
+        if (isFixedSize)
+            throw new IOException("Brotli data decompresses to more than the expected " + out.length + " bytes");
+
+        long newSize = Math.max(needed, (long) out.length * 2);
+        out = Arrays.copyOf(out, (int) Math.min(newSize, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * Reads bits least significant first through a 64 bit buffer. Reading past the end of the input pads with zero
+     * bytes, whether that padding got consumed is checked when refilling and at the end of the stream.
+     */
+    private static class BitReader {
+        private final byte[] data;
+        private int position;
+        private long buffer;
+        private int bufferBits;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int readBits(int count) throws IOException {
+            if (count == 0)
+                return 0;
+            int value = peekBits(count);
+            skipBits(count);
+            return value;
+        }
+
+        int peekBits(int count) throws IOException {
+            if (bufferBits < count)
+                fill();
+            return (int) (buffer & ((1L << count) - 1));
+        }
+
+        void skipBits(int count) {
+            buffer >>>= count;
+            bufferBits -= count;
+        }
+
+        private void fill() throws IOException {
+            checkNotTruncated();
+            while (bufferBits <= 56) {
+                long b = position < data.length ? data[position] & 0xFF : 0;
+                buffer |= b << bufferBits;
+                bufferBits += 8;
+                position++;
+            }
+        }
+
+        void checkNotTruncated() throws IOException {
+            if ((long) position * 8 - bufferBits > (long) data.length * 8)
+                throw new IOException("Brotli data is truncated");
+        }
+
+        void alignToByte() throws IOException {
+            int padding = bufferBits & 7;
+            if (readBits(padding) != 0)
+                throw new IOException("Invalid brotli data, non zero padding bits");
+        }
+
+        void readBytes(byte[] to, int offset, int length) throws IOException {
+            while (length > 0 && bufferBits > 0) {
+                to[offset++] = (byte) readBits(8);
+                length--;
+            }
+
+            if (length > 0) {
+                checkAvailable(length);
+                System.arraycopy(data, position, to, offset, length);
+                position += length;
+            }
+        }
+
+        void skipBytes(int length) throws IOException {
+            while (length > 0 && bufferBits > 0) {
+                readBits(8);
+                length--;
+            }
+
+            if (length > 0) {
+                checkAvailable(length);
+                position += length;
+            }
+        }
+
+        private void checkAvailable(int length) throws IOException {
+            if (length > data.length - position)
+                throw new IOException("Brotli data is truncated");
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.brotli;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The brotli static dictionary and word transforms, RFC 7932 appendix A and B. The dictionary data is loaded from
+ * a resource the first time a stream references it.
+ */
+class BrotliDictionary {
+    static final int MIN_WORD_LENGTH = 4;
+    static final int MAX_WORD_LENGTH = 24;
+    static final int NUM_TRANSFORMS = 121;
+    private static final int DICTIONARY_SIZE = 122784;
+    private static final String RESOURCE = "/org/mabb/fontverter/brotli/dictionary.bin";
+
+    static final int[] SIZE_BITS_BY_LENGTH = {0, 0, 0, 0, 10, 10, 11, 11, 10, 10, 10, 10, 10, 9, 9, 8, 7, 7, 8, 7, 7,
+            6, 6, 5, 5};
+    static final int[] OFFSETS_BY_LENGTH = new int[MAX_WORD_LENGTH + 2];
+
+    private static final int TRANSFORM_IDENTITY = 0;
+    private static final int TRANSFORM_OMIT_LAST_9 = 9;
+    private static final int TRANSFORM_UPPERCASE_FIRST = 10;
+    private static final int TRANSFORM_UPPERCASE_ALL = 11;
+    private static final int TRANSFORM_OMIT_FIRST_1 = 12;
+    private static final int TRANSFORM_OMIT_FIRST_9 = 20;
+
+    /* prefix, transform type and suffix for each of the 121 transforms */
+    private static final String[] TRANSFORM_PREFIX = new String[NUM_TRANSFORMS];
+    private static final int[] TRANSFORM_TYPE = new int[NUM_TRANSFORMS];
+    private static final String[] TRANSFORM_SUFFIX = new String[NUM_TRANSFORMS];
+    private static final byte[][] PREFIX_BYTES = new byte[NUM_TRANSFORMS][];
+    private static final byte[][] SUFFIX_BYTES = new byte[NUM_TRANSFORMS][];
+
+    private static final String TRANSFORMS =
+            "|0|||0| | |0| ||12|||10| ||0| the | |0||s |0| ||0| of ||10|||0| and ||13|||1||, |0| |"
+                    + "|0|, | |10| ||0| in ||0| to |e |0| ||0|\"||0|.||0|\">||0|\n||3|||0|]||0| for ||14|||2|"
+                    + "||0| a ||0| that | |10|||0|. |.|0|| |0|, ||15|||0| with ||0|'||0| from ||0| by ||16||"
+                    + "|17|| the |0|||4|||0|. The ||11|||0| on ||0| as ||0| is ||7|||1|ing ||0|\n\t||0|:| |0|"
+                    + ". ||0|ed ||20|||18|||6|||0|(||10|, ||8|||0| at ||0|ly | the |0| of ||5|||9|| |10|, ||"
+                    + "10|\"|.|0|(||11| ||10|\">||0|=\"| |0|.|.com/|0|| the |0| of the ||10|'||0|. This ||0|"
+                    + ",|.|0| ||10|(||10|.||0| not | |0|=\"||0|er | |11| ||0|al | |11|||0|='||11|\"||10|. | |"
+                    + "0|(||0|ful | |10|. ||0|ive ||0|less ||11|'||0|est | |10|.||11|\">| |0|='||10|,||0|ize |"
+                    + "|11|.|\u00c2\u00a0|0|| |0|,||10|=\"||11|=\"||0|ous ||11|, ||10|='| |10|,| |11|=\"| |11|"
+                    + ", ||11|,||11|(||11|. | |11|.||11|='| |11|. | |10|=\"| |11|='| |10|='";
+
+    private static byte[] data;
+
+    static {
+        OFFSETS_BY_LENGTH[MIN_WORD_LENGTH] = 0;
+        for (int length = MIN_WORD_LENGTH; length <= MAX_WORD_LENGTH; length++)
+            OFFSETS_BY_LENGTH[length + 1] = OFFSETS_BY_LENGTH[length] + (length << SIZE_BITS_BY_LENGTH[length]);
+
+        String[] parts = TRANSFORMS.split("\\|", -1);
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        for (int i = 0; i < NUM_TRANSFORMS; i++) {
+            TRANSFORM_PREFIX[i] = parts[i * 3];
+            TRANSFORM_TYPE[i] = Integer.parseInt(parts[i * 3 + 1]);
+            TRANSFORM_SUFFIX[i] = parts[i * 3 + 2];
+            PREFIX_BYTES[i] = TRANSFORM_PREFIX[i].getBytes(latin1);
+            SUFFIX_BYTES[i] = TRANSFORM_SUFFIX[i].getBytes(latin1);
+        }
+    }
+
+    static synchronized byte[] getData() throws IOException {
+        if (data != null)
+            return data;
+
+        InputStream in = BrotliDictionary.class.getResourceAsStream(RESOURCE);
+        if (in == null)
+            throw new IOException("Brotli dictionary resource " + RESOURCE + " is missing");
+
+        try {
+            byte[] read = IOUtils.toByteArray(in);
+            if (read.length != DICTIONARY_SIZE)
+                throw new IOException("Brotli dictionary resource has the wrong size " + read.length);
+            data = read;
+        } finally {
+            in.close();
+        }
+
+        return data;
+    }
+
+    /**
+     * Writes a transformed dictionary word to out.
+     *
+     * @return length of the transformed word
+     */
+    static int transformWord(byte[] out, int outOffset, int wordOffset, int wordLength, int transform)
+            throws IOException {
+        byte[] dictionary = getData();
+        int position = outOffset;
+
+        byte[] prefix = PREFIX_BYTES[transform];
+        System.arraycopy(prefix, 0, out, position, prefix.length);
+        position += prefix.length;
+
+        int type = TRANSFORM_TYPE[transform];
+        if (type <= TRANSFORM_OMIT_LAST_9) {
+            wordLength -= type;
+        } else if (type >= TRANSFORM_OMIT_FIRST_1 && type <= TRANSFORM_OMIT_FIRST_9) {
+            int skip = type - TRANSFORM_OMIT_FIRST_1 + 1;
+            wordOffset += skip;
+            wordLength -= skip;
+        }
+
+        int wordStart = position;
+        for (int i = 0; i < wordLength; i++)
+            out[position++] = dictionary[wordOffset + i];
+
+        if (type == TRANSFORM_UPPERCASE_FIRST && wordLength > 0) {
+            toUpperCase(out, wordStart, position);
+        } else if (type == TRANSFORM_UPPERCASE_ALL) {
+            int upperOn = wordStart;
+            while (upperOn < position)
+                upperOn += toUpperCase(out, upperOn, position);
+        }
+
+        byte[] suffix = SUFFIX_BYTES[transform];
+        System.arraycopy(suffix, 0, out, position, suffix.length);
+        position += suffix.length;
+
+        return position - outOffset;
+    }
+
+    /**
+     * Uppercases the utf-8 character at offset the same rough way the spec does.
+     *
+     * @return length of the character in bytes
+     */
+    private static int toUpperCase(byte[] word, int offset, int end) {
+        int b = word[offset] & 0xFF;
+        if (b < 0xC0) {
+            if (b >= 'a' && b <= 'z')
+                word[offset] ^= 32;
+            return 1;
+        }
+
+        if (b < 0xE0) {
+            if (offset + 1 < end)
+                word[offset + 1] ^= 32;
+            return 2;
+        }
+
+        if (offset + 2 < end)
+            word[offset + 2] ^= 5;
+        return 3;
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.brotli;
+
+import java.util.Arrays;
+
+import static org.mabb.fontverter.brotli.BrotliTables.*;
+
+/**
+ * Pure java brotli compressor, RFC 7932. Finds back references with hash chains and lazy matching then writes
+ * each meta-block with one prefix code per alphabet. Doesn't go as far as the reference encoder's block splitting,
+ * context modeling or static dictionary search so output is somewhat larger than its top quality levels but is
+ * readable by any brotli decoder.
+ */
+public class BrotliEncoder {
+    private static final int WINDOW_BITS = 22;
+    private static final int MAX_DISTANCE = (1 << WINDOW_BITS) - 16;
+    private static final int META_BLOCK_SIZE = 1 << 20;
+
+    private static final int HASH_BITS = 17;
+    private static final int MAX_CHAIN_LENGTH = 64;
+    private static final int MIN_MATCH_LENGTH = 4;
+    private static final int MAX_MATCH_LENGTH = 1 << 16;
+    private static final int MAX_LAZY_STEPS = 4;
+
+    /* match scores in the reference encoder's units, about 135 per literal saved less the cost of the distance */
+    private static final int LITERAL_SCORE = 135;
+    private static final int SCORE_BASE = 1920;
+    private static final int LAST_DISTANCE_BONUS = 15;
+    private static final int DISTANCE_BIT_PENALTY = 30;
+    private static final int MIN_SCORE = SCORE_BASE + 100;
+    private static final int LAZY_MATCH_COST = 175;
+
+    private static final int LITERAL_ALPHABET_BITS = 8;
+    private static final int COMMAND_ALPHABET_BITS = 10;
+    private static final int DISTANCE_ALPHABET_SIZE = NUM_DISTANCE_SHORT_CODES + 48;
+    private static final int DISTANCE_ALPHABET_BITS = 6;
+
+    private final byte[] data;
+    private final BrotliBitWriter out;
+
+    private final int[] hashHeads = new int[1 << HASH_BITS];
+    private final int[] hashChain;
+    private final int hashChainMask;
+    private int hashedUpTo = 0;
+
+    /* distances of the last four back references, as the decoder tracks them */
+    private final int[] distanceRing = {16, 15, 11, 4};
+    private int distanceRingIndex = 0;
+
+    /* commands of the meta-block being built, a copy length of 0 marks trailing literals */
+    private int[] insertLengths = new int[1024];
+    private int[] copyLengths = new int[1024];
+    private int[] distances = new int[1024];
+    private int numCommands;
+
+    private int matchLength;
+    private int matchDistance;
+
+    private BrotliEncoder(byte[] data) {
+        this.data = data;
+        out = new BrotliBitWriter(data.length / 2 + 64);
+
+        int chainSize = Integer.highestOneBit(Math.max(Math.min(data.length, 1 << WINDOW_BITS), 1) * 2 - 1);
+        hashChain = new int[chainSize];
+        hashChainMask = chainSize - 1;
+        Arrays.fill(hashHeads, -1);
+    }
+
+    public static byte[] compress(byte[] data) {
+        BrotliEncoder encoder = new BrotliEncoder(data);
+        encoder.encode();
+        return encoder.out.toByteArray();
+    }
+
+    private void encode() {
+        // window bits 22, stored as 1 then 22 - 17 in 3 bits
+        out.writeBits(1, 1);
+        out.writeBits(3, WINDOW_BITS - 17);
+
+        for (int start = 0; start < data.length; start += META_BLOCK_SIZE) {
+            int end = Math.min(start + META_BLOCK_SIZE, data.length);
+            findCommands(start, end);
+            writeMetaBlock(start, end, end == data.length);
+        }
+
+        if (data.length == 0) {
+            out.writeBits(1, 1);
+            out.writeBits(1, 1);
+        }
+    }
+
+    private void findCommands(int start, int end) {
+        numCommands = 0;
+        int[] ring = distanceRing.clone();
+        int ringIndex = distanceRingIndex;
+
+        int position = start;
+        int literalStart = start;
+        while (position < end) {
+            int score = findMatch(position, end, ring, ringIndex);
+            if (score == 0) {
+                position++;
+                continue;
+            }
+
+            for (int lazySteps = 0; lazySteps < MAX_LAZY_STEPS && position + 1 < end; lazySteps++) {
+                int length = matchLength;
+                int distance = matchDistance;
+                int nextScore = findMatch(position + 1, end, ring, ringIndex);
+                if (nextScore < score + LAZY_MATCH_COST) {
+                    matchLength = length;
+                    matchDistance = distance;
+                    break;
+                }
+
+                score = nextScore;
+                position++;
+            }
+
+            addCommand(position - literalStart, matchLength, matchDistance);
+            if (matchDistance != ring[(ringIndex - 1) & 3])
+                ring[ringIndex++ & 3] = matchDistance;
+
+            position += matchLength;
+            literalStart = position;
+        }
+
+        if (literalStart < end)
+            addCommand(end - literalStart, 0, 0);
+    }
+
+    /**
+     * Looks for the best scoring back reference at position, trying the recent distances before the hash chain.
+     *
+     * @return score of the match found in matchLength and matchDistance, 0 when there's no worthwhile match
+     */
+    private int findMatch(int position, int end, int[] ring, int ringIndex) {
+        updateHashes(position);
+
+        int maxLength = Math.min(MAX_MATCH_LENGTH, end - position);
+        int bestScore = MIN_SCORE;
+        int bestLength = 0;
+        matchLength = 0;
+
+        for (int i = 0; i < 4; i++) {
+            int distance = ring[(ringIndex - 1 - i) & 3];
+            if (distance > position || distance > MAX_DISTANCE)
+                continue;
+
+            int length = getMatchLength(position - distance, position, maxLength);
+            if (length < 3 && (length < 2 || i >= 2))
+                continue;
+
+            int score = LITERAL_SCORE * length + SCORE_BASE + (i == 0 ? LAST_DISTANCE_BONUS : 0);
+            if (score > bestScore) {
+                bestScore = score;
+                bestLength = length;
+                matchLength = length;
+                matchDistance = distance;
+            }
+        }
+
+        if (maxLength < MIN_MATCH_LENGTH || bestLength == maxLength)
+            return matchLength == 0 ? 0 : bestScore;
+
+        int candidate = hashHeads[hash(position)];
+        for (int chainOn = 0; chainOn < MAX_CHAIN_LENGTH && candidate >= 0; chainOn++) {
+            int distance = position - candidate;
+            if (distance > MAX_DISTANCE)
+                break;
+
+            if (data[candidate + bestLength] == data[position + bestLength]) {
+                int length = getMatchLength(candidate, position, maxLength);
+                if (length >= MIN_MATCH_LENGTH) {
+                    int score = LITERAL_SCORE * length + SCORE_BASE - DISTANCE_BIT_PENALTY * log2Floor(distance);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestLength = length;
+                        matchLength = length;
+                        matchDistance = distance;
+                        if (length == maxLength)
+                            break;
+                    }
+                }
+            }
+
+            int next = hashChain[candidate & hashChainMask];
+            if (next >= candidate)
+                break;
+            candidate = next;
+        }
+
+        return matchLength == 0 ? 0 : bestScore;
+    }
+
+    private int getMatchLength(int from, int position, int maxLength) {
+        int length = 0;
+        while (length < maxLength && data[from + length] == data[position + length])
+            length++;
+        return length;
+    }
+
+    /**
+     * Adds every position before the given one to the hash chains.
+     */
+    private void updateHashes(int position) {
+        int last = Math.min(position, data.length - MIN_MATCH_LENGTH + 1);
+        for (; hashedUpTo < last; hashedUpTo++) {
+            int hash = hash(hashedUpTo);
+            hashChain[hashedUpTo & hashChainMask] = hashHeads[hash];
+            hashHeads[hash] = hashedUpTo;
+        }
+    }
+
+    private int hash(int position) {
+        int value = (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8 | (data[position + 2] & 0xFF) << 16
+                | (data[position + 3] & 0xFF) << 24;
+        return (value * 0x1E35A7BD) >>> (32 - HASH_BITS);
+    }
+
+    private static int log2Floor(int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private void addCommand(int insertLength, int copyLength, int distance) {
+        if (numCommands == insertLengths.length) {
+            insertLengths = Arrays.copyOf(insertLengths, numCommands * 2);
+            copyLengths = Arrays.copyOf(copyLengths, numCommands * 2);
+            distances = Arrays.copyOf(distances, numCommands * 2);
+        }
+
+        insertLengths[numCommands] = insertLength;
+        copyLengths[numCommands] = copyLength;
+        distances[numCommands] = distance;
+        numCommands++;
+    }
+
+    private void writeMetaBlock(int start, int end, boolean isLast) {
+        long startPosition = out.getPosition();
+        int[] savedRing = distanceRing.clone();
+        int savedRingIndex = distanceRingIndex;
+
+        writeCompressedMetaBlock(start, end, isLast);
+
+        // incompressible data is stored as is, only possible in a meta-block that isn't the last
+        long uncompressedBits = 8L * (end - start + 8);
+        if (out.getPosition() - startPosition > uncompressedBits) {
+            out.rollback(startPosition);
+            System.arraycopy(savedRing, 0, distanceRing, 0, 4);
+            distanceRingIndex = savedRingIndex;
+
+            out.writeBits(1, 0);
+            writeMetaBlockLength(end - start);
+            out.writeBits(1, 1);
+            out.writeBytes(data, start, end - start);
+            if (isLast) {
+                out.writeBits(1, 1);
+                out.writeBits(1, 1);
+            }
+        }
+    }
+
+    private void writeCompressedMetaBlock(int start, int end, boolean isLast) {
+        int[] commandSymbols = new int[numCommands];
+        int[] distanceSymbols = new int[numCommands];
+        int[] distanceExtras = new int[numCommands];
+
+        int[] literalCounts = new int[NUM_LITERAL_SYMBOLS];
+        int[] commandCounts = new int[NUM_COMMAND_SYMBOLS];
+        int[] distanceCounts = new int[DISTANCE_ALPHABET_SIZE];
+
+        int position = start;
+        for (int i = 0; i < numCommands; i++) {
+            for (int j = 0; j < insertLengths[i]; j++)
+                literalCounts[data[position + j] & 0xFF]++;
+            position += insertLengths[i] + copyLengths[i];
+
+            distanceSymbols[i] = -1;
+            commandSymbols[i] = getCommandSymbol(i, distanceSymbols, distanceExtras);
+            commandCounts[commandSymbols[i]]++;
+            if (distanceSymbols[i] >= 0)
+                distanceCounts[distanceSymbols[i]]++;
+        }
+
+        if (isLast) {
+            out.writeBits(1, 1);
+            out.writeBits(1, 0);
+            writeMetaBlockLength(end - start);
+        } else {
+            out.writeBits(1, 0);
+            writeMetaBlockLength(end - start);
+            out.writeBits(1, 0);
+        }
+
+        // one block type per category, no postfix or direct distance codes and literals with an LSB6 context mode
+        out.writeBits(3, 0);
+        out.writeBits(2, 0);
+        out.writeBits(4, 0);
+        out.writeBits(2, CONTEXT_LSB6);
+        // one literal and one distance prefix code, so no context maps
+        out.writeBits(2, 0);
+
+        PrefixCode literalCode = writePrefixCode(literalCounts, NUM_LITERAL_SYMBOLS, LITERAL_ALPHABET_BITS);
+        PrefixCode commandCode = writePrefixCode(commandCounts, NUM_COMMAND_SYMBOLS, COMMAND_ALPHABET_BITS);
+        PrefixCode distanceCode = writePrefixCode(distanceCounts, DISTANCE_ALPHABET_SIZE, DISTANCE_ALPHABET_BITS);
+
+        position = start;
+        for (int i = 0; i < numCommands; i++) {
+            commandCode.write(out, commandSymbols[i]);
+
+            int insertCode = getInsertLengthCode(insertLengths[i]);
+            out.writeBits(INSERT_LENGTH_EXTRA_BITS[insertCode], insertLengths[i] - INSERT_LENGTH_OFFSET[insertCode]);
+            if (copyLengths[i] > 0) {
+                int copyCode = getCopyLengthCode(copyLengths[i]);
+                out.writeBits(COPY_LENGTH_EXTRA_BITS[copyCode], copyLengths[i] - COPY_LENGTH_OFFSET[copyCode]);
+            }
+
+            for (int j = 0; j < insertLengths[i]; j++)
+                literalCode.write(out, data[position + j] & 0xFF);
+            position += insertLengths[i] + copyLengths[i];
+
+            int distanceSymbol = distanceSymbols[i];
+            if (distanceSymbol >= 0) {
+                distanceCode.write(out, distanceSymbol);
+                if (distanceSymbol >= NUM_DISTANCE_SHORT_CODES)
+                    out.writeBits(getDistanceExtraBits(distanceSymbol), distanceExtras[i]);
+            }
+        }
+
+        if (isLast)
+            out.alignToByte();
+    }
+
+    private void writeMetaBlockLength(int length) {
+        int nibbles = length - 1 < 1 << 16 ? 4 : length - 1 < 1 << 20 ? 5 : 6;
+        out.writeBits(2, nibbles - 4);
+        out.writeBits(nibbles * 4, length - 1);
+    }
+
+    /**
+     * Picks the insert and copy command symbol for a command and its distance symbol, updating the last distances
+     * the same as the decoder will.
+     *
+     * @return command symbol, distanceSymbols[command] is set when a distance symbol follows the literals
+     */
+    private int getCommandSymbol(int command, int[] distanceSymbols, int[] distanceExtras) {
+        int insertCode = getInsertLengthCode(insertLengths[command]);
+        int copyLength = copyLengths[command];
+        int copyCode = copyLength == 0 ? 0 : getCopyLengthCode(copyLength);
+        int lowBits = ((insertCode & 7) << 3) | (copyCode & 7);
+
+        int distance = distances[command];
+        boolean isLastDistance = copyLength == 0 || distance == distanceRing[(distanceRingIndex - 1) & 3];
+        if (isLastDistance && insertCode < 8 && copyCode < 16)
+            return (copyCode < 8 ? 0 : 64) | lowBits;
+
+        if (copyLength > 0) {
+            int symbol = getDistanceSymbol(distance, distanceExtras, command);
+            distanceSymbols[command] = symbol;
+            if (symbol != 0)
+                distanceRing[distanceRingIndex++ & 3] = distance;
+        }
+
+        return getExplicitDistanceCell(insertCode >> 3, copyCode >> 3) | lowBits;
+    }
+
+    private int getDistanceSymbol(int distance, int[] distanceExtras, int command) {
+        for (int code = 0; code < NUM_DISTANCE_SHORT_CODES; code++) {
+            int ringDistance = distanceRing[(distanceRingIndex - 1 - DISTANCE_SHORT_CODE_INDEX[code]) & 3];
+            if (ringDistance + DISTANCE_SHORT_CODE_DELTA[code] == distance)
+                return code;
+        }
+
+        // no postfix bits or direct codes so the distance + 3 is split into a prefix and extra bits
+        int value = distance + 3;
+        int extraBits = log2Floor(value) - 1;
+        int prefix = (value >> extraBits) & 1;
+        distanceExtras[command] = value & ((1 << extraBits) - 1);
+        return NUM_DISTANCE_SHORT_CODES + 2 * (extraBits - 1) + prefix;
+    }
+
+    private static int getDistanceExtraBits(int symbol) {
+        return 1 + ((symbol - NUM_DISTANCE_SHORT_CODES) >> 1);
+    }
+
+    private static int getExplicitDistanceCell(int insertRange, int copyRange) {
+        if (insertRange == 0)
+            return copyRange == 0 ? 128 : copyRange == 1 ? 192 : 384;
+        if (insertRange == 1)
+            return copyRange == 0 ? 256 : copyRange == 1 ? 320 : 512;
+        return copyRange == 0 ? 448 : copyRange == 1 ? 576 : 640;
+    }
+
+    private PrefixCode writePrefixCode(int[] counts, int alphabetSize, int alphabetBits) {
+        int[] symbols = new int[4];
+        int numSymbols = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (counts[i] > 0) {
+                if (numSymbols < 4)
+                    symbols[numSymbols] = i;
+                numSymbols++;
+            }
+        }
+
+        int[] lengths = BrotliHuffman.getCodeLengths(counts, alphabetSize, MAX_CODE_LENGTH);
+        if (numSymbols <= 4)
+            writeSimplePrefixCode(lengths, symbols, Math.max(numSymbols, 1), alphabetBits);
+        else
+            writeComplexPrefixCode(lengths, alphabetSize);
+
+        return new PrefixCode(lengths, BrotliHuffman.getCanonicalCodes(lengths, alphabetSize));
+    }
+
+    private void writeSimplePrefixCode(int[] lengths, int[] symbols, int numSymbols, int alphabetBits) {
+        out.writeBits(2, 1);
+        out.writeBits(2, numSymbols - 1);
+
+        // listed shortest code first, the decoder gives equal length codes out in symbol order itself
+        Integer[] ordered = new Integer[numSymbols];
+        for (int i = 0; i < numSymbols; i++)
+            ordered[i] = symbols[i];
+        for (int i = 1; i < numSymbols; i++) {
+            for (int j = i; j > 0 && lengths[ordered[j]] < lengths[ordered[j - 1]]; j--) {
+                Integer swap = ordered[j];
+                ordered[j] = ordered[j - 1];
+                ordered[j - 1] = swap;
+            }
+        }
+
+        for (Integer symbolOn : ordered)
+            out.writeBits(alphabetBits, symbolOn);
+        if (numSymbols == 4)
+            out.writeBits(1, lengths[ordered[0]] == 1 ? 1 : 0);
+    }
+
+    private void writeComplexPrefixCode(int[] lengths, int alphabetSize) {
+        int[] tree = new int[alphabetSize];
+        int[] extras = new int[alphabetSize];
+        int treeSize = getRunLengthCodes(lengths, alphabetSize, tree, extras);
+
+        int[] codeLengthCounts = new int[CODE_LENGTH_CODES];
+        for (int i = 0; i < treeSize; i++)
+            codeLengthCounts[tree[i]]++;
+
+        int[] codeLengthLengths = BrotliHuffman.getCodeLengths(codeLengthCounts, CODE_LENGTH_CODES, 5);
+        int numCodes = 0;
+        for (int i = 0; i < CODE_LENGTH_CODES; i++) {
+            if (codeLengthCounts[i] > 0) {
+                numCodes++;
+                // a lone code length symbol takes no bits but still needs a length to mark it used
+                if (codeLengthLengths[i] == 0)
+                    codeLengthLengths[i] = 1;
+            }
+        }
+
+        int skip = 0;
+        if (codeLengthLengths[CODE_LENGTH_CODE_ORDER[0]] == 0 && codeLengthLengths[CODE_LENGTH_CODE_ORDER[1]] == 0) {
+            skip = 2;
+            if (codeLengthLengths[CODE_LENGTH_CODE_ORDER[2]] == 0)
+                skip = 3;
+        }
+
+        // trailing zero lengths are left out unless there's one code, then the decoder reads the full list
+        int toWrite = CODE_LENGTH_CODES;
+        if (numCodes > 1) {
+            while (codeLengthLengths[CODE_LENGTH_CODE_ORDER[toWrite - 1]] == 0)
+                toWrite--;
+        }
+
+        out.writeBits(2, skip);
+        for (int i = skip; i < toWrite; i++) {
+            int length = codeLengthLengths[CODE_LENGTH_CODE_ORDER[i]];
+            out.writeBits(CODE_LENGTH_SYMBOL_LENGTH[length], CODE_LENGTH_SYMBOL_BITS[length]);
+        }
+
+        if (numCodes == 1)
+            Arrays.fill(codeLengthLengths, 0);
+        int[] codeLengthCodes = BrotliHuffman.getCanonicalCodes(codeLengthLengths, CODE_LENGTH_CODES);
+        for (int i = 0; i < treeSize; i++) {
+            int symbol = tree[i];
+            out.writeBits(codeLengthLengths[symbol], codeLengthCodes[symbol]);
+            if (symbol == REPEAT_PREVIOUS_CODE_LENGTH)
+                out.writeBits(2, extras[i]);
+            else if (symbol == REPEAT_ZERO_CODE_LENGTH)
+                out.writeBits(3, extras[i]);
+        }
+    }
+
+    /**
+     * Run length codes the code lengths with the repeat symbols 16 and 17. Trailing zeros are dropped since the
+     * decoder stops once the code is complete.
+     *
+     * @return number of code length symbols written to tree
+     */
+    private static int getRunLengthCodes(int[] lengths, int alphabetSize, int[] tree, int[] extras) {
+        int end = alphabetSize;
+        while (end > 0 && lengths[end - 1] == 0)
+            end--;
+
+        int size = 0;
+        int previous = DEFAULT_CODE_LENGTH;
+        for (int i = 0; i < end; ) {
+            int value = lengths[i];
+            int repeats = 1;
+            while (i + repeats < end && lengths[i + repeats] == value)
+                repeats++;
+            i += repeats;
+
+            if (value == 0) {
+                size = writeRepeats(tree, extras, size, 0, repeats, REPEAT_ZERO_CODE_LENGTH, 3);
+            } else {
+                if (value != previous) {
+                    tree[size++] = value;
+                    repeats--;
+                }
+                size = writeRepeats(tree, extras, size, value, repeats, REPEAT_PREVIOUS_CODE_LENGTH, 2);
+                previous = value;
+            }
+        }
+
+        return size;
+    }
+
+    private static int writeRepeats(int[] tree, int[] extras, int size, int value, int repeats, int repeatCode,
+                                    int extraBits) {
+        // runs that would need an awkward repeat count split off a plain code first, same as the reference encoder
+        int awkward = repeatCode == REPEAT_ZERO_CODE_LENGTH ? 11 : 7;
+        if (repeats == awkward) {
+            tree[size++] = value;
+            repeats--;
+        }
+
+        if (repeats < 3) {
+            for (int i = 0; i < repeats; i++)
+                tree[size++] = value;
+            return size;
+        }
+
+        // repeat codes chain, each later code multiplies the count so far, so they're generated in reverse
+        int start = size;
+        repeats -= 3;
+        while (true) {
+            tree[size] = repeatCode;
+            extras[size] = repeats & ((1 << extraBits) - 1);
+            size++;
+            repeats >>= extraBits;
+            if (repeats == 0)
+                break;
+            repeats--;
+        }
+
+        reverse(tree, start, size);
+        reverse(extras, start, size);
+        return size;
+    }
+
+    private static void reverse(int[] values, int start, int end) {
+        for (int i = start, j = end - 1; i < j; i++, j--) {
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    private static class PrefixCode {
+        private final int[] lengths;
+        private final int[] codes;
+
+        PrefixCode(int[] lengths, int[] codes) {
+            this.lengths = lengths;
+            this.codes = codes;
+        }
+
+        void write(BrotliBitWriter out, int symbol) {
+            out.writeBits(lengths[symbol], codes[symbol]);
+        }
+    }
+}
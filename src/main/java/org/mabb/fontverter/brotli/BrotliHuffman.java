@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.brotli;
+
+import java.util.Arrays;
+
+import static org.mabb.fontverter.brotli.BrotliTables.MAX_CODE_LENGTH;
+
+/**
+ * Canonical prefix codes as brotli uses them. Codes are assigned in order of code length then symbol and are read
+ * least significant bit first so the lookup tables are indexed with the bit reversed codes.
+ */
+class BrotliHuffman {
+    static final int ROOT_BITS = 8;
+    private static final int SUBTABLE_FLAG = 0x100;
+
+    /**
+     * Builds a two level lookup table, the root is indexed with the next 8 bits of input and codes longer than
+     * that continue in a subtable. Entries hold the symbol in the upper 16 bits and the code length in the low
+     * byte, subtable entries instead have the subtable's offset and index bits.
+     */
+    static int[] buildTable(int[] codeLengths, int alphabetSize) {
+        int[] codes = getCanonicalCodes(codeLengths, alphabetSize);
+
+        int rootSize = 1 << ROOT_BITS;
+        int[] subtableBits = new int[rootSize];
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int length = codeLengths[symbol];
+            if (length > ROOT_BITS) {
+                int root = codes[symbol] & (rootSize - 1);
+                subtableBits[root] = Math.max(subtableBits[root], length - ROOT_BITS);
+            }
+        }
+
+        int size = rootSize;
+        int[] subtableOffsets = new int[rootSize];
+        for (int root = 0; root < rootSize; root++) {
+            if (subtableBits[root] > 0) {
+                subtableOffsets[root] = size;
+                size += 1 << subtableBits[root];
+            }
+        }
+
+        int[] table = new int[size];
+        for (int root = 0; root < rootSize; root++) {
+            if (subtableBits[root] > 0)
+                table[root] = (subtableOffsets[root] << 16) | SUBTABLE_FLAG | subtableBits[root];
+        }
+
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int length = codeLengths[symbol];
+            if (length == 0)
+                continue;
+
+            int code = codes[symbol];
+            if (length <= ROOT_BITS) {
+                for (int index = code; index < rootSize; index += 1 << length)
+                    table[index] = (symbol << 16) | length;
+            } else {
+                int root = code & (rootSize - 1);
+                int bits = subtableBits[root];
+                int subLength = length - ROOT_BITS;
+                for (int index = code >>> ROOT_BITS; index < 1 << bits; index += 1 << subLength)
+                    table[subtableOffsets[root] + index] = (symbol << 16) | subLength;
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * @return table for a code with one symbol that's decoded without reading any bits
+     */
+    static int[] buildSingleSymbolTable(int symbol) {
+        int[] table = new int[1 << ROOT_BITS];
+        Arrays.fill(table, symbol << 16);
+        return table;
+    }
+
+    static boolean isSubtable(int entry) {
+        return (entry & SUBTABLE_FLAG) != 0;
+    }
+
+    /**
+     * @return bit reversed canonical code for each symbol, ready to be written least significant bit first
+     */
+    static int[] getCanonicalCodes(int[] codeLengths, int alphabetSize) {
+        int[] lengthCounts = new int[MAX_CODE_LENGTH + 1];
+        for (int i = 0; i < alphabetSize; i++)
+            lengthCounts[codeLengths[i]]++;
+        lengthCounts[0] = 0;
+
+        int[] nextCode = new int[MAX_CODE_LENGTH + 1];
+        int code = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + lengthCounts[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+
+        int[] codes = new int[alphabetSize];
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int length = codeLengths[symbol];
+            if (length > 0)
+                codes[symbol] = Integer.reverse(nextCode[length]++) >>> (32 - length);
+        }
+
+        return codes;
+    }
+
+    /**
+     * Code lengths for the symbol counts limited to maxLength bits. When the plain huffman code is too deep the
+     * smallest counts are raised and the code rebuilt, which flattens the tree until it fits.
+     *
+     * @return code length per symbol, 0 for symbols that don't occur. A single used symbol gets a 0 length.
+     */
+    static int[] getCodeLengths(int[] counts, int alphabetSize, int maxLength) {
+        int[] lengths = new int[alphabetSize];
+        int used = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (counts[i] > 0)
+                used++;
+        }
+        if (used <= 1)
+            return lengths;
+
+        for (int minCount = 1; ; minCount *= 2) {
+            if (buildLengths(counts, alphabetSize, minCount, lengths) <= maxLength)
+                return lengths;
+        }
+    }
+
+    private static int buildLengths(int[] counts, int alphabetSize, int minCount, int[] lengths) {
+        int used = 0;
+        long[] leaves = new long[alphabetSize];
+        for (int i = 0; i < alphabetSize; i++) {
+            if (counts[i] > 0)
+                leaves[used++] = ((long) Math.max(counts[i], minCount) << 32) | i;
+        }
+        Arrays.sort(leaves, 0, used);
+
+        // two queue huffman build, leaves sorted by weight and internal nodes created in increasing weight order
+        int nodeCount = used * 2 - 1;
+        long[] weights = new long[nodeCount];
+        int[] parents = new int[nodeCount];
+        for (int i = 0; i < used; i++)
+            weights[i] = leaves[i] >>> 32;
+
+        int nextLeaf = 0;
+        int nextNode = used;
+        for (int created = used; created < nodeCount; created++) {
+            int first = nextLeaf < used && (nextNode >= created || weights[nextLeaf] <= weights[nextNode])
+                    ? nextLeaf++ : nextNode++;
+            int second = nextLeaf < used && (nextNode >= created || weights[nextLeaf] <= weights[nextNode])
+                    ? nextLeaf++ : nextNode++;
+
+            weights[created] = weights[first] + weights[second];
+            parents[first] = created;
+            parents[second] = created;
+        }
+
+        int[] depths = new int[nodeCount];
+        int maxDepth = 0;
+        for (int node = nodeCount - 2; node >= 0; node--) {
+            depths[node] = depths[parents[node]] + 1;
+            if (node < used)
+                maxDepth = Math.max(maxDepth, depths[node]);
+        }
+
+        Arrays.fill(lengths, 0);
+        for (int i = 0; i < used; i++)
+            lengths[(int) (leaves[i] & 0xFFFFFFFFL)] = depths[i];
+
+        return maxDepth;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.brotli;
+
+/**
+ * Fixed tables from the brotli format spec, RFC 7932, shared by the encoder and decoder.
+ */
+class BrotliTables {
+    static final int NUM_LITERAL_SYMBOLS = 256;
+    static final int NUM_COMMAND_SYMBOLS = 704;
+    static final int NUM_BLOCK_LENGTH_SYMBOLS = 26;
+    static final int NUM_DISTANCE_SHORT_CODES = 16;
+    static final int LITERAL_CONTEXT_BITS = 6;
+    static final int DISTANCE_CONTEXT_BITS = 2;
+    static final int CODE_LENGTH_CODES = 18;
+    static final int REPEAT_PREVIOUS_CODE_LENGTH = 16;
+    static final int REPEAT_ZERO_CODE_LENGTH = 17;
+    static final int DEFAULT_CODE_LENGTH = 8;
+    static final int MAX_CODE_LENGTH = 15;
+
+    static final int CONTEXT_LSB6 = 0;
+    static final int CONTEXT_MSB6 = 1;
+    static final int CONTEXT_UTF8 = 2;
+    static final int CONTEXT_SIGNED = 3;
+
+    static final int[] CODE_LENGTH_CODE_ORDER = {1, 2, 3, 4, 0, 5, 17, 6, 16, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+
+    /* code for the code length code lengths, indexed by the next 4 bits of input */
+    static final int[] CODE_LENGTH_PREFIX_LENGTH = {2, 2, 2, 3, 2, 2, 2, 4, 2, 2, 2, 3, 2, 2, 2, 4};
+    static final int[] CODE_LENGTH_PREFIX_VALUE = {0, 4, 3, 2, 0, 4, 3, 1, 0, 4, 3, 2, 0, 4, 3, 5};
+    /* same code by symbol for writing, bits in the order they're written */
+    static final int[] CODE_LENGTH_SYMBOL_BITS = {0, 7, 3, 2, 1, 15};
+    static final int[] CODE_LENGTH_SYMBOL_LENGTH = {2, 4, 3, 2, 2, 4};
+
+    static final int[] BLOCK_LENGTH_OFFSET = {1, 5, 9, 13, 17, 25, 33, 41, 49, 65, 81, 97, 113, 145, 177, 209, 241,
+            305, 369, 497, 753, 1265, 2289, 4337, 8433, 16625};
+    static final int[] BLOCK_LENGTH_EXTRA_BITS = {2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 6, 6, 7, 8, 9, 10,
+            11, 12, 13, 24};
+
+    static final int[] INSERT_LENGTH_OFFSET = {0, 1, 2, 3, 4, 5, 6, 8, 10, 14, 18, 26, 34, 50, 66, 98, 130, 194, 322,
+            578, 1090, 2114, 6210, 22594};
+    static final int[] INSERT_LENGTH_EXTRA_BITS = {0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10, 12,
+            14, 24};
+    static final int[] COPY_LENGTH_OFFSET = {2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 14, 18, 22, 30, 38, 54, 70, 102, 134,
+            198, 326, 582, 1094, 2118};
+    static final int[] COPY_LENGTH_EXTRA_BITS = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10,
+            24};
+
+    /* insert and copy length code ranges for each 64 symbol cell of the command alphabet, cells 0 and 1 reuse the
+       last distance without a distance symbol */
+    static final int[] CELL_INSERT_OFFSET = {0, 0, 0, 0, 8, 8, 0, 16, 8, 16, 16};
+    static final int[] CELL_COPY_OFFSET = {0, 8, 0, 8, 0, 8, 16, 0, 16, 8, 16};
+
+    /* short distance codes 0-15, index into the last distances ring and the delta added to it */
+    static final int[] DISTANCE_SHORT_CODE_INDEX = {0, 1, 2, 3, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1};
+    static final int[] DISTANCE_SHORT_CODE_DELTA = {0, 0, 0, 0, -1, 1, -2, 2, -3, 3, -1, 1, -2, 2, -3, 3};
+
+    /**
+     * Literal context lookup, for each context mode 256 entries for the last byte followed by 256 entries for the
+     * byte before it. The context id is the two entries or'd together.
+     */
+    static final int[] CONTEXT_LOOKUP = new int[4 * 512];
+
+    private static final int[] UTF8_LAST_BYTE_ASCII = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 4, 4, 0, 0, 4, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            8, 12, 16, 12, 12, 20, 12, 16, 24, 28, 12, 12, 32, 12, 36, 12,
+            44, 44, 44, 44, 44, 44, 44, 44, 44, 44, 32, 32, 24, 40, 28, 12,
+            12, 48, 52, 52, 52, 48, 52, 52, 52, 48, 52, 52, 52, 52, 52, 48,
+            52, 52, 52, 52, 52, 48, 52, 52, 52, 52, 52, 24, 12, 28, 12, 12,
+            12, 56, 60, 60, 60, 56, 60, 60, 60, 56, 60, 60, 60, 60, 60, 56,
+            60, 60, 60, 60, 60, 56, 60, 60, 60, 60, 60, 24, 12, 28, 12, 0};
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            CONTEXT_LOOKUP[CONTEXT_LSB6 * 512 + i] = i & 0x3F;
+            CONTEXT_LOOKUP[CONTEXT_MSB6 * 512 + i] = i >> 2;
+
+            CONTEXT_LOOKUP[CONTEXT_UTF8 * 512 + i] = i < 128 ? UTF8_LAST_BYTE_ASCII[i] : (i & 1) | (i < 192 ? 0 : 2);
+            CONTEXT_LOOKUP[CONTEXT_UTF8 * 512 + 256 + i] = utf8SecondLastByteContext(i);
+
+            CONTEXT_LOOKUP[CONTEXT_SIGNED * 512 + i] = signedContext(i) << 3;
+            CONTEXT_LOOKUP[CONTEXT_SIGNED * 512 + 256 + i] = signedContext(i);
+        }
+    }
+
+    private static int utf8SecondLastByteContext(int b) {
+        if (b >= 128)
+            return b < 224 ? 0 : 2;
+        if (b >= '0' && b <= '9' || b >= 'A' && b <= 'Z')
+            return 2;
+        if (b >= 'a' && b <= 'z')
+            return 3;
+        if (b <= ' ' || b == 127)
+            return 0;
+        return 1;
+    }
+
+    private static int signedContext(int b) {
+        if (b == 0)
+            return 0;
+        if (b < 16)
+            return 1;
+        if (b < 64)
+            return 2;
+        if (b < 128)
+            return 3;
+        if (b < 192)
+            return 4;
+        if (b < 240)
+            return 5;
+        if (b < 255)
+            return 6;
+        return 7;
+    }
+
+    static int getInsertLengthCode(int length) {
+        int code = 0;
+        while (code < 23 && INSERT_LENGTH_OFFSET[code + 1] <= length)
+            code++;
+        return code;
+    }
+
+    static int getCopyLengthCode(int length) {
+        int code = 0;
+        while (code < 23 && COPY_LENGTH_OFFSET[code + 1] <= length)
+            code++;
+        return code;
+    }
+
+    static int getBlockLengthCode(int length) {
+        int code = 0;
+        while (code < 25 && BLOCK_LENGTH_OFFSET[code + 1] <= length)
+            code++;
+        return code;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import java.io.IOException;
+
+/**
+ * Steps through Type 2 charstrings just far enough to find each glyph's advance width and left side bearing. Hints
+ * are skipped and only the x coordinates of the outline are followed, no path is built.
+ * <p>
+ * One scanner is reused for all the glyphs of a font, so it isn't thread safe.
+ */
+class CffCharStringScanner {
+    private static final int MAX_STACK_SIZE = 48;
+    private static final int MAX_SUBR_DEPTH = 10;
+
+    private final byte[] data;
+    private final CffIndex globalSubrs;
+    private CffIndex localSubrs;
+    private double defaultWidth;
+    private double nominalWidth;
+
+    private final double[] stack = new double[MAX_STACK_SIZE];
+    private int stackSize;
+    private int stemCount;
+    private boolean widthRead;
+    private boolean ended;
+    private double width;
+
+    private double x;
+    private double minX;
+    private boolean hasOutline;
+    private boolean moveIncluded;
+
+    CffCharStringScanner(byte[] data, CffIndex globalSubrs) {
+        this.data = data;
+        this.globalSubrs = globalSubrs;
+    }
+
+    /**
+     * Sets the Private DICT values for the glyphs scanned after, CID fonts can have a different one per glyph.
+     */
+    void setPrivate(CffIndex localSubrs, double defaultWidth, double nominalWidth) {
+        this.localSubrs = localSubrs;
+        this.defaultWidth = defaultWidth;
+        this.nominalWidth = nominalWidth;
+    }
+
+    void scan(CffIndex charStrings, int glyphId) throws IOException {
+        stackSize = 0;
+        stemCount = 0;
+        widthRead = false;
+        ended = false;
+        width = defaultWidth;
+        x = 0;
+        minX = 0;
+        hasOutline = false;
+        moveIncluded = true;
+
+        execute(charStrings.getObjectStart(glyphId), charStrings.getObjectLength(glyphId), 0);
+    }
+
+    int getAdvanceWidth() {
+        return (int) Math.round(width);
+    }
+
+    /**
+     * @return smallest x of the outline rounded to the nearest unit, 0 for a glyph with no outline
+     */
+    int getLeftSideBearing() {
+        return hasOutline ? (int) Math.round(minX) : 0;
+    }
+
+    private void execute(int start, int length, int depth) throws IOException {
+        if (depth > MAX_SUBR_DEPTH)
+            throw new IOException("CFF charstring subroutines nested too deeply");
+
+        int end = start + length;
+        if (end > data.length)
+            throw new IOException("CFF charstring is outside of the font data");
+
+        int position = start;
+        while (position < end && !ended) {
+            int b0 = data[position] & 0xFF;
+
+            if (b0 >= 32 || b0 == 28) {
+                position = readNumber(position, end);
+                continue;
+            }
+
+            position++;
+            switch (b0) {
+                case 1:
+                case 3:
+                case 18:
+                case 23:
+                    readStems();
+                    break;
+                case 19:
+                case 20:
+                    readStems();
+                    position += (stemCount + 7) / 8;
+                    break;
+                case 21:
+                    moveTo(readWidth(stackSize > 2));
+                    break;
+                case 22:
+                    moveTo(readWidth(stackSize > 1));
+                    break;
+                case 4:
+                    readWidth(stackSize > 1);
+                    moveTo(-1);
+                    break;
+                case 5:
+                    for (int i = 0; i + 1 < stackSize; i += 2)
+                        lineTo(stack[i]);
+                    break;
+                case 6:
+                case 7:
+                    alternatingLines(b0 == 6);
+                    break;
+                case 8:
+                    for (int i = 0; i + 5 < stackSize; i += 6)
+                        curveTo(stack[i], stack[i + 2], stack[i + 4]);
+                    break;
+                case 24: {
+                    int i = 0;
+                    for (; i + 5 < stackSize - 2; i += 6)
+                        curveTo(stack[i], stack[i + 2], stack[i + 4]);
+                    lineTo(stack[i]);
+                    break;
+                }
+                case 25: {
+                    int i = 0;
+                    for (; i + 1 < stackSize - 6; i += 2)
+                        lineTo(stack[i]);
+                    curveTo(stack[i], stack[i + 2], stack[i + 4]);
+                    break;
+                }
+                case 26: {
+                    // dx1? {dya dxb dyb dyc}+
+                    int i = stackSize % 2;
+                    double dx1 = i == 1 ? stack[0] : 0;
+                    for (; i + 3 < stackSize; i += 4, dx1 = 0)
+                        curveTo(dx1, stack[i + 1], 0);
+                    break;
+                }
+                case 27: {
+                    // dy1? {dxa dxb dyb dxc}+
+                    for (int i = stackSize % 2; i + 3 < stackSize; i += 4)
+                        curveTo(stack[i], stack[i + 1], stack[i + 3]);
+                    break;
+                }
+                case 30:
+                case 31:
+                    alternatingCurves(b0 == 31);
+                    break;
+                case 10:
+                case 29:
+                    callSubr(b0 == 10 ? localSubrs : globalSubrs, depth);
+                    continue;
+                case 11:
+                    return;
+                case 14:
+                    readWidth(stackSize == 1 || stackSize == 5);
+                    ended = true;
+                    break;
+                case 12:
+                    if (position >= end)
+                        throw new IOException("CFF charstring ends in the middle of an operator");
+                    flex(data[position++] & 0xFF);
+                    break;
+                default:
+                    break;
+            }
+
+            stackSize = 0;
+        }
+    }
+
+    private int readNumber(int position, int end) throws IOException {
+        int b0 = data[position] & 0xFF;
+        int size = b0 == 28 ? 3 : b0 <= 246 ? 1 : b0 == 255 ? 5 : 2;
+        if (position + size > end)
+            throw new IOException("CFF charstring ends in the middle of a number");
+
+        double value;
+        if (b0 == 28)
+            value = (short) ((data[position + 1] & 0xFF) << 8 | data[position + 2] & 0xFF);
+        else if (b0 <= 246)
+            value = b0 - 139;
+        else if (b0 <= 250)
+            value = (b0 - 247) * 256 + (data[position + 1] & 0xFF) + 108;
+        else if (b0 <= 254)
+            value = -(b0 - 251) * 256 - (data[position + 1] & 0xFF) - 108;
+        else {
+            int fixed = (data[position + 1] & 0xFF) << 24 | (data[position + 2] & 0xFF) << 16
+                    | (data[position + 3] & 0xFF) << 8 | data[position + 4] & 0xFF;
+            value = fixed / 65536d;
+        }
+
+        push(value);
+        return position + size;
+    }
+
+    private void push(double value) throws IOException {
+        if (stackSize == MAX_STACK_SIZE)
+            throw new IOException("CFF charstring argument stack overflow");
+
+        stack[stackSize++] = value;
+    }
+
+    /**
+     * The first stack clearing operator can have the advance width as an extra first argument.
+     *
+     * @return the argument the operator's own arguments start at
+     */
+    private int readWidth(boolean hasWidth) {
+        if (widthRead)
+            return 0;
+
+        widthRead = true;
+        if (!hasWidth)
+            return 0;
+
+        width = nominalWidth + stack[0];
+        return 1;
+    }
+
+    private void readStems() {
+        int first = readWidth(stackSize % 2 == 1);
+        stemCount += (stackSize - first) / 2;
+    }
+
+    private void moveTo(int dxArgument) {
+        if (dxArgument >= 0)
+            x += stack[dxArgument];
+
+        moveIncluded = false;
+    }
+
+    private void lineTo(double dx) {
+        includeMove();
+        x += dx;
+        include(x);
+    }
+
+    private void curveTo(double dxa, double dxb, double dxc) {
+        includeMove();
+        double x0 = x;
+        double x1 = x0 + dxa;
+        double x2 = x1 + dxb;
+        double x3 = x2 + dxc;
+        include(x3);
+
+        // control points only matter when they pull the curve past its end points
+        if (x1 < minX || x2 < minX)
+            includeCurveExtremes(x0, x1, x2, x3);
+
+        x = x3;
+    }
+
+    /**
+     * Includes the x of the curve's turning points, where the derivative of the cubic bezier is zero.
+     */
+    private void includeCurveExtremes(double x0, double x1, double x2, double x3) {
+        double a = -x0 + 3 * x1 - 3 * x2 + x3;
+        double b = 2 * (x0 - 2 * x1 + x2);
+        double c = x1 - x0;
+
+        if (Math.abs(a) < 1e-12) {
+            if (Math.abs(b) > 1e-12)
+                includeCurveAt(-c / b, x0, x1, x2, x3);
+            return;
+        }
+
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0)
+            return;
+
+        double root = Math.sqrt(discriminant);
+        includeCurveAt((-b + root) / (2 * a), x0, x1, x2, x3);
+        includeCurveAt((-b - root) / (2 * a), x0, x1, x2, x3);
+    }
+
+    private void includeCurveAt(double t, double x0, double x1, double x2, double x3) {
+        if (t <= 0 || t >= 1)
+            return;
+
+        double mt = 1 - t;
+        include(mt * mt * mt * x0 + 3 * mt * mt * t * x1 + 3 * mt * t * t * x2 + t * t * t * x3);
+    }
+
+    // a moveto on its own doesn't mark any ink, its point only counts once something is drawn from it
+    private void includeMove() {
+        if (moveIncluded)
+            return;
+
+        moveIncluded = true;
+        include(x);
+    }
+
+    private void include(double pointX) {
+        if (!hasOutline || pointX < minX)
+            minX = pointX;
+
+        hasOutline = true;
+    }
+
+    private void alternatingLines(boolean horizontal) {
+        for (int i = 0; i < stackSize; i++, horizontal = !horizontal)
+            lineTo(horizontal ? stack[i] : 0);
+    }
+
+    /**
+     * hvcurveto and vhcurveto, curves alternate between starting horizontal and vertical and the last curve can
+     * have a fifth argument for its otherwise zero final delta.
+     */
+    private void alternatingCurves(boolean horizontal) {
+        for (int i = 0; i + 3 < stackSize; i += 4, horizontal = !horizontal) {
+            boolean isLast = stackSize - i == 5;
+            if (horizontal)
+                curveTo(stack[i], stack[i + 1], isLast ? stack[i + 4] : 0);
+            else
+                curveTo(0, stack[i + 1], stack[i + 3]);
+        }
+    }
+
+    private void flex(int operator) {
+        if (operator == 34 && stackSize >= 7) {
+            curveTo(stack[0], stack[1], stack[3]);
+            curveTo(stack[4], stack[5], stack[6]);
+        } else if (operator == 35 && stackSize >= 12) {
+            curveTo(stack[0], stack[2], stack[4]);
+            curveTo(stack[6], stack[8], stack[10]);
+        } else if (operator == 36 && stackSize >= 9) {
+            curveTo(stack[0], stack[2], stack[4]);
+            curveTo(stack[5], stack[6], stack[8]);
+        } else if (operator == 37 && stackSize >= 11) {
+            double dx = stack[0] + stack[2] + stack[4] + stack[6] + stack[8];
+            double dy = stack[1] + stack[3] + stack[5] + stack[7] + stack[9];
+            curveTo(stack[0], stack[2], stack[4]);
+            curveTo(stack[6], stack[8], Math.abs(dx) > Math.abs(dy) ? stack[10] : -dx);
+        }
+
+        // other escaped operators are arithmetic and storage ones that don't occur in practice, the stack is just
+        // cleared for them
+    }
+
+    private void callSubr(CffIndex subrs, int depth) throws IOException {
+        if (stackSize == 0)
+            throw new IOException("CFF charstring subroutine call without a subroutine number");
+        if (subrs == null)
+            throw new IOException("CFF charstring calls a local subroutine but the font has none");
+
+        int index = (int) stack[--stackSize] + subrBias(subrs.getCount());
+        if (index < 0 || index >= subrs.getCount())
+            throw new IOException("CFF charstring calls a missing subroutine " + index);
+
+        // operands before the call are still on the stack for the subroutine to use
+        execute(subrs.getObjectStart(index), subrs.getObjectLength(index), depth + 1);
+    }
+
+    static int subrBias(int subrCount) {
+        if (subrCount < 1240)
+            return 107;
+        if (subrCount < 33900)
+            return 1131;
+
+        return 32768;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A CFF DICT kept as its operator entries in stored order. Operands of untouched entries are written back out
+ * byte for byte, replaced operands are written as 5 byte integers so a DICT's size doesn't depend on the offset
+ * values in it.
+ */
+class CffDict {
+    static final int VERSION = 0;
+    static final int NOTICE = 1;
+    static final int FULL_NAME = 2;
+    static final int FAMILY_NAME = 3;
+    static final int WEIGHT = 4;
+    static final int FONT_BBOX = 5;
+    static final int CHARSET = 15;
+    static final int ENCODING = 16;
+    static final int CHAR_STRINGS = 17;
+    static final int PRIVATE = 18;
+    static final int SUBRS = 19;
+    static final int DEFAULT_WIDTH_X = 20;
+    static final int NOMINAL_WIDTH_X = 21;
+    static final int UNDERLINE_POSITION = 1203;
+    static final int CHARSTRING_TYPE = 1206;
+    static final int ROS = 1230;
+    static final int FD_ARRAY = 1236;
+    static final int FD_SELECT = 1237;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    static CffDict read(byte[] data) throws IOException {
+        CffDict dict = new CffDict();
+        List<Number> operands = new ArrayList<Number>();
+        int operandsStart = 0;
+        int position = 0;
+
+        while (position < data.length) {
+            int b0 = data[position] & 0xFF;
+
+            if (b0 <= 21) {
+                int operator = b0;
+                int operatorLength = 1;
+                if (b0 == 12) {
+                    if (position + 1 >= data.length)
+                        throw new IOException("CFF DICT ends in the middle of an operator");
+
+                    operator = 1200 + (data[position + 1] & 0xFF);
+                    operatorLength = 2;
+                }
+
+                Entry entry = new Entry(operator, operands, Arrays.copyOfRange(data, operandsStart, position));
+                dict.entries.add(entry);
+
+                position += operatorLength;
+                operandsStart = position;
+                operands = new ArrayList<Number>();
+            } else
+                position = readOperand(data, position, operands);
+        }
+
+        return dict;
+    }
+
+    private static int readOperand(byte[] data, int position, List<Number> operands) throws IOException {
+        int b0 = data[position] & 0xFF;
+
+        if (b0 >= 32 && b0 <= 246) {
+            operands.add(b0 - 139);
+            return position + 1;
+        }
+
+        checkLength(data, position, b0 == 28 ? 3 : b0 == 29 ? 5 : b0 == 30 ? 1 : 2);
+        if (b0 >= 247 && b0 <= 250) {
+            operands.add((b0 - 247) * 256 + (data[position + 1] & 0xFF) + 108);
+            return position + 2;
+        }
+        if (b0 >= 251 && b0 <= 254) {
+            operands.add(-(b0 - 251) * 256 - (data[position + 1] & 0xFF) - 108);
+            return position + 2;
+        }
+        if (b0 == 28) {
+            operands.add((int) (short) ((data[position + 1] & 0xFF) << 8 | data[position + 2] & 0xFF));
+            return position + 3;
+        }
+        if (b0 == 29) {
+            operands.add((data[position + 1] & 0xFF) << 24 | (data[position + 2] & 0xFF) << 16
+                    | (data[position + 3] & 0xFF) << 8 | data[position + 4] & 0xFF);
+            return position + 5;
+        }
+        if (b0 == 30)
+            return readReal(data, position + 1, operands);
+
+        throw new IOException("Invalid CFF DICT operand byte " + b0);
+    }
+
+    private static int readReal(byte[] data, int position, List<Number> operands) throws IOException {
+        StringBuilder real = new StringBuilder();
+        while (position < data.length) {
+            int b = data[position++] & 0xFF;
+            for (int nibble : new int[]{b >> 4, b & 0xF}) {
+                if (nibble == 0xF) {
+                    operands.add(parseReal(real.toString()));
+                    return position;
+                }
+
+                real.append(REAL_NIBBLES[nibble]);
+            }
+        }
+
+        throw new IOException("CFF DICT real number not terminated");
+    }
+
+    private static final String[] REAL_NIBBLES =
+            {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", ".", "E", "E-", "", "-", ""};
+
+    private static Double parseReal(String real) {
+        try {
+            return Double.valueOf(real);
+        } catch (NumberFormatException ex) {
+            return 0d;
+        }
+    }
+
+    private static void checkLength(byte[] data, int position, int length) throws IOException {
+        if (position + length > data.length)
+            throw new IOException("CFF DICT ends in the middle of an operand");
+    }
+
+    boolean contains(int operator) {
+        return find(operator) != null;
+    }
+
+    /**
+     * @return operand value as an integer, or the default if the operator isn't in the DICT
+     */
+    int getInt(int operator, int operandIndex, int defaultValue) {
+        Entry entry = find(operator);
+        if (entry == null || entry.operands.size() <= operandIndex)
+            return defaultValue;
+
+        return entry.operands.get(operandIndex).intValue();
+    }
+
+    /**
+     * @return operand value as a double so real operands keep their fraction, or the default if the operator isn't
+     * in the DICT
+     */
+    double getDouble(int operator, int operandIndex, double defaultValue) {
+        Entry entry = find(operator);
+        if (entry == null || entry.operands.size() <= operandIndex)
+            return defaultValue;
+
+        return entry.operands.get(operandIndex).doubleValue();
+    }
+
+    /**
+     * @return the operator's operands, or null if the operator isn't in the DICT
+     */
+    List<Number> getNumbers(int operator) {
+        Entry entry = find(operator);
+        return entry == null ? null : entry.operands;
+    }
+
+    void setIntegers(int operator, int... values) {
+        Entry entry = find(operator);
+        if (entry == null) {
+            entry = new Entry(operator, new ArrayList<Number>(), null);
+            entries.add(entry);
+        }
+
+        entry.operands = new ArrayList<Number>();
+        for (int valueOn : values)
+            entry.operands.add(valueOn);
+
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(values.length * 5);
+        for (int valueOn : values) {
+            writer.writeByte(29);
+            writer.writeInt(valueOn);
+        }
+        entry.rawOperands = writer.toByteArray();
+    }
+
+    void remove(int operator) {
+        Entry entry = find(operator);
+        if (entry != null)
+            entries.remove(entry);
+    }
+
+    byte[] write() {
+        FontDataOutputBuffer writer = new FontDataOutputBuffer();
+        for (Entry entryOn : entries) {
+            writer.write(entryOn.rawOperands);
+            if (entryOn.operator >= 1200) {
+                writer.writeByte(12);
+                writer.writeByte(entryOn.operator - 1200);
+            } else
+                writer.writeByte(entryOn.operator);
+        }
+
+        return writer.toByteArray();
+    }
+
+    private Entry find(int operator) {
+        for (Entry entryOn : entries) {
+            if (entryOn.operator == operator)
+                return entryOn;
+        }
+
+        return null;
+    }
+
+    private static class Entry {
+        final int operator;
+        List<Number> operands;
+        byte[] rawOperands;
+
+        Entry(int operator, List<Number> operands, byte[] rawOperands) {
+            this.operator = operator;
+            this.operands = operands;
+            this.rawOperands = rawOperands;
+        }
+    }
+}
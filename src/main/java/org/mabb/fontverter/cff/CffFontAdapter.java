@@ -18,8 +18,9 @@
 package org.mabb.fontverter.cff;
 
 
-import org.apache.fontbox.EncodedFont;
-import org.apache.fontbox.cff.*;
+import org.apache.fontbox.cff.CFFFont;
+import org.apache.fontbox.cff.CFFParser;
+import org.apache.fontbox.cff.CFFStandardEncoding;
 import org.apache.fontbox.encoding.Encoding;
 import org.mabb.fontverter.converter.CFFToOpenTypeConverter;
 import org.mabb.fontverter.converter.CombinedFontConverter;
@@ -30,48 +31,38 @@ import org.mabb.fontverter.opentype.GlyphMapReader;
 import org.mabb.fontverter.validator.RuleValidator;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.*;
 
 public class CffFontAdapter implements FVFont {
+    // CFF spec default when the Top DICT has no UnderlinePosition
+    private static final int DEFAULT_UNDERLINE_POSITION = -100;
+
     private byte[] data = new byte[]{};
+    private CffReader reader;
     private CFFFont font;
+    private Encoding encoding;
+    private List<GlyphMapReader.GlyphMapping> glyphMaps;
 
     public static CffFontAdapter parse(byte[] cffData) throws IOException {
-        CFFFont cfffont = fontboxParse(cffData);
-        CffFontAdapter font = new CffFontAdapter(cfffont);
-        font.setData(cffData);
+        CffFontAdapter font = new CffFontAdapter();
+        font.read(cffData);
         return font;
     }
 
-    private static CFFFont fontboxParse(byte[] cffData) throws IOException {
-        CFFParser parser = new CFFParser();
-        List<CFFFont> fonts = parser.parse(cffData);
-        if (fonts.size() > 1)
-            throw new FontNotSupportedException("Multiple CFF fonts in one file are not supported.");
-        return fonts.get(0);
-    }
-
-    public CffFontAdapter(CFFFont font) {
-        this.font = font;
-    }
-
     public CffFontAdapter() {
     }
 
     public boolean detectFormat(byte[] fontFile) {
-        try {
-            // cff has no magic header so check if parseable to detect if cff
-            fontboxParse(fontFile);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        // cff has no magic header so sanity check the header fields instead of a full parse
+        return FontFormatSniffer.isCff(fontFile);
     }
 
     public void read(byte[] fontFile) throws IOException {
-        font = fontboxParse(fontFile);
+        reader = new CffReader(fontFile);
         data = fontFile;
+        font = null;
+        encoding = null;
+        glyphMaps = null;
     }
 
     public FontConverter createConverterForType(FontVerter.FontFormat fontFormat) throws FontNotSupportedException {
@@ -86,43 +77,58 @@ public class CffFontAdapter implements FVFont {
     }
 
     public String getName() {
-        String name = font.getName();
+        String name;
+        try {
+            name = reader.getName();
+        } catch (IOException e) {
+            name = "";
+        }
+
         if (name.isEmpty())
-            name = nonNullDictEntry("FullName", String.class);
+            name = nonNullDictString(CffDict.FULL_NAME);
 
         return name;
     }
 
-    public CFFFont getFont() {
+    /**
+     * Full fontbox parse of the font for callers that need its outlines, only done on the first call. FontVerter
+     * reads the names, glyph mappings and metrics itself without it.
+     */
+    public CFFFont getFont() throws IOException {
+        if (font == null) {
+            List<CFFFont> fonts = new CFFParser().parse(data);
+            font = fonts.get(0);
+        }
+
         return font;
     }
 
     public String getFullName() {
-        return nonNullDictEntry("FullName", String.class);
+        return nonNullDictString(CffDict.FULL_NAME);
     }
 
     public String getFamilyName() {
-        String name = nonNullDictEntry("FamilyName", String.class);
+        String name = nonNullDictString(CffDict.FAMILY_NAME);
         if (name.isEmpty())
-            name = nonNullDictEntry("FullName", String.class);
+            name = nonNullDictString(CffDict.FULL_NAME);
 
         return name;
     }
 
     public String getSubFamilyName() {
-        return nonNullDictEntry("Weight", String.class);
+        return nonNullDictString(CffDict.WEIGHT);
     }
 
     public String getVersion() {
-        return nonNullDictEntry("version", String.class);
+        return nonNullDictString(CffDict.VERSION);
     }
 
     public String getTrademarkNotice() {
-        return nonNullDictEntry("Notice", String.class);
+        return nonNullDictString(CffDict.NOTICE);
     }
 
     public Integer getUnderLinePosition() {
-        return nonNullDictEntry("UnderlinePosition", Integer.class);
+        return reader.getTopDictInt(CffDict.UNDERLINE_POSITION, DEFAULT_UNDERLINE_POSITION);
     }
 
     public int getMinX() {
@@ -142,14 +148,13 @@ public class CffFontAdapter implements FVFont {
     }
 
     private ArrayList<Integer> getBoundingBox() {
-        Object obj = font.getTopDict().get("FontBBox");
-        ArrayList<Integer> boundingBox = null;
+        List<Number> values = reader.getTopDictNumbers(CffDict.FONT_BBOX, null);
+        if (values == null || values.size() < 4)
+            return createDefaultBoundingBox();
 
-        if (obj != null && obj instanceof ArrayList)
-            boundingBox = (ArrayList<Integer>) obj;
-
-        if (boundingBox == null || boundingBox.size() < 4)
-            boundingBox = createDefaultBoundingBox();
+        ArrayList<Integer> boundingBox = new ArrayList<Integer>();
+        for (Number valueOn : values)
+            boundingBox.add(valueOn.intValue());
 
         return boundingBox;
     }
@@ -166,28 +171,36 @@ public class CffFontAdapter implements FVFont {
         return boundingBox;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * @return glyph names in glyph id order, empty for CID fonts
+     */
     public Map<Integer, String> getGlyphIdsToNames() throws IOException {
-        try {
-            // reflection to get private map field for lazyness, !fragile!, obviously
-            Field mapField = FontVerterUtils.findPrivateField("gidToName", CFFCharset.class);
-            return (Map<Integer, String>) mapField.get(font.getCharset());
-        } catch (Exception ex) {
-            throw new IOException(ex);
-        }
+        return reader.getGlyphNames();
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * @return glyph id for each charset SID, or CID for CID fonts
+     */
     public Map<Integer, Integer> getCharCodeToGlyphIds() throws IOException {
-        try {
-            Field mapField = FontVerterUtils.findPrivateField("sidOrCidToGid", CFFCharset.class);
-            return (Map<Integer, Integer>) mapField.get(font.getCharset());
-        } catch (Exception ex) {
-            throw new IOException(ex);
-        }
+        int[] charset = reader.getCharset();
+        Map<Integer, Integer> charCodesToGlyphIds = new LinkedHashMap<Integer, Integer>();
+        for (int i = 0; i < charset.length; i++)
+            charCodesToGlyphIds.put(charset[i], i);
+
+        return charCodesToGlyphIds;
     }
 
+    /**
+     * @return a new list each call, the mappings themselves are only worked out once per font
+     */
     public List<GlyphMapReader.GlyphMapping> getGlyphMaps() throws IOException {
+        if (glyphMaps == null)
+            glyphMaps = readGlyphMaps();
+
+        return new ArrayList<GlyphMapReader.GlyphMapping>(glyphMaps);
+    }
+
+    private List<GlyphMapReader.GlyphMapping> readGlyphMaps() throws IOException {
         Map<Integer, String> glyphIdsToNames = getGlyphIdsToNames();
         if (glyphIdsToNames.size() != 0)
             return GlyphMapReader.readGlyphsToNames(glyphIdsToNames, getEncoding());
@@ -196,29 +209,24 @@ public class CffFontAdapter implements FVFont {
     }
 
     public Encoding getEncoding() {
-        if (font instanceof EncodedFont) {
+        if (encoding == null) {
             try {
-                return ((EncodedFont) font).getEncoding();
+                encoding = reader.readEncoding();
             } catch (IOException e) {
-                return CFFStandardEncoding.getInstance();
+                encoding = CFFStandardEncoding.getInstance();
             }
         }
 
-        return CFFStandardEncoding.getInstance();
+        return encoding;
     }
 
-    private <X> X nonNullDictEntry(String key, Class<X> type) {
-        Object value = font.getTopDict().get(key);
-        if (value != null)
-            return (X) value;
-
-        if (type == String.class)
-            return (X) "";
-
-        if (type == Integer.class)
-            return (X) new Integer(1);
-
-        return (X) "";
+    private String nonNullDictString(int operator) {
+        try {
+            String value = reader.getTopDictString(operator);
+            return value == null ? "" : value;
+        } catch (IOException e) {
+            return "";
+        }
     }
 
     public void setData(byte[] data) {
@@ -248,49 +256,63 @@ public class CffFontAdapter implements FVFont {
         return properties;
     }
 
+    /**
+     * @return a glyph for each glyph mapping with the mapped glyph's metrics
+     */
     public List<CffGlyph> getGlyphs() throws IOException {
-        List<CffGlyph> glyphs = new ArrayList<CffGlyph>();
+        int glyphCount = getGlyphCount();
+        int[] advanceWidths = new int[glyphCount];
+        short[] leftSideBearings = new short[glyphCount];
+        readMetrics(advanceWidths, leftSideBearings);
 
+        List<CffGlyph> glyphs = new ArrayList<CffGlyph>();
         for (GlyphMapReader.GlyphMapping mapOn : getGlyphMaps()) {
-            CffGlyph glyph = createGlyph();
+            if (mapOn.glyphId >= glyphCount)
+                throw new IOException("Glyph mapping outside of CFF CharStrings " + mapOn.glyphId);
 
-            Type2CharString charStr = font.getType2CharString(mapOn.glyphId);
-            glyph.readType2Sequence(charStr.getType2Sequence());
+            CffGlyph glyph = createGlyph();
+            glyph.setAdvancedWidth(advanceWidths[mapOn.glyphId]);
+            glyph.setLeftSideBearing(leftSideBearings[mapOn.glyphId]);
             glyph.map = mapOn;
-            glyph.charStr = charStr;
             glyphs.add(glyph);
         }
 
         return glyphs;
     }
 
-    public Integer getDefaultWidth() {
-        String key = "defaultWidthX";
-        if (!getPrivateDict().containsKey(key))
-            return 1000;
-
-        return (Integer) getPrivateDict().get(key);
+    public int getGlyphCount() throws IOException {
+        return reader.getGlyphCount();
     }
 
-    public Integer getNominalWidth() {
-        String key = "nominalWidthX";
-
-        if (!getPrivateDict().containsKey(key))
-            return 1000;
+    /**
+     * Reads every glyph's advance width and left side bearing into the given arrays in glyph id order. The
+     * charstrings are scanned again on each call so callers should keep the result.
+     */
+    public void readMetrics(int[] advanceWidths, short[] leftSideBearings) throws IOException {
+        reader.readMetrics(advanceWidths, leftSideBearings);
+    }
 
-        return (Integer) getPrivateDict().get(key);
+    public Integer getDefaultWidth() {
+        return privateDictInt(CffDict.DEFAULT_WIDTH_X);
     }
 
-    Map<String, Object> getPrivateDict() {
-        if (font instanceof CFFType1Font)
-            return ((CFFType1Font) font).getPrivateDict();
-        else {
-            Map<String, Object> dict = new HashMap<String, Object>();
-            for (Map<String, Object> dictOn : ((CFFCIDFont) font).getPrivDicts())
-                dict.putAll(dictOn);
+    public Integer getNominalWidth() {
+        return privateDictInt(CffDict.NOMINAL_WIDTH_X);
+    }
 
-            return dict;
+    // CID fonts have a Private DICT per Font DICT, the last one with the entry wins
+    private int privateDictInt(int operator) {
+        try {
+            List<CffDict> privateDicts = reader.getPrivateDicts();
+            for (int i = privateDicts.size() - 1; i >= 0; i--) {
+                if (privateDicts.get(i).contains(operator))
+                    return privateDicts.get(i).getInt(operator, 0, 0);
+            }
+        } catch (IOException e) {
+            // unreadable Private DICT, fall back on the spec default
         }
+
+        return 0;
     }
 
     public CffGlyph createGlyph() {
@@ -308,7 +330,6 @@ public class CffFontAdapter implements FVFont {
         Integer nominalWidth;
         Integer defaultWidth;
         public GlyphMapReader.GlyphMapping map;
-        public Type2CharString charStr;
 
         public int getLeftSideBearing() {
             return leftSideBearing;
@@ -325,48 +346,5 @@ public class CffFontAdapter implements FVFont {
         public void setAdvancedWidth(int advancedWidth) {
             this.advancedWidth = advancedWidth;
         }
-
-        public void readType2Sequence(List<Object> type2Sequence) {
-            Object firstObj = type2Sequence.get(0);
-
-            if (firstObj instanceof Integer)
-                advancedWidth = nominalWidth + (Integer) firstObj;
-            else
-                advancedWidth = defaultWidth;
-
-            parseHints(type2Sequence);
-        }
-
-        private void parseHints(List<Object> type2Sequence) {
-            List<Command> commands = new LinkedList<Command>();
-
-            Command commandOn = null;
-            for (Object objOn : type2Sequence) {
-
-                if (objOn instanceof CharStringCommand) {
-                    CharStringCommand command = (CharStringCommand) objOn;
-                    commandOn = new Command();
-                    commandOn.name = command.toString();
-                    commands.add(commandOn);
-
-                } else if (objOn instanceof Integer && commandOn != null)
-                    commandOn.values.add((Integer) objOn);
-            }
-
-            for (Command command : commands) {
-                parseHint(command);
-            }
-        }
-
-        private void parseHint(Command command) {
-            if (command.name.startsWith("hstem")) {
-                leftSideBearing = command.values.get(0);
-            }
-        }
-
-        static class Command {
-            String name;
-            List<Integer> values = new LinkedList<Integer>();
-        }
     }
 }
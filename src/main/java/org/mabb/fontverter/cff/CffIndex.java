@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CFF INDEX structure read in place, the object data is only copied out when an entry is asked for.
+ */
+class CffIndex {
+    private final FontDataBuffer data;
+    private final int[] offsets;
+    private final int dataStart;
+
+    private CffIndex(FontDataBuffer data, int[] offsets, int dataStart) {
+        this.data = data;
+        this.offsets = offsets;
+        this.dataStart = dataStart;
+    }
+
+    static CffIndex read(FontDataBuffer data, int start) throws IOException {
+        int count = data.getUnsignedShort(start);
+        if (count == 0)
+            return new CffIndex(data, new int[]{1}, start + 2);
+
+        int offSize = data.getUnsignedByte(start + 2);
+        if (offSize < 1 || offSize > 4)
+            throw new IOException("Invalid CFF INDEX offset size " + offSize);
+
+        int[] offsets = new int[count + 1];
+        int position = start + 3;
+        for (int i = 0; i <= count; i++) {
+            int offset = 0;
+            for (int j = 0; j < offSize; j++)
+                offset = offset << 8 | data.getUnsignedByte(position++);
+
+            offsets[i] = offset;
+        }
+
+        // offsets are 1 based from the byte before the object data
+        CffIndex index = new CffIndex(data, offsets, position - 1);
+        if (index.getEnd() > data.length())
+            throw new IOException("CFF INDEX data is outside of the font data");
+
+        return index;
+    }
+
+    int getCount() {
+        return offsets.length - 1;
+    }
+
+    byte[] get(int index) throws IOException {
+        return data.getBytes(getObjectStart(index), getObjectLength(index));
+    }
+
+    List<byte[]> getObjects() throws IOException {
+        List<byte[]> objects = new ArrayList<byte[]>(getCount());
+        for (int i = 0; i < getCount(); i++)
+            objects.add(get(i));
+
+        return objects;
+    }
+
+    /**
+     * Position of an entry's data in the font data, for reading it in place.
+     */
+    int getObjectStart(int index) {
+        return dataStart + offsets[index];
+    }
+
+    int getObjectLength(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Position just past the end of the INDEX in the font data.
+     */
+    int getEnd() {
+        return dataStart + offsets[offsets.length - 1];
+    }
+
+    static byte[] write(List<byte[]> objects) throws IOException {
+        if (objects.isEmpty())
+            return new byte[2];
+
+        int dataLength = 0;
+        for (byte[] objectOn : objects)
+            dataLength += objectOn.length;
+
+        int offSize = offsetSize(dataLength + 1);
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(3 + (objects.size() + 1) * offSize + dataLength);
+        writer.writeUnsignedShort(objects.size());
+        writer.writeByte(offSize);
+
+        int offset = 1;
+        writeOffset(writer, offset, offSize);
+        for (byte[] objectOn : objects) {
+            offset += objectOn.length;
+            writeOffset(writer, offset, offSize);
+        }
+
+        for (byte[] objectOn : objects)
+            writer.write(objectOn);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Smallest offset size in bytes that can hold the given offset.
+     */
+    static int offsetSize(int maxOffset) {
+        if (maxOffset <= 0xFF)
+            return 1;
+        if (maxOffset <= 0xFFFF)
+            return 2;
+        if (maxOffset <= 0xFFFFFF)
+            return 3;
+
+        return 4;
+    }
+
+    private static void writeOffset(FontDataOutputBuffer writer, int offset, int offSize) {
+        for (int i = offSize - 1; i >= 0; i--)
+            writer.writeByte(offset >> (i * 8));
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.apache.fontbox.cff.CFFExpertCharset;
+import org.apache.fontbox.cff.CFFExpertEncoding;
+import org.apache.fontbox.cff.CFFExpertSubsetCharset;
+import org.apache.fontbox.cff.CFFStandardEncoding;
+import org.apache.fontbox.cff.CFFStandardString;
+import org.apache.fontbox.encoding.Encoding;
+import org.mabb.fontverter.FontNotSupportedException;
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Reads a CFF font straight from its data. Only the header and the Name, Top DICT, String and Global Subr INDEXes
+ * are read up front, the charset, encoding, Private DICTs and glyph metrics are each read the first time they're
+ * asked for. Not thread safe.
+ */
+class CffReader {
+    private static final Logger log = getLogger(CffReader.class);
+    private static final Charset STRING_CHARSET = Charset.forName("ISO-8859-1");
+
+    private static final int STANDARD_STRING_COUNT = 391;
+    private static final int TYPE2_CHARSTRINGS = 2;
+    private static final int ISO_ADOBE_CHARSET = 0;
+    private static final int EXPERT_CHARSET = 1;
+    private static final int EXPERT_SUBSET_CHARSET = 2;
+    private static final int STANDARD_ENCODING = 0;
+    private static final int EXPERT_ENCODING = 1;
+
+    private final byte[] fontData;
+    private final FontDataBuffer data;
+    private final byte[] header;
+    private final CffIndex names;
+    private final CffIndex topDicts;
+    private final CffIndex strings;
+    private final CffIndex globalSubrs;
+    private final CffDict topDict;
+
+    private CffIndex charStrings;
+    private int[] charset;
+    private Map<Integer, String> glyphNames;
+    private int[] fdSelect;
+    private List<CffDict> privateDicts;
+    private List<CffIndex> localSubrs;
+
+    CffReader(byte[] cffData) throws IOException {
+        fontData = cffData;
+        data = new FontDataBuffer(cffData);
+
+        int headerSize = data.getUnsignedByte(2);
+        header = data.getBytes(0, headerSize);
+
+        names = CffIndex.read(data, headerSize);
+        if (names.getCount() != 1)
+            throw new FontNotSupportedException("Multiple CFF fonts in one file are not supported.");
+
+        topDicts = CffIndex.read(data, names.getEnd());
+        if (topDicts.getCount() != 1)
+            throw new IOException("CFF font has " + topDicts.getCount() + " Top DICTs");
+
+        topDict = CffDict.read(topDicts.get(0));
+        strings = CffIndex.read(data, topDicts.getEnd());
+        globalSubrs = CffIndex.read(data, strings.getEnd());
+    }
+
+    FontDataBuffer getData() {
+        return data;
+    }
+
+    byte[] getHeader() {
+        return header;
+    }
+
+    CffIndex getNameIndex() {
+        return names;
+    }
+
+    CffIndex getStringIndex() {
+        return strings;
+    }
+
+    CffIndex getGlobalSubrs() {
+        return globalSubrs;
+    }
+
+    /**
+     * The Top DICT as stored, for callers that change their own copy of it.
+     */
+    byte[] getTopDictData() throws IOException {
+        return topDicts.get(0);
+    }
+
+    String getName() throws IOException {
+        return new String(names.get(0), STRING_CHARSET);
+    }
+
+    boolean isCid() {
+        return topDict.contains(CffDict.ROS);
+    }
+
+    String getString(int sid) throws IOException {
+        if (sid < STANDARD_STRING_COUNT)
+            return CFFStandardString.getName(sid);
+
+        int index = sid - STANDARD_STRING_COUNT;
+        if (index >= strings.getCount())
+            throw new IOException("CFF string id outside of the String INDEX " + sid);
+
+        return new String(strings.get(index), STRING_CHARSET);
+    }
+
+    /**
+     * @return the string a Top DICT entry's SID points at, or null if the font doesn't have the entry
+     */
+    String getTopDictString(int operator) throws IOException {
+        if (!topDict.contains(operator))
+            return null;
+
+        return getString(topDict.getInt(operator, 0, 0));
+    }
+
+    /**
+     * @return the Top DICT entry's operands, or the default if the font doesn't have the entry
+     */
+    List<Number> getTopDictNumbers(int operator, List<Number> defaultValue) {
+        List<Number> numbers = topDict.getNumbers(operator);
+        return numbers == null ? defaultValue : numbers;
+    }
+
+    int getTopDictInt(int operator, int defaultValue) {
+        return topDict.getInt(operator, 0, defaultValue);
+    }
+
+    CffIndex getCharStrings() throws IOException {
+        if (charStrings == null) {
+            if (!topDict.contains(CffDict.CHAR_STRINGS))
+                throw new IOException("CFF Top DICT has no CharStrings");
+
+            charStrings = CffIndex.read(data, topDict.getInt(CffDict.CHAR_STRINGS, 0, 0));
+        }
+
+        return charStrings;
+    }
+
+    int getGlyphCount() throws IOException {
+        return getCharStrings().getCount();
+    }
+
+    /**
+     * @return SID, or CID for CID fonts, of each glyph
+     */
+    int[] getCharset() throws IOException {
+        if (charset == null)
+            charset = readCharset();
+
+        return charset;
+    }
+
+    private int[] readCharset() throws IOException {
+        int glyphCount = getGlyphCount();
+        int[] charset = new int[glyphCount];
+        int offset = topDict.getInt(CffDict.CHARSET, 0, ISO_ADOBE_CHARSET);
+
+        if (offset == ISO_ADOBE_CHARSET) {
+            for (int i = 0; i < glyphCount; i++)
+                charset[i] = i;
+            return charset;
+        }
+        if (offset == EXPERT_CHARSET || offset == EXPERT_SUBSET_CHARSET)
+            throw new FontNotSupportedException("Predefined expert CFF charsets are not supported");
+
+        int format = data.getUnsignedByte(offset);
+        int position = offset + 1;
+        int glyphOn = 1;
+
+        if (format == 0) {
+            for (; glyphOn < glyphCount; glyphOn++, position += 2)
+                charset[glyphOn] = data.getUnsignedShort(position);
+        } else if (format == 1 || format == 2) {
+            while (glyphOn < glyphCount) {
+                int first = data.getUnsignedShort(position);
+                int left = format == 1 ? data.getUnsignedByte(position + 2) : data.getUnsignedShort(position + 2);
+                position += format == 1 ? 3 : 4;
+
+                for (int i = 0; i <= left && glyphOn < glyphCount; i++)
+                    charset[glyphOn++] = first + i;
+            }
+        } else
+            throw new IOException("Invalid CFF charset format " + format);
+
+        return charset;
+    }
+
+    /**
+     * @return name of each glyph in glyph id order, empty for CID fonts which identify glyphs by CID instead
+     */
+    Map<Integer, String> getGlyphNames() throws IOException {
+        if (glyphNames != null)
+            return glyphNames;
+
+        Map<Integer, String> names = new LinkedHashMap<Integer, String>();
+        if (!isCid()) {
+            int charsetOffset = topDict.getInt(CffDict.CHARSET, 0, ISO_ADOBE_CHARSET);
+            int glyphCount = getGlyphCount();
+
+            if (charsetOffset == EXPERT_CHARSET || charsetOffset == EXPERT_SUBSET_CHARSET) {
+                for (int i = 0; i < glyphCount; i++) {
+                    String name = charsetOffset == EXPERT_CHARSET
+                            ? CFFExpertCharset.getInstance().getNameForGID(i)
+                            : CFFExpertSubsetCharset.getInstance().getNameForGID(i);
+                    if (name != null)
+                        names.put(i, name);
+                }
+            } else {
+                int[] sids = getCharset();
+                for (int i = 0; i < glyphCount; i++)
+                    names.put(i, getString(sids[i]));
+            }
+        }
+
+        glyphNames = names;
+        return glyphNames;
+    }
+
+    /**
+     * @return each CID's glyph id for CID fonts, empty for other fonts
+     */
+    Map<Integer, Integer> getCidsToGlyphIds() throws IOException {
+        Map<Integer, Integer> cidsToGlyphIds = new LinkedHashMap<Integer, Integer>();
+        if (!isCid())
+            return cidsToGlyphIds;
+
+        int[] cids = getCharset();
+        for (int i = 0; i < cids.length; i++)
+            cidsToGlyphIds.put(cids[i], i);
+
+        return cidsToGlyphIds;
+    }
+
+    /**
+     * The font's built in encoding, CID fonts don't have one so get the standard encoding.
+     */
+    Encoding readEncoding() throws IOException {
+        int offset = topDict.getInt(CffDict.ENCODING, 0, STANDARD_ENCODING);
+        if (isCid() || offset == STANDARD_ENCODING)
+            return CFFStandardEncoding.getInstance();
+        if (offset == EXPERT_ENCODING)
+            return CFFExpertEncoding.getInstance();
+
+        Map<Integer, String> glyphNames = getGlyphNames();
+        BuiltInEncoding encoding = new BuiltInEncoding();
+        encoding.add(0, ".notdef");
+
+        int format = data.getUnsignedByte(offset);
+        int position = offset + 1;
+        if ((format & 0x7F) == 0) {
+            int codeCount = data.getUnsignedByte(position++);
+            for (int glyphOn = 1; glyphOn <= codeCount; glyphOn++)
+                encoding.add(data.getUnsignedByte(position++), glyphNames.get(glyphOn));
+        } else if ((format & 0x7F) == 1) {
+            int rangeCount = data.getUnsignedByte(position++);
+            int glyphOn = 1;
+            for (int i = 0; i < rangeCount; i++, position += 2) {
+                int first = data.getUnsignedByte(position);
+                int left = data.getUnsignedByte(position + 1);
+                for (int j = 0; j <= left; j++)
+                    encoding.add(first + j, glyphNames.get(glyphOn++));
+            }
+        } else
+            throw new IOException("Invalid CFF encoding format " + format);
+
+        // high bit flags extra codes for glyphs that are already encoded
+        if ((format & 0x80) != 0) {
+            int supplementCount = data.getUnsignedByte(position++);
+            for (int i = 0; i < supplementCount; i++, position += 3)
+                encoding.add(data.getUnsignedByte(position), getString(data.getUnsignedShort(position + 1)));
+        }
+
+        return encoding;
+    }
+
+    /**
+     * @return Font DICT index of each glyph for CID fonts
+     */
+    int[] getFdSelect() throws IOException {
+        if (fdSelect == null)
+            fdSelect = readFdSelect();
+
+        return fdSelect;
+    }
+
+    private int[] readFdSelect() throws IOException {
+        int glyphCount = getGlyphCount();
+        int[] fdSelect = new int[glyphCount];
+        if (!isCid())
+            return fdSelect;
+
+        int offset = topDict.getInt(CffDict.FD_SELECT, 0, 0);
+        int format = data.getUnsignedByte(offset);
+
+        if (format == 0) {
+            for (int i = 0; i < glyphCount; i++)
+                fdSelect[i] = data.getUnsignedByte(offset + 1 + i);
+        } else if (format == 3) {
+            int rangeCount = data.getUnsignedShort(offset + 1);
+            int position = offset + 3;
+            for (int i = 0; i < rangeCount; i++, position += 3) {
+                int first = data.getUnsignedShort(position);
+                int fd = data.getUnsignedByte(position + 2);
+                int end = Math.min(data.getUnsignedShort(position + 3), glyphCount);
+
+                for (int glyphOn = first; glyphOn < end; glyphOn++)
+                    fdSelect[glyphOn] = fd;
+            }
+        } else
+            throw new IOException("Invalid CFF FDSelect format " + format);
+
+        return fdSelect;
+    }
+
+    CffIndex getFdArray() throws IOException {
+        return CffIndex.read(data, topDict.getInt(CffDict.FD_ARRAY, 0, 0));
+    }
+
+    /**
+     * Private DICTs in Font DICT order, a font that isn't a CID font has just the one from its Top DICT.
+     */
+    List<CffDict> getPrivateDicts() throws IOException {
+        if (privateDicts == null)
+            readPrivateDicts();
+
+        return privateDicts;
+    }
+
+    private void readPrivateDicts() throws IOException {
+        List<CffDict> parents = new ArrayList<CffDict>();
+        if (isCid()) {
+            CffIndex fdArray = getFdArray();
+            for (int i = 0; i < fdArray.getCount(); i++)
+                parents.add(CffDict.read(fdArray.get(i)));
+        } else
+            parents.add(topDict);
+
+        List<CffDict> dicts = new ArrayList<CffDict>();
+        List<CffIndex> subrs = new ArrayList<CffIndex>();
+        for (CffDict parentOn : parents) {
+            if (!parentOn.contains(CffDict.PRIVATE)) {
+                dicts.add(new CffDict());
+                subrs.add(null);
+                continue;
+            }
+
+            int size = parentOn.getInt(CffDict.PRIVATE, 0, 0);
+            int offset = parentOn.getInt(CffDict.PRIVATE, 1, 0);
+            CffDict privateDict = CffDict.read(data.getBytes(offset, size));
+            dicts.add(privateDict);
+
+            // local subrs offset is relative to the start of the Private DICT
+            if (privateDict.contains(CffDict.SUBRS))
+                subrs.add(CffIndex.read(data, offset + privateDict.getInt(CffDict.SUBRS, 0, 0)));
+            else
+                subrs.add(null);
+        }
+
+        localSubrs = subrs;
+        privateDicts = dicts;
+    }
+
+    /**
+     * Scans every glyph's charstring for its advance width and left side bearing. A glyph whose charstring can't be
+     * read gets the default width and a zero side bearing.
+     */
+    void readMetrics(int[] advanceWidths, short[] leftSideBearings) throws IOException {
+        if (getTopDictInt(CffDict.CHARSTRING_TYPE, TYPE2_CHARSTRINGS) != TYPE2_CHARSTRINGS)
+            throw new FontNotSupportedException("Only CFF fonts with Type 2 charstrings are supported");
+
+        CffIndex charStrings = getCharStrings();
+        List<CffDict> privateDicts = getPrivateDicts();
+        int[] fdSelect = isCid() ? getFdSelect() : null;
+        CffCharStringScanner scanner = new CffCharStringScanner(fontData, globalSubrs);
+
+        int currentFd = -1;
+        for (int glyphOn = 0; glyphOn < charStrings.getCount(); glyphOn++) {
+            int fd = fdSelect == null ? 0 : fdSelect[glyphOn];
+            if (fd >= privateDicts.size())
+                throw new IOException("CFF FDSelect references missing Font DICT " + fd);
+
+            if (fd != currentFd) {
+                CffDict privateDict = privateDicts.get(fd);
+                // the widths can be real numbers, they're only rounded once added to a glyph's width operand
+                scanner.setPrivate(localSubrs.get(fd), privateDict.getDouble(CffDict.DEFAULT_WIDTH_X, 0, 0),
+                        privateDict.getDouble(CffDict.NOMINAL_WIDTH_X, 0, 0));
+                currentFd = fd;
+            }
+
+            try {
+                scanner.scan(charStrings, glyphOn);
+                advanceWidths[glyphOn] = scanner.getAdvanceWidth();
+                leftSideBearings[glyphOn] = (short) scanner.getLeftSideBearing();
+            } catch (IOException ex) {
+                log.warn("Could not read metrics of CFF glyph {}: {}", glyphOn, ex.getMessage());
+                double defaultWidth = privateDicts.get(fd).getDouble(CffDict.DEFAULT_WIDTH_X, 0, 0);
+                advanceWidths[glyphOn] = (int) Math.round(defaultWidth);
+                leftSideBearings[glyphOn] = 0;
+            }
+        }
+    }
+
+    /**
+     * A font's own encoding, fontbox's CFF encoding classes can only be created inside fontbox.
+     */
+    private static class BuiltInEncoding extends Encoding {
+        void add(int code, String name) {
+            if (name != null)
+                addCharacterEncoding(code, name);
+        }
+    }
+}
@@ -0,0 +1,715 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Makes a CFF font smaller by moving charstring sequences that repeat across glyphs into global and local
+ * subroutines. Fonts that already have subroutines are left alone, this is for the unsubroutinized CFF that PDF
+ * producers tend to write. Like the subsetter it drops the font's encoding, so it's for CFF in OpenType fonts.
+ * <p>
+ * Charstrings are split into operator groups, an operator with its operands, and only runs of whole groups become
+ * subroutines so the argument stack is empty at every call. Hint masks and everything up to a glyph's first stack
+ * clearing operator, where its width can be, stay in the charstring, and subroutines don't call each other.
+ * Repeats are counted with a fixed size table of sequences up to a maximum length and each glyph then picks its
+ * cheapest encoding from the chosen subroutines, so time is linear in the size of the charstrings and memory past
+ * the font's own groups is fixed. Not thread safe.
+ */
+public class CffSubroutinizer {
+    private static final int DEFAULT_MAX_SEQUENCE_LENGTH = 32;
+    private static final int DEFAULT_MAX_CANDIDATES = 1 << 18;
+    private static final int MAX_ROUNDS = 4;
+    private static final int MAX_SUBRS_PER_INDEX = 65535;
+    private static final long HASH_MULTIPLIER = 1000003;
+
+    // roughly what a subroutine's INDEX offset costs on top of its body
+    private static final int SUBR_OVERHEAD = 2;
+    private static final int MIN_CALL_COST = 2;
+
+    private static final int TYPE2_CHARSTRINGS = 2;
+    private static final int GLOBAL_POOL = 0;
+    private static final int NO_POOL = -1;
+    private static final int UNKNOWN_FD = -1;
+    private static final int SHARED_FD = -2;
+
+    private final byte[] cffData;
+    private int maxSequenceLength = DEFAULT_MAX_SEQUENCE_LENGTH;
+    private int maxCandidates = DEFAULT_MAX_CANDIDATES;
+
+    private GroupTable groups;
+    private int[][] glyphGroups;
+    private int[] firstEligible;
+    private int[] glyphFds;
+    private int fdCount;
+
+    public CffSubroutinizer(byte[] cffData) {
+        this.cffData = cffData;
+    }
+
+    /**
+     * Longest sequence of operator groups looked at for repeats, longer repeats are covered by several calls.
+     */
+    public void setMaxSequenceLength(int maxSequenceLength) {
+        this.maxSequenceLength = maxSequenceLength;
+    }
+
+    /**
+     * Size of the table repeated sequences are counted in, sequences first seen after it fills up aren't counted.
+     */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * @return the font with new subroutines, or the font data as is if the font already has subroutines, uses
+     * charstring operators this doesn't handle or wouldn't get any smaller
+     */
+    public byte[] subroutinize() throws IOException {
+        CffReader reader = new CffReader(cffData);
+        if (reader.getTopDictInt(CffDict.CHARSTRING_TYPE, TYPE2_CHARSTRINGS) != TYPE2_CHARSTRINGS
+                || hasSubroutines(reader) || !readGroups(reader))
+            return cffData;
+
+        List<Subr> subrs = findCandidates();
+        for (int round = 0; round < MAX_ROUNDS && !subrs.isEmpty(); round++) {
+            assignIndexes(subrs);
+            encodeGlyphs(subrs, null);
+
+            List<Subr> profitable = new ArrayList<Subr>();
+            for (Subr subrOn : subrs) {
+                if (subrOn.getSaving() > 0)
+                    profitable.add(subrOn);
+            }
+
+            if (profitable.size() == subrs.size())
+                break;
+            subrs = profitable;
+        }
+
+        if (subrs.isEmpty())
+            return cffData;
+
+        assignIndexes(subrs);
+        List<byte[]> charStrings = new ArrayList<byte[]>(glyphGroups.length);
+        encodeGlyphs(subrs, charStrings);
+
+        List<List<byte[]>> localSubrs = new ArrayList<List<byte[]>>();
+        for (int fd = 0; fd < fdCount; fd++)
+            localSubrs.add(writeSubrs(subrs, fd + 1));
+
+        byte[] subroutinized = new CffSubsetter(cffData).rewrite(charStrings, writeSubrs(subrs, GLOBAL_POOL),
+                localSubrs);
+        return subroutinized.length < cffData.length ? subroutinized : cffData;
+    }
+
+    private static boolean hasSubroutines(CffReader reader) throws IOException {
+        if (reader.getGlobalSubrs().getCount() > 0)
+            return true;
+
+        for (CffDict privateOn : reader.getPrivateDicts()) {
+            if (privateOn.contains(CffDict.SUBRS))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Splits every charstring into operator groups.
+     *
+     * @return false if a charstring uses an operator that makes moving groups into subroutines unsafe
+     */
+    private boolean readGroups(CffReader reader) throws IOException {
+        CffIndex charStrings = reader.getCharStrings();
+        int glyphCount = charStrings.getCount();
+        fdCount = reader.getPrivateDicts().size();
+        glyphFds = reader.isCid() ? reader.getFdSelect() : new int[glyphCount];
+        groups = new GroupTable(cffData);
+        glyphGroups = new int[glyphCount][];
+        firstEligible = new int[glyphCount];
+
+        int[] ids = new int[64];
+        for (int glyphOn = 0; glyphOn < glyphCount; glyphOn++) {
+            int position = charStrings.getObjectStart(glyphOn);
+            int end = position + charStrings.getObjectLength(glyphOn);
+            int groupStart = position;
+            int count = 0;
+            int operands = 0;
+            int stems = 0;
+            firstEligible[glyphOn] = -1;
+
+            while (position < end) {
+                int b0 = cffData[position] & 0xFF;
+                if (b0 >= 32 || b0 == 28) {
+                    position += b0 == 28 ? 3 : b0 <= 246 ? 1 : b0 == 255 ? 5 : 2;
+                    operands++;
+                    continue;
+                }
+
+                int operator = b0;
+                position++;
+                if (b0 == 12) {
+                    if (position >= end)
+                        return false;
+                    operator = 1200 + (cffData[position++] & 0xFF);
+                }
+                if (!isSafeOperator(operator))
+                    return false;
+
+                boolean isMask = operator == 19 || operator == 20;
+                if (isStem(operator) || isMask)
+                    stems += operands / 2;
+                if (isMask)
+                    position += (stems + 7) / 8;
+                if (position > end)
+                    return false;
+
+                if (count == ids.length)
+                    ids = Arrays.copyOf(ids, count * 2);
+                ids[count++] = groups.intern(groupStart, position - groupStart, isMask, operator == 14);
+
+                // the first stack clearing operator can carry the width so it and anything before stay put
+                if (firstEligible[glyphOn] < 0 && clearsStack(operator))
+                    firstEligible[glyphOn] = count;
+
+                operands = 0;
+                groupStart = position;
+                if (operator == 14)
+                    break;
+            }
+
+            if (position > end)
+                return false;
+
+            // trailing operands or bytes after endchar are kept as they are
+            if (groupStart < end) {
+                if (count == ids.length)
+                    ids = Arrays.copyOf(ids, count + 1);
+                ids[count++] = groups.intern(groupStart, end - groupStart, true, false);
+            }
+
+            glyphGroups[glyphOn] = Arrays.copyOf(ids, count);
+            if (firstEligible[glyphOn] < 0)
+                firstEligible[glyphOn] = count;
+        }
+
+        return true;
+    }
+
+    private static boolean isSafeOperator(int operator) {
+        // subroutine calls and the arithmetic and storage operators are left out, only drawing, hinting and the
+        // flex operators can be moved about freely
+        if (operator == 10 || operator == 11 || operator == 29)
+            return false;
+        if (operator >= 1200)
+            return operator == 1200 || (operator >= 1234 && operator <= 1237);
+
+        return true;
+    }
+
+    private static boolean isStem(int operator) {
+        return operator == 1 || operator == 3 || operator == 18 || operator == 23;
+    }
+
+    private static boolean clearsStack(int operator) {
+        return isStem(operator) || operator == 19 || operator == 20 || operator == 21 || operator == 22
+                || operator == 4 || operator == 14;
+    }
+
+    /**
+     * Counts every sequence of groups that could be a subroutine and keeps the ones whose estimated saving is
+     * positive, best first.
+     */
+    private List<Subr> findCandidates() {
+        LongIntMap keys = new LongIntMap(maxCandidates);
+        int[] counts = new int[Math.min(maxCandidates, 1024)];
+        int[] firstGlyphs = new int[counts.length];
+        int[] firstStarts = new int[counts.length];
+        int[] lengths = new int[counts.length];
+        int[] byteLengths = new int[counts.length];
+        int candidateCount = 0;
+
+        for (int glyphOn = 0; glyphOn < glyphGroups.length; glyphOn++) {
+            int[] ids = glyphGroups[glyphOn];
+
+            for (int i = firstEligible[glyphOn]; i < ids.length; i++) {
+                long hash = 0;
+                int byteLength = 0;
+
+                for (int length = 1; length <= maxSequenceLength && i + length <= ids.length; length++) {
+                    int id = ids[i + length - 1];
+                    if (groups.isBarrier(id))
+                        break;
+
+                    hash = hash * HASH_MULTIPLIER + id + 1;
+                    byteLength += groups.getLength(id);
+
+                    // a call costs at least two bytes so shorter sequences can't save anything
+                    if (byteLength <= MIN_CALL_COST)
+                        continue;
+
+                    long key = sequenceKey(hash, length);
+                    int candidate = keys.get(key);
+                    if (candidate >= 0) {
+                        counts[candidate]++;
+                        continue;
+                    }
+                    if (candidateCount == maxCandidates)
+                        continue;
+
+                    if (candidateCount == counts.length) {
+                        int newLength = Math.min(counts.length * 2, maxCandidates);
+                        counts = Arrays.copyOf(counts, newLength);
+                        firstGlyphs = Arrays.copyOf(firstGlyphs, newLength);
+                        firstStarts = Arrays.copyOf(firstStarts, newLength);
+                        lengths = Arrays.copyOf(lengths, newLength);
+                        byteLengths = Arrays.copyOf(byteLengths, newLength);
+                    }
+
+                    keys.put(key, candidateCount);
+                    counts[candidateCount] = 1;
+                    firstGlyphs[candidateCount] = glyphOn;
+                    firstStarts[candidateCount] = i;
+                    lengths[candidateCount] = length;
+                    byteLengths[candidateCount] = byteLength;
+                    candidateCount++;
+                }
+            }
+        }
+
+        List<Subr> subrs = new ArrayList<Subr>();
+        for (int i = 0; i < candidateCount; i++) {
+            if (counts[i] < 2)
+                continue;
+
+            Subr subr = new Subr(keys.getKeyOf(i), firstGlyphs[i], firstStarts[i], lengths[i], byteLengths[i]);
+            subr.endsGlyph = groups.isEndChar(glyphGroups[subr.glyph][subr.start + subr.length - 1]);
+            subr.uses = counts[i];
+            subr.callCost = MIN_CALL_COST;
+            if (fdCount == 1)
+                subr.fd = 0;
+
+            if (subr.getSaving() > 0)
+                subrs.add(subr);
+        }
+
+        Collections.sort(subrs, new Comparator<Subr>() {
+            public int compare(Subr a, Subr b) {
+                return b.getSaving() - a.getSaving();
+            }
+        });
+
+        int maxSubrs = MAX_SUBRS_PER_INDEX * (fdCount + 1);
+        return subrs.size() > maxSubrs ? new ArrayList<Subr>(subrs.subList(0, maxSubrs)) : subrs;
+    }
+
+    private static long sequenceKey(long hash, int length) {
+        long key = hash * 31 + length;
+        return key == LongIntMap.EMPTY ? 1 : key;
+    }
+
+    /**
+     * Puts each subroutine in the global or a local INDEX and gives the most used ones the numbers that are
+     * cheapest to call. A subroutine only used by glyphs of one Font DICT can go in that DICT's local subroutines,
+     * it goes in whichever of its two INDEXes is less full so both INDEXes' one byte numbers get used.
+     */
+    private void assignIndexes(List<Subr> subrs) {
+        Collections.sort(subrs, new Comparator<Subr>() {
+            public int compare(Subr a, Subr b) {
+                return b.uses - a.uses;
+            }
+        });
+
+        int[] poolSizes = new int[fdCount + 1];
+        for (Subr subrOn : subrs) {
+            int localPool = subrOn.fd >= 0 ? subrOn.fd + 1 : NO_POOL;
+            int pool = localPool != NO_POOL && poolSizes[localPool] <= poolSizes[GLOBAL_POOL] ? localPool : GLOBAL_POOL;
+
+            if (poolSizes[pool] == MAX_SUBRS_PER_INDEX)
+                pool = pool == GLOBAL_POOL ? localPool : GLOBAL_POOL;
+            if (pool != NO_POOL && poolSizes[pool] == MAX_SUBRS_PER_INDEX)
+                pool = NO_POOL;
+
+            subrOn.pool = pool;
+            if (pool != NO_POOL)
+                poolSizes[pool]++;
+        }
+
+        int[][] slotOrders = new int[poolSizes.length][];
+        int[] ranks = new int[poolSizes.length];
+        for (int pool = 0; pool < poolSizes.length; pool++)
+            slotOrders[pool] = cheapestSlots(poolSizes[pool]);
+
+        for (Subr subrOn : subrs) {
+            if (subrOn.pool == NO_POOL)
+                continue;
+
+            subrOn.index = slotOrders[subrOn.pool][ranks[subrOn.pool]++];
+            subrOn.biasedIndex = subrOn.index - CffCharStringScanner.subrBias(poolSizes[subrOn.pool]);
+            subrOn.callCost = numberSize(subrOn.biasedIndex) + 1;
+        }
+    }
+
+    /**
+     * @return subroutine indexes of an INDEX with the given count, ordered by how many bytes calling them takes
+     */
+    private static int[] cheapestSlots(int count) {
+        int bias = CffCharStringScanner.subrBias(count);
+        int[] slots = new int[count];
+        int slotOn = 0;
+
+        for (int size = 1; size <= 3; size++) {
+            for (int i = 0; i < count; i++) {
+                if (numberSize(i - bias) == size)
+                    slots[slotOn++] = i;
+            }
+        }
+
+        return slots;
+    }
+
+    /**
+     * Picks each glyph's shortest encoding from its own groups and calls to the subroutines and counts the calls,
+     * the charstrings are written out as well if a list for them is given.
+     */
+    private void encodeGlyphs(List<Subr> subrs, List<byte[]> charStrings) {
+        LongIntMap lookup = new LongIntMap(subrs.size());
+        for (int i = 0; i < subrs.size(); i++) {
+            Subr subrOn = subrs.get(i);
+            subrOn.uses = 0;
+            subrOn.fd = UNKNOWN_FD;
+            if (subrOn.pool != NO_POOL)
+                lookup.put(subrOn.key, i);
+        }
+
+        int[] costs = new int[64];
+        int[] choices = new int[64];
+        for (int glyphOn = 0; glyphOn < glyphGroups.length; glyphOn++) {
+            int[] ids = glyphGroups[glyphOn];
+            int fd = glyphFds[glyphOn];
+            if (costs.length <= ids.length) {
+                costs = new int[ids.length + 1];
+                choices = new int[ids.length + 1];
+            }
+
+            costs[ids.length] = 0;
+            for (int i = ids.length - 1; i >= 0; i--) {
+                costs[i] = costs[i + 1] + groups.getLength(ids[i]);
+                choices[i] = -1;
+                if (i < firstEligible[glyphOn])
+                    continue;
+
+                long hash = 0;
+                for (int length = 1; length <= maxSequenceLength && i + length <= ids.length; length++) {
+                    int id = ids[i + length - 1];
+                    if (groups.isBarrier(id))
+                        break;
+
+                    hash = hash * HASH_MULTIPLIER + id + 1;
+                    int subrIndex = lookup.get(sequenceKey(hash, length));
+                    if (subrIndex < 0)
+                        continue;
+
+                    Subr subr = subrs.get(subrIndex);
+                    if (subr.length != length || !subr.isCallableFrom(fd) || !matches(ids, i, subr))
+                        continue;
+
+                    int cost = subr.callCost + costs[i + length];
+                    if (cost < costs[i]) {
+                        costs[i] = cost;
+                        choices[i] = subrIndex;
+                    }
+                }
+            }
+
+            FontDataOutputBuffer writer = charStrings == null ? null : new FontDataOutputBuffer(costs[0]);
+            for (int i = 0; i < ids.length; ) {
+                if (choices[i] >= 0) {
+                    Subr subr = subrs.get(choices[i]);
+                    subr.addUse(fd);
+                    if (writer != null)
+                        writeCall(writer, subr);
+                    i += subr.length;
+                } else {
+                    if (writer != null)
+                        writer.write(cffData, groups.getStart(ids[i]), groups.getLength(ids[i]));
+                    i++;
+                }
+            }
+
+            if (charStrings != null)
+                charStrings.add(writer.toByteArray());
+        }
+    }
+
+    private boolean matches(int[] ids, int start, Subr subr) {
+        int[] subrIds = glyphGroups[subr.glyph];
+        for (int i = 0; i < subr.length; i++) {
+            if (ids[start + i] != subrIds[subr.start + i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static void writeCall(FontDataOutputBuffer writer, Subr subr) {
+        writeNumber(writer, subr.biasedIndex);
+        writer.writeByte(subr.pool == GLOBAL_POOL ? 29 : 10);
+    }
+
+    private List<byte[]> writeSubrs(List<Subr> subrs, int pool) {
+        List<Subr> poolSubrs = new ArrayList<Subr>();
+        for (Subr subrOn : subrs) {
+            if (subrOn.pool == pool)
+                poolSubrs.add(subrOn);
+        }
+
+        byte[][] bodies = new byte[poolSubrs.size()][];
+        for (Subr subrOn : poolSubrs) {
+            FontDataOutputBuffer writer = new FontDataOutputBuffer(subrOn.byteLength + 1);
+            int[] ids = glyphGroups[subrOn.glyph];
+            for (int i = subrOn.start; i < subrOn.start + subrOn.length; i++)
+                writer.write(cffData, groups.getStart(ids[i]), groups.getLength(ids[i]));
+
+            // endchar finishes the glyph so there's nothing to return to
+            if (!subrOn.endsGlyph)
+                writer.writeByte(11);
+
+            bodies[subrOn.index] = writer.toByteArray();
+        }
+
+        return Arrays.asList(bodies);
+    }
+
+    private static int numberSize(int value) {
+        if (value >= -107 && value <= 107)
+            return 1;
+        if (value >= -1131 && value <= 1131)
+            return 2;
+
+        return 3;
+    }
+
+    private static void writeNumber(FontDataOutputBuffer writer, int value) {
+        if (value >= -107 && value <= 107)
+            writer.writeByte(value + 139);
+        else if (value >= 108 && value <= 1131) {
+            writer.writeByte(((value - 108) >> 8) + 247);
+            writer.writeByte((value - 108) & 0xFF);
+        } else if (value >= -1131 && value <= -108) {
+            writer.writeByte(((-value - 108) >> 8) + 251);
+            writer.writeByte((-value - 108) & 0xFF);
+        } else {
+            writer.writeByte(28);
+            writer.writeByte(value >> 8);
+            writer.writeByte(value);
+        }
+    }
+
+    private static class Subr {
+        final long key;
+        final int glyph;
+        final int start;
+        final int length;
+        final int byteLength;
+        boolean endsGlyph;
+
+        int uses;
+        int fd = UNKNOWN_FD;
+        int pool = NO_POOL;
+        int index;
+        int biasedIndex;
+        int callCost;
+
+        Subr(long key, int glyph, int start, int length, int byteLength) {
+            this.key = key;
+            this.glyph = glyph;
+            this.start = start;
+            this.length = length;
+            this.byteLength = byteLength;
+        }
+
+        boolean isCallableFrom(int glyphFd) {
+            return pool == GLOBAL_POOL || pool == glyphFd + 1;
+        }
+
+        void addUse(int glyphFd) {
+            uses++;
+            fd = fd == UNKNOWN_FD || fd == glyphFd ? glyphFd : SHARED_FD;
+        }
+
+        int getSaving() {
+            int bodyLength = byteLength + (endsGlyph ? 0 : 1);
+            return uses * (byteLength - callCost) - bodyLength - SUBR_OVERHEAD;
+        }
+    }
+
+    /**
+     * Distinct operator groups, each kept as where it first occurs in the font data.
+     */
+    private static class GroupTable {
+        private final byte[] data;
+        private int[] table = new int[1024];
+        private int[] starts = new int[256];
+        private int[] lengths = new int[256];
+        private int[] hashes = new int[256];
+        private byte[] flags = new byte[256];
+        private int count;
+
+        private static final int BARRIER = 1;
+        private static final int END_CHAR = 2;
+
+        GroupTable(byte[] data) {
+            this.data = data;
+        }
+
+        int intern(int start, int length, boolean isBarrier, boolean isEndChar) {
+            int hash = 0;
+            for (int i = start; i < start + length; i++)
+                hash = hash * 31 + data[i];
+
+            int mask = table.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int id = table[slot] - 1;
+                if (id < 0) {
+                    table[slot] = add(start, length, hash, isBarrier, isEndChar) + 1;
+                    if (count * 2 > table.length)
+                        rehash();
+                    return count - 1;
+                }
+
+                if (hashes[id] == hash && isSame(id, start, length))
+                    return id;
+            }
+        }
+
+        private boolean isSame(int id, int start, int length) {
+            if (lengths[id] != length)
+                return false;
+
+            for (int i = 0; i < length; i++) {
+                if (data[starts[id] + i] != data[start + i])
+                    return false;
+            }
+
+            return true;
+        }
+
+        private int add(int start, int length, int hash, boolean isBarrier, boolean isEndChar) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+                flags = Arrays.copyOf(flags, count * 2);
+            }
+
+            starts[count] = start;
+            lengths[count] = length;
+            hashes[count] = hash;
+            flags[count] = (byte) ((isBarrier ? BARRIER : 0) | (isEndChar ? END_CHAR : 0));
+            return count++;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int id = 0; id < count; id++) {
+                int slot = hashes[id] & mask;
+                while (table[slot] != 0)
+                    slot = (slot + 1) & mask;
+                table[slot] = id + 1;
+            }
+        }
+
+        int getStart(int id) {
+            return starts[id];
+        }
+
+        int getLength(int id) {
+            return lengths[id];
+        }
+
+        boolean isBarrier(int id) {
+            return (flags[id] & BARRIER) != 0;
+        }
+
+        boolean isEndChar(int id) {
+            return (flags[id] & END_CHAR) != 0;
+        }
+    }
+
+    /**
+     * Fixed size open addressing map from sequence keys to non negative ints, sized up front for the most entries
+     * it will hold.
+     */
+    private static class LongIntMap {
+        static final long EMPTY = 0;
+
+        private final long[] keys;
+        private final int[] values;
+        private final int[] slotsByValue;
+
+        LongIntMap(int maxEntries) {
+            int capacity = Integer.highestOneBit(Math.max(maxEntries, 1) * 2 - 1) * 2;
+            keys = new long[capacity];
+            values = new int[capacity];
+            slotsByValue = new int[Math.max(maxEntries, 1)];
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = spread(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key)
+                    return values[slot];
+            }
+
+            return -1;
+        }
+
+        /**
+         * @param value must be less than the map's max entries, each value is only put once
+         */
+        void put(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = spread(key) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = key;
+            values[slot] = value;
+            slotsByValue[value] = slot;
+        }
+
+        long getKeyOf(int value) {
+            return keys[slotsByValue[value]];
+        }
+
+        private static int spread(long key) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed >>> 32);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts a CFF font's CharStrings, charset and for CID fonts FDSelect down to a set of glyphs, the kept glyphs are
+ * renumbered in their original order. The other INDEXes and the subroutines are passed through as is, the Top
+ * DICT, Font DICTs and Private DICTs only have their offsets rewritten.
+ * <p>
+ * The font is read on the first subset and reused for the ones after, so a subsetter can cheaply cut the same
+ * font into many subsets. Not thread safe.
+ */
+public class CffSubsetter {
+    private final byte[] cffData;
+    private FontDataBuffer data;
+    private CffDict topDict;
+    private int glyphCount;
+    private byte[] header;
+    private byte[] nameIndex;
+    private byte[] stringIndex;
+    private byte[] globalSubrIndex;
+    private CffIndex charStrings;
+    private boolean isCid;
+    private int[] charset;
+    private int[] fdSelect;
+    private List<CffDict> fontDicts;
+    private List<PrivateData> privates;
+
+    public CffSubsetter(byte[] cffData) {
+        this.cffData = cffData;
+    }
+
+    /**
+     * @param glyphIds glyph ids to keep in ascending order, glyph 0 should always be included as .notdef
+     */
+    public byte[] subset(int[] glyphIds) throws IOException {
+        if (charStrings == null)
+            readFont();
+
+        for (int glyphOn : glyphIds) {
+            if (glyphOn < 0 || glyphOn >= glyphCount)
+                throw new IOException("Glyph id outside of CFF CharStrings " + glyphOn);
+        }
+
+        List<byte[]> keptCharStrings = new ArrayList<byte[]>(glyphIds.length);
+        for (int glyphOn : glyphIds)
+            keptCharStrings.add(charStrings.get(glyphOn));
+
+        return write(glyphIds, keptCharStrings);
+    }
+
+    /**
+     * Writes out every glyph with new charstrings, and new subroutines in place of the font's own. The new
+     * subroutines are kept for later calls, so a subsetter used for this shouldn't be used to subset after.
+     *
+     * @param localSubrs local subroutines for each Private DICT, in Font DICT order for CID fonts
+     */
+    byte[] rewrite(List<byte[]> newCharStrings, List<byte[]> globalSubrs, List<List<byte[]>> localSubrs)
+            throws IOException {
+        if (charStrings == null)
+            readFont();
+
+        if (newCharStrings.size() != glyphCount)
+            throw new IOException("Rewritten CFF needs a charstring for each of the " + glyphCount + " glyphs");
+        if (localSubrs.size() != privates.size())
+            throw new IOException("Rewritten CFF needs local subroutines for each of its Private DICTs");
+
+        globalSubrIndex = CffIndex.write(globalSubrs);
+        for (int i = 0; i < privates.size(); i++)
+            privates.get(i).setLocalSubrs(CffIndex.write(localSubrs.get(i)));
+
+        int[] glyphIds = new int[glyphCount];
+        for (int i = 0; i < glyphCount; i++)
+            glyphIds[i] = i;
+
+        return write(glyphIds, newCharStrings);
+    }
+
+    private byte[] write(int[] glyphIds, List<byte[]> keptCharStrings) throws IOException {
+        byte[] charsetData = writeCharset(charset, glyphIds);
+        byte[] charStringsData = CffIndex.write(keptCharStrings);
+        byte[] fdSelectData = isCid ? writeFdSelect(fdSelect, glyphIds) : new byte[0];
+
+        // first pass with placeholder offsets, offset operands are fixed size so sizes don't change on the second
+        Layout layout = layout(charsetData, fdSelectData, charStringsData, null);
+        layout = layout(charsetData, fdSelectData, charStringsData, layout);
+
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(layout.length);
+        writer.write(header);
+        writer.write(nameIndex);
+        writer.write(layout.topDictIndex);
+        writer.write(stringIndex);
+        writer.write(globalSubrIndex);
+        writer.write(charsetData);
+        writer.write(fdSelectData);
+        writer.write(charStringsData);
+        writer.write(layout.fdArrayIndex);
+        for (PrivateData privateOn : privates)
+            privateOn.write(writer);
+
+        return writer.toByteArray();
+    }
+
+    private void readFont() throws IOException {
+        CffReader reader = new CffReader(cffData);
+        data = reader.getData();
+        header = reader.getHeader();
+        // passed through INDEXes are written again so they get the smallest offset size
+        nameIndex = CffIndex.write(reader.getNameIndex().getObjects());
+        stringIndex = CffIndex.write(reader.getStringIndex().getObjects());
+        globalSubrIndex = CffIndex.write(reader.getGlobalSubrs().getObjects());
+
+        // own copy of the Top DICT since its offsets get rewritten for each subset
+        topDict = CffDict.read(reader.getTopDictData());
+
+        CffIndex charStrings = reader.getCharStrings();
+        glyphCount = charStrings.getCount();
+        isCid = reader.isCid();
+        charset = reader.getCharset();
+        fdSelect = isCid ? reader.getFdSelect() : null;
+
+        privates = new ArrayList<PrivateData>();
+        fontDicts = new ArrayList<CffDict>();
+        if (isCid) {
+            CffIndex fdArray = reader.getFdArray();
+            for (int i = 0; i < fdArray.getCount(); i++) {
+                CffDict fontDict = CffDict.read(fdArray.get(i));
+                fontDicts.add(fontDict);
+                privates.add(readPrivate(fontDict));
+            }
+        } else
+            privates.add(readPrivate(topDict));
+
+        // the encoding only matters for stand alone CFF fonts, OpenType fonts map through the cmap
+        topDict.remove(CffDict.ENCODING);
+
+        // set last, marks the font as read
+        this.charStrings = charStrings;
+    }
+
+    /**
+     * Writes whichever charset format is smallest, ranges of consecutive names are common in fonts that haven't
+     * been subset.
+     */
+    private static byte[] writeCharset(int[] charset, int[] glyphIds) throws IOException {
+        // .notdef has no charset entry
+        int[] sids = new int[Math.max(glyphIds.length - 1, 0)];
+        for (int i = 0; i < sids.length; i++)
+            sids[i] = charset[glyphIds[i + 1]];
+
+        int format0Size = 1 + sids.length * 2;
+        int format1Size = 1 + countRanges(sids, 0xFF) * 3;
+        int format2Size = 1 + countRanges(sids, 0xFFFF) * 4;
+
+        if (format0Size <= format1Size && format0Size <= format2Size) {
+            FontDataOutputBuffer writer = new FontDataOutputBuffer(format0Size);
+            writer.writeByte(0);
+            for (int sidOn : sids)
+                writer.writeUnsignedShort(sidOn);
+
+            return writer.toByteArray();
+        }
+
+        boolean isFormat1 = format1Size <= format2Size;
+        int maxLeft = isFormat1 ? 0xFF : 0xFFFF;
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(isFormat1 ? format1Size : format2Size);
+        writer.writeByte(isFormat1 ? 1 : 2);
+
+        for (int i = 0; i < sids.length; ) {
+            int left = rangeLength(sids, i, maxLeft) - 1;
+            writer.writeUnsignedShort(sids[i]);
+            if (isFormat1)
+                writer.writeByte(left);
+            else
+                writer.writeUnsignedShort(left);
+            i += left + 1;
+        }
+
+        return writer.toByteArray();
+    }
+
+    private static int countRanges(int[] sids, int maxLeft) {
+        int ranges = 0;
+        for (int i = 0; i < sids.length; i += rangeLength(sids, i, maxLeft))
+            ranges++;
+
+        return ranges;
+    }
+
+    private static int rangeLength(int[] sids, int start, int maxLeft) {
+        int end = start + 1;
+        while (end < sids.length && sids[end] == sids[end - 1] + 1 && end - start <= maxLeft)
+            end++;
+
+        return end - start;
+    }
+
+    /**
+     * Writes FDSelect format 0 or format 3 ranges, whichever is smaller.
+     */
+    private static byte[] writeFdSelect(int[] fdSelect, int[] glyphIds) throws IOException {
+        int ranges = 0;
+        for (int i = 0; i < glyphIds.length; i++) {
+            if (i == 0 || fdSelect[glyphIds[i]] != fdSelect[glyphIds[i - 1]])
+                ranges++;
+        }
+
+        int format0Size = 1 + glyphIds.length;
+        int format3Size = 1 + 2 + ranges * 3 + 2;
+        if (format0Size <= format3Size) {
+            FontDataOutputBuffer writer = new FontDataOutputBuffer(format0Size);
+            writer.writeByte(0);
+            for (int glyphOn : glyphIds)
+                writer.writeByte(fdSelect[glyphOn]);
+
+            return writer.toByteArray();
+        }
+
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(format3Size);
+        writer.writeByte(3);
+        writer.writeUnsignedShort(ranges);
+        for (int i = 0; i < glyphIds.length; i++) {
+            if (i == 0 || fdSelect[glyphIds[i]] != fdSelect[glyphIds[i - 1]]) {
+                writer.writeUnsignedShort(i);
+                writer.writeByte(fdSelect[glyphIds[i]]);
+            }
+        }
+        // sentinel
+        writer.writeUnsignedShort(glyphIds.length);
+
+        return writer.toByteArray();
+    }
+
+    private PrivateData readPrivate(CffDict parentDict) throws IOException {
+        PrivateData privateData = new PrivateData();
+        privateData.parentDict = parentDict;
+        if (!parentDict.contains(CffDict.PRIVATE))
+            return privateData;
+
+        int size = parentDict.getInt(CffDict.PRIVATE, 0, 0);
+        int offset = parentDict.getInt(CffDict.PRIVATE, 1, 0);
+        privateData.dict = CffDict.read(data.getBytes(offset, size));
+
+        if (privateData.dict.contains(CffDict.SUBRS)) {
+            int subrsOffset = offset + privateData.dict.getInt(CffDict.SUBRS, 0, 0);
+            privateData.setLocalSubrs(CffIndex.write(CffIndex.read(data, subrsOffset).getObjects()));
+        }
+
+        return privateData;
+    }
+
+    private Layout layout(byte[] charsetData, byte[] fdSelectData, byte[] charStringsData, Layout previous)
+            throws IOException {
+        Layout layout = new Layout();
+        int[] offsets = previous == null ? new int[5] : previous.offsets;
+
+        topDict.setIntegers(CffDict.CHARSET, offsets[0]);
+        topDict.setIntegers(CffDict.CHAR_STRINGS, offsets[1]);
+        if (isCid) {
+            topDict.setIntegers(CffDict.FD_SELECT, offsets[2]);
+            topDict.setIntegers(CffDict.FD_ARRAY, offsets[3]);
+        }
+
+        int privateOffset = offsets[4];
+        for (PrivateData privateOn : privates) {
+            privateOn.setOffset(privateOffset);
+            privateOffset += privateOn.getLength();
+        }
+
+        List<byte[]> topDicts = new ArrayList<byte[]>();
+        topDicts.add(topDict.write());
+        layout.topDictIndex = CffIndex.write(topDicts);
+
+        List<byte[]> fontDictData = new ArrayList<byte[]>();
+        for (CffDict fontDictOn : fontDicts)
+            fontDictData.add(fontDictOn.write());
+        layout.fdArrayIndex = isCid ? CffIndex.write(fontDictData) : new byte[0];
+
+        int position = header.length + nameIndex.length + layout.topDictIndex.length + stringIndex.length
+                + globalSubrIndex.length;
+        layout.offsets = new int[5];
+        layout.offsets[0] = position;
+        position += charsetData.length;
+        layout.offsets[2] = position;
+        position += fdSelectData.length;
+        layout.offsets[1] = position;
+        position += charStringsData.length;
+        layout.offsets[3] = position;
+        position += layout.fdArrayIndex.length;
+        layout.offsets[4] = position;
+
+        layout.length = position;
+        for (PrivateData privateOn : privates)
+            layout.length += privateOn.getLength();
+
+        return layout;
+    }
+
+    private static class Layout {
+        // charset, CharStrings, FDSelect, FDArray, first Private DICT
+        int[] offsets;
+        byte[] topDictIndex;
+        byte[] fdArrayIndex;
+        int length;
+    }
+
+    private static class PrivateData {
+        CffDict parentDict;
+        CffDict dict;
+        byte[] localSubrs = new byte[0];
+
+        void setLocalSubrs(byte[] subrsIndex) {
+            // an empty INDEX is just its 2 byte count
+            if (subrsIndex.length <= 2) {
+                if (dict != null)
+                    dict.remove(CffDict.SUBRS);
+                localSubrs = new byte[0];
+                return;
+            }
+
+            if (dict == null)
+                dict = new CffDict();
+            localSubrs = subrsIndex;
+
+            // local subrs go straight after the dict, the fixed size placeholder keeps the dict length stable
+            dict.setIntegers(CffDict.SUBRS, 0);
+            dict.setIntegers(CffDict.SUBRS, dict.write().length);
+        }
+
+        void setOffset(int offset) {
+            if (dict != null)
+                parentDict.setIntegers(CffDict.PRIVATE, dict.write().length, offset);
+        }
+
+        int getLength() {
+            return dict == null ? 0 : dict.write().length + localSubrs.length;
+        }
+
+        void write(FontDataOutputBuffer writer) {
+            if (dict == null)
+                return;
+
+            writer.write(dict.write());
+            writer.write(localSubrs);
+        }
+    }
+}
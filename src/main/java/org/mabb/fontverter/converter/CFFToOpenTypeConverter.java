@@ -28,6 +28,7 @@ import java.util.List;
 public class CFFToOpenTypeConverter implements FontConverter {
     private CffFontAdapter cffFont;
     private OpenTypeFont otfFont;
+    private boolean subroutinize;
 
     public CFFToOpenTypeConverter(CffFontAdapter cffFont) {
         this.cffFont = cffFont;
@@ -46,8 +47,10 @@ public class CFFToOpenTypeConverter implements FontConverter {
         otfFont = OpenTypeFont.createBlankFont();
         otfFont.getSfntHeader().sfntFlavor = SfntHeader.CFF_FLAVOR;
 
-        byte[] cffData = cffFont.getData();
-        otfFont.addTable(new CffTable(cffData));
+        CffTable cffTable = new CffTable(cffFont.getData());
+        if (subroutinize)
+            cffTable.subroutinize();
+        otfFont.addTable(cffTable);
 
         convertGlyphIdToCodeMap();
         convertNameRecords(otfFont.getNameTable());
@@ -59,6 +62,14 @@ public class CFFToOpenTypeConverter implements FontConverter {
         return otfFont;
     }
 
+    /**
+     * Subroutinize the CFF table of converted fonts, off by default. PDF producers often write CFF fonts without
+     * any subroutines.
+     */
+    public void setSubroutinize(boolean subroutinize) {
+        this.subroutinize = subroutinize;
+    }
+
     private void convertGlyphIdToCodeMap() throws IOException {
         List<GlyphMapping> glyphMappings = cffFont.getGlyphMaps();
 
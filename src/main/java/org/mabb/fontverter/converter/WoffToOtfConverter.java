@@ -51,18 +51,16 @@ public class WoffToOtfConverter implements FontConverter {
             record.recordName = tableOn.getTag();
             if (record.recordName.length() < 4)
                 record.recordName = record.recordName + StringUtils.repeat(" ", 4 - record.recordName.length());
-            record.originalData = tableOn.getTableData();
 
             OpenTypeTable table = OpenTypeTable.createFromRecord(record, otfFont);
             table.isFromParsedFont = true;
+            // parsed lazily like an otf read, tables that pass through as is are never copied out of the woff data
+            table.setUnparsedSourceData(tableOn.getSharedTableData());
 
             otfFont.addTable(table);
         }
 
         // have to order by dependant tables before doing table reads
         otfFont.orderTablesByDependencies();
-        for (OpenTypeTable tableOn : otfFont.getTables())
-            tableOn.readData(tableOn.record.originalData);
-
     }
 }
@@ -18,6 +18,7 @@
 package org.mabb.fontverter.eot;
 
 import org.mabb.fontverter.FVFont;
+import org.mabb.fontverter.FontFormatSniffer;
 import org.mabb.fontverter.FontNotSupportedException;
 import org.mabb.fontverter.FontProperties;
 import org.mabb.fontverter.FontVerter;
@@ -61,17 +62,8 @@ public class EotFont implements FVFont {
     }
 
     public boolean detectFormat(byte[] fontFile) {
-        try {
-            // slow move to low priority for detect format. FontVerter api needs
-            // refactor for priority for detect format
-            LittleEndianInputStream data = new LittleEndianInputStream(fontFile);
-            DataTypeBindingDeserializer deserializer = new DataTypeBindingDeserializer();
-            header = (EotHeader) deserializer.deserialize(data, EotHeader.class);
-
-            return header.isValid();
-        } catch (DataTypeSerializerException e) {
-            return false;
-        }
+        // only check the version and magic number fields instead of deserializing the whole header
+        return FontFormatSniffer.isEot(fontFile);
     }
 
     public void read(byte[] fontFile) throws IOException {
@@ -37,7 +37,7 @@ public class DataTypeBindingDeserializer {
     private boolean stopDeserializeEarly = false;
 
     public Object deserialize(byte[] data, Class toClass) throws DataTypeSerializerException {
-        return deserialize(new FontDataInputStream(data), toClass);
+        return deserialize(new FontDataBuffer(data), toClass);
     }
 
     public Object deserialize(FontDataInput dataInput, Class toClass) throws DataTypeSerializerException {
@@ -49,6 +49,10 @@ public class DataTypeBindingDeserializer {
     }
 
     public Object deserialize(FontDataInput dataInput, Object toObj) throws DataTypeSerializerException {
+        DataTypeCodec<Object> codec = DataTypeCodec.find(toObj.getClass());
+        if (codec != null)
+            return deserializeWithCodec(dataInput, toObj, codec);
+
         try {
             input = dataInput;
 
@@ -72,8 +76,18 @@ public class DataTypeBindingDeserializer {
         }
     }
 
+    private Object deserializeWithCodec(FontDataInput dataInput, Object toObj, DataTypeCodec<Object> codec)
+            throws DataTypeSerializerException {
+        try {
+            codec.read(dataInput, toObj, recoverFromEOF);
+            return toObj;
+        } catch (Exception ex) {
+            throw new DataTypeSerializerException(toObj.getClass().getCanonicalName(), ex);
+        }
+    }
+
     public Object deserialize(byte[] data, Object toObj) throws DataTypeSerializerException {
-        return deserialize(new FontDataInputStream(data), toObj);
+        return deserialize(new FontDataBuffer(data), toObj);
     }
 
     private void deserializeProperty(AccessibleObject propertyOn, Object object) throws Exception {
@@ -120,9 +134,7 @@ public class DataTypeBindingDeserializer {
             case BYTE_ARRAY:
                 return input.readBytes(property.constLength());
             case LONG_DATE_TIME:
-                Calendar date = Calendar.getInstance();
-                date.setTimeInMillis(input.readLong() * 1000);
-                return date;
+                return input.readLong();
             case UINT_BASE_128:
                 return input.readUIntBase128();
             case PASCAL_STRING:
@@ -138,11 +150,12 @@ public class DataTypeBindingDeserializer {
         if (arrayLength < 0)
             throw new IOException("Array length must be set for array data types.");
 
-        Object[] array = (Object[]) Array.newInstance(propertyOn.getType().getComponentType(), arrayLength);
+        // primitive or boxed component type, Array.set unboxes and widens values for primitive arrays
+        Object array = Array.newInstance(propertyOn.getType().getComponentType(), arrayLength);
 
         for (int i = 0; i < arrayLength; i++) {
             try {
-                array[i] = readSingleValue(binding);
+                Array.set(array, i, readSingleValue(binding));
             } catch (Exception ex) {
                 String message = String.format("Array length ran over input data length." +
                         " Index on: %d Array Length: %d", i, arrayLength);
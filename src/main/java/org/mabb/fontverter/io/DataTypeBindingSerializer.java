@@ -29,18 +29,16 @@ public class DataTypeBindingSerializer {
     public byte[] serialize(Object object) throws DataTypeSerializerException {
         return serialize(object, new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET));
     }
+
     public byte[] serialize(Object object, FontDataOutput writer) throws DataTypeSerializerException {
         this.writer = writer;
         Class type = object.getClass();
-        List<AccessibleObject> properties = propReader.getProperties(type);
 
-        for (AccessibleObject propertyOn : properties) {
-            try {
-                serializeProperty(object, propertyOn);
-            } catch (Exception e) {
-                throw new DataTypeSerializerException("Error serializing property: " + propertyOn.toString(), e);
-            }
-        }
+        DataTypeCodec<Object> codec = DataTypeCodec.find(type);
+        if (codec != null)
+            serializeWithCodec(object, codec);
+        else
+            serializeProperties(object, propReader.getProperties(type));
 
         try {
             writer.flush();
@@ -51,6 +49,25 @@ public class DataTypeBindingSerializer {
         return writer.toByteArray();
     }
 
+    private void serializeWithCodec(Object object, DataTypeCodec<Object> codec) throws DataTypeSerializerException {
+        try {
+            codec.write(writer, object);
+        } catch (Exception e) {
+            throw new DataTypeSerializerException("Error serializing " + object.getClass().getCanonicalName(), e);
+        }
+    }
+
+    private void serializeProperties(Object object, List<AccessibleObject> properties)
+            throws DataTypeSerializerException {
+        for (AccessibleObject propertyOn : properties) {
+            try {
+                serializeProperty(object, propertyOn);
+            } catch (Exception e) {
+                throw new DataTypeSerializerException("Error serializing property: " + propertyOn.toString(), e);
+            }
+        }
+    }
+
     private void serializeProperty(Object object, AccessibleObject propertyOn)
             throws Exception {
         if (!propertyOn.isAnnotationPresent(DataTypeProperty.class))
@@ -70,7 +87,7 @@ public class DataTypeBindingSerializer {
             throw new DataTypeSerializerException("Byte property binding on unknown type");
 
         if (property.isArray())
-            writeArrayValue((Object[]) propValue, property, object);
+            writeArrayValue(propValue, property, object);
         else
             writeValue(property, propValue);
     }
@@ -104,8 +121,7 @@ public class DataTypeBindingSerializer {
                 writer.write((byte[]) fieldValue);
                 break;
             case LONG_DATE_TIME:
-                Calendar date = (Calendar) fieldValue;
-                writer.writeLong(date.getTimeInMillis() / 1000);
+                writer.writeLong(((Number) fieldValue).longValue());
                 break;
             case PASCAL_STRING:
                 String value = ((String) fieldValue);
@@ -121,14 +137,14 @@ public class DataTypeBindingSerializer {
         }
     }
 
-    private void writeArrayValue(Object[] array, DataTypeProperty binding, Object object)
+    private void writeArrayValue(Object array, DataTypeProperty binding, Object object)
             throws NoSuchFieldException, IllegalAccessException, IOException, InvocationTargetException {
         int arrayLength = propReader.getPropertyArrayLength(binding, object);
         if (arrayLength < 0)
             throw new IOException("Array length must be set for array data types.");
 
         for (int i = 0; i < arrayLength; i++)
-            writeValue(binding, array[i]);
+            writeValue(binding, Array.get(array, i));
     }
 }
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mabb.fontverter.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Straight line reader and writer for a class with {@link DataTypeProperty} annotated members. Implementations are
+ * generated at build time by {@link org.mabb.fontverter.registry.processor.DataTypeCodecProcessor} and used by the
+ * binding serializer and deserializer in place of their reflective property handling. Classes the processor can't
+ * generate a codec for, like ones with private annotated fields, keep using reflection.
+ */
+public abstract class DataTypeCodec<T> {
+    private static final String GENERATED_CODECS = "org.mabb.fontverter.io.GeneratedDataTypeCodecs";
+    private static Logger log = LoggerFactory.getLogger(DataTypeCodec.class);
+
+    private static volatile Map<String, DataTypeCodec<?>> codecs;
+
+    /**
+     * @param recoverFromEOF if running out of data part way through an array the partially read array is kept and
+     *                       reading stops there instead of throwing
+     */
+    public abstract void read(FontDataInput input, T object, boolean recoverFromEOF) throws IOException;
+
+    public abstract void write(FontDataOutput output, T object) throws IOException;
+
+    /**
+     * @return codec for exactly this class, annotations on super classes aren't bound, or null if there's no
+     * generated codec for it
+     */
+    @SuppressWarnings("unchecked")
+    static DataTypeCodec<Object> find(Class<?> type) {
+        return (DataTypeCodec<Object>) getCodecs().get(type.getName());
+    }
+
+    private static Map<String, DataTypeCodec<?>> getCodecs() {
+        if (codecs == null) {
+            synchronized (DataTypeCodec.class) {
+                if (codecs == null)
+                    codecs = loadCodecs();
+            }
+        }
+
+        return codecs;
+    }
+
+    private static Map<String, DataTypeCodec<?>> loadCodecs() {
+        Map<String, DataTypeCodec<?>> found = new HashMap<String, DataTypeCodec<?>>();
+        try {
+            Registry registry = (Registry) Class.forName(GENERATED_CODECS).newInstance();
+            registry.registerCodecs(found);
+        } catch (ClassNotFoundException ex) {
+            log.warn("Generated data type codecs not found, falling back to reflective binding.");
+        } catch (Exception ex) {
+            log.warn("Could not load generated data type codecs, falling back to reflective binding.", ex);
+            found.clear();
+        }
+
+        return Collections.unmodifiableMap(found);
+    }
+
+    protected static String readPascalString(FontDataInput input) throws IOException {
+        int length = input.readUnsignedByte();
+        return input.readString(length);
+    }
+
+    protected static void writePascalString(FontDataOutput output, String value) throws IOException {
+        output.writeByte(value.length());
+        output.writeString(value);
+    }
+
+    protected static int checkArrayLength(int length) throws IOException {
+        if (length < 0)
+            throw new IOException("Array length must be set for array data types.");
+        return length;
+    }
+
+    protected static IOException arrayOverrun(int index, int length) {
+        return new IOException(String.format("Array length ran over input data length." +
+                " Index on: %d Array Length: %d", index, length));
+    }
+
+    protected static void unsupported(String message) throws IOException {
+        throw new IOException(message);
+    }
+
+    /**
+     * Implemented by the generated GeneratedDataTypeCodecs class to list every generated codec.
+     */
+    public abstract static class Registry {
+        /**
+         * @param codecs codec instances keyed by the binary name of the class they bind
+         */
+        protected abstract void registerCodecs(Map<String, DataTypeCodec<?>> codecs);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.io;
+
+import org.mabb.fontverter.FontVerterUtils;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Big endian font data reader over a heap or direct ByteBuffer. Byte ranges and number arrays are read with bulk
+ * gets, there are absolute position reads that don't move the read position and slice() gives a view onto part of
+ * the data without copying it.
+ */
+public class FontDataBuffer implements FontDataInput {
+    private final ByteBuffer buffer;
+
+    public FontDataBuffer(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @param buffer data from the buffer's current position to its limit is read, the buffer itself isn't modified
+     */
+    public FontDataBuffer(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        this.buffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @return a view of length bytes starting at offset, shares the underlying data rather than copying it
+     */
+    public FontDataBuffer slice(int offset, int length) throws IOException {
+        checkRange(offset, length);
+
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return new FontDataBuffer(view);
+    }
+
+    public int length() {
+        return buffer.limit();
+    }
+
+    public int available() {
+        return buffer.remaining();
+    }
+
+    public int getPosition() {
+        return buffer.position();
+    }
+
+    public void seek(int offset) throws IOException {
+        if (offset < 0)
+            throw new EOFException("Can't seek to negative offset " + offset);
+
+        // seeking past the end is allowed, reads from there will just hit EOF like with the stream reader
+        buffer.position(Math.min(offset, buffer.limit()));
+    }
+
+    public long readUnsignedInt() throws IOException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    public String readString(int length) throws IOException {
+        return new String(readBytes(length), FontDataOutputStream.OPEN_TYPE_CHARSET);
+    }
+
+    public byte[] readBytes(int length) throws IOException {
+        if (length < 0)
+            throw new EOFException("Can't read a negative number of bytes: " + length);
+        if (buffer.remaining() < length)
+            throw new IOException("Read length is larger than the available stream size");
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    // converted from pseduo C like reader code from woff spec
+    public int readUIntBase128() throws IOException {
+        int accum = 0;
+        for (int i = 0; i < 5; i++) {
+            int data_byte = readUnsignedByte();
+
+            if (i == 0 && data_byte == 0x80)
+                throw new IOException("No leading 0's");
+
+            if ((accum & 0xFE000000) != 0)
+                throw new IOException("UIntBase128 read error If any of top 7 bits are set then << 7 would overflow");
+
+            accum = (accum << 7) | (data_byte & 0x7F);
+
+            // Spin until most significant bit of data byte is false
+            if ((data_byte & 0x80) == 0)
+                return accum;
+        }
+
+        throw new IOException("UIntBase128 sequence exceeds 5 bytes");
+    }
+
+    public float readFixed32() throws IOException {
+        float num = (float) readShort();
+        num = (float) ((double) num + (double) readUnsignedShort() / 65536.0D);
+        return num;
+    }
+
+    public int[] readSplitBits(int numUpperBits) throws IOException {
+        int fullByte = readUnsignedByte();
+        int upper = FontVerterUtils.readUpperBits(fullByte, numUpperBits);
+        int lower = FontVerterUtils.readLowerBits(fullByte, 8 - numUpperBits);
+
+        return new int[]{upper, lower};
+    }
+
+    public int[] readUnsignedShortArray(int length) throws IOException {
+        short[] values = readShortArray(length);
+
+        int[] readArray = new int[length];
+        for (int i = 0; i < length; i++)
+            readArray[i] = values[i] & 0xFFFF;
+
+        return readArray;
+    }
+
+    public short[] readShortArray(int length) throws IOException {
+        require(length * 2);
+
+        short[] values = new short[length];
+        buffer.asShortBuffer().get(values);
+        buffer.position(buffer.position() + length * 2);
+        return values;
+    }
+
+    public long[] readUnsignedIntArray(int length) throws IOException {
+        require(length * 4);
+
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * 4);
+
+        long[] readArray = new long[length];
+        for (int i = 0; i < length; i++)
+            readArray[i] = values[i] & 0xFFFFFFFFL;
+
+        return readArray;
+    }
+
+    /* absolute reads, these don't move the read position */
+
+    public int getUnsignedByte(int offset) throws IOException {
+        checkRange(offset, 1);
+        return buffer.get(offset) & 0xFF;
+    }
+
+    public short getShort(int offset) throws IOException {
+        checkRange(offset, 2);
+        return buffer.getShort(offset);
+    }
+
+    public int getUnsignedShort(int offset) throws IOException {
+        return getShort(offset) & 0xFFFF;
+    }
+
+    public int getInt(int offset) throws IOException {
+        checkRange(offset, 4);
+        return buffer.getInt(offset);
+    }
+
+    public long getUnsignedInt(int offset) throws IOException {
+        return getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    public byte[] getBytes(int offset, int length) throws IOException {
+        checkRange(offset, length);
+
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /* DataInput */
+
+    public void readFully(byte[] bytes) throws IOException {
+        readFully(bytes, 0, bytes.length);
+    }
+
+    public void readFully(byte[] bytes, int off, int len) throws IOException {
+        require(len);
+        buffer.get(bytes, off, len);
+    }
+
+    public int skipBytes(int n) {
+        int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    public char readChar() throws IOException {
+        require(2);
+        return buffer.getChar();
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    public String readLine() throws IOException {
+        if (!buffer.hasRemaining())
+            return null;
+
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            int charOn = buffer.get() & 0xFF;
+            if (charOn == '\n')
+                break;
+            if (charOn == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n')
+                    buffer.get();
+                break;
+            }
+
+            line.append((char) charOn);
+        }
+
+        return line.toString();
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    private void require(int length) throws EOFException {
+        if (length < 0 || buffer.remaining() < length)
+            throw new EOFException();
+    }
+
+    private void checkRange(int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit())
+            throw new EOFException(String.format("Read of %d bytes at offset %d is outside of the data, length: %d",
+                    length, offset, buffer.limit()));
+    }
+}
@@ -27,7 +27,7 @@ public interface FontDataInput extends DataInput {
 
     byte[] readBytes(int length) throws IOException;
 
-    void seek(int offset);
+    void seek(int offset) throws IOException;
 
     // converted from pseduo C like reader code from woff spec
     int readUIntBase128() throws IOException;
@@ -59,12 +59,11 @@ public class FontDataInputStream extends DataInputStream implements FontDataInpu
             throw new IOException("Read length is larger than the available stream size");
 
         byte[] bytes = new byte[length];
-        for (int i = 0; i < bytes.length; i++)
-            bytes[i] = (byte) in.read();
+        readFully(bytes);
         return bytes;
     }
 
-    public void seek(int offset) {
+    public void seek(int offset) throws IOException {
         byteInput.seek(offset);
     }
 
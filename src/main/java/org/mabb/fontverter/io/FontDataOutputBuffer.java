@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mabb.fontverter.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Big endian font data writer over a single byte array that can be pre-sized to the final output length. Offsets,
+ * lengths and checksums that aren't known until later data is written can be reserved in place and back-patched
+ * once they are, so nested structures like a table directory and its tables or a subtable record and its subtable
+ * are written straight into their final position instead of into temporary streams that get copied into the parent.
+ */
+public class FontDataOutputBuffer implements FontDataOutput {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final Charset encoding;
+    private byte[] buffer;
+    private int position;
+
+    public FontDataOutputBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity expected output length, when the written data ends up exactly this long toByteArray()
+     *                 returns the buffer itself without copying it. Writing more than this grows the buffer.
+     */
+    public FontDataOutputBuffer(int capacity) {
+        this(capacity, FontDataOutputStream.OPEN_TYPE_CHARSET);
+    }
+
+    public FontDataOutputBuffer(int capacity, Charset encoding) {
+        buffer = new byte[Math.max(capacity, 0)];
+        this.encoding = encoding;
+    }
+
+    public byte[] toByteArray() {
+        if (position == buffer.length)
+            return buffer;
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public int currentPosition() {
+        return position;
+    }
+
+    /**
+     * Writes length zero bytes to be filled in later by one of the patch methods.
+     *
+     * @return position of the reserved bytes
+     */
+    public int reserve(int length) {
+        ensureCapacity(length);
+        int reserved = position;
+        // buffer is only ever grown with zeros so skipping over the bytes is enough
+        position += length;
+        return reserved;
+    }
+
+    public int reserveUnsignedShort() {
+        return reserve(2);
+    }
+
+    public int reserveUnsignedInt() {
+        return reserve(4);
+    }
+
+    public void patchUnsignedShort(int offset, int num) throws IOException {
+        checkPatchRange(offset, 2);
+        buffer[offset] = (byte) (num >>> 8);
+        buffer[offset + 1] = (byte) num;
+    }
+
+    public void patchUnsignedInt(int offset, long num) throws IOException {
+        checkPatchRange(offset, 4);
+        buffer[offset] = (byte) (num >>> 24);
+        buffer[offset + 1] = (byte) (num >>> 16);
+        buffer[offset + 2] = (byte) (num >>> 8);
+        buffer[offset + 3] = (byte) num;
+    }
+
+    public void patch(int offset, byte[] data) throws IOException {
+        checkPatchRange(offset, data.length);
+        System.arraycopy(data, 0, buffer, offset, data.length);
+    }
+
+    /**
+     * Zero pads the output up to the next 4 byte boundary like tables in sfnt and woff files need.
+     */
+    public void padToFourBytes() {
+        reserve((4 - position % 4) % 4);
+    }
+
+    /**
+     * @return OpenType table checksum of the already written bytes from start up to end, a trailing partial long is
+     * summed as if it was zero padded
+     */
+    public long checksum(int start, int end) throws IOException {
+        checkPatchRange(start, end - start);
+
+        long sum = 0;
+        int offset = start;
+        for (; offset + 4 <= end; offset += 4)
+            sum += readUnsignedInt(offset);
+
+        if (offset < end) {
+            long last = 0;
+            for (int shift = 24; offset < end; offset++, shift -= 8)
+                last |= (long) (buffer[offset] & 0xFF) << shift;
+            sum += last;
+        }
+
+        return sum & 0xFFFFFFFFL;
+    }
+
+    private long readUnsignedInt(int offset) {
+        return ((long) (buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    public void writeString(String string) throws IOException {
+        write(string.getBytes(encoding));
+    }
+
+    public void writeUnsignedShort(int num) throws IOException {
+        writeShort(num);
+    }
+
+    public void writeUnsignedInt(int num) throws IOException {
+        writeInt(num);
+    }
+
+    public void writeUnsignedInt8(int num) throws IOException {
+        writeByte(num >>> 24);
+    }
+
+    public void write32Fixed(float num) throws IOException {
+        writeShort((int) num);
+        float decimalOnlyVal = (num - (int) num);
+        writeUnsignedShort((int) (decimalOnlyVal * 65536));
+    }
+
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, position, len);
+        position += len;
+    }
+
+    public void writeBoolean(boolean v) {
+        write(v ? 1 : 0);
+    }
+
+    public void writeByte(int v) {
+        write(v);
+    }
+
+    public void writeShort(int v) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (v >>> 8);
+        buffer[position++] = (byte) v;
+    }
+
+    public void writeChar(int v) {
+        writeShort(v);
+    }
+
+    public void writeInt(int v) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (v >>> 24);
+        buffer[position++] = (byte) (v >>> 16);
+        buffer[position++] = (byte) (v >>> 8);
+        buffer[position++] = (byte) v;
+    }
+
+    public void writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+    public void writeFloat(float v) {
+        writeInt(Float.floatToIntBits(v));
+    }
+
+    public void writeDouble(double v) {
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    public void writeBytes(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++)
+            buffer[position++] = (byte) s.charAt(i);
+    }
+
+    public void writeChars(String s) {
+        for (int i = 0; i < s.length(); i++)
+            writeChar(s.charAt(i));
+    }
+
+    public void writeUTF(String s) throws IOException {
+        // modified UTF-8 is fiddly and never used in font data so just borrow DataOutputStream's encoder
+        ByteArrayOutputStream utf = new ByteArrayOutputStream();
+        new DataOutputStream(utf).writeUTF(s);
+        write(utf.toByteArray());
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+    }
+
+    private void ensureCapacity(int length) {
+        int required = position + length;
+        if (required > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+    }
+
+    private void checkPatchRange(int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > position)
+            throw new IOException("Patch range " + offset + "-" + (offset + length)
+                    + " is outside of the " + position + " bytes written");
+    }
+}
@@ -46,7 +46,7 @@ public class LittleEndianInputStream extends FilterInputStream implements FontDa
         return  bytes;
     }
 
-    public void seek(int offset) {
+    public void seek(int offset) throws IOException {
 
     }
 
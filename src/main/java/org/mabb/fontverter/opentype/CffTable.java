@@ -18,13 +18,17 @@
 package org.mabb.fontverter.opentype;
 
 import org.mabb.fontverter.cff.CffFontAdapter;
+import org.mabb.fontverter.cff.CffSubroutinizer;
 
 import java.io.IOException;
 import java.util.List;
 
+@TableTag("CFF ")
 public class CffTable extends OpenTypeTable {
     private byte[] data;
     private CffFontAdapter cff;
+    private int[] advanceWidths;
+    private short[] leftSideBearings;
 
     public CffTable(byte[] data) throws IOException {
         readData(data);
@@ -37,20 +41,62 @@ public class CffTable extends OpenTypeTable {
         return data;
     }
 
-    public String getTableType() {
-        return "CFF ";
-    }
-
     public void readData(byte[] data) throws IOException {
         this.data = data;
         cff = new CffFontAdapter();
         cff.read(data);
+        advanceWidths = null;
+        leftSideBearings = null;
+    }
+
+    /**
+     * Moves charstring sequences repeated across glyphs into subroutines. The table is left as it is if the font
+     * already has subroutines or wouldn't get any smaller.
+     */
+    public void subroutinize() throws IOException {
+        byte[] subroutinized = new CffSubroutinizer(data).subroutinize();
+        if (subroutinized == data)
+            return;
+
+        readData(subroutinized);
+        markDirty();
+        clearDataCache();
     }
 
     public List<CffFontAdapter.CffGlyph> getGlyphs() throws IOException {
         return getCffFont().getGlyphs();
     }
 
+    /**
+     * Advance width from the glyph's charstring, the metrics of all glyphs are read together on first use.
+     */
+    public int getAdvanceWidth(int glyphId) throws IOException {
+        readMetrics();
+        return advanceWidths[glyphId];
+    }
+
+    public short getLeftSideBearing(int glyphId) throws IOException {
+        readMetrics();
+        return leftSideBearings[glyphId];
+    }
+
+    public int getGlyphCount() throws IOException {
+        return cff.getGlyphCount();
+    }
+
+    private void readMetrics() throws IOException {
+        if (advanceWidths != null)
+            return;
+
+        int glyphCount = cff.getGlyphCount();
+        int[] widths = new int[glyphCount];
+        short[] bearings = new short[glyphCount];
+        cff.readMetrics(widths, bearings);
+
+        leftSideBearings = bearings;
+        advanceWidths = widths;
+    }
+
     public CffFontAdapter getCffFont() {
         return cff;
     }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.mabb.fontverter.FontNotSupportedException;
+
+import java.io.IOException;
+
+/**
+ * Read only code point to glyph id lookup that binary searches a cmap subtable's format 4 segments or format
+ * 12/13 groups in place in the cmap table's bytes. Nothing is created per mapping so it's cheap to build for fonts
+ * that are only used to answer which glyph, if any, a character has. Glyph id 0 means no mapping.
+ * <p>
+ * The subtable with the widest unicode coverage is used, format 12 before format 4 before format 13.
+ */
+public class CmapLookup {
+    private static final int UNICODE_PLATFORM_ID = 0;
+    private static final int WINDOWS_PLATFORM_ID = 3;
+    private static final int WINDOWS_BMP_ENCODING_ID = 1;
+    private static final int WINDOWS_FULL_ENCODING_ID = 10;
+
+    private static final int FORMAT_4_HEADER_SIZE = 14;
+    private static final int GROUP_HEADER_SIZE = 16;
+    private static final int GROUP_SIZE = 12;
+
+    private final byte[] data;
+    private final int format;
+    private final int subTableOffset;
+    private final int subTableEnd;
+    private final int entryCount;
+
+    // format 4 array positions
+    private int endCodes;
+    private int startCodes;
+    private int idDeltas;
+    private int idRangeOffsets;
+
+    private CmapLookup(byte[] data, int format, int subTableOffset, int subTableEnd, int entryCount) {
+        this.data = data;
+        this.format = format;
+        this.subTableOffset = subTableOffset;
+        this.subTableEnd = subTableEnd;
+        this.entryCount = entryCount;
+
+        if (format == 4) {
+            endCodes = subTableOffset + FORMAT_4_HEADER_SIZE;
+            startCodes = endCodes + entryCount * 2 + 2;
+            idDeltas = startCodes + entryCount * 2;
+            idRangeOffsets = idDeltas + entryCount * 2;
+        }
+    }
+
+    /**
+     * @param cmapData a whole cmap table, the array is used as is and shouldn't be changed after
+     */
+    public static CmapLookup read(byte[] cmapData) throws IOException {
+        if (cmapData.length < 4)
+            throw new IOException("cmap table too short for its header");
+
+        int numTables = readUnsignedShort(cmapData, 2);
+        int bestOffset = -1;
+        int bestRank = 0;
+
+        for (int i = 0; i < numTables && 4 + i * 8 + 8 <= cmapData.length; i++) {
+            int record = 4 + i * 8;
+            int offset = readInt(cmapData, record + 4);
+            if (offset < 0 || offset + 2 > cmapData.length)
+                continue;
+
+            int rank = rankSubTable(readUnsignedShort(cmapData, record), readUnsignedShort(cmapData, record + 2),
+                    readUnsignedShort(cmapData, offset));
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestOffset = offset;
+            }
+        }
+
+        if (bestOffset == -1)
+            throw new FontNotSupportedException("No unicode format 4, 12 or 13 cmap subtable to look up glyphs with");
+
+        return create(cmapData, bestOffset);
+    }
+
+    private static int rankSubTable(int platformId, int encodingId, int format) {
+        boolean isUnicode = platformId == UNICODE_PLATFORM_ID;
+        boolean isWindowsFull = platformId == WINDOWS_PLATFORM_ID && encodingId == WINDOWS_FULL_ENCODING_ID;
+        boolean isWindowsBmp = platformId == WINDOWS_PLATFORM_ID && encodingId == WINDOWS_BMP_ENCODING_ID;
+
+        if (format == 12 && (isUnicode || isWindowsFull))
+            return 3;
+        if (format == 4 && (isUnicode || isWindowsBmp))
+            return 2;
+        if (format == 13 && (isUnicode || isWindowsFull))
+            return 1;
+
+        return 0;
+    }
+
+    private static CmapLookup create(byte[] data, int offset) throws IOException {
+        int format = readUnsignedShort(data, offset);
+
+        int length;
+        int entryCount;
+        int requiredLength;
+        if (format == 4) {
+            checkLength(data, offset, FORMAT_4_HEADER_SIZE);
+            length = readUnsignedShort(data, offset + 2);
+            entryCount = readUnsignedShort(data, offset + 6) / 2;
+            requiredLength = FORMAT_4_HEADER_SIZE + 2 + entryCount * 8;
+        } else {
+            checkLength(data, offset, GROUP_HEADER_SIZE);
+            length = readInt(data, offset + 4);
+            entryCount = readInt(data, offset + 12);
+            if (entryCount < 0 || entryCount > (data.length - offset) / GROUP_SIZE)
+                throw new IOException("cmap format " + format + " group count past end of table " + entryCount);
+            requiredLength = GROUP_HEADER_SIZE + entryCount * GROUP_SIZE;
+        }
+        checkLength(data, offset, requiredLength);
+
+        // format 4 lengths overflow for big subtables, glyph id array reads are bounds checked against this instead
+        int end = length < requiredLength || offset + length > data.length ? data.length : offset + length;
+        return new CmapLookup(data, format, offset, end, entryCount);
+    }
+
+    private static void checkLength(byte[] data, int offset, int length) throws IOException {
+        if (offset + length > data.length)
+            throw new IOException("cmap subtable at " + offset + " runs past the end of the cmap table");
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * @return glyph id for the code point or 0 when it isn't mapped
+     */
+    public int getGlyphId(int codePoint) {
+        int entry = findEntry(codePoint);
+        return entry < 0 ? 0 : glyphIdInEntry(entry, codePoint);
+    }
+
+    /**
+     * Maps many code points in one go, a code point in the same segment or group as the one before it skips the
+     * search.
+     */
+    public int[] getGlyphIds(int[] codePoints) {
+        int[] glyphIds = new int[codePoints.length];
+        int lastEntry = -1;
+        for (int i = 0; i < codePoints.length; i++) {
+            int codePoint = codePoints[i];
+            int entry = lastEntry >= 0 && isInEntry(lastEntry, codePoint) ? lastEntry : findEntry(codePoint);
+            if (entry < 0)
+                continue;
+
+            glyphIds[i] = glyphIdInEntry(entry, codePoint);
+            lastEntry = entry;
+        }
+
+        return glyphIds;
+    }
+
+    /**
+     * @return glyph id for each code point in the text, surrogate pairs are one code point
+     */
+    public int[] getGlyphIds(CharSequence text) {
+        int[] codePoints = new int[Character.codePointCount(text, 0, text.length())];
+        for (int i = 0, count = 0; i < text.length(); count++) {
+            codePoints[count] = Character.codePointAt(text, i);
+            i += Character.charCount(codePoints[count]);
+        }
+
+        return getGlyphIds(codePoints);
+    }
+
+    private int glyphIdInEntry(int entry, int codePoint) {
+        return format == 4 ? format4GlyphId(entry, codePoint) : groupGlyphId(entry, codePoint);
+    }
+
+    private int findEntry(int codePoint) {
+        int low = 0;
+        int high = entryCount - 1;
+
+        // first entry whose end code isn't below the code point
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (entryEnd(middle) < codePoint)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+
+        if (low >= entryCount || entryStart(low) > codePoint)
+            return -1;
+
+        return low;
+    }
+
+    private boolean isInEntry(int index, int codePoint) {
+        return codePoint >= entryStart(index) && codePoint <= entryEnd(index);
+    }
+
+    private int entryStart(int index) {
+        if (format == 4)
+            return readUnsignedShort(data, startCodes + index * 2);
+
+        return readInt(data, groupPosition(index));
+    }
+
+    private int entryEnd(int index) {
+        if (format == 4)
+            return readUnsignedShort(data, endCodes + index * 2);
+
+        return readInt(data, groupPosition(index) + 4);
+    }
+
+    private int groupPosition(int index) {
+        return subTableOffset + GROUP_HEADER_SIZE + index * GROUP_SIZE;
+    }
+
+    private int format4GlyphId(int segment, int codePoint) {
+        int delta = readUnsignedShort(data, idDeltas + segment * 2);
+        int rangeOffsetPosition = idRangeOffsets + segment * 2;
+        int rangeOffset = readUnsignedShort(data, rangeOffsetPosition);
+
+        if (rangeOffset == 0)
+            return (codePoint + delta) & 0xFFFF;
+
+        int glyphPosition = rangeOffsetPosition + rangeOffset + (codePoint - entryStart(segment)) * 2;
+        if (glyphPosition + 2 > subTableEnd)
+            return 0;
+
+        int glyphId = readUnsignedShort(data, glyphPosition);
+        return glyphId == 0 ? 0 : (glyphId + delta) & 0xFFFF;
+    }
+
+    private int groupGlyphId(int group, int codePoint) {
+        int startGlyphId = readInt(data, groupPosition(group) + 8);
+        if (format == 13)
+            return startGlyphId;
+
+        return startGlyphId + codePoint - entryStart(group);
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+                | (data[offset + 3] & 0xFF);
+    }
+}
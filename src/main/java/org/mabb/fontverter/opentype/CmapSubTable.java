@@ -17,10 +17,11 @@
 
 package org.mabb.fontverter.opentype;
 
+import org.apache.fontbox.cff.CFFStandardEncoding;
 import org.mabb.fontverter.io.FontDataInput;
 import org.mabb.fontverter.opentype.GlyphMapReader.GlyphMapping;
-import org.mabb.fontverter.io.FontDataInputStream;
-import org.mabb.fontverter.io.FontDataOutputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
 
 import java.io.IOException;
 import java.util.*;
@@ -52,12 +53,13 @@ abstract class CmapSubTable {
         this.subTableOffset = subTableOffset;
     }
 
-    public byte[] getRecordData() throws IOException {
-        FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+    /**
+     * @return position of the record's subtable offset which is reserved to be patched once the subtable is written
+     */
+    int writeRecord(FontDataOutputBuffer writer) throws IOException {
         writer.writeUnsignedShort(platformId);
         writer.writeUnsignedShort(encodingId);
-        writer.writeUnsignedInt((int) subTableOffset);
-        return writer.toByteArray();
+        return writer.reserveUnsignedInt();
     }
 
     public int getPlatformId() {
@@ -76,7 +78,16 @@ abstract class CmapSubTable {
         this.encodingId = encodingId;
     }
 
-    public abstract byte[] getData() throws IOException;
+    public byte[] getData() throws IOException {
+        FontDataOutputBuffer writer = new FontDataOutputBuffer();
+        writeData(writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes the subtable at the writer's current position, length fields are back-patched once the body is written
+     */
+    public abstract void writeData(FontDataOutputBuffer writer) throws IOException;
 
     public abstract int glyphCount();
 
@@ -86,6 +97,38 @@ abstract class CmapSubTable {
         return new ArrayList<GlyphMapping>();
     }
 
+    /**
+     * Char code to glyph id mapping as parallel primitive arrays sorted by char code, what the subtable encoders
+     * work from.
+     */
+    static class SortedMapping {
+        final int[] charCodes;
+        final int[] glyphIds;
+
+        SortedMapping(int[] charCodes, int[] glyphIds) {
+            this.charCodes = charCodes;
+            this.glyphIds = glyphIds;
+        }
+
+        static SortedMapping of(Map<Integer, Integer> charCodeToGlyphId, int maxCharCode) {
+            int[] charCodes = new int[charCodeToGlyphId.size()];
+            int count = 0;
+            for (Integer charCodeOn : charCodeToGlyphId.keySet()) {
+                if (charCodeOn >= 0 && charCodeOn <= maxCharCode)
+                    charCodes[count++] = charCodeOn;
+            }
+
+            charCodes = Arrays.copyOf(charCodes, count);
+            Arrays.sort(charCodes);
+
+            int[] glyphIds = new int[count];
+            for (int i = 0; i < count; i++)
+                glyphIds[i] = charCodeToGlyphId.get(charCodes[i]);
+
+            return new SortedMapping(charCodes, glyphIds);
+        }
+    }
+
     protected static class Format0SubTable extends CmapSubTable {
         private static final int FORMAT0_HEADER_SIZE = 6 + 256;
         // LinkedHashMap important, for keeping ordering the same for loops
@@ -98,16 +141,13 @@ abstract class CmapSubTable {
         }
 
         @Override
-        public byte[] getData() throws IOException {
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
-
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
             if (rawReadData != null) {
                 writer.writeUnsignedShort(formatNumber);
                 writer.writeUnsignedShort(rawReadData.length + 4);
                 writer.write(rawReadData);
-
-                return writer.toByteArray();
+                return;
             }
 
             writer.writeUnsignedShort((int) formatNumber);
@@ -117,8 +157,6 @@ abstract class CmapSubTable {
             for (Map.Entry<Integer, Integer> entry : charCodeToGlyphId.entrySet()) {
                 writer.writeByte(entry.getValue());
             }
-
-            return writer.toByteArray();
         }
 
         public int glyphCount() {
@@ -137,7 +175,7 @@ abstract class CmapSubTable {
         public void readData(FontDataInput input) throws IOException {
             int length = input.readUnsignedShort();
             rawReadData = input.readBytes(length - 4);
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
         }
     }
 
@@ -146,14 +184,11 @@ abstract class CmapSubTable {
             formatNumber = 2;
         }
 
-        public byte[] getData() throws IOException {
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
             writer.writeUnsignedShort(formatNumber);
             writer.writeUnsignedShort(rawReadData.length + 4);
             writer.write(rawReadData);
-
-            return writer.toByteArray();
         }
 
         public int glyphCount() {
@@ -163,34 +198,64 @@ abstract class CmapSubTable {
         public void readData(FontDataInput input) throws IOException {
             int length = input.readUnsignedShort();
             rawReadData = input.readBytes(length - 4);
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
 
         }
     }
 
+    /**
+     * Trimmed table mapping, a glyph id for every char code in one range. Smallest for a few densely packed char
+     * codes such as the ASCII range of a Mac Roman subtable.
+     */
     static class Format6SubTable extends CmapSubTable {
+        private static final int HEADER_SIZE = 10;
+        private static final int MAX_CHAR_CODE = 0xFFFF;
+
+        private Map<Integer, Integer> charCodeToGlyphId = new HashMap<Integer, Integer>();
+
         public Format6SubTable() {
             formatNumber = 6;
         }
 
-        public byte[] getData() throws IOException {
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+            if (rawReadData != null) {
+                writer.writeUnsignedShort(formatNumber);
+                writer.writeUnsignedShort(rawReadData.length + 4);
+                writer.write(rawReadData);
+                return;
+            }
+
+            SortedMapping mapping = SortedMapping.of(charCodeToGlyphId, MAX_CHAR_CODE);
+            int[] charCodes = mapping.charCodes;
+            int firstCode = charCodes.length == 0 ? 0 : charCodes[0];
+            int entryCount = charCodes.length == 0 ? 0 : charCodes[charCodes.length - 1] - firstCode + 1;
+
             writer.writeUnsignedShort(formatNumber);
-            writer.writeUnsignedShort(rawReadData.length + 4);
-            writer.write(rawReadData);
+            writer.writeUnsignedShort(HEADER_SIZE + entryCount * 2);
+            writer.writeUnsignedShort((int) getLanguageId());
+            writer.writeUnsignedShort(firstCode);
+            writer.writeUnsignedShort(entryCount);
 
-            return writer.toByteArray();
+            int[] glyphIdArray = new int[entryCount];
+            for (int i = 0; i < charCodes.length; i++)
+                glyphIdArray[charCodes[i] - firstCode] = mapping.glyphIds[i];
+            for (int glyphOn : glyphIdArray)
+                writer.writeUnsignedShort(glyphOn);
         }
 
         public int glyphCount() {
             return 0;
         }
 
+        public void addGlyphMapping(int characterCode, int glyphId) {
+            charCodeToGlyphId.put(characterCode, glyphId);
+        }
+
         public void readData(FontDataInput input) throws IOException {
             int length = input.readUnsignedShort();
             rawReadData = input.readBytes(length - 4);
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
 
         }
     }
@@ -200,16 +265,13 @@ abstract class CmapSubTable {
             formatNumber = 8;
         }
 
-        public byte[] getData() throws IOException {
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
             writer.writeUnsignedShort(formatNumber);
             // reserved
             writer.writeUnsignedShort(0);
             writer.writeUnsignedInt(rawReadData.length + 8);
             writer.write(rawReadData);
-
-            return writer.toByteArray();
         }
 
         public int glyphCount() {
@@ -220,7 +282,7 @@ abstract class CmapSubTable {
             int reserved = input.readUnsignedShort();
             long length = input.readUnsignedInt();
             rawReadData = input.readBytes((int) (length - 8));
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
             languageId = input.readUnsignedInt();
         }
     }
@@ -230,16 +292,13 @@ abstract class CmapSubTable {
             formatNumber = 10;
         }
 
-        public byte[] getData() throws IOException {
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
             writer.writeUnsignedShort(formatNumber);
             // reserved
             writer.writeUnsignedShort(0);
             writer.writeUnsignedInt(rawReadData.length + 8);
             writer.write(rawReadData);
-
-            return writer.toByteArray();
         }
 
         public int glyphCount() {
@@ -250,39 +309,117 @@ abstract class CmapSubTable {
             int reserved = input.readUnsignedShort();
             long length = input.readUnsignedInt();
             rawReadData = input.readBytes((int) (length - 8));
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
             languageId = input.readUnsignedInt();
         }
     }
 
+    /**
+     * Segmented coverage, groups of consecutive char codes mapped to consecutive glyph ids. Covers the full unicode
+     * range so it's what supplementary plane char codes are mapped with.
+     */
     static class Format12SubTable extends CmapSubTable {
+        private static final int HEADER_SIZE = 16;
+        private static final int GROUP_SIZE = 12;
+        private static final int MAX_CHAR_CODE = 0x10FFFF;
+
+        private Map<Integer, Integer> charCodeToGlyphId = new LinkedHashMap<Integer, Integer>();
+        // groups as read, only expanded into the map when mappings are asked for since groups can be huge
+        private long[] groupStarts = new long[0];
+        private long[] groupEnds = new long[0];
+        private long[] groupStartGlyphs = new long[0];
+
         public Format12SubTable() {
             formatNumber = 12;
         }
 
-        public byte[] getData() throws IOException {
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+            if (rawReadData != null) {
+                writer.writeUnsignedShort(formatNumber);
+                // reserved
+                writer.writeUnsignedShort(0);
+                writer.writeUnsignedInt(rawReadData.length + 8);
+                writer.write(rawReadData);
+                return;
+            }
+
+            SortedMapping mapping = SortedMapping.of(charCodeToGlyphId, MAX_CHAR_CODE);
+            int[] charCodes = mapping.charCodes;
+            int[] glyphIds = mapping.glyphIds;
+
+            int groupCount = 0;
+            for (int i = 0; i < charCodes.length; i++) {
+                if (!continuesGroup(charCodes, glyphIds, i))
+                    groupCount++;
+            }
+
             writer.writeUnsignedShort(formatNumber);
             // reserved
             writer.writeUnsignedShort(0);
-            writer.writeUnsignedInt(rawReadData.length + 8);
-            writer.write(rawReadData);
+            writer.writeUnsignedInt(HEADER_SIZE + groupCount * GROUP_SIZE);
+            writer.writeUnsignedInt((int) getLanguageId());
+            writer.writeUnsignedInt(groupCount);
+
+            for (int i = 0; i < charCodes.length; i++) {
+                if (continuesGroup(charCodes, glyphIds, i))
+                    continue;
 
-            return writer.toByteArray();
+                int end = i;
+                while (end + 1 < charCodes.length && continuesGroup(charCodes, glyphIds, end + 1))
+                    end++;
+
+                writer.writeUnsignedInt(charCodes[i]);
+                writer.writeUnsignedInt(charCodes[end]);
+                writer.writeUnsignedInt(glyphIds[i]);
+            }
+        }
+
+        private static boolean continuesGroup(int[] charCodes, int[] glyphIds, int index) {
+            return index > 0 && charCodes[index] == charCodes[index - 1] + 1
+                    && glyphIds[index] == glyphIds[index - 1] + 1;
         }
 
         public int glyphCount() {
-            return 0;
+            long count = charCodeToGlyphId.size();
+            for (int i = 0; i < groupStarts.length; i++)
+                count += groupEnds[i] - groupStarts[i] + 1;
+
+            return count == 0 ? 0 : (int) Math.min(count + 1, Integer.MAX_VALUE);
+        }
+
+        public void addGlyphMapping(int characterCode, int glyphId) {
+            charCodeToGlyphId.put(characterCode, glyphId);
+        }
+
+        public List<GlyphMapping> getGlyphMappings() {
+            Map<Integer, Integer> mappings = new LinkedHashMap<Integer, Integer>();
+            for (int i = 0; i < groupStarts.length; i++) {
+                for (long charCode = groupStarts[i]; charCode <= groupEnds[i]; charCode++)
+                    mappings.put((int) charCode, (int) (groupStartGlyphs[i] + charCode - groupStarts[i]));
+            }
+            mappings.putAll(charCodeToGlyphId);
+
+            return GlyphMapReader.readCharCodesToGlyphs(mappings, CFFStandardEncoding.getInstance());
         }
 
         public void readData(FontDataInput input) throws IOException {
             int reserved = input.readUnsignedShort();
             long length = input.readUnsignedInt();
             rawReadData = input.readBytes((int) (length - 8));
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
 
             languageId = input.readUnsignedInt();
+            int groupCount = (int) Math.min(input.readUnsignedInt(), (rawReadData.length - 8) / GROUP_SIZE);
+            groupStarts = new long[groupCount];
+            groupEnds = new long[groupCount];
+            groupStartGlyphs = new long[groupCount];
+
+            for (int i = 0; i < groupCount; i++) {
+                groupStarts[i] = input.readUnsignedInt();
+                groupEnds[i] = Math.min(input.readUnsignedInt(), MAX_CHAR_CODE);
+                groupStartGlyphs[i] = input.readUnsignedInt();
+            }
         }
     }
 
@@ -291,16 +428,13 @@ abstract class CmapSubTable {
             formatNumber = 13;
         }
 
-        public byte[] getData() throws IOException {
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
             writer.writeUnsignedShort(formatNumber);
             // reserved
             writer.writeUnsignedShort(0);
             writer.writeUnsignedInt(rawReadData.length + 8);
             writer.write(rawReadData);
-
-            return writer.toByteArray();
         }
 
         public int glyphCount() {
@@ -311,7 +445,7 @@ abstract class CmapSubTable {
             int reserved = input.readUnsignedShort();
             long length = input.readUnsignedInt();
             rawReadData = input.readBytes((int) (length - 8));
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
 
             languageId = input.readUnsignedInt();
         }
@@ -322,14 +456,11 @@ abstract class CmapSubTable {
             formatNumber = 14;
         }
 
-        public byte[] getData() throws IOException {
+        public void writeData(FontDataOutputBuffer writer) throws IOException {
             // kludge for read otf fonts
-            FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
             writer.writeUnsignedShort(formatNumber);
             writer.writeUnsignedInt(rawReadData.length + 6);
             writer.write(rawReadData);
-
-            return writer.toByteArray();
         }
 
         public int glyphCount() {
@@ -339,7 +470,7 @@ abstract class CmapSubTable {
         public void readData(FontDataInput input) throws IOException {
             long length = input.readUnsignedInt();
             rawReadData = input.readBytes((int) (length - 6));
-            input = new FontDataInputStream(rawReadData);
+            input = new FontDataBuffer(rawReadData);
 
             languageId = input.readUnsignedInt();
         }
@@ -20,8 +20,8 @@ package org.mabb.fontverter.opentype;
 
 import org.mabb.fontverter.io.FontDataInput;
 import org.mabb.fontverter.opentype.GlyphMapReader.GlyphMapping;
-import org.mabb.fontverter.io.FontDataInputStream;
-import org.mabb.fontverter.io.FontDataOutputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
 import org.mabb.fontverter.io.DataTypeProperty;
 import org.mabb.fontverter.opentype.OtfNameConstants.OtfEncodingType;
 import org.slf4j.Logger;
@@ -31,14 +31,19 @@ import java.io.IOException;
 import java.util.*;
 
 import static org.mabb.fontverter.opentype.CmapSubTable.*;
-import static org.mabb.fontverter.opentype.CmapSubTable.CMAP_RECORD_BYTE_SIZE;
 
+@TableTag("cmap")
 public class CmapTable extends OpenTypeTable {
     private static Logger log = LoggerFactory.getLogger(CmapTable.class);
-    private static final int CMAP_HEADER_SIZE = 4;
+    private static final int MAX_BMP_CHAR_CODE = 0xFFFF;
+    // Mac Roman and unicode agree on the ASCII range
+    private static final int MAX_MAC_ROMAN_ASCII_CHAR_CODE = 0x7F;
+
     private Format4SubTable windowsTable;
     private Format4SubTable unixTable;
-    private Format0SubTable macTable;
+    private Format6SubTable macTable;
+    private Format12SubTable windowsFullTable;
+    private Format12SubTable unixFullTable;
 
     private List<CmapSubTable> subTables = new ArrayList<CmapSubTable>();
 
@@ -50,29 +55,43 @@ public class CmapTable extends OpenTypeTable {
         return subTables.size();
     }
 
-    public String getTableType() {
-        return "cmap";
-    }
-
     @Override
     protected byte[] generateUnpaddedData() throws IOException {
-        calculateOffsets();
-
-        FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+        FontDataOutputBuffer writer = new FontDataOutputBuffer();
         writer.write(super.generateUnpaddedData());
 
-        for (CmapSubTable tableOn : subTables) {
-            writer.write(tableOn.getRecordData());
-        }
+        int[] offsetPositions = new int[subTables.size()];
+        for (int i = 0; i < subTables.size(); i++)
+            offsetPositions[i] = subTables.get(i).writeRecord(writer);
+
+        // records with identical subtables, such as unicode and windows BMP ones, share one copy of the subtable
+        List<byte[]> written = new ArrayList<byte[]>();
+        List<Integer> writtenOffsets = new ArrayList<Integer>();
+        for (int i = 0; i < subTables.size(); i++) {
+            CmapSubTable tableOn = subTables.get(i);
+            byte[] data = tableOn.getData();
+
+            int offset = writer.currentPosition();
+            for (int j = 0; j < written.size(); j++) {
+                if (Arrays.equals(written.get(j), data))
+                    offset = writtenOffsets.get(j);
+            }
+
+            if (offset == writer.currentPosition()) {
+                written.add(data);
+                writtenOffsets.add(offset);
+                writer.write(data);
+            }
 
-        for (CmapSubTable tableOn : subTables)
-            writer.write(tableOn.getData());
+            tableOn.setSubTableOffset(offset);
+            writer.patchUnsignedInt(offsetPositions[i], offset);
+        }
 
         return writer.toByteArray();
     }
 
     public void readData(byte[] data) throws IOException {
-        FontDataInput input = new FontDataInputStream(data);
+        FontDataInput input = new FontDataBuffer(data);
         version = input.readUnsignedShort();
         int numTables = input.readUnsignedShort();
 
@@ -135,7 +154,7 @@ public class CmapTable extends OpenTypeTable {
         table.unixTable.setEncodingId(3);
         table.subTables.add(table.unixTable);
 
-        table.macTable = new Format0SubTable();
+        table.macTable = new Format6SubTable();
         table.macTable.setPlatformId(1);
         table.macTable.setEncodingId(0);
         table.subTables.add(table.macTable);
@@ -149,8 +168,44 @@ public class CmapTable extends OpenTypeTable {
     }
 
     public void addGlyphMapping(Integer charCode, Integer glyphId) {
-        windowsTable.addGlyphMapping(charCode, glyphId);
-        unixTable.addGlyphMapping(charCode, glyphId);
+        markDirty();
+        if (charCode > MAX_BMP_CHAR_CODE && windowsFullTable == null)
+            addFullRepertoireTables();
+
+        if (charCode <= MAX_BMP_CHAR_CODE) {
+            windowsTable.addGlyphMapping(charCode, glyphId);
+            unixTable.addGlyphMapping(charCode, glyphId);
+        }
+        if (charCode <= MAX_MAC_ROMAN_ASCII_CHAR_CODE)
+            macTable.addGlyphMapping(charCode, glyphId);
+
+        if (windowsFullTable != null) {
+            windowsFullTable.addGlyphMapping(charCode, glyphId);
+            unixFullTable.addGlyphMapping(charCode, glyphId);
+        }
+    }
+
+    /**
+     * Format 12 subtables for fonts with supplementary plane characters, the format 4 subtables are kept with the
+     * BMP mappings for older windows versions that require them.
+     */
+    private void addFullRepertoireTables() {
+        unixFullTable = new Format12SubTable();
+        unixFullTable.setPlatformId(0);
+        unixFullTable.setEncodingId(4);
+
+        windowsFullTable = new Format12SubTable();
+        windowsFullTable.setPlatformId(3);
+        windowsFullTable.setEncodingId(10);
+
+        for (GlyphMapping mappingOn : windowsTable.getGlyphMappings()) {
+            unixFullTable.addGlyphMapping(mappingOn.charCode, mappingOn.glyphId);
+            windowsFullTable.addGlyphMapping(mappingOn.charCode, mappingOn.glyphId);
+        }
+
+        // records have to be sorted by platform then encoding id
+        subTables.add(subTables.indexOf(unixTable) + 1, unixFullTable);
+        subTables.add(windowsFullTable);
     }
 
     public void addGlyphMapping(List<GlyphMapping> mapping) {
@@ -159,14 +214,22 @@ public class CmapTable extends OpenTypeTable {
     }
 
     public int getGlyphCount() {
-        if (subTables.size() == 0)
-            return 0;
+        CmapSubTable mappingTable = getMappingSubTable();
+        return mappingTable == null ? 0 : mappingTable.glyphCount();
+    }
+
+    private CmapSubTable getMappingSubTable() {
+        // format 12 subtables are a superset of the BMP only ones so are preferred when there is one
+        for (CmapSubTable subTableOn : subTables)
+            if (subTableOn instanceof Format12SubTable && subTableOn.glyphCount() != 0)
+                return subTableOn;
+
         // kludge to skip blind parsed subtables and should go off glyf/loca table anyway at least for ttf for maxp size?
         for (CmapSubTable subTableOn : subTables)
             if (subTableOn.glyphCount() != 0)
-                return subTableOn.glyphCount();
+                return subTableOn;
 
-        return 0;
+        return null;
     }
 
     public OtfEncodingType getCmapEncodingType() {
@@ -181,19 +244,12 @@ public class CmapTable extends OpenTypeTable {
     public List<GlyphMapping> getGlyphMappings() {
         if (subTables.size() == 0)
             return new ArrayList<GlyphMapping>();
+
         // kludge to skip blind parsed subtables and not having a abstract glyph mapping thing above the sub tables
-        for (CmapSubTable subTableOn : subTables)
-            if (subTableOn.glyphCount() != 0)
-                return subTableOn.getGlyphMappings();
+        CmapSubTable mappingTable = getMappingSubTable();
+        if (mappingTable != null)
+            return mappingTable.getGlyphMappings();
 
         return subTables.get(0).getGlyphMappings();
     }
-
-    private void calculateOffsets() throws IOException {
-        int offset = subTables.size() * CMAP_RECORD_BYTE_SIZE + CMAP_HEADER_SIZE;
-        for (CmapSubTable tableOn : subTables) {
-            tableOn.setSubTableOffset(offset);
-            offset += tableOn.getData().length;
-        }
-    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.mabb.fontverter.io.FontDataInput;
+import org.mabb.fontverter.io.FontDataOutput;
+
+import java.io.IOException;
+
+/**
+ * A single component record of a composite glyph, a reference to another glyph plus the offset or point matching
+ * arguments and optional transform used to place it.
+ */
+public class CompositeGlyphComponent {
+    static final int ARG_1_AND_2_ARE_WORDS = 0x0001;
+    static final int ARGS_ARE_XY_VALUES = 0x0002;
+    static final int WE_HAVE_A_SCALE = 0x0008;
+    static final int MORE_COMPONENTS = 0x0020;
+    static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x0040;
+    static final int WE_HAVE_A_TWO_BY_TWO = 0x0080;
+    static final int WE_HAVE_INSTRUCTIONS = 0x0100;
+
+    // flags describing how the record itself is laid out, these are recalculated on write
+    private static final int ENCODING_FLAGS = ARG_1_AND_2_ARE_WORDS | MORE_COMPONENTS | WE_HAVE_INSTRUCTIONS;
+
+    int flags;
+    int glyphIndex;
+    int argument1;
+    int argument2;
+
+    // F2Dot14 values as stored, 1 for a uniform scale, 2 for x and y scale or 4 for a 2x2 matrix
+    short[] transform = new short[0];
+
+    static CompositeGlyphComponent read(FontDataInput reader) throws IOException {
+        CompositeGlyphComponent component = new CompositeGlyphComponent();
+        component.flags = reader.readUnsignedShort();
+        component.glyphIndex = reader.readUnsignedShort();
+
+        boolean isWords = (component.flags & ARG_1_AND_2_ARE_WORDS) != 0;
+        if (isWords && component.areArgumentsXYValues()) {
+            component.argument1 = reader.readShort();
+            component.argument2 = reader.readShort();
+        } else if (isWords) {
+            component.argument1 = reader.readUnsignedShort();
+            component.argument2 = reader.readUnsignedShort();
+        } else if (component.areArgumentsXYValues()) {
+            component.argument1 = reader.readByte();
+            component.argument2 = reader.readByte();
+        } else {
+            component.argument1 = reader.readUnsignedByte();
+            component.argument2 = reader.readUnsignedByte();
+        }
+
+        component.transform = new short[transformLength(component.flags)];
+        for (int i = 0; i < component.transform.length; i++)
+            component.transform[i] = reader.readShort();
+
+        return component;
+    }
+
+    void write(FontDataOutput writer, boolean moreComponents, boolean hasInstructions) throws IOException {
+        int writeFlags = flags & ~ENCODING_FLAGS;
+        if (isWords())
+            writeFlags |= ARG_1_AND_2_ARE_WORDS;
+        if (moreComponents)
+            writeFlags |= MORE_COMPONENTS;
+        if (hasInstructions)
+            writeFlags |= WE_HAVE_INSTRUCTIONS;
+
+        writer.writeUnsignedShort(writeFlags);
+        writer.writeUnsignedShort(glyphIndex);
+
+        if (isWords()) {
+            writer.writeShort(argument1);
+            writer.writeShort(argument2);
+        } else {
+            writer.writeByte(argument1);
+            writer.writeByte(argument2);
+        }
+
+        for (short valueOn : transform)
+            writer.writeShort(valueOn);
+    }
+
+    int getLength() {
+        return 4 + (isWords() ? 4 : 2) + transform.length * 2;
+    }
+
+    /**
+     * Arguments are written as bytes whenever both fit, regardless of how the source font stored them.
+     */
+    private boolean isWords() {
+        if (areArgumentsXYValues())
+            return !fitsInByte(argument1, -128, 127) || !fitsInByte(argument2, -128, 127);
+
+        return !fitsInByte(argument1, 0, 255) || !fitsInByte(argument2, 0, 255);
+    }
+
+    private static boolean fitsInByte(int value, int min, int max) {
+        return value >= min && value <= max;
+    }
+
+    private static int transformLength(int flags) {
+        if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0)
+            return 4;
+        if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0)
+            return 2;
+        if ((flags & WE_HAVE_A_SCALE) != 0)
+            return 1;
+
+        return 0;
+    }
+
+    boolean hasMoreComponents() {
+        return (flags & MORE_COMPONENTS) != 0;
+    }
+
+    boolean hasInstructions() {
+        return (flags & WE_HAVE_INSTRUCTIONS) != 0;
+    }
+
+    public int getGlyphIndex() {
+        return glyphIndex;
+    }
+
+    /**
+     * True when the arguments are an x/y offset, otherwise they are point numbers to match up in the parent and
+     * component glyphs.
+     */
+    public boolean areArgumentsXYValues() {
+        return (flags & ARGS_ARE_XY_VALUES) != 0;
+    }
+
+    public int getArgument1() {
+        return argument1;
+    }
+
+    public int getArgument2() {
+        return argument2;
+    }
+
+    /**
+     * The component's transform as a 2x2 matrix in xx, xy, yx, yy order.
+     */
+    public double[] getTransform() {
+        if (transform.length == 4)
+            return new double[]{f2Dot14(transform[0]), f2Dot14(transform[1]), f2Dot14(transform[2]),
+                    f2Dot14(transform[3])};
+        if (transform.length == 2)
+            return new double[]{f2Dot14(transform[0]), 0, 0, f2Dot14(transform[1])};
+        if (transform.length == 1)
+            return new double[]{f2Dot14(transform[0]), 0, 0, f2Dot14(transform[0])};
+
+        return new double[]{1, 0, 0, 1};
+    }
+
+    private static double f2Dot14(short value) {
+        return value / 16384d;
+    }
+}
@@ -17,7 +17,7 @@
 
 package org.mabb.fontverter.opentype;
 
-import org.mabb.fontverter.io.FontDataInputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
 import org.mabb.fontverter.io.FontDataOutputStream;
 import org.slf4j.Logger;
 
@@ -28,16 +28,13 @@ import java.util.List;
 import static org.mabb.fontverter.io.FontDataOutputStream.OPEN_TYPE_CHARSET;
 import static org.slf4j.LoggerFactory.getLogger;
 
+@TableTag("cvt ")
 public class ControlValueTable extends OpenTypeTable {
     private static final Logger log = getLogger(ControlValueTable.class);
     private List<Short> values = new LinkedList<Short>();
 
-    public String getTableType() {
-        return "cvt ";
-    }
-
     public void readData(byte[] data) throws IOException {
-        FontDataInputStream input = new FontDataInputStream(data);
+        FontDataBuffer input = new FontDataBuffer(data);
         while (input.available() >= 2)
             values.add(input.readShort());
 
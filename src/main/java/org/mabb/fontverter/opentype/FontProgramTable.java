@@ -24,14 +24,11 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
+@TableTag("fpgm")
 public class FontProgramTable extends OpenTypeTable {
     private byte[] rawInstructions = new byte[0];
     private List<TtfInstruction> instructions = new LinkedList<TtfInstruction>();
 
-    public String getTableType() {
-        return "fpgm";
-    }
-
     public void readData(byte[] data) throws IOException {
         rawInstructions = data;
 
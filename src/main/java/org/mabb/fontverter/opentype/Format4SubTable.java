@@ -19,8 +19,8 @@ package org.mabb.fontverter.opentype;
 
 import org.apache.fontbox.cff.CFFStandardEncoding;
 import org.mabb.fontverter.io.FontDataInput;
-import org.mabb.fontverter.io.FontDataInputStream;
-import org.mabb.fontverter.io.FontDataOutputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
 import org.slf4j.Logger;
 
 import java.io.IOException;
@@ -31,167 +31,196 @@ import static org.slf4j.LoggerFactory.getLogger;
 class Format4SubTable extends CmapSubTable {
     private static final Logger log = getLogger(Format4SubTable.class);
 
-    private static final int FORMAT4_HEADER_SIZE = 16;
+    private static final int HEADER_SIZE = 16;
+    // end, start, idDelta and idRangeOffset entries
+    private static final int SEGMENT_SIZE = 8;
+    private static final int MAX_CHAR_CODE = 0xFFFE;
+    // bounds how far back run merging looks so encoding stays linear for big CJK cmaps
+    private static final int MAX_MERGED_RUNS = 256;
+
     // LinkedHashMap important, for keeping ordering the same for loops
     private Map<Integer, Integer> charCodeToGlyphId = new LinkedHashMap<Integer, Integer>();
-    List<Integer> deltas;
-    List<Integer> ends;
-    List<Integer> starts;
-    List<Integer> idRangeOffsets;
-    List<List<IndexedGlyph>> idRangeGlyphs;
 
-    private int glyphsStartPos;
+    // segments from the last write, not including the final 0xFFFF segment
+    int[] starts;
+    int[] ends;
+    int[] deltas;
+    int[] idRangeOffsets;
+    int[] glyphIdArray;
 
     public Format4SubTable() {
         formatNumber = 4;
     }
 
-    public byte[] getData() throws IOException {
-        FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+    public void writeData(FontDataOutputBuffer writer) throws IOException {
         // kludge for read otf fonts
         if (rawReadData != null) {
             writer.writeUnsignedShort(formatNumber);
             writer.writeUnsignedShort(rawReadData.length + 4);
             writer.write(rawReadData);
-
-            return writer.toByteArray();
+            return;
         }
 
-        calculateSegments();
+        calculateSegments(SortedMapping.of(charCodeToGlyphId, MAX_CHAR_CODE));
+        int segmentCount = getSegmentCount();
+        int length = HEADER_SIZE + segmentCount * SEGMENT_SIZE + glyphIdArray.length * 2;
+        if (length > 0xFFFF)
+            throw new IOException("Too many character mappings for a format 4 cmap subtable, length " + length);
 
-        writer.writeUnsignedShort((int) formatNumber);
-        writer.writeUnsignedShort(getLength());
+        writer.writeUnsignedShort(formatNumber);
+        writer.writeUnsignedShort(length);
         writer.writeUnsignedShort((int) getLanguageId());
 
-        writer.writeUnsignedShort(getSegmentCount() * 2);
-        writer.writeUnsignedShort(getSearchRange());
-        writer.writeUnsignedShort(getEntrySelector());
-        writer.writeUnsignedShort(getRangeShift());
+        int searchRange = 2 * Integer.highestOneBit(segmentCount);
+        writer.writeUnsignedShort(segmentCount * 2);
+        writer.writeUnsignedShort(searchRange);
+        writer.writeUnsignedShort(Integer.numberOfTrailingZeros(searchRange / 2));
+        writer.writeUnsignedShort(segmentCount * 2 - searchRange);
 
-        for (Integer endEntryOn : ends)
-            writer.writeUnsignedShort(endEntryOn);
+        for (int endOn : ends)
+            writer.writeUnsignedShort(endOn);
         // array end code
-        writer.writeUnsignedShort(65535);
+        writer.writeUnsignedShort(0xFFFF);
 
         // 'reservedPad' Set to 0
         writer.writeUnsignedShort(0);
 
-        for (Integer startEntryOn : starts)
-            writer.writeUnsignedShort(startEntryOn);
+        for (int startOn : starts)
+            writer.writeUnsignedShort(startOn);
         // array end code
-        writer.writeUnsignedShort(65535);
+        writer.writeUnsignedShort(0xFFFF);
 
-        for (Integer deltaEntryOn : deltas)
-            writer.writeUnsignedShort(deltaEntryOn);
-        // array end code
+        for (int deltaOn : deltas)
+            writer.writeUnsignedShort(deltaOn);
+        // array end code, maps 0xFFFF to glyph 0
         writer.writeUnsignedShort(1);
 
-        for (Integer rangeOffsets : idRangeOffsets)
-            writer.writeUnsignedShort(0);
-//            writer.writeUnsignedShort(rangeOffsets);
+        for (int rangeOffsetOn : idRangeOffsets)
+            writer.writeUnsignedShort(rangeOffsetOn);
         // array end code
         writer.writeUnsignedShort(0);
 
-//        writeIndexedGlyphs(writer);
-
-        byte[] data = writer.toByteArray();
-        setDataHeaderLength(data);
-        return data;
+        for (int glyphOn : glyphIdArray)
+            writer.writeUnsignedShort(glyphOn);
     }
 
-    private void writeIndexedGlyphs(FontDataOutputStream writer) throws IOException {
-        glyphsStartPos = writer.currentPosition();
-
-        for (int segIndex = 0; segIndex < idRangeOffsets.size(); segIndex++) {
-            Integer idRangeOn = idRangeOffsets.get(segIndex);
-            if (idRangeOn == 0)
-                continue;
-
-            writeSegmentGlyphs(writer, segIndex);
+    /**
+     * Splits the mapping into runs of consecutive char codes mapped to consecutive glyph ids, each of which fits in
+     * one idDelta segment. Neighbouring runs are merged into a single idRangeOffset segment with a glyph id array
+     * wherever that is smaller than giving each run its own segment, unmapped codes in a merged segment get glyph 0.
+     */
+    private void calculateSegments(SortedMapping mapping) {
+        int[] charCodes = mapping.charCodes;
+        int[] glyphIds = mapping.glyphIds;
+
+        int[] runStarts = new int[charCodes.length + 1];
+        int runCount = 0;
+        for (int i = 0; i < charCodes.length; i++) {
+            boolean continuesRun = i > 0 && charCodes[i] == charCodes[i - 1] + 1 && glyphIds[i] == glyphIds[i - 1] + 1;
+            if (!continuesRun)
+                runStarts[runCount++] = i;
+        }
+        runStarts[runCount] = charCodes.length;
+
+        // cheapest encoding of the first n runs and where the last segment of it starts
+        long[] cost = new long[runCount + 1];
+        int[] segmentStart = new int[runCount + 1];
+        for (int end = 1; end <= runCount; end++) {
+            cost[end] = cost[end - 1] + SEGMENT_SIZE;
+            segmentStart[end] = end - 1;
+
+            int lastCode = charCodes[runStarts[end] - 1];
+            for (int first = end - 2; first >= 0 && first >= end - MAX_MERGED_RUNS; first--) {
+                long merged = cost[first] + SEGMENT_SIZE + 2L * (lastCode - charCodes[runStarts[first]] + 1);
+                if (merged < cost[end]) {
+                    cost[end] = merged;
+                    segmentStart[end] = first;
+                }
+            }
         }
-    }
-
-    private void writeSegmentGlyphs(FontDataOutputStream writer, int segIndex) throws IOException {
-        Integer idRangeOn = idRangeOffsets.get(segIndex);
-
-        List<IndexedGlyph> glyphs = idRangeGlyphs.get(segIndex);
-        for (int glyphIndex = 0; glyphIndex < glyphs.size(); glyphIndex++) {
-            int position = writer.currentPosition();
-
-            long glyphOffset = glyphsStartPos + ((idRangeOn / 2) + glyphIndex + (segIndex - getSegmentCount())) * 2;
 
-            int paddingNeeded = (int) (glyphOffset - position - 1);
-            if (paddingNeeded > 0)
-                writer.write(new byte[paddingNeeded]);
+        List<int[]> segments = new LinkedList<int[]>();
+        for (int end = runCount; end > 0; end = segmentStart[end])
+            segments.add(0, new int[]{segmentStart[end], end});
 
-            IndexedGlyph glyphOn = glyphs.get(glyphIndex);
-            writer.writeUnsignedShort(glyphOn.glyphId);
+        while (splitOverflowingSegments(segments, charCodes, runStarts))
+            log.debug("Split cmap format 4 glyph id array segments with idRangeOffsets past 0xFFFF");
 
-            log.warn(String.format("Wrote cmapsub4 indexed glyph. glyphId:%d glyphOffset:%d idRangeOffset: %d charCode:%d",
-                    glyphOn.glyphId, glyphOffset, idRangeOn, glyphOn.charCode));
-        }
+        writeSegments(segments, charCodes, glyphIds, runStarts);
     }
 
-    private void calculateSegments() {
-        initSegments();
-        List<Map.Entry<Integer, Integer>> entries = getOrderedCharCodeToGlyphIds();
+    /**
+     * idRangeOffsets are 16 bit offsets from the entry itself into the glyph id array, array segments too far along
+     * are split back into idDelta segments.
+     *
+     * @return true if segments were split and offsets need checking again
+     */
+    private static boolean splitOverflowingSegments(List<int[]> segments, int[] charCodes, int[] runStarts) {
+        int segmentCount = segments.size() + 1;
+        int arrayPosition = 0;
+
+        for (int i = 0; i < segments.size(); i++) {
+            int[] segmentOn = segments.get(i);
+            if (segmentOn[1] - segmentOn[0] == 1)
+                continue;
 
-        // cmaps can be big so keep track of count of range offsets that are set and all of
-        // segment calcs in one big ugly loop for same reason and ugly 5 param sub methods
-        // that would have to be created elsewise.
-        int numSetOffsets = 0;
-        int lastCharCode = -1;
-        int lastGlyphId = -1;
+            if (2L * (segmentCount - i) + 2L * arrayPosition <= 0xFFFF) {
+                arrayPosition += charCodes[runStarts[segmentOn[1]] - 1] - charCodes[runStarts[segmentOn[0]]] + 1;
+                continue;
+            }
 
-        for (Map.Entry<Integer, Integer> entryOn : entries) {
-            int charCodeOn = entryOn.getKey();
-            int glyphIdOn = entryOn.getValue();
-            int delta = glyphIdOn - charCodeOn;
+            List<int[]> split = new ArrayList<int[]>(segments.subList(0, i));
+            for (int[] toSplit : segments.subList(i, segments.size())) {
+                for (int runOn = toSplit[0]; runOn < toSplit[1]; runOn++)
+                    split.add(new int[]{runOn, runOn + 1});
+            }
 
-            boolean needAddSegment = charCodeOn != lastCharCode + 1 || lastGlyphId + 1 != glyphIdOn;
+            segments.clear();
+            segments.addAll(split);
+            return true;
+        }
 
-            if (needAddSegment) {
-                starts.add(charCodeOn);
-                deltas.add(delta);
+        return false;
+    }
 
-                if (delta < 0) {
-                    idRangeOffsets.add((numSetOffsets + 1) * 2);
-                    numSetOffsets++;
-                } else
-                    idRangeOffsets.add(0);
+    private void writeSegments(List<int[]> segments, int[] charCodes, int[] glyphIds, int[] runStarts) {
+        int segmentCount = segments.size();
+        starts = new int[segmentCount];
+        ends = new int[segmentCount];
+        deltas = new int[segmentCount];
+        idRangeOffsets = new int[segmentCount];
+
+        int arrayLength = 0;
+        for (int[] segmentOn : segments) {
+            if (segmentOn[1] - segmentOn[0] > 1)
+                arrayLength += charCodes[runStarts[segmentOn[1]] - 1] - charCodes[runStarts[segmentOn[0]]] + 1;
+        }
+        glyphIdArray = new int[arrayLength];
 
-                idRangeGlyphs.add(new LinkedList<IndexedGlyph>());
-            }
+        int arrayPosition = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            int firstIndex = runStarts[segments.get(i)[0]];
+            int endIndex = runStarts[segments.get(i)[1]];
+            starts[i] = charCodes[firstIndex];
+            ends[i] = charCodes[endIndex - 1];
 
-            int lastDeltaOn = deltas.get(deltas.size() - 1);
-            if (lastDeltaOn < 0) {
-                List<IndexedGlyph> rangeGlyphs = idRangeGlyphs.get(idRangeGlyphs.size() - 1);
-                rangeGlyphs.add(new IndexedGlyph(glyphIdOn, charCodeOn));
+            if (segments.get(i)[1] - segments.get(i)[0] == 1) {
+                deltas[i] = (glyphIds[firstIndex] - charCodes[firstIndex]) & 0xFFFF;
+                continue;
             }
 
-            if (needAddSegment && lastCharCode != -1)
-                ends.add(lastCharCode);
-
-            lastCharCode = charCodeOn;
+            // + 1 for the final 0xFFFF segment
+            idRangeOffsets[i] = 2 * (segmentCount + 1 - i) + 2 * arrayPosition;
+            for (int mappingOn = firstIndex; mappingOn < endIndex; mappingOn++)
+                glyphIdArray[arrayPosition + charCodes[mappingOn] - starts[i]] = glyphIds[mappingOn];
+            arrayPosition += ends[i] - starts[i] + 1;
         }
-
-        // add last one not caught in loop
-        if (entries.size() >= 1)
-            ends.add(entries.get(entries.size() - 1).getKey());
-    }
-
-    private void initSegments() {
-        deltas = new LinkedList<Integer>();
-        starts = new LinkedList<Integer>();
-        ends = new LinkedList<Integer>();
-        idRangeOffsets = new LinkedList<Integer>();
-        idRangeGlyphs = new LinkedList<List<IndexedGlyph>>();
     }
 
     public void readData(FontDataInput input) throws IOException {
         int length = input.readUnsignedShort();
         rawReadData = input.readBytes(length - 4);
-        input = new FontDataInputStream(rawReadData);
+        input = new FontDataBuffer(rawReadData);
 
         languageId = input.readUnsignedShort();
         int segmentCount = input.readUnsignedShort() / 2;
@@ -233,42 +262,13 @@ class Format4SubTable extends CmapSubTable {
         }
     }
 
-    private void setDataHeaderLength(byte[] data) throws IOException {
-        FontDataOutputStream lengthWriter = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
-        lengthWriter.writeUnsignedShort(data.length);
-        byte[] lengthData = lengthWriter.toByteArray();
-        data[2] = lengthData[0];
-        data[3] = lengthData[1];
-    }
-
     public int glyphCount() {
         return charCodeToGlyphId.size() + 1;
     }
 
     private int getSegmentCount() {
-        // +1 for padding at end of segment arrays
-        return ends.size() + 1;
-    }
-
-    private int getSearchRange() {
-        double logFloor = Math.floor(log2(getSegmentCount()));
-        return (int) (2 * (Math.pow(2, logFloor)));
-    }
-
-    private int getEntrySelector() {
-        return (int) log2(getSearchRange() / 2);
-    }
-
-    private int getRangeShift() {
-        return 2 * getSegmentCount() - getSearchRange();
-    }
-
-    private double log2(int number) {
-        return Math.log(number) / Math.log(2);
-    }
-
-    private int getLength() {
-        return FORMAT4_HEADER_SIZE + ((charCodeToGlyphId.size()) * 8);
+        // +1 for the final 0xFFFF segment
+        return ends.length + 1;
     }
 
     public void addGlyphMapping(int characterCode, int glyphId) {
@@ -278,29 +278,4 @@ class Format4SubTable extends CmapSubTable {
     public List<GlyphMapReader.GlyphMapping> getGlyphMappings() {
         return GlyphMapReader.readCharCodesToGlyphs(charCodeToGlyphId, CFFStandardEncoding.getInstance());
     }
-
-    private List<Map.Entry<Integer, Integer>> getOrderedCharCodeToGlyphIds() {
-        List<Map.Entry<Integer, Integer>> charCodeEntries = new ArrayList<Map.Entry<Integer, Integer>>();
-        for (Map.Entry<Integer, Integer> entryOn : charCodeToGlyphId.entrySet())
-            charCodeEntries.add(entryOn);
-
-        Collections.sort(charCodeEntries, new Comparator<Map.Entry<Integer, Integer>>() {
-            @Override
-            public int compare(Map.Entry<Integer, Integer> o1, Map.Entry<Integer, Integer> o2) {
-                return o1.getKey() < o2.getKey() ? -1 : o1.getKey().equals(o2.getKey()) ? 0 : 1;
-            }
-        });
-
-        return charCodeEntries;
-    }
-
-    private static class IndexedGlyph {
-        public int glyphId;
-        public int charCode;
-
-        public IndexedGlyph(int glyphId, int charCode) {
-            this.glyphId = glyphId;
-            this.charCode = charCode;
-        }
-    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Splits work over a glyph index range into chunks that run on a shared pool of daemon threads. Each chunk owns
+ * a contiguous index range and writes only to its own slots of the caller's result arrays, so results stay in
+ * glyph order no matter which chunk finishes first. Small ranges are run on the calling thread.
+ */
+class GlyphChunks {
+    // below this many glyphs handing off to other threads costs more than it saves
+    static final int DEFAULT_PARALLEL_THRESHOLD = 2048;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static ExecutorService executor;
+
+    interface ChunkTask {
+        void run(int start, int end) throws IOException;
+    }
+
+    static void run(int count, int parallelThreshold, final ChunkTask task) throws IOException {
+        if (count < parallelThreshold || count < 2) {
+            task.run(0, count);
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(1, (count + threads * CHUNKS_PER_THREAD - 1) / (threads * CHUNKS_PER_THREAD));
+
+        List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+        for (int start = 0; start < count; start += chunkSize) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(count, start + chunkSize);
+
+            chunks.add(getExecutor().submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    task.run(chunkStart, chunkEnd);
+                    return null;
+                }
+            }));
+        }
+
+        waitForChunks(chunks);
+    }
+
+    private static void waitForChunks(List<Future<Void>> chunks) throws IOException {
+        try {
+            for (Future<Void> chunkOn : chunks)
+                chunkOn.get();
+        } catch (InterruptedException ex) {
+            cancel(chunks);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing glyphs");
+        } catch (ExecutionException ex) {
+            cancel(chunks);
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new IOException("Error processing glyphs", cause);
+        }
+    }
+
+    private static void cancel(List<Future<Void>> chunks) {
+        for (Future<Void> chunkOn : chunks)
+            chunkOn.cancel(true);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private int threadCount = 0;
+
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "fontverter-glyphs-" + ++threadCount);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+}
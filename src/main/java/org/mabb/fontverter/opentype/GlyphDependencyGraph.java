@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.slf4j.Logger;
+
+import java.util.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Component references between the glyphs of a glyf table, glyph ids are indexes into the table's glyph list.
+ * Walks over the graph are iterative so deeply nested composites can't overflow the stack, and component ids
+ * outside of the table are ignored.
+ */
+public class GlyphDependencyGraph {
+    private static final Logger log = getLogger(GlyphDependencyGraph.class);
+    private static final int[] NO_GLYPHS = new int[0];
+
+    private final int[][] components;
+    private final int[][] dependents;
+
+    GlyphDependencyGraph(List<TtfGlyph> glyphs) {
+        int glyphCount = glyphs.size();
+        components = new int[glyphCount][];
+        int[] dependentCounts = new int[glyphCount];
+
+        for (int i = 0; i < glyphCount; i++) {
+            components[i] = componentIds(glyphs.get(i), glyphCount);
+            for (int componentOn : components[i])
+                dependentCounts[componentOn]++;
+        }
+
+        dependents = new int[glyphCount][];
+        for (int i = 0; i < glyphCount; i++)
+            dependents[i] = dependentCounts[i] == 0 ? NO_GLYPHS : new int[dependentCounts[i]];
+
+        int[] filled = new int[glyphCount];
+        for (int i = 0; i < glyphCount; i++) {
+            for (int componentOn : components[i])
+                dependents[componentOn][filled[componentOn]++] = i;
+        }
+    }
+
+    private static int[] componentIds(TtfGlyph glyph, int glyphCount) {
+        List<CompositeGlyphComponent> glyphComponents = glyph.getComponents();
+        if (glyphComponents.isEmpty())
+            return NO_GLYPHS;
+
+        int[] ids = new int[glyphComponents.size()];
+        int count = 0;
+        for (CompositeGlyphComponent componentOn : glyphComponents) {
+            if (componentOn.getGlyphIndex() < glyphCount)
+                ids[count++] = componentOn.getGlyphIndex();
+            else
+                log.warn("Composite glyph component references glyph outside of glyf table " +
+                        componentOn.getGlyphIndex());
+        }
+
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    public int getGlyphCount() {
+        return components.length;
+    }
+
+    /**
+     * Glyph ids directly referenced as components by the glyph.
+     */
+    public int[] getComponents(int glyphId) {
+        return components[glyphId].clone();
+    }
+
+    /**
+     * Glyph ids of the composite glyphs directly referencing the glyph as a component.
+     */
+    public int[] getDependents(int glyphId) {
+        return dependents[glyphId].clone();
+    }
+
+    /**
+     * The given glyphs plus every glyph they reference through components at any depth.
+     */
+    public SortedSet<Integer> getClosure(Collection<Integer> glyphIds) {
+        BitSet reached = new BitSet(components.length);
+        int[] stack = new int[Math.max(glyphIds.size(), 16)];
+        int stackSize = 0;
+
+        for (Integer glyphOn : glyphIds) {
+            if (glyphOn >= 0 && glyphOn < components.length && !reached.get(glyphOn)) {
+                reached.set(glyphOn);
+                stack[stackSize++] = glyphOn;
+            }
+        }
+
+        while (stackSize > 0) {
+            int glyphOn = stack[--stackSize];
+            for (int componentOn : components[glyphOn]) {
+                if (reached.get(componentOn))
+                    continue;
+
+                reached.set(componentOn);
+                if (stackSize == stack.length)
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[stackSize++] = componentOn;
+            }
+        }
+
+        SortedSet<Integer> closure = new TreeSet<Integer>();
+        for (int i = reached.nextSetBit(0); i >= 0; i = reached.nextSetBit(i + 1))
+            closure.add(i);
+
+        return closure;
+    }
+
+    /**
+     * All glyph ids ordered so every glyph comes after the glyphs it uses as components. Glyphs caught in a
+     * component cycle, which is invalid but seen in broken fonts, are put at the end in id order.
+     */
+    public int[] getComponentOrder() {
+        int glyphCount = components.length;
+        int[] remainingComponents = new int[glyphCount];
+        int[] order = new int[glyphCount];
+        int ordered = 0;
+
+        for (int i = 0; i < glyphCount; i++) {
+            remainingComponents[i] = components[i].length;
+            if (remainingComponents[i] == 0)
+                order[ordered++] = i;
+        }
+
+        // order doubles as the work queue, everything before next has had its dependents visited
+        for (int next = 0; next < ordered; next++) {
+            for (int dependentOn : dependents[order[next]]) {
+                if (--remainingComponents[dependentOn] == 0)
+                    order[ordered++] = dependentOn;
+            }
+        }
+
+        if (ordered < glyphCount) {
+            log.warn("Composite glyph component cycle found, " + (glyphCount - ordered) + " glyphs affected");
+            for (int i = 0; i < glyphCount; i++) {
+                if (remainingComponents[i] > 0)
+                    order[ordered++] = i;
+            }
+        }
+
+        return order;
+    }
+}
@@ -22,23 +22,22 @@ import org.mabb.fontverter.io.DataTypeProperty.DataType;
 import org.slf4j.Logger;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
+@TableTag("loca")
 public class GlyphLocationTable extends OpenTypeTable {
     private static final Logger log = getLogger(GlyphLocationTable.class);
+    private static final long MAX_SHORT_OFFSET = 0x1FFFE;
 
     @DataTypeProperty(dataType = DataType.USHORT, isArray = true, ignoreIf = "isLongOffsets", arrayLength = "getNumGlyphs")
-    Integer[] shortOffsets;
+    int[] shortOffsets;
 
     @DataTypeProperty(dataType = DataType.ULONG, isArray = true, includeIf = "isLongOffsets", arrayLength = "getNumGlyphs")
-    Long[] longOffsets;
+    long[] longOffsets;
 
-    public String getTableType() {
-        return "loca";
-    }
+    // short offsets doubled, worked out once rather than on every getOffsetValues call
+    private long[] expandedShortOffsets;
 
     public int getNumGlyphs() {
         return font.getMxap().getNumGlyphs() + 1;
@@ -48,38 +47,75 @@ public class GlyphLocationTable extends OpenTypeTable {
         return font.getHead().isLongIndexToLocFormat();
     }
 
+    public void readData(byte[] data) throws IOException {
+        super.readData(data);
+        expandedShortOffsets = null;
+    }
+
+    boolean isChangedByNormalize() {
+        // an unparsed glyf table can't have been changed, checking it mustn't parse it
+        OpenTypeTable glyf = font.getTableWithoutParsing("glyf");
+        return glyf != null && glyf.isDirty();
+    }
+
     void normalize() throws IOException {
-        GlyphTable glyf = font.getGlyfTable();
-        if (glyf == null)
+        // offsets only change when the glyphs do, an untouched glyf table is written back with its original loca
+        if (!isChangedByNormalize())
             return;
 
-        List<Long> offsets = new LinkedList<Long>();
-        offsets.add(0L);
+        GlyphTable glyf = font.getGlyfTable();
+
+        // reuses the glyf table's encoded glyphs so they aren't all encoded a second time just for their lengths
+        byte[][] encodedGlyphs = glyf.getEncodedGlyphs();
+        long[] offsets = new long[encodedGlyphs.length + 1];
+        for (int i = 0; i < encodedGlyphs.length; i++)
+            offsets[i + 1] = offsets[i] + encodedGlyphs[i].length;
 
-        int posOn = 0;
-        for (TtfGlyph glyphOn : glyf.getGlyphs()) {
-            posOn += (long) glyphOn.generateData().length;
-            offsets.add((long) posOn);
+        // short offsets are stored halved in a ushort, so a glyf table that grew past 0x1FFFE needs long ones
+        if (!isLongOffsets() && offsets[offsets.length - 1] > MAX_SHORT_OFFSET) {
+            log.info("glyf table is larger than short loca offsets can address, switching to long offsets");
+            font.getHead().setLongIndexToLocFormat(true);
         }
 
         if (isLongOffsets()) {
-            longOffsets = offsets.toArray(new Long[offsets.size()]);
+            longOffsets = offsets;
         } else {
-            shortOffsets = new Integer[offsets.size()];
-            for (int i = 0; i < offsets.size(); i++) {
-                shortOffsets[i] = (int) (offsets.get(i) / 2);
-            }
+            shortOffsets = new int[offsets.length];
+            for (int i = 0; i < offsets.length; i++)
+                shortOffsets[i] = (int) (offsets[i] / 2);
+            expandedShortOffsets = offsets;
         }
+        markDirty();
     }
 
+    /**
+     * @return glyph offsets into the glyf table in bytes whichever format they're stored in, a boxed copy of
+     * {@link #getOffsetValues()}
+     */
     public Long[] getOffsets() {
+        long[] offsets = getOffsetValues();
+        Long[] boxed = new Long[offsets.length];
+        for (int i = 0; i < offsets.length; i++)
+            boxed[i] = offsets[i];
+
+        return boxed;
+    }
+
+    /**
+     * @return glyph offsets into the glyf table in bytes whichever format they're stored in, the array is shared
+     * so it mustn't be modified
+     */
+    public long[] getOffsetValues() {
         if (isLongOffsets())
             return longOffsets;
 
-        Long[] calcedShortOffsets = new Long[shortOffsets.length];
-        for (int i = 0; i < shortOffsets.length; i++)
-            calcedShortOffsets[i] = (long) (shortOffsets[i] * 2);
+        if (expandedShortOffsets == null) {
+            long[] offsets = new long[shortOffsets.length];
+            for (int i = 0; i < shortOffsets.length; i++)
+                offsets[i] = shortOffsets[i] * 2L;
+            expandedShortOffsets = offsets;
+        }
 
-        return calcedShortOffsets;
+        return expandedShortOffsets;
     }
 }
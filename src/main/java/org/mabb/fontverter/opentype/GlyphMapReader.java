@@ -26,16 +26,20 @@ import java.util.*;
 public class GlyphMapReader {
     private static Logger log = LoggerFactory.getLogger(GlyphMapReader.class);
 
+    // weak so encodings of fonts that are done with can still be collected
+    private static final Map<Encoding, NameIndex> nameIndexes = new WeakHashMap<Encoding, NameIndex>();
+
     public static List<GlyphMapping> readGlyphsToNames(Map<Integer, String> idToNames, Encoding encoding) {
         List<GlyphMapping> glyphMappings = new ArrayList<GlyphMapping>();
         Map<Integer, Integer> usedCodes = new HashMap<Integer, Integer>();
+        Map<String, int[]> codesByName = getNameIndex(encoding);
 
         for (Map.Entry<Integer, String> nameSetOn : idToNames.entrySet()) {
             String name = nameSetOn.getValue();
             if (symbolCharToWord.containsKey(name))
                 name = symbolCharToWord.get(name);
 
-            int charCode = nameToCode(name, encoding, usedCodes);
+            int charCode = nameToCode(name, codesByName, usedCodes);
             int glyphId = nameSetOn.getKey();
 
             if (charCode != 0)
@@ -61,16 +65,20 @@ public class GlyphMapReader {
         return glyphMappings;
     }
 
-    private static int nameToCode(String name, Encoding encoding, Map<Integer, Integer> usedCodes) {
+    private static int nameToCode(String name, Map<String, int[]> codesByName, Map<Integer, Integer> usedCodes) {
         if (symbolCharToWord.containsKey(name))
             name = symbolCharToWord.get(name);
 
+        // last unused code in the encoding's order, same pick as scanning the encoding's whole code to name map
         int code = 0;
-        for (Map.Entry<Integer, String> entryOn : encoding.getCodeToNameMap().entrySet()) {
-            int codeOn = entryOn.getKey();
-
-            if (entryOn.getValue().equals(name) && !usedCodes.containsKey(codeOn))
-                code = entryOn.getKey();
+        int[] codes = codesByName.get(name);
+        if (codes != null) {
+            for (int i = codes.length - 1; i >= 0; i--) {
+                if (!usedCodes.containsKey(codes[i])) {
+                    code = codes[i];
+                    break;
+                }
+            }
         }
 
         // glyph names can map to multiple id's so we have to remove the id from our search after mapping
@@ -79,6 +87,47 @@ public class GlyphMapReader {
         return code;
     }
 
+    /**
+     * Codes for each glyph name in the encoding in the encoding's code to name map order. Built once per encoding
+     * and cached, rebuilt if the encoding has had codes added since.
+     */
+    static Map<String, int[]> getNameIndex(Encoding encoding) {
+        Map<Integer, String> codeToName = encoding.getCodeToNameMap();
+
+        synchronized (nameIndexes) {
+            NameIndex index = nameIndexes.get(encoding);
+            if (index != null && index.encodingSize == codeToName.size())
+                return index.codesByName;
+
+            Map<String, List<Integer>> codeLists = new HashMap<String, List<Integer>>();
+            for (Map.Entry<Integer, String> entryOn : codeToName.entrySet()) {
+                List<Integer> codes = codeLists.get(entryOn.getValue());
+                if (codes == null) {
+                    codes = new ArrayList<Integer>(1);
+                    codeLists.put(entryOn.getValue(), codes);
+                }
+                codes.add(entryOn.getKey());
+            }
+
+            index = new NameIndex();
+            index.encodingSize = codeToName.size();
+            for (Map.Entry<String, List<Integer>> entryOn : codeLists.entrySet()) {
+                int[] codes = new int[entryOn.getValue().size()];
+                for (int i = 0; i < codes.length; i++)
+                    codes[i] = entryOn.getValue().get(i);
+                index.codesByName.put(entryOn.getKey(), codes);
+            }
+
+            nameIndexes.put(encoding, index);
+            return index.codesByName;
+        }
+    }
+
+    private static class NameIndex {
+        int encodingSize;
+        Map<String, int[]> codesByName = new HashMap<String, int[]>();
+    }
+
     public static class GlyphMapping {
         public final Integer glyphId;
         public Integer charCode;
@@ -17,73 +17,163 @@
 
 package org.mabb.fontverter.opentype;
 
-import org.mabb.fontverter.io.FontDataInput;
-import org.mabb.fontverter.io.FontDataInputStream;
-import org.mabb.fontverter.io.FontDataOutputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
+@TableTag("glyf")
 public class GlyphTable extends OpenTypeTable {
     private static final Logger log = getLogger(GlyphTable.class);
 
-    List<TtfGlyph> glyphs = new LinkedList<TtfGlyph>();
-
-    public String getTableType() {
-        return "glyf";
-    }
+    List<TtfGlyph> glyphs = new ArrayList<TtfGlyph>();
+    int parallelThreshold = GlyphChunks.DEFAULT_PARALLEL_THRESHOLD;
+    private byte[][] encodedGlyphs;
+    private GlyphDependencyGraph dependencyGraph;
 
     protected byte[] generateUnpaddedData() throws IOException {
-        FontDataOutputStream out = new FontDataOutputStream();
-        for (TtfGlyph glyphOn : glyphs) {
-            if (!glyphOn.isEmpty())
-                out.write(glyphOn.generateData());
-        }
+        byte[][] encoded = getEncodedGlyphs();
+
+        int length = 0;
+        for (byte[] glyphOn : encoded)
+            length += glyphOn.length;
+
+        FontDataOutputBuffer out = new FontDataOutputBuffer(length);
+        for (byte[] glyphOn : encoded)
+            out.write(glyphOn);
 
         return out.toByteArray();
     }
 
+    /**
+     * Encoded data for each glyph in glyph order, empty glyphs have a zero length entry. Shared by the glyf data
+     * and the loca offsets so each glyph is only encoded once per font write.
+     */
+    byte[][] getEncodedGlyphs() throws IOException {
+        if (encodedGlyphs != null)
+            return encodedGlyphs;
+
+        final TtfGlyph[] toEncode = glyphs.toArray(new TtfGlyph[glyphs.size()]);
+        final byte[][] encoded = new byte[toEncode.length][];
+
+        GlyphChunks.run(toEncode.length, parallelThreshold, new GlyphChunks.ChunkTask() {
+            public void run(int start, int end) throws IOException {
+                for (int i = start; i < end; i++)
+                    encoded[i] = toEncode[i].generateData();
+            }
+        });
+
+        encodedGlyphs = encoded;
+        return encodedGlyphs;
+    }
+
+    public void clearDataCache() {
+        super.clearDataCache();
+        encodedGlyphs = null;
+    }
+
     public void readData(byte[] data) throws IOException {
         super.readData(data);
-        FontDataInput reader = new FontDataInputStream(data);
-        Long[] offsets = font.getLocaTable().getOffsets();
+        final FontDataBuffer reader = new FontDataBuffer(data);
+        final long[] offsets = font.getLocaTable().getOffsetValues();
+        final TtfGlyph[] parsed = new TtfGlyph[Math.max(offsets.length - 1, 0)];
+
+        GlyphChunks.run(parsed.length, parallelThreshold, new GlyphChunks.ChunkTask() {
+            public void run(int start, int end) {
+                for (int i = start; i < end; i++)
+                    parsed[i] = parseGlyph(reader, offsets, i);
+            }
+        });
 
-        for (int i = 0; i < offsets.length - 1; i++) {
-            Long offset = offsets[i];
-            long length = offsets[i + 1] - offset;
+        // glyphs that failed to parse are empty placeholders so every glyph keeps its loca slot and glyph id
+        glyphs = new ArrayList<TtfGlyph>(Arrays.asList(parsed));
 
-            // 0 length is valid and means an empty outline for glyph
-            if (length == 0) {
-                glyphs.add(new TtfGlyph());
-                continue;
-            }
+        dependencyGraph = null;
+    }
 
-            if (offset >= data.length) {
-                log.error("Invalid loca table offset, offset greater than glyf table length");
-                continue;
-            }
+    private TtfGlyph parseGlyph(FontDataBuffer reader, long[] offsets, int glyphId) {
+        long offset = offsets[glyphId];
+        long length = offsets[glyphId + 1] - offset;
 
-            try {
-                reader.seek(offset.intValue());
-                byte[] glyphData = reader.readBytes((int) length);
+        // 0 length is valid and means an empty outline for glyph
+        if (length == 0)
+            return new TtfGlyph();
 
-                TtfGlyph glyph = TtfGlyph.parse(glyphData, font);
-                glyphs.add(glyph);
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+        if (offset >= reader.length()) {
+            log.error("Invalid loca table offset for glyph " + glyphId + ", offset greater than glyf table length. "
+                    + "Leaving the glyph empty");
+            return new TtfGlyph();
+        }
+
+        try {
+            FontDataBuffer glyphData = reader.slice((int) offset, (int) length);
+            return TtfGlyph.parse(glyphData, font, glyphId);
+        } catch (Exception ex) {
+            log.error("Could not parse glyph " + glyphId + ", leaving the glyph empty", ex);
+            return new TtfGlyph();
         }
     }
 
+    /**
+     * The table's live glyph list. Glyphs or the list can be changed through it so the table is marked dirty and
+     * regenerated on the next write instead of its source data being written back.
+     */
     public List<TtfGlyph> getGlyphs() {
+        markDirty();
+        clearDataCache();
         return glyphs;
     }
 
+    /**
+     * Component references between the table's glyphs. Built on first use, call {@link #clearDependencyGraph()}
+     * after changing the glyph list or components directly.
+     */
+    public GlyphDependencyGraph getDependencyGraph() {
+        if (dependencyGraph == null)
+            dependencyGraph = new GlyphDependencyGraph(glyphs);
+
+        return dependencyGraph;
+    }
+
+    public void clearDependencyGraph() {
+        dependencyGraph = null;
+    }
+
+    /**
+     * Points every composite glyph component at its new glyph id, for use when glyphs are reordered or removed.
+     * The component records are updated in place so composite glyphs don't need to be decoded again.
+     *
+     * @param newGlyphIds new glyph id for each old glyph id, -1 for a glyph that no longer exists
+     */
+    public void renumberComponents(int[] newGlyphIds) throws IOException {
+        for (TtfGlyph glyphOn : glyphs) {
+            for (CompositeGlyphComponent componentOn : glyphOn.getComponents()) {
+                int oldId = componentOn.getGlyphIndex();
+                int newId = oldId < newGlyphIds.length ? newGlyphIds[oldId] : -1;
+                if (newId < 0)
+                    throw new IOException("Composite glyph component references removed glyph " + oldId);
+
+                componentOn.glyphIndex = newId;
+            }
+        }
+
+        dependencyGraph = null;
+        markDirty();
+        clearDataCache();
+    }
+
     public List<TtfGlyph> getNonEmptyGlyphs() {
+        // the glyphs themselves can still be changed through the returned list
+        markDirty();
+        clearDataCache();
+
         List<TtfGlyph> nonEmpty = new LinkedList<TtfGlyph>();
 
         for (TtfGlyph glyphOn : glyphs)
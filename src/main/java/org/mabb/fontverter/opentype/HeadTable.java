@@ -21,68 +21,76 @@ import org.mabb.fontverter.FontVerterUtils;
 import org.mabb.fontverter.io.DataTypeProperty;
 
 import java.io.IOException;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 
+@TableTag("head")
 public class HeadTable extends OpenTypeTable {
+    private static final int CHECKSUM_ADJUSTMENT_OFFSET = 8;
+
+    // author's birthday, a very important date. 1991-03-21 in seconds since 1904-01-01 like all head dates
+    private static final long DEFAULT_DATE = 2752358400L;
+
     @DataTypeProperty(dataType = DataTypeProperty.DataType.FIXED32)
-    private float version;
+    float version;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.FIXED32)
-    private float fontRevision;
+    float fontRevision;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.ULONG)
-    private long checkSumAdjustment;
+    long checkSumAdjustment;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.ULONG)
-    private long magicNumber;
+    long magicNumber;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
-    private int flags;
+    int flags;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
-    private int unitsPerEm;
+    int unitsPerEm;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.LONG_DATE_TIME)
-    private Calendar created;
+    long created;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.LONG_DATE_TIME)
-    private Calendar modified;
+    long modified;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short xMin;
+    short xMin;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short yMin;
+    short yMin;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short xMax;
+    short xMax;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short yMax;
+    short yMax;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
-    private int macStyle;
+    int macStyle;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
-    private int lowestRecPPEM;
+    int lowestRecPPEM;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short fontDirectionHint;
+    short fontDirectionHint;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short indexToLocFormat;
+    short indexToLocFormat;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short glyphDataFormat;
+    short glyphDataFormat;
 
-    public String getTableType() {
-        return "head";
+    boolean isChangedByNormalize() {
+        // flags are normalized and the checksum adjustment is always recalculated
+        return true;
     }
 
     void normalize() throws IOException {
         super.normalize();
-        flags = 4097;
+        if (flags != 4097) {
+            flags = 4097;
+            markDirty();
+        }
     }
 
     public static HeadTable createDefaultTable() {
@@ -94,8 +102,8 @@ public class HeadTable extends OpenTypeTable {
         table.flags = 11;
         table.unitsPerEm = 1000;
 
-        table.created = createDefaultDate();
-        table.modified = createDefaultDate();
+        table.created = DEFAULT_DATE;
+        table.modified = DEFAULT_DATE;
 
         table.xMin = 26;
         table.yMin = -2;
@@ -109,15 +117,20 @@ public class HeadTable extends OpenTypeTable {
         return table;
     }
 
-    private static Calendar createDefaultDate() {
-        Calendar created = GregorianCalendar.getInstance();
-        // author's birthday, a very important date
-        created.set(1991, Calendar.MARCH, 21);
-        return created;
+    public void checksumAdjustment(byte[] fontBytes) throws IOException {
+        setChecksumAdjustment(0xB1B0AFBA - FontVerterUtils.getTableChecksum(fontBytes));
     }
 
-    public void checksumAdjustment(byte[] fontBytes) throws IOException {
-        checkSumAdjustment = 0xB1B0AFBA - FontVerterUtils.getTableChecksum(fontBytes);
+    void setChecksumAdjustment(long adjustment) {
+        checkSumAdjustment = adjustment;
+
+        // patch already generated table bytes in place rather than serializing the table again
+        if (cachedUnpaddedData != null && cachedUnpaddedData.length >= CHECKSUM_ADJUSTMENT_OFFSET + 4) {
+            cachedUnpaddedData[CHECKSUM_ADJUSTMENT_OFFSET] = (byte) (adjustment >> 24);
+            cachedUnpaddedData[CHECKSUM_ADJUSTMENT_OFFSET + 1] = (byte) (adjustment >> 16);
+            cachedUnpaddedData[CHECKSUM_ADJUSTMENT_OFFSET + 2] = (byte) (adjustment >> 8);
+            cachedUnpaddedData[CHECKSUM_ADJUSTMENT_OFFSET + 3] = (byte) adjustment;
+        }
     }
 
     public short getyMin() {
@@ -126,6 +139,7 @@ public class HeadTable extends OpenTypeTable {
 
     public void setMinY(short yMin) {
         this.yMin = yMin;
+        markDirty();
     }
 
     public short getxMin() {
@@ -134,6 +148,7 @@ public class HeadTable extends OpenTypeTable {
 
     public void setMinX(short xMin) {
         this.xMin = xMin;
+        markDirty();
     }
 
     public short getxMax() {
@@ -142,6 +157,7 @@ public class HeadTable extends OpenTypeTable {
 
     public void setMaxX(short xMax) {
         this.xMax = xMax;
+        markDirty();
     }
 
     public short getyMax() {
@@ -150,14 +166,22 @@ public class HeadTable extends OpenTypeTable {
 
     public void setMaxY(short yMax) {
         this.yMax = yMax;
+        markDirty();
     }
 
     void resetCalculations() {
-        checkSumAdjustment = 0;
+        // the checksum adjustment is worked out again for every layout so head is never written back as it was read
+        markDirty();
+        setChecksumAdjustment(0);
         super.resetCalculations();
     }
 
     public boolean isLongIndexToLocFormat() {
         return indexToLocFormat == 1;
     }
+
+    void setLongIndexToLocFormat(boolean isLong) {
+        indexToLocFormat = (short) (isLong ? 1 : 0);
+        markDirty();
+    }
 }
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+@TableTag("hhea")
 public class HorizontalHeadTable extends OpenTypeTable {
     @DataTypeProperty(dataType = DataTypeProperty.DataType.FIXED32)
     public float version;
@@ -60,16 +61,16 @@ public class HorizontalHeadTable extends OpenTypeTable {
     public short caretOffset;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short reserved1;
+    short reserved1;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short reserved2;
+    short reserved2;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short reserved3;
+    short reserved3;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
-    private short reserved4;
+    short reserved4;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.SHORT)
     public short metricDataFormat;
@@ -77,11 +78,6 @@ public class HorizontalHeadTable extends OpenTypeTable {
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
     public int numberOfHMetrics;
 
-    @Override
-    public String getTableType() {
-        return "hhea";
-    }
-
     public static HorizontalHeadTable createDefaultTable() {
         HorizontalHeadTable table = new HorizontalHeadTable();
         table.version = 1;
@@ -105,6 +101,11 @@ public class HorizontalHeadTable extends OpenTypeTable {
         return table;
     }
 
+    boolean isChangedByNormalize() {
+        OpenTypeTable hmtx = font.getTableWithoutParsing("hmtx");
+        return hmtx != null && !hmtx.isFromParsedFont;
+    }
+
     void normalize() throws IOException {
         if (font.getHmtx().isFromParsedFont)
             return;
@@ -17,18 +17,17 @@
 
 package org.mabb.fontverter.opentype;
 
-import org.mabb.fontverter.cff.CffFontAdapter;
-import org.mabb.fontverter.cff.CffFontAdapter.CffGlyph;
-import org.mabb.fontverter.io.FontDataInputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
 import org.mabb.fontverter.io.FontDataOutputStream;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.List;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
+@TableTag("hmtx")
 public class HorizontalMetricsTable extends OpenTypeTable {
     private static final Logger log = getLogger(HorizontalMetricsTable.class);
     private int[] advanceWidths;
@@ -36,12 +35,8 @@ public class HorizontalMetricsTable extends OpenTypeTable {
     private short[] leftSideBearings;
     private Short[] nonHorizontalLeftSideBearing;
 
-    public String getTableType() {
-        return "hmtx";
-    }
-
     public void readData(byte[] data) throws IOException {
-        FontDataInputStream reader = new FontDataInputStream(data);
+        FontDataBuffer reader = new FontDataBuffer(data);
 
         int numHMetrics = font.getHhea().numberOfHMetrics;
         advanceWidths = new int[numHMetrics];
@@ -84,28 +79,26 @@ public class HorizontalMetricsTable extends OpenTypeTable {
     }
 
 
+    boolean isChangedByNormalize() {
+        return !isFromParsedFont;
+    }
+
     void normalize() throws IOException {
         if (advanceWidths == null) {
             leftSideBearings = new short[]{0};
             advanceWidths = new int[]{1000};
         }
 
-        // todo for ttf type
-        if (font.isCffType()) {
-            CffFontAdapter cff = font.getCffTable().getCffFont();
-            List<CffGlyph> glyphs = cff.getGlyphs();
+        // todo for ttf type, parsed fonts keep their own metrics which hhea.numberOfHMetrics already matches
+        if (font.isCffType() && !isFromParsedFont) {
+            // metrics in glyph id order so they line up with the cmap's glyph ids, the CFF table caches them
+            CffTable cff = font.getCffTable();
+            advanceWidths = new int[cff.getGlyphCount()];
+            leftSideBearings = new short[cff.getGlyphCount()];
 
-            // must start with the .notdef entry otherwise removed
-            if (glyphs.get(0).getLeftSideBearing() != 0)
-                glyphs.add(0, cff.createGlyph());
-
-            advanceWidths = new int[glyphs.size()];
-            leftSideBearings = new short[glyphs.size()];
-
-            for (int i = 0; i < glyphs.size(); i++) {
-                CffGlyph glyphOn = glyphs.get(i);
-                advanceWidths[i] = glyphOn.getAdvanceWidth();
-                leftSideBearings[i] = (short) glyphOn.getLeftSideBearing();
+            for (int i = 0; i < advanceWidths.length; i++) {
+                advanceWidths[i] = cff.getAdvanceWidth(i);
+                leftSideBearings[i] = cff.getLeftSideBearing(i);
             }
         }
 
@@ -126,6 +119,49 @@ public class HorizontalMetricsTable extends OpenTypeTable {
             nonHorizontalLeftSideBearing = new Short[]{};
     }
 
+    /**
+     * Glyphs past the end of the full metrics share the last advance width.
+     */
+    public int getAdvanceWidth(int glyphId) {
+        if (advanceWidths.length == 0)
+            return 0;
+
+        return advanceWidths[Math.min(glyphId, advanceWidths.length - 1)];
+    }
+
+    public short getLeftSideBearing(int glyphId) {
+        if (glyphId < leftSideBearings.length)
+            return leftSideBearings[glyphId];
+
+        int bearingIndex = glyphId - leftSideBearings.length;
+        if (bearingIndex < nonHorizontalLeftSideBearing.length)
+            return nonHorizontalLeftSideBearing[bearingIndex];
+
+        return 0;
+    }
+
+    /**
+     * Sets metrics for every glyph, a trailing run of glyphs with the same advance width is stored as left side
+     * bearings only.
+     *
+     * @return number of full horizontal metrics for the hhea table
+     */
+    int setMetrics(int[] glyphAdvanceWidths, short[] glyphLeftSideBearings) {
+        int numHMetrics = glyphAdvanceWidths.length;
+        while (numHMetrics > 1 && glyphAdvanceWidths[numHMetrics - 1] == glyphAdvanceWidths[numHMetrics - 2])
+            numHMetrics--;
+
+        advanceWidths = Arrays.copyOf(glyphAdvanceWidths, numHMetrics);
+        leftSideBearings = Arrays.copyOf(glyphLeftSideBearings, numHMetrics);
+
+        nonHorizontalLeftSideBearing = new Short[glyphLeftSideBearings.length - numHMetrics];
+        for (int i = 0; i < nonHorizontalLeftSideBearing.length; i++)
+            nonHorizontalLeftSideBearing[i] = glyphLeftSideBearings[numHMetrics + i];
+
+        markDirty();
+        return numHMetrics;
+    }
+
     public int[] getAdvanceWidths() {
         return advanceWidths;
     }
@@ -19,6 +19,7 @@ package org.mabb.fontverter.opentype;
 
 import org.mabb.fontverter.io.DataTypeProperty;
 
+@TableTag("maxp")
 public class MaximumProfileTable extends OpenTypeTable {
     @DataTypeProperty(dataType = DataTypeProperty.DataType.FIXED32)
     protected float version;
@@ -27,43 +28,43 @@ public class MaximumProfileTable extends OpenTypeTable {
     protected int numGlyphs;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxPoints;
+    int maxPoints;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxContours;
+    int maxContours;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxCompositePoints;
+    int maxCompositePoints;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxCompositeContours;
+    int maxCompositeContours;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxZones;
+    int maxZones;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxTwilightPoints;
+    int maxTwilightPoints;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxStorage;
+    int maxStorage;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxFunctionDefs;
+    int maxFunctionDefs;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxInstructionDefs;
+    int maxInstructionDefs;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxStackElements;
+    int maxStackElements;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxSizeOfInstructions;
+    int maxSizeOfInstructions;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxComponentElements;
+    int maxComponentElements;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, includeIf = "isVersionOne")
-    private int maxComponentDepth;
+    int maxComponentDepth;
 
     public static MaximumProfileTable createDefaultTable() {
         MaximumProfileTable table = new MaximumProfileTable();
@@ -92,10 +93,6 @@ public class MaximumProfileTable extends OpenTypeTable {
         return table;
     }
 
-    public String getTableType() {
-        return "maxp";
-    }
-
     public boolean isVersionOne() {
         return getVersion() == 1F;
     }
@@ -106,6 +103,7 @@ public class MaximumProfileTable extends OpenTypeTable {
 
     public void setVersion(float version) {
         this.version = version;
+        markDirty();
     }
 
     public int getNumGlyphs() {
@@ -114,6 +112,7 @@ public class MaximumProfileTable extends OpenTypeTable {
 
     public void setNumGlyphs(int numGlyphs) {
         this.numGlyphs = numGlyphs;
+        markDirty();
     }
 
     public int getMaxStorage() {
@@ -122,5 +121,6 @@ public class MaximumProfileTable extends OpenTypeTable {
 
     public void setMaxStorage(int maxStorage) {
         this.maxStorage = maxStorage;
+        markDirty();
     }
 }
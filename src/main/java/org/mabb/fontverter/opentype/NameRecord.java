@@ -25,6 +25,7 @@ import java.nio.charset.Charset;
 
 public class NameRecord {
     static final int NAME_RECORD_SIZE = 12;
+    static final int OFFSET_FIELD_POSITION = 10;
 
     @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, order = 0)
     int platformID;
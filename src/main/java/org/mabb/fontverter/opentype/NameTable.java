@@ -19,8 +19,8 @@ package org.mabb.fontverter.opentype;
 
 import org.mabb.fontverter.io.DataTypeBindingDeserializer;
 import org.mabb.fontverter.io.FontDataInput;
-import org.mabb.fontverter.io.FontDataInputStream;
-import org.mabb.fontverter.io.FontDataOutputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +29,7 @@ import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+@TableTag("name")
 public class NameTable extends OpenTypeTable {
     static final int NAME_TABLE_HEADER_SIZE = 6;
     private static Logger log = LoggerFactory.getLogger(NameTable.class);
@@ -52,7 +53,7 @@ public class NameTable extends OpenTypeTable {
     }
 
     public void readData(byte[] data) throws IOException {
-        FontDataInput reader = new FontDataInputStream(data);
+        FontDataInput reader = new FontDataBuffer(data);
         formatSelector = reader.readUnsignedShort();
         if (formatSelector > 0) {
             log.warn("nametable format 1 reading not implemented");
@@ -82,13 +83,11 @@ public class NameTable extends OpenTypeTable {
     }
 
     protected byte[] generateUnpaddedData() throws IOException {
-        FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+        FontDataOutputBuffer writer = new FontDataOutputBuffer();
         writer.writeUnsignedShort(formatSelector);
         writer.writeUnsignedShort(nameRecords.size());
         writer.writeUnsignedShort(getOffsetToStringStorage());
 
-        calculateOffsets();
-
         Collections.sort(nameRecords, new Comparator<NameRecord>() {
             @Override
             public int compare(NameRecord o1, NameRecord o2) {
@@ -99,19 +98,25 @@ public class NameTable extends OpenTypeTable {
             }
         });
 
-        for (NameRecord record : nameRecords)
-            writer.write(record.getRecordData());
+        // string offsets are back-patched into the records as the strings get written
+        int[] recordPositions = new int[nameRecords.size()];
+        for (int i = 0; i < nameRecords.size(); i++) {
+            recordPositions[i] = writer.currentPosition();
+            writer.write(nameRecords.get(i).getRecordData());
+        }
+
+        int stringStorageStart = writer.currentPosition();
+        for (int i = 0; i < nameRecords.size(); i++) {
+            NameRecord record = nameRecords.get(i);
+            record.setOffset(writer.currentPosition() - stringStorageStart);
+            writer.patchUnsignedShort(recordPositions[i] + NameRecord.OFFSET_FIELD_POSITION, record.getOffset());
 
-        for (NameRecord record : nameRecords)
             writer.write(record.getStringData());
+        }
 
         return writer.toByteArray();
     }
 
-    public String getTableType() {
-        return "name";
-    }
-
     public String getName(OtfNameConstants.RecordType type) {
         for (NameRecord recordOn : nameRecords)
             if (recordOn.nameID == type.getValue())
@@ -127,6 +132,7 @@ public class NameTable extends OpenTypeTable {
 
         NameRecord macRecord = NameRecord.createMacRecord(name, type, language);
         nameRecords.add(macRecord);
+        markDirty();
     }
 
     private void deleteExisting(OtfNameConstants.RecordType type, OtfNameConstants.Language language) {
@@ -140,14 +146,6 @@ public class NameTable extends OpenTypeTable {
     }
 
 
-    private void calculateOffsets() throws IOException {
-        int offset = 0;
-        for (NameRecord recordOn : nameRecords) {
-            recordOn.setOffset(offset);
-            offset += recordOn.length;
-        }
-    }
-
     private int getOffsetToStringStorage() {
         return NAME_TABLE_HEADER_SIZE + (NameRecord.NAME_RECORD_SIZE * nameRecords.size());
     }
@@ -22,122 +22,124 @@ import org.mabb.fontverter.io.DataTypeProperty;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.mabb.fontverter.io.DataTypeProperty.*;
 import static org.mabb.fontverter.opentype.OtfNameConstants.*;
 
+@TableTag("OS/2")
 public class OS2WinMetricsTable extends OpenTypeTable {
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int version;
+    int version;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short averageCharWidth;
+    short averageCharWidth;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int weightClass;
+    int weightClass;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int widthClass;
+    int widthClass;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short fsType;
+    short fsType;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short subscriptXSize;
+    short subscriptXSize;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short subscriptYSize;
+    short subscriptYSize;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short subscriptXOffset;
+    short subscriptXOffset;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short subscriptYOffset;
+    short subscriptYOffset;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short superscriptXSize;
+    short superscriptXSize;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short superscriptYSize;
+    short superscriptYSize;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short superscriptXOffset;
+    short superscriptXOffset;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short superscriptYOffset;
+    short superscriptYOffset;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short strikeoutSize;
+    short strikeoutSize;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short strikeoutPosition;
+    short strikeoutPosition;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int familyClass;
+    int familyClass;
 
     @DataTypeProperty(dataType = DataType.BYTE_ARRAY, constLength = 10)
-    private byte[] panose = new byte[10];
+    byte[] panose = new byte[10];
 
     @DataTypeProperty(dataType = DataType.UINT)
-    private long unicodeRange1;
+    long unicodeRange1;
 
     @DataTypeProperty(dataType = DataType.UINT)
-    private long unicodeRange2;
+    long unicodeRange2;
 
     @DataTypeProperty(dataType = DataType.UINT)
-    private long unicodeRange3;
+    long unicodeRange3;
 
     @DataTypeProperty(dataType = DataType.UINT)
-    private long unicodeRange4;
+    long unicodeRange4;
 
     @DataTypeProperty(dataType = DataType.STRING, constLength = 4)
-    private String achVendId;
+    String achVendId;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int fsSelection;
+    int fsSelection;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int firstCharIndex;
+    int firstCharIndex;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int lastCharIndex;
+    int lastCharIndex;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private int typoAscender;
+    int typoAscender;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private int typoDescender;
+    int typoDescender;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private int typoLineGap;
+    int typoLineGap;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int winAscent;
+    int winAscent;
 
     @DataTypeProperty(dataType = DataType.USHORT)
-    private int winDescent;
+    int winDescent;
 
     @DataTypeProperty(dataType = DataType.UINT, ignoreIf = "!isVersion1OrHigher")
-    private long codePageRange1;
+    long codePageRange1;
 
     @DataTypeProperty(dataType = DataType.UINT, ignoreIf = "!isVersion1OrHigher")
-    private long codePageRange2;
+    long codePageRange2;
 
     @DataTypeProperty(dataType = DataType.SHORT, ignoreIf = "!isVersion2OrHigher")
-    private int sxHeight;
+    int sxHeight;
 
     @DataTypeProperty(dataType = DataType.SHORT, ignoreIf = "!isVersion2OrHigher")
-    private int sCapHeight;
+    int sCapHeight;
 
     @DataTypeProperty(dataType = DataType.USHORT, ignoreIf = "!isVersion2OrHigher")
-    private int usDefaultChar;
+    int usDefaultChar;
 
     @DataTypeProperty(dataType = DataType.USHORT, ignoreIf = "!isVersion2OrHigher")
-    private int usBreakChar;
+    int usBreakChar;
 
     @DataTypeProperty(dataType = DataType.USHORT, ignoreIf = "!isVersion2OrHigher")
-    private int usMaxContext;
+    int usMaxContext;
 
     private UnicodeRanges unicodeRanges = new UnicodeRanges();
     private CodePageRanges codePageRanges = new CodePageRanges();
@@ -146,10 +148,6 @@ public class OS2WinMetricsTable extends OpenTypeTable {
     public OS2WinMetricsTable() {
     }
 
-    public String getTableType() {
-        return "OS/2";
-    }
-
     public static OS2WinMetricsTable createDefaultTable() {
         OS2WinMetricsTable table = new OS2WinMetricsTable();
         table.version = 0;
@@ -206,12 +204,21 @@ public class OS2WinMetricsTable extends OpenTypeTable {
         return averageCharWidth;
     }
 
+    boolean isChangedByNormalize() {
+        return true;
+    }
+
     void normalize() throws IOException {
         super.normalize();
+        byte[] oldPanose = panose == null ? null : panose.clone();
         if (panose == null)
             panose = latinPanose.clone();
         calcPanose();
-        calcEncodingRanges();
+        if (!Arrays.equals(oldPanose, panose))
+            markDirty();
+
+        if (calcEncodingRanges())
+            markDirty();
 
         if (!isFromParsedFont) {
             winAscent = font.getHhea().ascender;
@@ -230,9 +237,15 @@ public class OS2WinMetricsTable extends OpenTypeTable {
     }
 
 
-    private void calcEncodingRanges() {
+    /**
+     * @return true if any of the unicode or code page range fields changed
+     */
+    private boolean calcEncodingRanges() {
         if (isFromParsedFont)
-            return;
+            return false;
+
+        long[] oldRanges = {unicodeRange1, unicodeRange2, unicodeRange3, unicodeRange4, codePageRange1,
+                codePageRange2};
 
         OtfEncodingType encode = font.getCmap().getCmapEncodingType();
         if (encode == OtfEncodingType.SYMBOL) {
@@ -248,6 +261,10 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
         codePageRange1 = codePageRanges.getRanges().get(0);
         codePageRange2 = codePageRanges.getRanges().get(1);
+
+        long[] newRanges = {unicodeRange1, unicodeRange2, unicodeRange3, unicodeRange4, codePageRange1,
+                codePageRange2};
+        return !Arrays.equals(oldRanges, newRanges);
     }
 
     static class BinaryBlock {
@@ -316,10 +333,12 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setVersion(int version) {
         this.version = version;
+        markDirty();
     }
 
     public void setAverageCharWidth(short averageCharWidth) {
         this.averageCharWidth = averageCharWidth;
+        markDirty();
     }
 
     public int getWeightClass() {
@@ -328,6 +347,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setWeightClass(int weightClass) {
         this.weightClass = weightClass;
+        markDirty();
     }
 
     public int getWidthClass() {
@@ -336,6 +356,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setWidthClass(int widthClass) {
         this.widthClass = widthClass;
+        markDirty();
     }
 
     public short getFsType() {
@@ -344,6 +365,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setFsType(short fsType) {
         this.fsType = fsType;
+        markDirty();
     }
 
     public short getSubscriptXSize() {
@@ -352,6 +374,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSubscriptXSize(short subscriptXSize) {
         this.subscriptXSize = subscriptXSize;
+        markDirty();
     }
 
     public short getSubscriptYSize() {
@@ -360,6 +383,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSubscriptYSize(short subscriptYSize) {
         this.subscriptYSize = subscriptYSize;
+        markDirty();
     }
 
     public short getSubscriptXOffset() {
@@ -368,6 +392,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSubscriptXOffset(short subscriptXOffset) {
         this.subscriptXOffset = subscriptXOffset;
+        markDirty();
     }
 
     public short getSuperscriptYOffset() {
@@ -376,6 +401,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSuperscriptYOffset(short superscriptYOffset) {
         this.superscriptYOffset = superscriptYOffset;
+        markDirty();
     }
 
     public short getSubscriptYOffset() {
@@ -384,6 +410,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSubscriptYOffset(short subscriptYOffset) {
         this.subscriptYOffset = subscriptYOffset;
+        markDirty();
     }
 
     public short getSuperscriptXSize() {
@@ -392,6 +419,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSuperscriptXSize(short superscriptXSize) {
         this.superscriptXSize = superscriptXSize;
+        markDirty();
     }
 
     public short getSuperscriptYSize() {
@@ -400,6 +428,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSuperscriptYSize(short superscriptYSize) {
         this.superscriptYSize = superscriptYSize;
+        markDirty();
     }
 
     public short getSuperscriptXOffset() {
@@ -408,6 +437,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSuperscriptXOffset(short superscriptXOffset) {
         this.superscriptXOffset = superscriptXOffset;
+        markDirty();
     }
 
     public short getStrikeoutSize() {
@@ -416,6 +446,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setStrikeoutSize(short strikeoutSize) {
         this.strikeoutSize = strikeoutSize;
+        markDirty();
     }
 
     public short getStrikeoutPosition() {
@@ -424,6 +455,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setStrikeoutPosition(short strikeoutPosition) {
         this.strikeoutPosition = strikeoutPosition;
+        markDirty();
     }
 
     public int getFamilyClass() {
@@ -432,6 +464,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setFamilyClass(int familyClass) {
         this.familyClass = familyClass;
+        markDirty();
     }
 
     public byte[] getPanose() {
@@ -440,6 +473,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setPanose(byte[] panose) {
         this.panose = panose;
+        markDirty();
     }
 
     public String getAchVendId() {
@@ -448,6 +482,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setAchVendId(String achVendId) {
         this.achVendId = achVendId;
+        markDirty();
     }
 
     public int getFsSelection() {
@@ -456,6 +491,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setFsSelection(int fsSelection) {
         this.fsSelection = fsSelection;
+        markDirty();
     }
 
     public int getTypoAscender() {
@@ -464,6 +500,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setTypoAscender(int typoAscender) {
         this.typoAscender = typoAscender;
+        markDirty();
     }
 
     public int getTypoLineGap() {
@@ -472,6 +509,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setTypoLineGap(int typoLineGap) {
         this.typoLineGap = typoLineGap;
+        markDirty();
     }
 
     public int getTypoDescender() {
@@ -480,6 +518,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setTypoDescender(int typoDescender) {
         this.typoDescender = typoDescender;
+        markDirty();
     }
 
     public int getWinAscent() {
@@ -488,6 +527,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setWinAscent(int winAscent) {
         this.winAscent = winAscent;
+        markDirty();
     }
 
     public int getWinDescent() {
@@ -496,6 +536,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setWinDescent(int winDescent) {
         this.winDescent = winDescent;
+        markDirty();
     }
 
     public int getSxHeight() {
@@ -504,6 +545,7 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setSxHeight(int sxHeight) {
         this.sxHeight = sxHeight;
+        markDirty();
     }
 
     public int getsCapHeight() {
@@ -512,5 +554,6 @@ public class OS2WinMetricsTable extends OpenTypeTable {
 
     public void setsCapHeight(int sCapHeight) {
         this.sCapHeight = sCapHeight;
+        markDirty();
     }
 }
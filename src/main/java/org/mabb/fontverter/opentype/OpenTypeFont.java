@@ -20,17 +20,13 @@ package org.mabb.fontverter.opentype;
 import org.apache.commons.lang3.StringUtils;
 import org.mabb.fontverter.*;
 import org.mabb.fontverter.converter.*;
-import org.mabb.fontverter.io.FontDataOutputStream;
 import org.mabb.fontverter.validator.RuleValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.*;
 
 import static org.mabb.fontverter.opentype.SfntHeader.*;
 
@@ -42,9 +38,12 @@ import static org.mabb.fontverter.opentype.SfntHeader.*;
  */
 public class OpenTypeFont implements FVFont {
     SfntHeader sfntHeader;
+    // tables is the serialization order, tablesByTag is just for fast lookups by the table getters
     private List<OpenTypeTable> tables;
+    private Map<String, OpenTypeTable> tablesByTag;
     private static Logger log = LoggerFactory.getLogger(OpenTypeFont.class);
     private File sourceFile;
+    private SfntLayout layout;
 
     public static OpenTypeFont createBlankFont() throws IOException {
         OpenTypeFont font = new OpenTypeFont();
@@ -85,16 +84,12 @@ public class OpenTypeFont implements FVFont {
 
     public OpenTypeFont() {
         tables = new ArrayList<OpenTypeTable>();
+        tablesByTag = new HashMap<String, OpenTypeTable>();
         sfntHeader = new SfntHeader();
     }
 
     public boolean detectFormat(byte[] fontFile) {
-        String[] headerMagicNums = new String[]{CFF_FLAVOR, VERSION_1, VERSION_2, VERSION_2_5};
-        for (String magicNumOn : headerMagicNums)
-            if (FontVerterUtils.bytesStartsWith(fontFile, magicNumOn))
-                return true;
-
-        return false;
+        return FontFormatSniffer.isSfnt(fontFile);
     }
 
     public void read(byte[] fontFile) throws IOException {
@@ -175,12 +170,17 @@ public class OpenTypeFont implements FVFont {
 
     private <T extends OpenTypeTable> T initTable(T table) {
         table.font = this;
-        tables.add(table);
+        addTable(table);
         return table;
     }
 
     public void addTable(OpenTypeTable table) {
         tables.add(table);
+
+        // first table wins if a font has duplicate tags, same as when the getters scanned the list
+        String tag = table.getTableType();
+        if (!tablesByTag.containsKey(tag))
+            tablesByTag.put(tag, table);
     }
 
     private List<OpenTypeTable> descendingSortedTables() {
@@ -196,45 +196,54 @@ public class OpenTypeFont implements FVFont {
     }
 
     public byte[] getData() throws IOException {
-        // offsets and gotta calc checksums before doing final full font checksum so calling the data write out
-        // twice to be lazy
+        // tables cache their generated data while the font is laid out so each one is only encoded once
         clearTableDataCache();
         finalizeFont();
 
-        // now we for realsies write out the font bytes
-        byte[] data = getRawData();
+        byte[] data = layout.write();
+        clearTableDataCache();
+        return data;
+    }
+
+    /**
+     * The font's tables written out as they are, without finalizing or normalizing the font first so reading it
+     * doesn't change anything on the font. Only meant for reading back in, checksums aren't calculated.
+     */
+    byte[] getDataAsIs() throws IOException {
+        String sfntFlavor = sfntHeader.sfntFlavor.isEmpty() ? determineSfntFlavor() : sfntHeader.sfntFlavor;
+
+        byte[] data = SfntLayout.writeAsIs(sfntFlavor, tables);
         clearTableDataCache();
         return data;
     }
 
     public void finalizeFont() throws IOException {
-        // gott make sure checksums = 0 before doing calc
-        for (OpenTypeTable tableOn : tables)
+        // gott make sure checksums = 0 before doing calc, lazily read tables normalizing can change have to be
+        // parsed first, the rest are written straight from the source font data
+        for (OpenTypeTable tableOn : tables) {
+            if (tableOn.isChangedByNormalize())
+                tableOn.ensureParsed();
             tableOn.resetCalculations();
+        }
 
         descendingSortedTables();
         normalizeTables();
-        calculateOffsets(tables);
-
-        for (OpenTypeTable tableOn : tables)
-            tableOn.finalizeRecord();
 
-        // head checksum has to be very last after other checksums + offsets calculated so just grab full byte
-        // output to calc instead of trying to re-edit the byte array at the right place
-        getHead().clearDataCache();
-        getHead().checksumAdjustment(getRawData());
+        layout = new SfntLayout(sfntHeader, tables);
+        layout.layout(getHead());
     }
 
     private void normalizeTables() throws IOException {
         if (sfntHeader.sfntFlavor.isEmpty())
             sfntHeader.sfntFlavor = determineSfntFlavor();
 
-        if (getCmap() != null && getMxap() != null && !getMxap().isFromParsedFont)
+        if (getMxap() != null && !getMxap().isFromParsedFont && getCmap() != null)
             getMxap().setNumGlyphs(getCmap().getGlyphCount());
 
         for (OpenTypeTable tableOn : tables) {
             tableOn.font = this;
-            tableOn.normalize();
+            if (tableOn.isParsed())
+                tableOn.normalize();
         }
     }
 
@@ -247,33 +256,8 @@ public class OpenTypeFont implements FVFont {
         return VERSION_1;
     }
 
-    private byte[] getRawData() throws IOException {
-        FontDataOutputStream out = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
-        sfntHeader.setNumTables(tables.size());
-
-        out.write(sfntHeader.getData());
-
-        for (OpenTypeTable tableOn : tables)
-            out.write(tableOn.getRecordData());
-
-        for (OpenTypeTable tableOn : tables)
-            out.write(tableOn.getData());
-
-        return out.toByteArray();
-    }
-
-    private void calculateOffsets(List<OpenTypeTable> tables) throws IOException {
-        // must calculate table record offsets before we write any table data
-        // start data offsets after sfnt header and table records
-        int offset = tables.size() * OpenTypeTable.TABLE_RECORD_SIZE + SFNT_HEADER_SIZE;
-        for (OpenTypeTable tableOn : tables) {
-            tableOn.setOffset(offset);
-            offset += tableOn.getData().length;
-        }
-    }
-
     public void orderTablesByDependencies() {
-        Collections.sort(getTables(), new Comparator<OpenTypeTable>() {
+        Collections.sort(tables, new Comparator<OpenTypeTable>() {
             public int compare(OpenTypeTable o1, OpenTypeTable o2) {
                 int order1 = dependencyOrderForTable(o1);
                 int order2 = dependencyOrderForTable(o2);
@@ -319,21 +303,49 @@ public class OpenTypeFont implements FVFont {
         }
 
         if (toRemoveTable != null)
-            tables.remove(toRemoveTable);
+            removeTable(toRemoveTable);
     }
 
-    private <T extends OpenTypeTable> T findTableType(Class type) {
+    void removeTable(OpenTypeTable toRemove) {
+        tables.remove(toRemove);
+
+        String tag = toRemove.getTableType();
+        if (tablesByTag.get(tag) != toRemove)
+            return;
+
+        tablesByTag.remove(tag);
         for (OpenTypeTable tableOn : tables) {
-            if (tableOn.getClass() == type)
-                return (T) tableOn;
+            if (tableOn.getTableType().equals(tag)) {
+                tablesByTag.put(tag, tableOn);
+                break;
+            }
+        }
+    }
+
+    private <T extends OpenTypeTable> T findTableType(String tag, Class<T> type) {
+        OpenTypeTable table = tablesByTag.get(tag);
+        if (!type.isInstance(table))
+            return null;
+
+        try {
+            table.ensureParsed();
+        } catch (IOException ex) {
+            throw new OpenTypeTable.TableParseException("Error parsing table " + tag, ex);
         }
 
-        return null;
+        return type.cast(table);
+    }
+
+    /**
+     * @return the table for tag as it is, a lazily read table isn't parsed. Null if the font has no such table.
+     */
+    OpenTypeTable getTableWithoutParsing(String tag) {
+        return tablesByTag.get(tag);
     }
 
     private void setTable(OpenTypeTable toAdd) {
         removeTable(toAdd.getClass());
-        tables.add(toAdd);
+        addTable(toAdd);
     }
 
     public boolean isCffType() {
@@ -349,7 +361,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public HeadTable getHead() {
-        return findTableType(HeadTable.class);
+        return findTableType("head", HeadTable.class);
     }
 
     public void setHead(HeadTable head) {
@@ -357,7 +369,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public HorizontalHeadTable getHhea() {
-        return findTableType(HorizontalHeadTable.class);
+        return findTableType("hhea", HorizontalHeadTable.class);
     }
 
     public void setHhea(HorizontalHeadTable hhea) {
@@ -365,7 +377,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public HorizontalMetricsTable getHmtx() {
-        return findTableType(HorizontalMetricsTable.class);
+        return findTableType("hmtx", HorizontalMetricsTable.class);
     }
 
     public void setHmtx(HorizontalMetricsTable hmtx) {
@@ -373,7 +385,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public OS2WinMetricsTable getOs2() {
-        return findTableType(OS2WinMetricsTable.class);
+        return findTableType("OS/2", OS2WinMetricsTable.class);
     }
 
     public void setOs2(OS2WinMetricsTable os2) {
@@ -381,7 +393,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public PostScriptTable getPost() {
-        return findTableType(PostScriptTable.class);
+        return findTableType("post", PostScriptTable.class);
     }
 
     public void setPost(PostScriptTable post) {
@@ -389,7 +401,20 @@ public class OpenTypeFont implements FVFont {
     }
 
     public CmapTable getCmap() {
-        return findTableType(CmapTable.class);
+        return findTableType("cmap", CmapTable.class);
+    }
+
+    /**
+     * Lookup that reads the cmap table's bytes in place, a lazily read font's cmap table isn't parsed for it.
+     *
+     * @return null if the font has no cmap table
+     */
+    public CmapLookup getCmapLookup() throws IOException {
+        OpenTypeTable cmap = tablesByTag.get("cmap");
+        if (cmap == null)
+            return null;
+
+        return CmapLookup.read(cmap.getUnpaddedData());
     }
 
     public void setCmap(CmapTable cmap) {
@@ -397,7 +422,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public MaximumProfileTable getMxap() {
-        return findTableType(MaximumProfileTable.class);
+        return findTableType("maxp", MaximumProfileTable.class);
     }
 
     public void setMxap(MaximumProfileTable mxap) {
@@ -405,7 +430,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public ControlValueTable getCvt() {
-        return findTableType(ControlValueTable.class);
+        return findTableType("cvt ", ControlValueTable.class);
     }
 
     public void setCvt(ControlValueTable cvt) {
@@ -413,7 +438,7 @@ public class OpenTypeFont implements FVFont {
     }
 
     public NameTable getNameTable() {
-        return findTableType(NameTable.class);
+        return findTableType("name", NameTable.class);
     }
 
     public void setName(NameTable name) {
@@ -421,21 +446,21 @@ public class OpenTypeFont implements FVFont {
     }
 
     public CffTable getCffTable() {
-        return findTableType(CffTable.class);
+        return findTableType("CFF ", CffTable.class);
     }
 
     public GlyphLocationTable getLocaTable() {
-        return findTableType(GlyphLocationTable.class);
+        return findTableType("loca", GlyphLocationTable.class);
     }
 
     public GlyphTable getGlyfTable() {
-        return findTableType(GlyphTable.class);
+        return findTableType("glyf", GlyphTable.class);
     }
 
-    public FontProgramTable getFpgmTable() { return findTableType(FontProgramTable.class); }
+    public FontProgramTable getFpgmTable() { return findTableType("fpgm", FontProgramTable.class); }
 
     public List<OpenTypeTable> getTables() {
-        return tables;
+        return Collections.unmodifiableList(tables);
     }
 
     public SfntHeader getSfntHeader() {
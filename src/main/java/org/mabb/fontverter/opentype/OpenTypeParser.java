@@ -18,7 +18,7 @@
 package org.mabb.fontverter.opentype;
 
 import org.mabb.fontverter.io.FontDataInput;
-import org.mabb.fontverter.io.FontDataInputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
 import org.mabb.fontverter.io.DataTypeBindingDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +30,18 @@ public class OpenTypeParser {
 
     private OpenTypeFont font;
     private FontDataInput input;
+    private boolean lazyTableParsing;
+
+    public OpenTypeParser() {
+    }
+
+    /**
+     * @param lazyTableParsing if true only the sfnt directory is read up front, each table is left as its
+     *                         original bytes and only parsed when first fetched from the font's table getters
+     */
+    public OpenTypeParser(boolean lazyTableParsing) {
+        this.lazyTableParsing = lazyTableParsing;
+    }
 
     public OpenTypeFont parse(byte[] data) throws IOException, InstantiationException, IllegalAccessException {
         return parse(data, new OpenTypeFont());
@@ -37,14 +49,17 @@ public class OpenTypeParser {
 
     public OpenTypeFont parse(byte[] data, OpenTypeFont font) throws IOException, InstantiationException, IllegalAccessException {
         this.font = font;
-        this.input = new FontDataInputStream(data);
+        this.input = new FontDataBuffer(data);
 
         DataTypeBindingDeserializer deserializer = new DataTypeBindingDeserializer();
         // read header first to figure out what woff font object type we need to create
         font.sfntHeader = (SfntHeader) deserializer.deserialize(this.input, new SfntHeader());
 
         readTableHeaderEntries();
-        readTableDataEntries();
+        if (lazyTableParsing)
+            keepUnparsedTableData(data);
+        else
+            readTableDataEntries();
 
         return font;
     }
@@ -65,6 +80,11 @@ public class OpenTypeParser {
         font.orderTablesByDependencies();
     }
 
+    private void keepUnparsedTableData(byte[] data) throws IOException {
+        for (OpenTypeTable tableOn : font.getTables())
+            tableOn.setUnparsedFontData(data);
+    }
+
     private void readTableDataEntries() throws IOException {
         for (OpenTypeTable tableOn : font.getTables()) {
             input.seek((int) tableOn.getOffset());
@@ -72,7 +92,7 @@ public class OpenTypeParser {
             int dataReadLength = (int) tableOn.record.length;
             byte[] tableData = input.readBytes(dataReadLength);
 
-            tableOn.readData(tableData);
+            tableOn.readSourceData(tableData);
         }
     }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.mabb.fontverter.cff.CffSubsetter;
+import org.mabb.fontverter.opentype.GlyphMapReader.GlyphMapping;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Cuts an OpenType font down to the glyphs needed for a set of unicode code points. Glyphs used as components by
+ * kept composite glyphs are kept as well, kept glyphs are renumbered in their original order.
+ * <p>
+ * The source font's tables are copied out as they are and read once up front, the source font itself isn't
+ * finalized or otherwise touched. Its glyphs are encoded once and copied into each subset as is, so one subsetter
+ * can cheaply produce any number of subsets without the source or earlier subsets being changed. Tables that
+ * reference glyph ids and aren't rewritten here, such as the layout tables, are left out of the subset.
+ */
+public class OpenTypeSubsetter {
+    private static final Logger log = getLogger(OpenTypeSubsetter.class);
+
+    private static final Set<String> KEPT_TABLES = new HashSet<String>(Arrays.asList(
+            "head", "hhea", "hmtx", "maxp", "OS/2", "name", "post", "cmap", "glyf", "loca", "cvt ", "fpgm", "prep",
+            "gasp", "CFF "));
+    private static final int NOTDEF_GLYPH_ID = 0;
+    // OS/2 char indexes are 16 bit, supplementary plane code points are recorded as 0xFFFF
+    private static final int MAX_CHAR_INDEX = 0xFFFF;
+
+    private final byte[] fontData;
+    private final Map<Integer, Integer> codePointToGlyphId = new HashMap<Integer, Integer>();
+    private final int glyphCount;
+
+    private byte[][] glyphData;
+    private GlyphDependencyGraph dependencyGraph;
+    private int[] advanceWidths;
+    private short[] leftSideBearings;
+    private CffSubsetter cffSubsetter;
+
+    public OpenTypeSubsetter(OpenTypeFont font) throws IOException {
+        // not getData, that would finalize and normalize the caller's font
+        fontData = font.getDataAsIs();
+        OpenTypeFont source = readSourceFont();
+
+        if (source.getCmap() == null)
+            throw new IOException("Font has no cmap table to subset by code point");
+
+        for (GlyphMapping mappingOn : source.getCmap().getGlyphMappings())
+            codePointToGlyphId.put(mappingOn.charCode, mappingOn.glyphId);
+
+        int numGlyphs = source.getMxap().getNumGlyphs();
+        GlyphTable glyf = source.getGlyfTable();
+        if (glyf != null) {
+            glyphData = glyf.getEncodedGlyphs();
+            dependencyGraph = glyf.getDependencyGraph();
+            numGlyphs = Math.min(numGlyphs, glyphData.length);
+        }
+        glyphCount = numGlyphs;
+
+        HorizontalMetricsTable hmtx = source.getHmtx();
+        if (hmtx != null) {
+            advanceWidths = new int[glyphCount];
+            leftSideBearings = new short[glyphCount];
+            for (int i = 0; i < glyphCount; i++) {
+                advanceWidths[i] = hmtx.getAdvanceWidth(i);
+                leftSideBearings[i] = hmtx.getLeftSideBearing(i);
+            }
+        }
+
+        if (source.getCffTable() != null)
+            cffSubsetter = new CffSubsetter(source.getCffTable().getUnpaddedData());
+    }
+
+    /**
+     * @return code points the font has a glyph for, in ascending order
+     */
+    public SortedSet<Integer> getCodePoints() {
+        SortedSet<Integer> codePoints = new TreeSet<Integer>();
+        for (Map.Entry<Integer, Integer> entryOn : codePointToGlyphId.entrySet()) {
+            if (entryOn.getValue() < glyphCount)
+                codePoints.add(entryOn.getKey());
+        }
+
+        return codePoints;
+    }
+
+    /**
+     * @return a new font containing only the glyphs for the given code points, code points the font doesn't
+     * have a glyph for are ignored
+     */
+    public OpenTypeFont subset(Collection<Integer> codePoints) throws IOException {
+        OpenTypeFont subset = readSourceFont();
+
+        SortedMap<Integer, Integer> keptCodePoints = new TreeMap<Integer, Integer>();
+        SortedSet<Integer> keptGlyphs = new TreeSet<Integer>();
+        keptGlyphs.add(NOTDEF_GLYPH_ID);
+
+        for (Integer codePointOn : codePoints) {
+            Integer glyphId = codePointToGlyphId.get(codePointOn);
+            if (glyphId != null && glyphId < glyphCount) {
+                keptCodePoints.put(codePointOn, glyphId);
+                keptGlyphs.add(glyphId);
+            }
+        }
+
+        if (dependencyGraph != null)
+            keptGlyphs = dependencyGraph.getClosure(keptGlyphs);
+
+        int[] oldGlyphIds = new int[keptGlyphs.size()];
+        int[] newGlyphIds = new int[glyphCount];
+        Arrays.fill(newGlyphIds, -1);
+
+        int newId = 0;
+        for (Integer glyphOn : keptGlyphs) {
+            oldGlyphIds[newId] = glyphOn;
+            newGlyphIds[glyphOn] = newId++;
+        }
+
+        // the subset's own glyf and CFF tables are replaced without ever being parsed
+        if (glyphData != null)
+            subsetGlyphs(subset, oldGlyphIds, newGlyphIds);
+        if (cffSubsetter != null)
+            subsetCff(subset, oldGlyphIds);
+
+        subsetMetrics(subset, oldGlyphIds);
+        subset.getMxap().setNumGlyphs(oldGlyphIds.length);
+        subset.setCmap(createCmap(keptCodePoints, newGlyphIds));
+        updateCharIndexes(subset, keptCodePoints);
+
+        // glyph names are indexed by glyph id, dropping them is simpler than renumbering and saves space
+        if (subset.getPost() != null) {
+            subset.getPost().version = 3;
+            subset.getPost().markDirty();
+        }
+
+        removeUnsupportedTables(subset);
+        subset.finalizeFont();
+
+        return subset;
+    }
+
+    private OpenTypeFont readSourceFont() throws IOException {
+        try {
+            // lazy so tables that are passed through as is never have to be parsed
+            return new OpenTypeParser(true).parse(fontData);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Error reading font to subset", ex);
+        }
+    }
+
+    private void subsetGlyphs(OpenTypeFont subset, int[] oldGlyphIds, int[] newGlyphIds) throws IOException {
+        GlyphTable glyf = new GlyphTable();
+        glyf.isFromParsedFont = true;
+        for (int i = 0; i < oldGlyphIds.length; i++)
+            glyf.glyphs.add(TtfGlyph.fromEncodedData(glyphData[oldGlyphIds[i]], subset, i));
+
+        glyf.renumberComponents(newGlyphIds);
+        replaceTable(subset, glyf);
+    }
+
+    private void subsetCff(OpenTypeFont subset, int[] oldGlyphIds) throws IOException {
+        CffTable cff = new CffTable(cffSubsetter.subset(oldGlyphIds));
+        cff.isFromParsedFont = true;
+        replaceTable(subset, cff);
+    }
+
+    private static void replaceTable(OpenTypeFont subset, OpenTypeTable table) {
+        subset.removeTable(table.getClass());
+        table.font = subset;
+        subset.addTable(table);
+    }
+
+    private void subsetMetrics(OpenTypeFont subset, int[] oldGlyphIds) {
+        HorizontalMetricsTable hmtx = subset.getHmtx();
+        if (hmtx == null || advanceWidths == null)
+            return;
+
+        int[] keptAdvanceWidths = new int[oldGlyphIds.length];
+        short[] keptLeftSideBearings = new short[oldGlyphIds.length];
+        for (int i = 0; i < oldGlyphIds.length; i++) {
+            keptAdvanceWidths[i] = advanceWidths[oldGlyphIds[i]];
+            keptLeftSideBearings[i] = leftSideBearings[oldGlyphIds[i]];
+        }
+
+        int numberOfHMetrics = hmtx.setMetrics(keptAdvanceWidths, keptLeftSideBearings);
+        if (subset.getHhea() != null) {
+            subset.getHhea().numberOfHMetrics = numberOfHMetrics;
+            subset.getHhea().markDirty();
+        }
+    }
+
+    private static CmapTable createCmap(SortedMap<Integer, Integer> keptCodePoints, int[] newGlyphIds) {
+        CmapTable cmap = CmapTable.createDefaultTable();
+        for (Map.Entry<Integer, Integer> entryOn : keptCodePoints.entrySet())
+            cmap.addGlyphMapping(entryOn.getKey(), newGlyphIds[entryOn.getValue()]);
+
+        return cmap;
+    }
+
+    private static void updateCharIndexes(OpenTypeFont subset, SortedMap<Integer, Integer> keptCodePoints) {
+        OS2WinMetricsTable os2 = subset.getOs2();
+        if (os2 == null || keptCodePoints.isEmpty())
+            return;
+
+        os2.firstCharIndex = Math.min(keptCodePoints.firstKey(), MAX_CHAR_INDEX);
+        os2.lastCharIndex = Math.min(keptCodePoints.lastKey(), MAX_CHAR_INDEX);
+        os2.markDirty();
+    }
+
+    private static void removeUnsupportedTables(OpenTypeFont subset) {
+        List<OpenTypeTable> toRemove = new ArrayList<OpenTypeTable>();
+        for (OpenTypeTable tableOn : subset.getTables()) {
+            if (!KEPT_TABLES.contains(tableOn.getTableType()))
+                toRemove.add(tableOn);
+        }
+
+        for (OpenTypeTable tableOn : toRemove) {
+            log.debug("Removing table not supported by subsetting " + tableOn.getTableType());
+            subset.removeTable(tableOn);
+        }
+    }
+}
@@ -17,20 +17,22 @@
 
 package org.mabb.fontverter.opentype;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.mabb.fontverter.FontVerterUtils;
 import org.mabb.fontverter.io.DataTypeBindingDeserializer;
 import org.mabb.fontverter.io.DataTypeBindingSerializer;
 import org.mabb.fontverter.io.DataTypeProperty;
-import org.reflections.Reflections;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+import org.mabb.fontverter.registry.TypeRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class OpenTypeTable {
     public static class OtfTableRecord {
@@ -51,7 +53,7 @@ public abstract class OpenTypeTable {
 
     public static final int TABLE_RECORD_SIZE = 16;
 
-    private static List<Class> tableTypes;
+    private static Map<String, Constructor<? extends OpenTypeTable>> tableConstructors;
     private static final Object factoryLock = new Object();
     private static Logger log = LoggerFactory.getLogger(OpenTypeTable.class);
 
@@ -61,11 +63,18 @@ public abstract class OpenTypeTable {
     protected byte[] cachedUnpaddedData;
     private long checksum;
     private long offset;
-    private int paddingAdded;
 
     // big old kludge to handle conversion of tables types that arn't deserializable/parsable yet
     private byte[] rawParsedData;
 
+    // for lazily parsed fonts, the whole source font data, our bytes are at record offset/length until we're parsed.
+    // Writing the font reads them from there, they're only copied out for parsing or getUnpaddedData callers.
+    private byte[] unparsedFontData;
+
+    // bytes a table was read from and their checksum, written back as they are until the table is marked dirty
+    private byte[] sourceData;
+    private long sourceChecksum = -1;
+
     public OpenTypeTable() {
     }
 
@@ -73,17 +82,11 @@ public abstract class OpenTypeTable {
             throws IllegalAccessException, InstantiationException, IOException {
         initFactoryTableTypes();
 
-        OpenTypeTable createdTable = null;
-        for (Class typeOn : tableTypes) {
-            OpenTypeTable tableOn = (OpenTypeTable) typeOn.newInstance();
-
-            if (tableOn.getTableType().equals(record.recordName)) {
-                createdTable = tableOn;
-                break;
-            }
-        }
-
-        if (createdTable == null)
+        OpenTypeTable createdTable;
+        Constructor<? extends OpenTypeTable> constructor = tableConstructors.get(record.recordName);
+        if (constructor != null)
+            createdTable = newTable(constructor);
+        else
             createdTable = createUnknownTableTypeFallback(record);
 
         createdTable.record = record;
@@ -103,30 +106,49 @@ public abstract class OpenTypeTable {
         return table;
     }
 
-    private static void initFactoryTableTypes() {
+    private static OpenTypeTable newTable(Constructor<? extends OpenTypeTable> constructor)
+            throws IllegalAccessException, InstantiationException, IOException {
+        try {
+            return constructor.newInstance();
+        } catch (InvocationTargetException ex) {
+            throw new IOException("Error creating table " + constructor.getDeclaringClass().getSimpleName(),
+                    ex.getCause());
+        }
+    }
+
+    private static void initFactoryTableTypes() throws IOException {
         synchronized (factoryLock) {
-            if (tableTypes == null) {
-                Reflections reflections = new Reflections("org.mabb.fontverter");
-                Set<Class<? extends OpenTypeTable>> adapterClasses = reflections.getSubTypesOf(OpenTypeTable.class);
-                tableTypes = Arrays.asList(adapterClasses.toArray(new Class[adapterClasses.size()]));
-
-                List<Class> filteredTables = new ArrayList<Class>();
-                for (Class tableTypeOn : tableTypes) {
-                    if (!tableTypeOn.getCanonicalName().contains("Canned") && tableTypeOn != UnknownTableType.class)
-                        filteredTables.add(tableTypeOn);
+            if (tableConstructors != null)
+                return;
+
+            // tag => constructor map so creating a table from a record is a single lookup
+            Map<String, Constructor<? extends OpenTypeTable>> constructors =
+                    new HashMap<String, Constructor<? extends OpenTypeTable>>();
+            for (Map.Entry<String, Class<? extends OpenTypeTable>> typeOn :
+                    TypeRegistry.getInstance().getTableTypes().entrySet()) {
+                try {
+                    constructors.put(typeOn.getKey(), typeOn.getValue().getConstructor());
+                } catch (NoSuchMethodException ex) {
+                    throw new IOException("Table type has no default constructor " + typeOn.getValue(), ex);
                 }
-
-                tableTypes = filteredTables;
             }
+
+            tableConstructors = constructors;
         }
     }
 
     /* overly descriptive method name to avoid confusion with other getName methods */
-    public abstract String getTableType();
+    /**
+     * @return the table's tag from its {@link TableTag}
+     */
+    public String getTableType() {
+        return getClass().getAnnotation(TableTag.class).value();
+    }
 
     public final byte[] getData() throws IOException {
         // open type tables should be padded to be divisible by 4
-        return padTableData(getUnpaddedData());
+        byte[] data = getUnpaddedData();
+        return Arrays.copyOf(data, SfntLayout.paddedLength(data.length));
     }
 
     public final byte[] getUnpaddedData() throws IOException {
@@ -134,6 +156,13 @@ public abstract class OpenTypeTable {
         if (rawParsedData != null)
             return rawParsedData;
 
+        // never parsed so can't have been changed, just pass the original bytes through
+        if (unparsedFontData != null)
+            return copyUnparsedData();
+
+        if (sourceData != null)
+            return sourceData;
+
         if (cachedUnpaddedData != null)
             return cachedUnpaddedData;
 
@@ -142,6 +171,26 @@ public abstract class OpenTypeTable {
         return cachedUnpaddedData;
     }
 
+    /**
+     * Same as the length of {@link #getUnpaddedData()}, without copying the data of a table that isn't parsed yet.
+     */
+    int getUnpaddedLength() throws IOException {
+        if (unparsedFontData != null)
+            return (int) record.length;
+
+        return getUnpaddedData().length;
+    }
+
+    /**
+     * Writes the table's unpadded data, a table that isn't parsed yet is written straight from the source font.
+     */
+    void writeUnpaddedData(FontDataOutputBuffer out) throws IOException {
+        if (unparsedFontData != null)
+            out.write(unparsedFontData, (int) record.offset, (int) record.length);
+        else
+            out.write(getUnpaddedData());
+    }
+
     protected byte[] generateUnpaddedData() throws IOException {
         DataTypeBindingSerializer serializer = new DataTypeBindingSerializer();
         return serializer.serialize(this);
@@ -157,17 +206,90 @@ public abstract class OpenTypeTable {
         deserializer.deserialize(data, this);
     }
 
+    /**
+     * Reads the table from a source font's data and keeps the data, the table writes the same bytes back out until
+     * it's marked dirty.
+     */
+    public final void readSourceData(byte[] data) throws IOException {
+        readData(data);
+        sourceData = data;
+        sourceChecksum = -1;
+    }
+
+    /**
+     * Makes the table generate its data from its fields again instead of writing back the bytes it was read from.
+     * Setters call this, it has to be called after changing a table's fields or objects directly.
+     */
+    public void markDirty() {
+        sourceData = null;
+    }
+
+    /**
+     * @return true unless the table was read from a source font and hasn't been changed since
+     */
+    public boolean isDirty() {
+        return sourceData == null && unparsedFontData == null;
+    }
+
+    void setUnparsedFontData(byte[] fontData) throws IOException {
+        if (record.offset + record.length > fontData.length)
+            throw new IOException(String.format("Table '%s' data is outside of the font data. Offset: %d Length: %d",
+                    record.recordName, record.offset, record.length));
+
+        unparsedFontData = fontData;
+    }
+
+    /**
+     * Leaves the table unparsed over its bytes in a larger buffer, like a woff font's decompressed data. The bytes
+     * are only copied out if the table is parsed, until then the font is written straight from the buffer.
+     */
+    public void setUnparsedSourceData(ByteBuffer data) throws IOException {
+        record.offset = data.arrayOffset() + data.position();
+        record.length = data.remaining();
+        setUnparsedFontData(data.array());
+    }
+
+    boolean isParsed() {
+        return unparsedFontData == null;
+    }
+
+    /**
+     * Parses the table's data if it was left unparsed by a lazy font read. Tables this one depends on are parsed
+     * as well when it reads them through the font's table getters.
+     */
+    void ensureParsed() throws IOException {
+        if (unparsedFontData == null)
+            return;
+
+        byte[] data = copyUnparsedData();
+        unparsedFontData = null;
+        clearDataCache();
+
+        readSourceData(data);
+    }
+
+    /**
+     * @return true if {@link #normalize()} can change the table. Lazily read tables are only parsed for writing
+     * when it can, the rest are written back from their source data unparsed.
+     */
+    boolean isChangedByNormalize() {
+        return false;
+    }
+
+    private byte[] copyUnparsedData() {
+        int start = (int) record.offset;
+        return Arrays.copyOfRange(unparsedFontData, start, start + (int) record.length);
+    }
+
     /* big old kludge to handle conversion of tables types that arn't deserializable/parsable yet remove asap*/
     protected boolean isParsingImplemented() {
         return true;
     }
 
     public byte[] getRecordData() throws IOException {
-        byte[] data = getData();
-
         OtfTableRecord record = new OtfTableRecord();
         record.recordName = getTableType();
-        record.length = data.length - paddingAdded;
+        record.length = getUnpaddedLength();
         record.checksum = (int) checksum;
         record.offset = getOffset();
 
@@ -175,14 +297,22 @@ public abstract class OpenTypeTable {
         return serializer.serialize(record);
     }
 
-    private byte[] padTableData(byte[] tableData) {
-        byte[] padding = FontVerterUtils.tablePaddingNeeded(tableData);
-        paddingAdded = padding.length;
-        return ArrayUtils.addAll(tableData, padding);
-    }
-
     public void finalizeRecord() throws IOException {
-        checksum = FontVerterUtils.getTableChecksum(getData());
+        if (sourceData != null || unparsedFontData != null) {
+            // untouched tables keep their original checksum, only calculated the first time the font is written.
+            // Unparsed tables are checksummed where they sit in the source font data.
+            if (sourceChecksum < 0 && unparsedFontData != null)
+                sourceChecksum = FontVerterUtils.getTableChecksum(unparsedFontData, (int) record.offset,
+                        (int) record.length);
+            else if (sourceChecksum < 0)
+                sourceChecksum = FontVerterUtils.getTableChecksum(sourceData);
+
+            checksum = sourceChecksum;
+            return;
+        }
+
+        // checksum treats the unpadded tail as zero padded so no need to copy into a padded array
+        checksum = FontVerterUtils.getTableChecksum(getUnpaddedData());
     }
 
     void normalize() throws IOException {
@@ -212,4 +342,13 @@ public abstract class OpenTypeTable {
     public void clearDataCache() {
         cachedUnpaddedData = null;
     }
+
+    /**
+     * Thrown from the font's table getters when a lazily read table fails to parse on first access.
+     */
+    public static class TableParseException extends RuntimeException {
+        public TableParseException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }
@@ -26,46 +26,43 @@ import java.util.List;
 
 import static org.mabb.fontverter.opentype.GlyphMapReader.*;
 
+@TableTag("post")
 public class PostScriptTable extends OpenTypeTable {
     @DataTypeProperty(dataType = DataType.FIXED32)
-    private float version;
+    float version;
 
     @DataTypeProperty(dataType = DataType.FIXED32)
-    private float italicAngle;
+    float italicAngle;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short underlinePosition;
+    short underlinePosition;
 
     @DataTypeProperty(dataType = DataType.SHORT)
-    private short underlineThickness;
+    short underlineThickness;
 
     @DataTypeProperty(dataType = DataType.ULONG)
-    private long isFixedPitch;
+    long isFixedPitch;
 
     @DataTypeProperty(dataType = DataType.ULONG)
-    private long minMemType42;
+    long minMemType42;
 
     @DataTypeProperty(dataType = DataType.ULONG)
-    private long maxMemType42;
+    long maxMemType42;
 
     @DataTypeProperty(dataType = DataType.ULONG)
-    private long mimMemType1;
+    long mimMemType1;
 
     @DataTypeProperty(dataType = DataType.ULONG)
-    private long maxMemType1;
+    long maxMemType1;
 
     @DataTypeProperty(dataType = DataType.USHORT, includeIf = "isVersion2")
-    private int numGlyphs = 0;
+    int numGlyphs = 0;
 
     @DataTypeProperty(dataType = DataType.USHORT, isArray = true, includeIf = "isVersion2", arrayLength = "getNumGlyphs")
-    private Integer[] glyphNameIndex = new Integer[0];
+    int[] glyphNameIndex = new int[0];
 
     @DataTypeProperty(dataType = DataType.PASCAL_STRING, isArray = true, includeIf = "isVersion2", arrayLength = "getNumGlyphs")
-    private String[] glyphNames = new String[0];
-
-    public String getTableType() {
-        return "post";
-    }
+    String[] glyphNames = new String[0];
 
     public static PostScriptTable createDefaultTable(float version) {
         PostScriptTable table = new PostScriptTable();
@@ -137,8 +134,13 @@ public class PostScriptTable extends OpenTypeTable {
         return numGlyphs;
     }
 
+    boolean isChangedByNormalize() {
+        return !isFromParsedFont;
+    }
+
     void normalize() throws IOException {
-        if (font.getCmap() != null)
+        // parsed fonts keep their own glyph names
+        if (font.getCmap() != null && !isFromParsedFont)
             loadGlyphsFromCmap();
 
         super.normalize();
@@ -151,7 +153,7 @@ public class PostScriptTable extends OpenTypeTable {
 
         font.getCmap().getGlyphMappings();
 
-        glyphNameIndex = new Integer[numGlyphs];
+        glyphNameIndex = new int[numGlyphs];
         glyphNames = new String[numGlyphs];
 
         List<GlyphMapping> mappings = font.getCmap().getGlyphMappings();
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.mabb.fontverter.FontVerterUtils;
+import org.mabb.fontverter.io.DataTypeBindingSerializer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.mabb.fontverter.opentype.SfntHeader.SFNT_HEADER_SIZE;
+
+/**
+ * Lays out the sfnt header, table directory and table data. Every table is encoded exactly once, offsets and
+ * checksums are calculated from those bytes and the head checksum adjustment is derived from the table checksums
+ * plus the directory checksum so the full font never has to be serialized just to checksum it.
+ */
+class SfntLayout {
+    private static final long CHECKSUM_MAGIC = 0xB1B0AFBAL;
+
+    private final SfntHeader header;
+    private final List<OpenTypeTable> tables;
+    private byte[] directory;
+    private int fontLength;
+
+    SfntLayout(SfntHeader header, List<OpenTypeTable> tables) {
+        this.header = header;
+        this.tables = tables;
+    }
+
+    void layout(HeadTable head) throws IOException {
+        // start data offsets after sfnt header and table records
+        int offset = SFNT_HEADER_SIZE + tables.size() * OpenTypeTable.TABLE_RECORD_SIZE;
+        long fontChecksum = 0;
+
+        for (OpenTypeTable tableOn : tables) {
+            tableOn.setOffset(offset);
+            tableOn.finalizeRecord();
+
+            fontChecksum += tableOn.getChecksum();
+            offset += paddedLength(tableOn.getUnpaddedLength());
+        }
+        fontLength = offset;
+
+        directory = createDirectory();
+        fontChecksum += FontVerterUtils.getTableChecksum(directory);
+
+        // head's own table checksum is calculated with the adjustment zeroed so patching it in doesn't change
+        // anything else we've laid out
+        if (head != null)
+            head.setChecksumAdjustment((CHECKSUM_MAGIC - fontChecksum) & 0xFFFFFFFFL);
+    }
+
+    byte[] write() throws IOException {
+        // pre-sized to the laid out length so the buffer is returned as is without a final copy
+        FontDataOutputBuffer font = new FontDataOutputBuffer(fontLength);
+        font.write(directory);
+
+        for (OpenTypeTable tableOn : tables) {
+            tableOn.writeUnpaddedData(font);
+            font.padToFourBytes();
+        }
+
+        return font.toByteArray();
+    }
+
+    private byte[] createDirectory() throws IOException {
+        header.setNumTables(tables.size());
+
+        FontDataOutputBuffer directory = new FontDataOutputBuffer(SFNT_HEADER_SIZE
+                + tables.size() * OpenTypeTable.TABLE_RECORD_SIZE);
+        directory.write(header.getData());
+        for (OpenTypeTable tableOn : tables)
+            directory.write(tableOn.getRecordData());
+
+        return directory.toByteArray();
+    }
+
+    /**
+     * Writes the tables as they are right now without laying them out, nothing on the tables or header is changed.
+     * Checksums are left zeroed and the head checksum adjustment isn't patched so the result is only good for
+     * reading back in, not for handing out as a font file.
+     */
+    static byte[] writeAsIs(String sfntFlavor, List<OpenTypeTable> tables) throws IOException {
+        SfntHeader header = new SfntHeader();
+        header.sfntFlavor = sfntFlavor;
+        header.setNumTables(tables.size());
+
+        int[] lengths = new int[tables.size()];
+        int offset = SFNT_HEADER_SIZE + tables.size() * OpenTypeTable.TABLE_RECORD_SIZE;
+        int fontLength = offset;
+        for (int i = 0; i < tables.size(); i++) {
+            lengths[i] = tables.get(i).getUnpaddedLength();
+            fontLength += paddedLength(lengths[i]);
+        }
+
+        FontDataOutputBuffer font = new FontDataOutputBuffer(fontLength);
+        font.write(header.getData());
+
+        DataTypeBindingSerializer serializer = new DataTypeBindingSerializer();
+        for (int i = 0; i < tables.size(); i++) {
+            OpenTypeTable.OtfTableRecord record = new OpenTypeTable.OtfTableRecord();
+            record.recordName = tables.get(i).getTableType();
+            record.offset = offset;
+            record.length = lengths[i];
+            font.write(serializer.serialize(record));
+
+            offset += paddedLength(lengths[i]);
+        }
+
+        for (OpenTypeTable tableOn : tables) {
+            tableOn.writeUnpaddedData(font);
+            font.padToFourBytes();
+        }
+
+        return font.toByteArray();
+    }
+
+    static int paddedLength(int length) {
+        return (length + 3) & ~3;
+    }
+}
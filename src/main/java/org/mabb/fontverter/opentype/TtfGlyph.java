@@ -17,8 +17,6 @@
 
 package org.mabb.fontverter.opentype;
 
-import org.apache.commons.lang3.StringUtils;
-import org.mabb.fontverter.FontVerterUtils;
 import org.mabb.fontverter.io.*;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 import org.mabb.fontverter.opentype.TtfInstructions.TtfInstructionParser;
@@ -36,9 +34,24 @@ import static org.mabb.fontverter.io.DataTypeProperty.DataType.*;
 import static org.mabb.fontverter.opentype.TtfGlyph.CoordinateFlagType.*;
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Simple glyph outlines are held struct-of-arrays style, one primitive array entry per point, instead of as
+ * point objects. x and y values are the deltas as stored in the glyf table, flags are the per point flags with
+ * the repeat runs expanded. Composite glyphs hold their component records instead of points.
+ */
 public class TtfGlyph {
     private static final Logger log = getLogger(TtfGlyph.class);
 
+    static final int ON_CURVE_FLAG = 0x01;
+    static final int X_SHORT_VECTOR_FLAG = 0x02;
+    static final int Y_SHORT_VECTOR_FLAG = 0x04;
+    static final int REPEAT_FLAG = 0x08;
+    static final int X_IS_SAME_FLAG = 0x10;
+    static final int Y_IS_SAME_FLAG = 0x20;
+    static final int OVERLAP_SIMPLE_FLAG = 0x40;
+
+    private static final int HEADER_SIZE = 10;
+
     @DataTypeProperty(dataType = SHORT)
     short numberOfContours;
 
@@ -54,18 +67,15 @@ public class TtfGlyph {
     @DataTypeProperty(dataType = SHORT)
     short yMax;
 
-    @DataTypeProperty(dataType = USHORT, isArray = true, arrayLength = "getNumberOfContours", ignoreIf = "isComposite")
-    Integer[] countourEndPoints;
-
-    @DataTypeProperty(dataType = USHORT, ignoreIf = "isComposite")
+    int[] contourEndPoints = new int[0];
     int instructionLength;
+    byte[] instructions = new byte[0];
 
-    @DataTypeProperty(dataType = BYTE, isArray = true, ignoreIf = "isComposite", arrayLength = "instructionLength")
-    Byte[] instructions;
-
-    List<CoordinateFlagSet> flags = new LinkedList<CoordinateFlagSet>();
+    byte[] pointFlags = new byte[0];
+    short[] xCoordinates = new short[0];
+    short[] yCoordinates = new short[0];
 
-    private List<GlyphCoordinate> points = new LinkedList<GlyphCoordinate>();
+    List<CompositeGlyphComponent> components = new ArrayList<CompositeGlyphComponent>();
 
     private OpenTypeFont font;
     private int glyphId;
@@ -74,22 +84,49 @@ public class TtfGlyph {
     private boolean useRawData = false;
 
     public static TtfGlyph parse(byte[] data, OpenTypeFont font) throws IOException {
-        FontDataInput reader = new FontDataInputStream(data);
+        return parse(new FontDataBuffer(data), font, font.getGlyfTable().glyphs.size());
+    }
 
+    static TtfGlyph parse(FontDataBuffer reader, OpenTypeFont font, int glyphId) throws IOException {
         DataTypeBindingDeserializer deserializer = new DataTypeBindingDeserializer();
         TtfGlyph glyph = (TtfGlyph) deserializer.deserialize(reader, TtfGlyph.class);
         glyph.isParsed = true;
 
         glyph.font = font;
-        glyph.glyphId = font.getGlyfTable().getGlyphs().size();
-        glyph.rawData = data;
+        glyph.glyphId = glyphId;
 
         if (glyph.isComposite())
-            glyph.useRawData = true;
+            glyph.readCompositeGlyphData(reader);
         else
             // x[] and y[] vals can be variable length so have to do manually vs annotation
             glyph.readSimpleGlyphData(reader);
 
+        // only keep the original bytes around when they are what will be written back out
+        if (glyph.useRawData)
+            glyph.rawData = reader.getBytes(0, reader.length());
+
+        return glyph;
+    }
+
+    /**
+     * Glyph that writes already encoded glyph data back out as is, for copying glyphs between fonts without
+     * decoding their outlines. Composite glyphs are still fully parsed so their components can be renumbered.
+     */
+    static TtfGlyph fromEncodedData(byte[] data, OpenTypeFont font, int glyphId) throws IOException {
+        if (data.length == 0)
+            return new TtfGlyph();
+
+        DataTypeBindingDeserializer deserializer = new DataTypeBindingDeserializer();
+        TtfGlyph glyph = (TtfGlyph) deserializer.deserialize(data, TtfGlyph.class);
+        if (glyph.isComposite())
+            return parse(new FontDataBuffer(data), font, glyphId);
+
+        glyph.isParsed = true;
+        glyph.font = font;
+        glyph.glyphId = glyphId;
+        glyph.rawData = data;
+        glyph.useRawData = true;
+
         return glyph;
     }
 
@@ -101,138 +138,214 @@ public class TtfGlyph {
         if (isEmpty())
             return new byte[0];
 
-        // dont support write for composite glyphs yet
+        // glyphs that couldn't be fully parsed are passed through as is
         if (rawData != null && useRawData)
             return rawData;
 
+        if (isComposite())
+            return generateCompositeData();
 
-        int t = 85;
-        if (instructionLength > t)
-            instructionLength = t;
+        int pointCount = xCoordinates.length;
+        byte[] encodedFlags = new byte[pointCount];
+        int encodedFlagsLength = encodeFlags(encodedFlags);
 
-        FontDataOutputStream writer = new FontDataOutputStream();
+        int length = HEADER_SIZE + contourEndPoints.length * 2 + 2 + instructions.length + encodedFlagsLength
+                + coordinatesLength(xCoordinates) + coordinatesLength(yCoordinates);
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(length + length % 2);
         DataTypeBindingSerializer serializer = new DataTypeBindingSerializer();
-        byte[] data = serializer.serialize(this);
-        writer.write(data);
+        writer.write(serializer.serialize(this));
 
-        for (GlyphCoordinate pointOn : points) {
-            CoordinateFlagSet coordFlags = new CoordinateFlagSet();
-            if (pointOn.isOnCurve())
-                coordFlags.add(ON_CURVE);
+        for (int endPointOn : contourEndPoints)
+            writer.writeUnsignedShort(endPointOn);
 
-            writer.write(coordFlags.write());
-        }
+        instructionLength = instructions.length;
+        writer.writeUnsignedShort(instructionLength);
+        writer.write(instructions);
 
-        for (GlyphCoordinate pointOn : points)
-            writer.writeShort((int) pointOn.x);
+        writer.write(encodedFlags, 0, encodedFlagsLength);
+        writeCoordinates(writer, xCoordinates);
+        writeCoordinates(writer, yCoordinates);
 
-        for (GlyphCoordinate pointOn : points)
-            writer.writeShort((int) pointOn.y);
-
-        if (writer.size() % 2 != 0)
+        if (writer.currentPosition() % 2 != 0)
             writer.writeByte(0);
 
         return writer.toByteArray();
     }
 
-    private void readSimpleGlyphData(FontDataInput reader) throws IOException {
-        readFlags(reader);
-        readCoordinates(reader);
-    }
+    private byte[] generateCompositeData() throws IOException {
+        boolean hasInstructions = instructions.length > 0;
 
-    private void readFlags(FontDataInput reader) throws IOException {
-        for (int i = 0; i < getNumberOfPoints(); i++) {
-            CoordinateFlagSet flagSet = CoordinateFlagSet.flagsFromByte(reader.readByte());
+        int length = HEADER_SIZE + (hasInstructions ? 2 + instructions.length : 0);
+        for (CompositeGlyphComponent componentOn : components)
+            length += componentOn.getLength();
 
-            if (flagSet.contains(REPEAT)) {
-                flagSet.repeatCount = reader.readByte() & 0xFF;
-                i += flagSet.repeatCount;
-            }
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(length + length % 2);
+        DataTypeBindingSerializer serializer = new DataTypeBindingSerializer();
+        writer.write(serializer.serialize(this));
 
-            this.flags.add(flagSet);
+        for (int i = 0; i < components.size(); i++) {
+            boolean isLast = i == components.size() - 1;
+            components.get(i).write(writer, !isLast, isLast && hasInstructions);
         }
-    }
-
-    private void readCoordinates(FontDataInput reader) throws IOException {
-        for (CoordinateFlagSet flagSetOn : flags) {
-            List<Integer> coords = tryGetXCoords(reader, flagSetOn);
-            if (coords == null)
-                break;
 
-            for (Integer xOn : coords)
-                points.add(new GlyphCoordinate(xOn, 0, flagSetOn));
+        if (hasInstructions) {
+            instructionLength = instructions.length;
+            writer.writeUnsignedShort(instructionLength);
+            writer.write(instructions);
         }
 
-        int yIndex = 0;
-        for (CoordinateFlagSet flagSetOn : flags) {
-            try {
-                List<Integer> coords = tryGetYCoords(reader, flagSetOn, yIndex);
-                if (coords == null)
-                    break;
-
-                for (int i = 0; i < coords.size(); i++)
-                    points.get(i + yIndex).y = coords.get(i);
-
-                yIndex += coords.size();
-            } catch (EOFException ex) {
-                log.warn("Went over on y coord read at flag #" + flags.indexOf(flagSetOn));
-                useRawData = true;
-                break;
+        if (writer.currentPosition() % 2 != 0)
+            writer.writeByte(0);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Picks the smallest form for each point's x and y delta and run length encodes the resulting flags, a run
+     * only gets a repeat count when that is shorter than writing the flag out again.
+     */
+    private int encodeFlags(byte[] encodedFlags) {
+        int length = 0;
+        int i = 0;
+        while (i < xCoordinates.length) {
+            int flag = pointFlag(i);
+
+            int runEnd = i + 1;
+            while (runEnd < xCoordinates.length && runEnd - i <= 255 && pointFlag(runEnd) == flag)
+                runEnd++;
+
+            int repeatCount = runEnd - i - 1;
+            if (repeatCount > 1) {
+                encodedFlags[length++] = (byte) (flag | REPEAT_FLAG);
+                encodedFlags[length++] = (byte) repeatCount;
+                i = runEnd;
+            } else {
+                encodedFlags[length++] = (byte) flag;
+                i++;
             }
         }
+
+        return length;
     }
 
-    private List<Integer> readCoordinatesForFlag(FontDataInput reader, CoordinateFlagSet coordFlags, int lastCoord)
-            throws IOException {
-        boolean isX = coordFlags.forX;
-        boolean is1Byte = coordFlags.contains(isX ? IS_X_1_BYTE : IS_Y_1_BYTE);
-        boolean useSame2ByteCoord = coordFlags.contains(isX ? THIS_X_IS_SAME : THIS_Y_IS_SAME);
-        boolean useNegative1Byte = !useSame2ByteCoord;
+    private int pointFlag(int point) {
+        // on curve and the overlap hint are the only bits kept from the source flags, the rest describe encoding
+        int flag = pointFlags[point] & (ON_CURVE_FLAG | OVERLAP_SIMPLE_FLAG);
+        flag |= coordinateFlag(xCoordinates[point], X_SHORT_VECTOR_FLAG, X_IS_SAME_FLAG);
+        flag |= coordinateFlag(yCoordinates[point], Y_SHORT_VECTOR_FLAG, Y_IS_SAME_FLAG);
 
-        List<Integer> coords = new LinkedList<Integer>();
+        return flag;
+    }
 
-        for (int j = 0; j < coordFlags.repeatCount + 1; j++) {
-            if (useNegative1Byte && is1Byte)
-                coords.add(-(reader.readByte() & 0xFF));
-            else if (is1Byte)
-                coords.add(reader.readByte() & 0xFF);
+    private static int coordinateFlag(short delta, int shortVectorFlag, int isSameFlag) {
+        if (delta == 0)
+            return isSameFlag;
+        if (delta > 0 && delta <= 0xFF)
+            return shortVectorFlag | isSameFlag;
+        if (delta < 0 && delta >= -0xFF)
+            return shortVectorFlag;
 
-            else if (useSame2ByteCoord)
-                coords.add(0);
-            else
-                coords.add((int) reader.readShort());
+        return 0;
+    }
+
+    private static int coordinatesLength(short[] coordinates) {
+        int length = 0;
+        for (short deltaOn : coordinates) {
+            if (deltaOn != 0)
+                length += Math.abs(deltaOn) <= 0xFF ? 1 : 2;
         }
 
-        if (coords.size() == 0)
-            throw new IOException("TTF glyph read coordinates array of 0 " + (isX ? "Xs" : "Ys"));
+        return length;
+    }
+
+    private static void writeCoordinates(FontDataOutputBuffer writer, short[] coordinates) {
+        for (short deltaOn : coordinates) {
+            if (deltaOn == 0)
+                continue;
 
-        return coords;
+            if (Math.abs(deltaOn) <= 0xFF)
+                writer.writeByte(Math.abs(deltaOn));
+            else
+                writer.writeShort(deltaOn);
+        }
     }
 
-    private List<Integer> tryGetXCoords(FontDataInput reader, CoordinateFlagSet flagSetOn)
-            throws IOException {
+    private void readSimpleGlyphData(FontDataInput reader) throws IOException {
+        contourEndPoints = reader.readUnsignedShortArray(numberOfContours);
+        instructionLength = reader.readUnsignedShort();
+        instructions = reader.readBytes(instructionLength);
+
+        readFlags(reader);
+
+        int pointCount = pointFlags.length;
+        xCoordinates = new short[pointCount];
+        yCoordinates = new short[pointCount];
+
         try {
-            int lastCoord = points.size() == 0 ? 0 : (int) points.get(points.size() - 1).x;
-            return readCoordinatesForFlag(reader, flagSetOn, lastCoord);
+            readCoordinates(reader, xCoordinates, X_SHORT_VECTOR_FLAG, X_IS_SAME_FLAG);
         } catch (EOFException ex) {
-            log.warn("EOF on X coord read at flag #" + flags.indexOf(flagSetOn) + " " + this.toString());
+            log.warn("EOF on X coord read for glyph #" + glyphId);
             useRawData = true;
-            return null;
+            return;
         }
-    }
 
-    private List<Integer> tryGetYCoords(FontDataInput reader, CoordinateFlagSet flagSetOn, int yIndex)
-            throws IOException {
         try {
-            CoordinateFlagSet coordFlags = new CoordinateFlagSet(flagSetOn);
-            coordFlags.forX = false;
-            int lastCoord = yIndex == 0 ? 0 : (int) points.get(yIndex - 1).y;
+            readCoordinates(reader, yCoordinates, Y_SHORT_VECTOR_FLAG, Y_IS_SAME_FLAG);
+        } catch (EOFException ex) {
+            log.warn("Went over on y coord read for glyph #" + glyphId);
+            useRawData = true;
+        }
+    }
 
-            return readCoordinatesForFlag(reader, coordFlags, lastCoord);
+    private void readCompositeGlyphData(FontDataInput reader) throws IOException {
+        try {
+            boolean hasInstructions = false;
+            CompositeGlyphComponent componentOn;
+            do {
+                componentOn = CompositeGlyphComponent.read(reader);
+                components.add(componentOn);
+                hasInstructions |= componentOn.hasInstructions();
+            } while (componentOn.hasMoreComponents());
+
+            if (hasInstructions) {
+                instructionLength = reader.readUnsignedShort();
+                instructions = reader.readBytes(instructionLength);
+            }
         } catch (EOFException ex) {
-            log.warn("Went over on y coord read at flag #" + flags.indexOf(flagSetOn));
+            log.warn("EOF on composite glyph read for glyph #" + glyphId);
             useRawData = true;
-            return null;
+        }
+    }
+
+    private void readFlags(FontDataInput reader) throws IOException {
+        int pointCount = getNumberOfPoints();
+        pointFlags = new byte[pointCount];
+
+        int i = 0;
+        while (i < pointCount) {
+            int flag = reader.readUnsignedByte();
+            int repeatCount = 0;
+            if ((flag & REPEAT_FLAG) != 0) {
+                repeatCount = reader.readUnsignedByte();
+                flag &= ~REPEAT_FLAG;
+            }
+
+            int end = Math.min(pointCount, i + repeatCount + 1);
+            while (i < end)
+                pointFlags[i++] = (byte) flag;
+        }
+    }
+
+    private void readCoordinates(FontDataInput reader, short[] coordinates, int shortVectorFlag, int isSameFlag)
+            throws IOException {
+        for (int i = 0; i < coordinates.length; i++) {
+            int flag = pointFlags[i];
+
+            if ((flag & shortVectorFlag) != 0) {
+                int delta = reader.readUnsignedByte();
+                coordinates[i] = (short) ((flag & isSameFlag) != 0 ? delta : -delta);
+            } else if ((flag & isSameFlag) == 0)
+                coordinates[i] = reader.readShort();
         }
     }
 
@@ -245,13 +358,26 @@ public class TtfGlyph {
     }
 
     int getNumberOfPoints() {
-        if (countourEndPoints == null)
+        if (contourEndPoints.length == 0)
             return 0;
 
-        return countourEndPoints[countourEndPoints.length - 1] + 1;
+        return contourEndPoints[contourEndPoints.length - 1] + 1;
+    }
+
+    public List<CompositeGlyphComponent> getComponents() {
+        return components;
     }
 
+    /**
+     * Builds point objects for the outline, the coordinates are relative to the previous point as stored in
+     * the glyf table. Internal code should prefer working with the coordinate arrays directly.
+     */
     public List<GlyphCoordinate> getCoordinates() {
+        List<GlyphCoordinate> points = new ArrayList<GlyphCoordinate>(xCoordinates.length);
+        for (int i = 0; i < xCoordinates.length; i++)
+            points.add(new GlyphCoordinate(xCoordinates[i], yCoordinates[i],
+                    CoordinateFlagSet.flagsFromByte(pointFlags[i])));
+
         return points;
     }
 
@@ -264,7 +390,7 @@ public class TtfGlyph {
         int startPtOn = 0;
         Point2D.Double lastPoint = new Point2D.Double();
 
-        for (Integer endPtOn : countourEndPoints) {
+        for (int endPtOn : contourEndPoints) {
             Path2D.Double pathOn = new Path2D.Double();
 
             if (startPtOn == 0)
@@ -272,12 +398,10 @@ public class TtfGlyph {
 
             Point2D.Double firstPoint = new Point2D.Double();
 
-            for (int i = startPtOn; i < endPtOn + 1; i++) {
-
-                Point2D.Double relativePoint = points.get(i);
+            for (int i = startPtOn; i < endPtOn + 1 && i < xCoordinates.length; i++) {
                 Point2D.Double point = new Point2D.Double();
-                point.x = relativePoint.x + lastPoint.x;
-                point.y = relativePoint.y + lastPoint.y;
+                point.x = xCoordinates[i] + lastPoint.x;
+                point.y = yCoordinates[i] + lastPoint.y;
 
                 if (startPtOn != 0 && i == startPtOn)
                     pathOn.moveTo(point.x, point.y);
@@ -304,20 +428,17 @@ public class TtfGlyph {
         int startPtOn = 0;
         Point2D.Double lastPoint = new Point2D.Double();
 
-        for (Integer endPtOn : countourEndPoints) {
+        for (int endPtOn : contourEndPoints) {
             Countour countourOn = new Countour();
 
             Point2D.Double firstPoint = new Point2D.Double();
 
-            for (int i = startPtOn; i < endPtOn + 1; i++) {
-
-                Point2D.Double relativePoint = points.get(i);
+            for (int i = startPtOn; i < endPtOn + 1 && i < xCoordinates.length; i++) {
                 Point2D.Double point = new Point2D.Double();
-                point.x = relativePoint.x + lastPoint.x;
-                point.y = relativePoint.y + lastPoint.y;
+                point.x = xCoordinates[i] + lastPoint.x;
+                point.y = yCoordinates[i] + lastPoint.y;
 
-                countourOn.add(relativePoint);
-//                countourOn.add(point);
+                countourOn.add(new Point2D.Double(xCoordinates[i], yCoordinates[i]));
 
                 if (i == startPtOn)
                     firstPoint = point;
@@ -334,14 +455,22 @@ public class TtfGlyph {
     }
 
     public void setCountours(List<Countour> countours) {
-        points.clear();
-        for (Countour countourOn : countours) {
-            for (int i = 0; i < countourOn.size(); i++) {
-                Point2D.Double ptOn = countourOn.get(i);
+        int pointCount = 0;
+        for (Countour countourOn : countours)
+            pointCount += Math.max(countourOn.size() - 1, 0);
+
+        pointFlags = new byte[pointCount];
+        xCoordinates = new short[pointCount];
+        yCoordinates = new short[pointCount];
 
-                // last point is filler for otf glyph
-                if (i != countourOn.size() - 1)
-                    points.add(new GlyphCoordinate(ptOn.x, ptOn.y, new CoordinateFlagSet()));
+        int i = 0;
+        for (Countour countourOn : countours) {
+            // last point is filler for otf glyph
+            for (int j = 0; j < countourOn.size() - 1; j++) {
+                Point2D.Double ptOn = countourOn.get(j);
+                xCoordinates[i] = (short) ptOn.x;
+                yCoordinates[i] = (short) ptOn.y;
+                i++;
             }
         }
     }
@@ -359,7 +488,7 @@ public class TtfGlyph {
     }
 
     public boolean isEmpty() {
-        return !isParsed && points.size() == 0 && rawData == null;
+        return !isParsed && xCoordinates.length == 0 && components.isEmpty() && rawData == null;
     }
 
     public List<TtfInstruction> getInstructions()
@@ -367,7 +496,7 @@ public class TtfGlyph {
         try {
             TtfInstructionParser parser = new TtfInstructionParser();
 
-            return parser.parse(FontVerterUtils.toPrimative(instructions));
+            return parser.parse(instructions);
         } catch (Exception ex) {
             log.info("Failed to parse ttfinstrctuins, currentley uneeded for conversion");
 
@@ -404,26 +533,18 @@ public class TtfGlyph {
         }
 
         public byte write() {
-            char[] binary = StringUtils.repeat("0", 8).toCharArray();
-
-            for (CoordinateFlagType typeOn : this) {
-                int bit = 8 - typeOn.getValue() - 1;
-                binary[bit] = '1';
-            }
+            int flagByte = 0;
+            for (CoordinateFlagType typeOn : this)
+                flagByte |= 1 << typeOn.getValue();
 
-            return (byte) Integer.parseInt(String.valueOf(binary));
+            return (byte) flagByte;
         }
 
         public static CoordinateFlagSet flagsFromByte(byte flagByte) {
             CoordinateFlagSet flags = new CoordinateFlagSet();
 
-            String binary = Integer.toBinaryString(flagByte);
-            binary = StringUtils.repeat("0", 8 - binary.length()) + binary;
-
             for (CoordinateFlagType typeOn : CoordinateFlagType.values()) {
-                char bitOn = binary.charAt(8 - typeOn.getValue() - 1);
-
-                if (bitOn == '1')
+                if ((flagByte & (1 << typeOn.getValue())) != 0)
                     flags.add(typeOn);
             }
 
@@ -19,13 +19,12 @@ package org.mabb.fontverter.opentype.TtfInstructions;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
-import org.reflections.Reflections;
+import org.mabb.fontverter.registry.TypeRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /*
     TTF uses it's own VM and instruction set to execute font hinting instructions. Crazy right.
@@ -35,7 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
     https://developer.apple.com/fonts/TrueType-Reference-Manual/RM05/Chap5.html
  */
 public class TtfInstructionParser {
-    private static ConcurrentHashMap<Integer, Class> instructionTypes = new ConcurrentHashMap<Integer, Class>();
+    private static volatile Map<Integer, Class<? extends TtfInstruction>> instructionTypes;
 
     private static Logger log = LoggerFactory.getLogger(TtfInstructionParser.class);
 
@@ -65,37 +64,20 @@ public class TtfInstructionParser {
             throws IllegalAccessException, InstantiationException, IOException {
         initInstructionTypes();
 
-        Class type = instructionTypes.get(code);
+        Class<? extends TtfInstruction> type = instructionTypes.get(code);
         if (type == null)
             return null;
 
-        TtfInstruction instruction = (TtfInstruction) type.newInstance();
+        TtfInstruction instruction = type.newInstance();
         instruction.code = code;
 
         return instruction;
     }
 
-    private static void initInstructionTypes() throws IllegalAccessException, InstantiationException {
-        // uses reflection to grab all TtfInstruction implementations than grabs their code ranges and adds an entry
-        // into a code=> instruction class map to be used when creating instruction objects from a code when parsing
-        // to remove the need for a giant if/switch block
-        if (instructionTypes.isEmpty()) {
-            Reflections reflections = new Reflections("org.mabb.fontverter");
-            Set<Class<? extends TtfInstruction>> adapterClasses = reflections.getSubTypesOf(TtfInstruction.class);
-            List<Class> instructionClasses = Arrays.asList(adapterClasses.toArray(new Class[adapterClasses.size()]));
-
-            for (Class typeOn : instructionClasses) {
-                // instiante a test object once to grab it's code ranges to use in code=>instruction class type map
-                TtfInstruction instructOn = (TtfInstruction) typeOn.newInstance();
-
-                int[] range = instructOn.getCodeRanges();
-                if (range.length == 1)
-                    instructionTypes.put(range[0], typeOn);
-                else {
-                    for (int i = range[0]; i <= range[1]; i++)
-                        instructionTypes.put(i, typeOn);
-                }
-            }
-        }
+    private static void initInstructionTypes() throws IOException {
+        // code => instruction class map used when creating instruction objects from a code when parsing
+        // to remove the need for a giant if/switch block, the classes are registered at build time
+        if (instructionTypes == null)
+            instructionTypes = TypeRegistry.getInstance().getInstructionTypes();
     }
 }
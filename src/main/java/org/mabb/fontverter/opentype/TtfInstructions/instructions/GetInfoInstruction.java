@@ -22,11 +22,8 @@ import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
 
 import java.io.IOException;
 
+@InstructionCodes(0x88)
 public class GetInfoInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x88};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
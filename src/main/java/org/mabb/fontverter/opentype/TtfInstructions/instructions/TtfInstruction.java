@@ -33,7 +33,12 @@ public abstract class TtfInstruction {
     public int code;
     public TtfVirtualMachine vm;
 
-    public abstract int[] getCodeRanges();
+    /**
+     * @return the op codes from the instruction's {@link InstructionCodes}
+     */
+    public int[] getCodeRanges() {
+        return getClass().getAnnotation(InstructionCodes.class).value();
+    }
 
     public abstract void read(FontDataInputStream in) throws IOException;
 
@@ -45,7 +50,7 @@ public abstract class TtfInstruction {
 
     public boolean doesMatch(int code) {
         int[] range = getCodeRanges();
-        if (getCodeRanges().length == 1)
+        if (range.length == 1)
             return code == range[0];
         else
             return code >= range[0] && code <= range[1];
@@ -20,15 +20,13 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.control;
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
 import org.mabb.fontverter.opentype.TtfInstructions.TtfInstructionVisitor;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes(0x59)
 public class EndIfInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x59};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
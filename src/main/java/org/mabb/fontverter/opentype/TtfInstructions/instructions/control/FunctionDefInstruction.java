@@ -20,17 +20,15 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.control;
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
 import org.mabb.fontverter.opentype.TtfInstructions.TtfInstructionVisitor;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes(0x2C)
 public class FunctionDefInstruction extends TtfInstruction {
     private Integer functionId = 0;
 
-    public int[] getCodeRanges() {
-        return new int[]{0x2C};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
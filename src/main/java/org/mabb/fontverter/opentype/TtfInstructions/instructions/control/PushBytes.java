@@ -19,18 +19,16 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.control;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes({0xB0, 0xB7})
 public class PushBytes extends TtfInstruction {
     private int numBytes;
     private byte[] bytes;
 
-    public int[] getCodeRanges() {
-        return new int[]{0xB0, 0xB7};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
         numBytes = code - 0xB0 + 1;
         if (in.available() < numBytes)
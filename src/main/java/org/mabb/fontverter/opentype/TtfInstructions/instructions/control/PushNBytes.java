@@ -19,18 +19,16 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.control;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes(0x40)
 public class PushNBytes extends TtfInstruction {
     private byte numBytes;
     private byte[] bytes;
 
-    public int[] getCodeRanges() {
-        return new int[]{0x40};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
         numBytes = in.readByte();
         bytes = in.readBytes(numBytes);
@@ -19,17 +19,15 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.control;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes(0x41)
 public class PushNWords extends TtfInstruction {
     private short[] words;
 
-    public int[] getCodeRanges() {
-        return new int[]{0x41};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
         byte numWords = in.readByte();
         words = new short[numWords];
@@ -19,17 +19,15 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.control;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes({0xB8, 0xBF})
 public class PushWords extends TtfInstruction {
     private short[] words;
 
-    public int[] getCodeRanges() {
-        return new int[]{0xB8, 0xBF};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
         int numWords = code - 0xB8 + 1;
         words = new short[numWords];
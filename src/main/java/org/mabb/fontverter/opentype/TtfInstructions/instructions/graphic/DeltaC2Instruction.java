@@ -19,17 +19,15 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+@InstructionCodes(0x74)
 public class DeltaC2Instruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x74};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
@@ -19,17 +19,15 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes({0x46, 0x47})
 public class GetCoordinateInstruction extends TtfInstruction {
     private boolean usePositionInOriginalOutline;
 
-    public int[] getCodeRanges() {
-        return new int[]{0x46, 0x47};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
         usePositionInOriginalOutline = code == 0x47;
     }
@@ -19,17 +19,15 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
 import static org.mabb.fontverter.FontVerterUtils.isBitSet;
 
+@InstructionCodes({0xC0, 0xDF})
 public class MoveDirectRelativePointInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0xC0, 0xDF};
-    }
-
     boolean resetRp0 = false;
     boolean keepDistanceGreaterThanMin = false;
     boolean roundDistance = false;
@@ -19,17 +19,15 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
 import static org.mabb.fontverter.opentype.TtfInstructions.graphicsengine.RoundSettings.RoundState.*;
 
+@InstructionCodes(0x7D)
 public class RoundDownToGridInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x7D};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
@@ -20,15 +20,13 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
 import org.mabb.fontverter.opentype.TtfInstructions.graphicsengine.RoundSettings;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes(0x7C)
 public class RoundUpToGridInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x7C};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
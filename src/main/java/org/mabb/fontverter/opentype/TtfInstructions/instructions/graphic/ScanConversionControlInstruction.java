@@ -20,6 +20,7 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
 import org.mabb.fontverter.opentype.TtfInstructions.TtfGraphicsState.ScanDropoutMode;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
@@ -28,11 +29,8 @@ import java.util.List;
 import static org.mabb.fontverter.FontVerterUtils.isBitSet;
 import static org.mabb.fontverter.opentype.TtfInstructions.TtfGraphicsState.ScanDropoutMode.*;
 
+@InstructionCodes(0x85)
 public class ScanConversionControlInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x85};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
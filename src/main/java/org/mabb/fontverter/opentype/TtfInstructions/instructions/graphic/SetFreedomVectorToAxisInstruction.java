@@ -19,15 +19,13 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.io.IOException;
 
+@InstructionCodes({0x04, 0x05})
 public class SetFreedomVectorToAxisInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x04, 0x05};
-    }
-
     public boolean isXAxis = false;
 
     public void read(FontDataInputStream in) throws IOException {
@@ -19,16 +19,14 @@ package org.mabb.fontverter.opentype.TtfInstructions.instructions.graphic;
 
 import org.mabb.fontverter.io.FontDataInputStream;
 import org.mabb.fontverter.opentype.TtfInstructions.InstructionStack;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
 import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
 
 import java.awt.geom.Point2D;
 import java.io.IOException;
 
+@InstructionCodes(0x0E)
 public class SetFreedomVectorToProjectionVectorInstruction extends TtfInstruction {
-    public int[] getCodeRanges() {
-        return new int[]{0x0E};
-    }
-
     public void read(FontDataInputStream in) throws IOException {
     }
 
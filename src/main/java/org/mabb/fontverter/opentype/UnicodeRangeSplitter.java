@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.mabb.fontverter.converter.OtfToWoffConverter;
+import org.mabb.fontverter.woff.WoffFont;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Splits one font into several smaller fonts that each cover a slice of its code points, so browsers using
+ * CSS unicode-range only download the slices a page actually uses. Useful for large CJK and multi-script fonts.
+ * <p>
+ * All chunks are cut from one {@link OpenTypeSubsetter} so the source font is only read and its glyphs only
+ * encoded once no matter how many chunks there are. Splitting only works out the chunks' code points, each chunk's
+ * font is subset the first time it's asked for so chunks can be written out one at a time.
+ */
+public class UnicodeRangeSplitter {
+    private final OpenTypeSubsetter subsetter;
+    private final SortedSet<Integer> codePoints;
+
+    public UnicodeRangeSplitter(OpenTypeFont font) throws IOException {
+        subsetter = new OpenTypeSubsetter(font);
+        codePoints = subsetter.getCodePoints();
+    }
+
+    /**
+     * @return code points the font has glyphs for
+     */
+    public SortedSet<Integer> getCodePoints() {
+        return Collections.unmodifiableSortedSet(codePoints);
+    }
+
+    /**
+     * Splits the font's code points in code point order into chunks with about the same number of code points
+     * each, so each chunk covers one contiguous slice of the cmap.
+     */
+    public List<FontChunk> splitContiguous(int chunkCount) {
+        return split(slice(new ArrayList<Integer>(codePoints), chunkCount));
+    }
+
+    /**
+     * Splits the font's code points into chunks by how often they're used, the first chunk gets the most used
+     * code points. Code points missing from the ranking are put after the ranked ones in code point order.
+     *
+     * @param codePointsByFrequency code points ordered from most to least used
+     */
+    public List<FontChunk> splitByFrequency(List<Integer> codePointsByFrequency, int chunkCount) {
+        Set<Integer> ordered = new LinkedHashSet<Integer>();
+        for (Integer codePointOn : codePointsByFrequency) {
+            if (codePoints.contains(codePointOn))
+                ordered.add(codePointOn);
+        }
+        ordered.addAll(codePoints);
+
+        return split(slice(new ArrayList<Integer>(ordered), chunkCount));
+    }
+
+    /**
+     * Creates one chunk for each group of code points, code points the font has no glyph for are left out and
+     * groups left empty don't get a chunk.
+     */
+    public List<FontChunk> split(List<? extends Collection<Integer>> codePointGroups) {
+        List<FontChunk> chunks = new ArrayList<FontChunk>();
+        for (Collection<Integer> groupOn : codePointGroups) {
+            SortedSet<Integer> chunkCodePoints = new TreeSet<Integer>(groupOn);
+            chunkCodePoints.retainAll(codePoints);
+            if (chunkCodePoints.isEmpty())
+                continue;
+
+            chunks.add(new FontChunk(chunks.size(), chunkCodePoints, subsetter));
+        }
+
+        return chunks;
+    }
+
+    private static List<List<Integer>> slice(List<Integer> ordered, int chunkCount) {
+        if (chunkCount < 1)
+            throw new IllegalArgumentException("Chunk count must be at least 1");
+
+        List<List<Integer>> slices = new ArrayList<List<Integer>>();
+        int start = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            // spreads the remainder over the first slices so sizes differ by one at most
+            int end = start + ordered.size() / chunkCount + (i < ordered.size() % chunkCount ? 1 : 0);
+            slices.add(ordered.subList(start, end));
+            start = end;
+        }
+
+        return slices;
+    }
+
+    /**
+     * @return CSS font-face rules for the chunks' WOFF2 files, one rule per chunk with its unicode-range
+     */
+    public static String createManifest(List<FontChunk> chunks, String fontFamily, String fileNamePrefix) {
+        StringBuilder manifest = new StringBuilder();
+        for (FontChunk chunkOn : chunks) {
+            manifest.append("@font-face {\n");
+            manifest.append("  font-family: '").append(fontFamily).append("';\n");
+            manifest.append("  src: url('").append(chunkOn.getFileName(fileNamePrefix))
+                    .append("') format('woff2');\n");
+            manifest.append("  unicode-range: ").append(chunkOn.getUnicodeRange()).append(";\n");
+            manifest.append("}\n");
+        }
+
+        return manifest.toString();
+    }
+
+    /**
+     * @return CSS unicode-range value for the code points, consecutive code points are merged into ranges
+     */
+    public static String toUnicodeRange(SortedSet<Integer> codePoints) {
+        StringBuilder range = new StringBuilder();
+        Iterator<Integer> iterator = codePoints.iterator();
+        if (!iterator.hasNext())
+            return "";
+
+        int start = iterator.next();
+        int end = start;
+        while (iterator.hasNext()) {
+            int codePointOn = iterator.next();
+            if (codePointOn == end + 1) {
+                end = codePointOn;
+                continue;
+            }
+
+            appendRange(range, start, end);
+            start = end = codePointOn;
+        }
+        appendRange(range, start, end);
+
+        return range.toString();
+    }
+
+    private static void appendRange(StringBuilder range, int start, int end) {
+        if (range.length() > 0)
+            range.append(", ");
+
+        range.append("U+").append(Integer.toHexString(start).toUpperCase());
+        if (end != start)
+            range.append('-').append(Integer.toHexString(end).toUpperCase());
+    }
+
+    public static class FontChunk {
+        private final int index;
+        private final SortedSet<Integer> codePoints;
+        private final OpenTypeSubsetter subsetter;
+        private OpenTypeFont font;
+        private WoffFont woff2;
+        private byte[] woff2Data;
+
+        FontChunk(int index, SortedSet<Integer> codePoints, OpenTypeSubsetter subsetter) {
+            this.index = index;
+            this.codePoints = codePoints;
+            this.subsetter = subsetter;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public SortedSet<Integer> getCodePoints() {
+            return Collections.unmodifiableSortedSet(codePoints);
+        }
+
+        /**
+         * @return the chunk's subset font, subset on the first call
+         */
+        public OpenTypeFont getFont() throws IOException {
+            if (font == null)
+                font = subsetter.subset(codePoints);
+
+            return font;
+        }
+
+        public String getUnicodeRange() {
+            return toUnicodeRange(codePoints);
+        }
+
+        public String getFileName(String fileNamePrefix) {
+            return fileNamePrefix + "." + index + ".woff2";
+        }
+
+        /**
+         * @return the chunk converted to WOFF2, only converted on the first call
+         */
+        public WoffFont toWoff2() throws IOException {
+            if (woff2 == null)
+                woff2 = (WoffFont) new OtfToWoffConverter.OtfToWoff2Converter().convertFont(getFont());
+
+            return woff2;
+        }
+
+        /**
+         * @return the chunk's WOFF2 file data, only encoded on the first call
+         */
+        public byte[] getWoff2Data() throws IOException {
+            if (woff2Data == null)
+                woff2Data = toWoff2().getData();
+
+            return woff2Data;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.registry;
+
+import org.mabb.fontverter.opentype.OpenTypeTable;
+import org.mabb.fontverter.opentype.TableTag;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
+import org.reflections.Reflections;
+
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Fallback registry that scans the classpath, only used when the build time generated registry is missing. This is
+ * the only class that needs reflections so it can be left off the classpath otherwise.
+ */
+class ReflectionsTypeRegistry extends TypeRegistry {
+    private final Reflections reflections = new Reflections("org.mabb.fontverter");
+
+    public ReflectionsTypeRegistry() {
+    }
+
+    protected Map<String, Class<? extends OpenTypeTable>> findTableTypes() {
+        Map<String, Class<? extends OpenTypeTable>> types = new HashMap<String, Class<? extends OpenTypeTable>>();
+        for (Class<? extends OpenTypeTable> typeOn : removeAbstractClasses(
+                reflections.getSubTypesOf(OpenTypeTable.class))) {
+            // skip test fixtures when scanning while running the tests
+            if (typeOn.getCanonicalName().contains("Canned"))
+                continue;
+
+            TableTag tag = typeOn.getAnnotation(TableTag.class);
+            if (tag != null)
+                types.put(tag.value(), typeOn);
+        }
+
+        return types;
+    }
+
+    protected Map<Integer, Class<? extends TtfInstruction>> findInstructionTypes() {
+        Map<Integer, Class<? extends TtfInstruction>> types = new HashMap<Integer, Class<? extends TtfInstruction>>();
+        for (Class<? extends TtfInstruction> typeOn : removeAbstractClasses(
+                reflections.getSubTypesOf(TtfInstruction.class))) {
+            InstructionCodes codes = typeOn.getAnnotation(InstructionCodes.class);
+            if (codes == null)
+                continue;
+
+            int[] range = codes.value();
+            int last = range.length == 1 ? range[0] : range[1];
+            for (int i = range[0]; i <= last; i++)
+                types.put(i, typeOn);
+        }
+
+        return types;
+    }
+
+    private static <T> List<Class<? extends T>> removeAbstractClasses(Set<Class<? extends T>> classes) {
+        List<Class<? extends T>> filtered = new ArrayList<Class<? extends T>>();
+        for (Class<? extends T> classOn : classes) {
+            int modifiers = classOn.getModifiers();
+            if (!Modifier.isAbstract(modifiers) && !classOn.isInterface() && Modifier.isPublic(modifiers))
+                filtered.add(classOn);
+        }
+
+        return filtered;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.registry;
+
+import org.mabb.fontverter.opentype.OpenTypeTable;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Known table and TTF instruction implementations, keyed by table tag and op code. The maps are generated at
+ * build time by {@link org.mabb.fontverter.registry.processor.TypeRegistryProcessor} from each class's
+ * {@link org.mabb.fontverter.opentype.TableTag} or
+ * {@link org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes}. If that generated class is
+ * missing, say a build that skipped annotation processing, we fall back to scanning the classpath with reflections.
+ */
+public abstract class TypeRegistry {
+    private static final String GENERATED_REGISTRY = "org.mabb.fontverter.registry.GeneratedTypeRegistry";
+    private static final String REFLECTIONS_REGISTRY = "org.mabb.fontverter.registry.ReflectionsTypeRegistry";
+
+    private static TypeRegistry instance;
+    private static Logger log = LoggerFactory.getLogger(TypeRegistry.class);
+
+    private Map<String, Class<? extends OpenTypeTable>> tableTypes;
+    private Map<Integer, Class<? extends TtfInstruction>> instructionTypes;
+
+    public static synchronized TypeRegistry getInstance() throws IOException {
+        if (instance == null)
+            instance = loadRegistry();
+
+        return instance;
+    }
+
+    private static TypeRegistry loadRegistry() throws IOException {
+        try {
+            return (TypeRegistry) Class.forName(GENERATED_REGISTRY).newInstance();
+        } catch (ClassNotFoundException ex) {
+            log.warn("Generated type registry not found, falling back to classpath scanning.");
+        } catch (Exception ex) {
+            throw new IOException("Could not load generated type registry.", ex);
+        }
+
+        try {
+            return (TypeRegistry) Class.forName(REFLECTIONS_REGISTRY).newInstance();
+        } catch (Throwable ex) {
+            throw new IOException("No generated type registry and reflections is not on the classpath.", ex);
+        }
+    }
+
+    protected abstract Map<String, Class<? extends OpenTypeTable>> findTableTypes();
+
+    protected abstract Map<Integer, Class<? extends TtfInstruction>> findInstructionTypes();
+
+    /**
+     * @return table classes keyed by their table tag, ie 'head' or 'cmap'
+     */
+    public synchronized Map<String, Class<? extends OpenTypeTable>> getTableTypes() {
+        if (tableTypes == null)
+            tableTypes = Collections.unmodifiableMap(findTableTypes());
+
+        return tableTypes;
+    }
+
+    /**
+     * @return instruction classes keyed by every op code they handle
+     */
+    public synchronized Map<Integer, Class<? extends TtfInstruction>> getInstructionTypes() {
+        if (instructionTypes == null)
+            instructionTypes = Collections.unmodifiableMap(findInstructionTypes());
+
+        return instructionTypes;
+    }
+}
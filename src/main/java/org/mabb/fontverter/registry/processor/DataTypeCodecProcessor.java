@@ -0,0 +1,594 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mabb.fontverter.registry.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a DataTypeCodec for every class with DataTypeProperty annotated members, reading and writing the
+ * properties in the same order and with the same ignoreIf/includeIf and array length rules as the reflective
+ * binding serializer but as plain field accesses and method calls. Codecs go in the bound class's package so
+ * package private members can be used, org.mabb.fontverter.io.GeneratedDataTypeCodecs lists them all.
+ * <p>
+ * Classes whose bindings can't be expressed that way, private members or value types the reflective binder would
+ * fail on at runtime, are skipped with a note and keep using reflection.
+ */
+@SupportedAnnotationTypes(DataTypeCodecProcessor.PROPERTY_ANNOTATION)
+public class DataTypeCodecProcessor extends AbstractProcessor {
+    static final String PROPERTY_ANNOTATION = "org.mabb.fontverter.io.DataTypeProperty";
+    static final String CODEC_PACKAGE = "org.mabb.fontverter.io";
+    static final String REGISTRY_CLASS = "GeneratedDataTypeCodecs";
+    static final String CODEC_SUFFIX = "DataTypeCodec";
+
+    // bound class binary name to generated codec class name
+    private final Map<String, String> codecs = new TreeMap<String, String>();
+    private boolean generated = false;
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (generated || roundEnv.processingOver())
+            return false;
+
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        TypeElement annotation = elements.getTypeElement(PROPERTY_ANNOTATION);
+        if (annotation == null)
+            return false;
+
+        Map<String, TypeElement> boundTypes = new TreeMap<String, TypeElement>();
+        for (Element elementOn : roundEnv.getElementsAnnotatedWith(annotation)) {
+            TypeElement type = (TypeElement) elementOn.getEnclosingElement();
+            boundTypes.put(type.getQualifiedName().toString(), type);
+        }
+        if (boundTypes.isEmpty())
+            return false;
+
+        try {
+            for (TypeElement typeOn : boundTypes.values())
+                generateCodec(typeOn, annotation);
+
+            writeRegistry();
+            generated = true;
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not generate FontVerter data type codecs: " + ex.getMessage());
+        }
+
+        return false;
+    }
+
+    private void generateCodec(TypeElement type, TypeElement annotation) throws IOException {
+        String codecName = codecName(type);
+        String codec;
+        try {
+            checkAccessible(type);
+            List<Property> properties = readProperties(type, annotation);
+            codec = new CodecWriter(type, codecName, properties).write();
+        } catch (UnsupportedBindingException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "Using reflective data type binding for " + type.getQualifiedName() + ": " + ex.getMessage(), type);
+            return;
+        }
+
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type);
+        Writer writer = file.openWriter();
+        try {
+            if (!packageName.isEmpty())
+                writer.write("package " + packageName + ";\n\n");
+            writer.write(codec);
+        } finally {
+            writer.close();
+        }
+
+        codecs.put(elements.getBinaryName(type).toString(), qualifiedCodecName);
+    }
+
+    private String codecName(TypeElement type) {
+        // nested classes get their enclosing class names prefixed so codec names can't collide
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name = enclosing.getSimpleName() + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+
+        return name + CODEC_SUFFIX;
+    }
+
+    private void checkAccessible(TypeElement type) throws UnsupportedBindingException {
+        Element elementOn = type;
+        while (elementOn instanceof TypeElement) {
+            TypeElement typeOn = (TypeElement) elementOn;
+            if (typeOn.getModifiers().contains(Modifier.PRIVATE))
+                throw new UnsupportedBindingException(typeOn.getSimpleName() + " is private");
+            if (typeOn.getNestingKind() != NestingKind.TOP_LEVEL && typeOn.getNestingKind() != NestingKind.MEMBER)
+                throw new UnsupportedBindingException("local and anonymous classes aren't supported");
+
+            elementOn = typeOn.getEnclosingElement();
+        }
+    }
+
+    private List<Property> readProperties(TypeElement type, TypeElement annotation)
+            throws UnsupportedBindingException {
+        // same order as the reflective binder, declared fields then declared methods
+        List<Property> properties = new ArrayList<Property>();
+        for (VariableElement fieldOn : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            AnnotationMirror mirror = findAnnotation(fieldOn, annotation);
+            if (mirror != null)
+                properties.add(new Property(fieldOn, fieldOn.asType(), false, annotationValues(mirror)));
+        }
+        for (ExecutableElement methodOn : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            AnnotationMirror mirror = findAnnotation(methodOn, annotation);
+            if (mirror != null)
+                properties.add(new Property(methodOn, methodOn.getReturnType(), true, annotationValues(mirror)));
+        }
+
+        boolean hasOrder = false;
+        for (Property propertyOn : properties) {
+            if (propertyOn.order != -1)
+                hasOrder = true;
+
+            boolean isVarLengthType = propertyOn.dataType.equals("BYTE_ARRAY") || propertyOn.dataType.equals("STRING");
+            if (isVarLengthType && propertyOn.constLength < 1)
+                throw new UnsupportedBindingException("constLength is required for " + propertyOn.dataType);
+            if (propertyOn.element.getModifiers().contains(Modifier.PRIVATE))
+                throw new UnsupportedBindingException(propertyOn.name + " is private");
+        }
+
+        if (hasOrder) {
+            // stable sort like Collections.sort in the reflective binder
+            Collections.sort(properties, new Comparator<Property>() {
+                public int compare(Property o1, Property o2) {
+                    return o1.order < o2.order ? -1 : o1.order == o2.order ? 0 : 1;
+                }
+            });
+        }
+
+        return properties;
+    }
+
+    private AnnotationMirror findAnnotation(Element element, TypeElement annotation) {
+        for (AnnotationMirror mirrorOn : element.getAnnotationMirrors()) {
+            if (types.isSameType(mirrorOn.getAnnotationType(), annotation.asType()))
+                return mirrorOn;
+        }
+
+        return null;
+    }
+
+    private Map<String, Object> annotationValues(AnnotationMirror mirror) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entryOn :
+                elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            Object value = entryOn.getValue().getValue();
+            if (value instanceof VariableElement)
+                value = ((VariableElement) value).getSimpleName().toString();
+
+            values.put(entryOn.getKey().getSimpleName().toString(), value);
+        }
+
+        return values;
+    }
+
+    private void writeRegistry() throws IOException {
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(CODEC_PACKAGE + "." + REGISTRY_CLASS);
+        Writer writer = file.openWriter();
+        try {
+            writer.write("package " + CODEC_PACKAGE + ";\n\n");
+            writer.write("import java.util.Map;\n\n");
+            writer.write("// generated by " + DataTypeCodecProcessor.class.getName() + ", do not edit\n");
+            writer.write("public class " + REGISTRY_CLASS + " extends DataTypeCodec.Registry {\n");
+            writer.write("    protected void registerCodecs(Map<String, DataTypeCodec<?>> codecs) {\n");
+            for (Map.Entry<String, String> codecOn : codecs.entrySet())
+                writer.write("        codecs.put(\"" + codecOn.getKey() + "\", new " + codecOn.getValue() + "());\n");
+            writer.write("    }\n");
+            writer.write("}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static class Property {
+        final Element element;
+        final String name;
+        final TypeMirror type;
+        final boolean isMethod;
+
+        final String dataType;
+        final String ignoreIf;
+        final String includeIf;
+        final int order;
+        final int constLength;
+        final String arrayLength;
+        final boolean isArray;
+
+        Property(Element element, TypeMirror type, boolean isMethod, Map<String, Object> values) {
+            this.element = element;
+            this.name = element.getSimpleName().toString();
+            this.type = type;
+            this.isMethod = isMethod;
+
+            dataType = (String) values.get("dataType");
+            ignoreIf = (String) values.get("ignoreIf");
+            includeIf = (String) values.get("includeIf");
+            order = (Integer) values.get("order");
+            constLength = (Integer) values.get("constLength");
+            arrayLength = (String) values.get("arrayLength");
+            isArray = (Boolean) values.get("isArray");
+        }
+
+        String access() {
+            return "object." + name + (isMethod ? "()" : "");
+        }
+    }
+
+    private static class UnsupportedBindingException extends Exception {
+        UnsupportedBindingException(String message) {
+            super(message);
+        }
+    }
+
+    private class CodecWriter {
+        private final TypeElement type;
+        private final String typeName;
+        private final String codecName;
+        private final List<Property> properties;
+
+        private final StringBuilder read = new StringBuilder();
+        private final StringBuilder write = new StringBuilder();
+
+        CodecWriter(TypeElement type, String codecName, List<Property> properties) {
+            this.type = type;
+            this.typeName = type.getQualifiedName().toString();
+            this.codecName = codecName;
+            this.properties = properties;
+        }
+
+        String write() throws UnsupportedBindingException {
+            for (Property propertyOn : properties) {
+                String condition = condition(propertyOn);
+                if (propertyOn.isArray)
+                    addArrayProperty(propertyOn, condition);
+                else
+                    addProperty(propertyOn, condition);
+            }
+
+            StringBuilder codec = new StringBuilder();
+            codec.append("import org.mabb.fontverter.io.DataTypeCodec;\n");
+            codec.append("import org.mabb.fontverter.io.FontDataInput;\n");
+            codec.append("import org.mabb.fontverter.io.FontDataOutput;\n\n");
+            codec.append("import java.io.IOException;\n\n");
+            codec.append("// generated by ").append(DataTypeCodecProcessor.class.getName())
+                    .append(" from ").append(typeName).append(", do not edit\n");
+            codec.append("public class ").append(codecName)
+                    .append(" extends DataTypeCodec<").append(typeName).append("> {\n");
+
+            codec.append("    public void read(FontDataInput input, ").append(typeName)
+                    .append(" object, boolean recoverFromEOF) throws IOException {\n");
+            codec.append(read);
+            codec.append("    }\n\n");
+
+            codec.append("    public void write(FontDataOutput output, ").append(typeName)
+                    .append(" object) throws IOException {\n");
+            codec.append(write);
+            codec.append("    }\n");
+            codec.append("}\n");
+
+            return codec.toString();
+        }
+
+        private void addProperty(Property property, String condition) throws UnsupportedBindingException {
+            String readValue = readExpression(property);
+            String writeStatement = writeStatement(property, property.access(), property.type);
+            appendStatement(write, condition, writeStatement);
+
+            if (property.isMethod) {
+                // the value is still read so the input position matches the reflective binder's when it throws
+                String indent = "            ";
+                appendBlock(read, condition, indent + readValue + ";\n"
+                        + indent + "unsupported(\"Method property deserialization not implemented " + property.name
+                        + "\");\n");
+            } else {
+                checkAssignable(property, readType(property), property.type);
+                appendStatement(read, condition, "object." + property.name + " = " + readValue + ";");
+            }
+        }
+
+        private void addArrayProperty(Property property, String condition) throws UnsupportedBindingException {
+            if (property.isMethod || property.type.getKind() != TypeKind.ARRAY)
+                throw new UnsupportedBindingException(property.name + " array binding must be an array field");
+
+            // primitive arrays are read and written without boxing each element, the read value has to fit the
+            // component type without a cast like any other assignment
+            TypeMirror componentType = ((ArrayType) property.type).getComponentType();
+            checkAssignable(property, readType(property), componentType);
+
+            String component = componentType.getKind().isPrimitive() ? componentType.toString()
+                    : types.erasure(componentType).toString();
+            String length = arrayLengthExpression(property);
+            String indent = "            ";
+
+            StringBuilder readBlock = new StringBuilder();
+            readBlock.append(indent).append("int length = checkArrayLength(").append(length).append(");\n");
+            readBlock.append(indent).append(component).append("[] array = new ").append(component)
+                    .append("[length];\n");
+            readBlock.append(indent).append("for (int i = 0; i < length; i++) {\n");
+            readBlock.append(indent).append("    try {\n");
+            readBlock.append(indent).append("        array[i] = ").append(readExpression(property)).append(";\n");
+            readBlock.append(indent).append("    } catch (IOException ex) {\n");
+            readBlock.append(indent).append("        if (!recoverFromEOF)\n");
+            readBlock.append(indent).append("            throw arrayOverrun(i, length);\n");
+            readBlock.append(indent).append("        object.").append(property.name).append(" = array;\n");
+            readBlock.append(indent).append("        return;\n");
+            readBlock.append(indent).append("    }\n");
+            readBlock.append(indent).append("}\n");
+            readBlock.append(indent).append("object.").append(property.name).append(" = array;\n");
+
+            StringBuilder writeBlock = new StringBuilder();
+            writeBlock.append(indent).append("int length = checkArrayLength(").append(length).append(");\n");
+            writeBlock.append(indent).append(component).append("[] array = object.").append(property.name)
+                    .append(";\n");
+            writeBlock.append(indent).append("for (int i = 0; i < length; i++)\n");
+            writeBlock.append(indent).append("    ").append(writeStatement(property, "array[i]", componentType))
+                    .append("\n");
+
+            appendBlock(read, condition, readBlock.toString());
+            appendBlock(write, condition, writeBlock.toString());
+        }
+
+        private void appendStatement(StringBuilder body, String condition, String statement) {
+            if (condition == null) {
+                body.append("        ").append(statement).append("\n");
+            } else {
+                body.append("        if (").append(condition).append(")\n");
+                body.append("            ").append(statement).append("\n");
+            }
+        }
+
+        private void appendBlock(StringBuilder body, String condition, String block) {
+            if (condition == null)
+                body.append("        {\n");
+            else
+                body.append("        if (").append(condition).append(") {\n");
+
+            body.append(block);
+            body.append("        }\n");
+        }
+
+        private String readExpression(Property property) throws UnsupportedBindingException {
+            String dataType = property.dataType;
+            if (dataType.equals("SHORT"))
+                return "input.readShort()";
+            if (dataType.equals("USHORT"))
+                return "input.readUnsignedShort()";
+            if (dataType.equals("LONG") || dataType.equals("INT"))
+                return "input.readInt()";
+            if (dataType.equals("ULONG") || dataType.equals("UINT"))
+                return "input.readUnsignedInt()";
+            if (dataType.equals("FIXED32"))
+                return "input.readFixed32()";
+            if (dataType.equals("BYTE"))
+                return "input.readByte()";
+            if (dataType.equals("STRING"))
+                return "input.readString(" + property.constLength + ")";
+            if (dataType.equals("BYTE_ARRAY"))
+                return "input.readBytes(" + property.constLength + ")";
+            if (dataType.equals("LONG_DATE_TIME"))
+                return "input.readLong()";
+            if (dataType.equals("UINT_BASE_128"))
+                return "input.readUIntBase128()";
+            if (dataType.equals("PASCAL_STRING"))
+                return "readPascalString(input)";
+
+            throw new UnsupportedBindingException("unknown data type " + dataType);
+        }
+
+        private TypeMirror readType(Property property) throws UnsupportedBindingException {
+            String dataType = property.dataType;
+            if (dataType.equals("SHORT"))
+                return types.getPrimitiveType(TypeKind.SHORT);
+            if (dataType.equals("USHORT") || dataType.equals("LONG") || dataType.equals("INT")
+                    || dataType.equals("UINT_BASE_128"))
+                return types.getPrimitiveType(TypeKind.INT);
+            if (dataType.equals("ULONG") || dataType.equals("UINT"))
+                return types.getPrimitiveType(TypeKind.LONG);
+            if (dataType.equals("FIXED32"))
+                return types.getPrimitiveType(TypeKind.FLOAT);
+            if (dataType.equals("BYTE"))
+                return types.getPrimitiveType(TypeKind.BYTE);
+            if (dataType.equals("STRING") || dataType.equals("PASCAL_STRING"))
+                return declaredType("java.lang.String");
+            if (dataType.equals("BYTE_ARRAY"))
+                return types.getArrayType(types.getPrimitiveType(TypeKind.BYTE));
+            if (dataType.equals("LONG_DATE_TIME"))
+                return types.getPrimitiveType(TypeKind.LONG);
+
+            throw new UnsupportedBindingException("unknown data type " + dataType);
+        }
+
+        private String writeStatement(Property property, String value, TypeMirror valueType)
+                throws UnsupportedBindingException {
+            String dataType = property.dataType;
+            if (dataType.equals("SHORT"))
+                return "output.writeShort(" + number(property, value, valueType, TypeKind.SHORT) + ");";
+            if (dataType.equals("USHORT"))
+                return "output.writeUnsignedShort(" + number(property, value, valueType, TypeKind.INT) + ");";
+            if (dataType.equals("LONG") || dataType.equals("INT") || dataType.equals("UINT"))
+                return "output.writeInt(" + number(property, value, valueType, TypeKind.INT) + ");";
+            if (dataType.equals("ULONG"))
+                return "output.writeUnsignedInt((int) " + number(property, value, valueType, TypeKind.LONG) + ");";
+            if (dataType.equals("FIXED32"))
+                return "output.write32Fixed(" + number(property, value, valueType, TypeKind.FLOAT) + ");";
+
+            if (dataType.equals("BYTE")) {
+                if (valueType.getKind() != TypeKind.BYTE && !isType(valueType, "java.lang.Byte"))
+                    throw new UnsupportedBindingException(property.name + " BYTE binding must be a byte");
+                return "output.writeByte(" + value + ");";
+            }
+            if (dataType.equals("STRING") || dataType.equals("PASCAL_STRING")) {
+                checkAssignable(property, valueType, declaredType("java.lang.String"));
+                return dataType.equals("STRING") ? "output.writeString(" + value + ");"
+                        : "writePascalString(output, " + value + ");";
+            }
+            if (dataType.equals("BYTE_ARRAY")) {
+                checkAssignable(property, valueType, types.getArrayType(types.getPrimitiveType(TypeKind.BYTE)));
+                return "output.write(" + value + ");";
+            }
+            if (dataType.equals("LONG_DATE_TIME"))
+                return "output.writeLong(" + number(property, value, valueType, TypeKind.LONG) + ");";
+            if (dataType.equals("UINT_BASE_128"))
+                return "unsupported(\"Data type annotation serialization is not implemented for type: UINT_BASE_128\");";
+
+            throw new UnsupportedBindingException("unknown data type " + dataType);
+        }
+
+        /**
+         * Same conversion as the reflective binder's Number.xxxValue() calls on the boxed property value.
+         */
+        private String number(Property property, String value, TypeMirror valueType, TypeKind to)
+                throws UnsupportedBindingException {
+            String primitive = to.name().toLowerCase();
+            TypeKind kind = valueType.getKind();
+
+            if (kind == TypeKind.BYTE || kind == TypeKind.SHORT || kind == TypeKind.INT || kind == TypeKind.LONG
+                    || kind == TypeKind.FLOAT || kind == TypeKind.DOUBLE)
+                return kind == to ? value : "(" + primitive + ") " + value;
+
+            if (types.isAssignable(valueType, declaredType("java.lang.Number")))
+                return value + "." + primitive + "Value()";
+
+            throw new UnsupportedBindingException(property.name + " " + property.dataType + " binding must be a number");
+        }
+
+        private String condition(Property property) throws UnsupportedBindingException {
+            if (!property.ignoreIf.isEmpty())
+                return filterCall(property, property.ignoreIf, true);
+            if (!property.includeIf.isEmpty())
+                return filterCall(property, property.includeIf, false);
+
+            return null;
+        }
+
+        /**
+         * @return condition for the property being bound, ignoreIf filters skip the property when true and includeIf
+         * filters when false. Filters are public no argument boolean methods optionally prefixed with '!'.
+         */
+        private String filterCall(Property property, String filter, boolean isIgnoreFilter)
+                throws UnsupportedBindingException {
+            boolean negate = filter.startsWith("!");
+            String name = filter.replace("!", "").replace("()", "");
+
+            for (VariableElement fieldOn : ElementFilter.fieldsIn(elements.getAllMembers(type))) {
+                if (fieldOn.getSimpleName().contentEquals(name) && fieldOn.getModifiers().contains(Modifier.PUBLIC))
+                    throw new UnsupportedBindingException(property.name + " field filters aren't supported");
+            }
+
+            ExecutableElement method = null;
+            for (ExecutableElement methodOn : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+                if (methodOn.getSimpleName().contentEquals(name) && methodOn.getParameters().isEmpty()
+                        && methodOn.getModifiers().contains(Modifier.PUBLIC))
+                    method = methodOn;
+            }
+
+            if (method == null || (method.getReturnType().getKind() != TypeKind.BOOLEAN
+                    && !isType(method.getReturnType(), "java.lang.Boolean")))
+                throw new UnsupportedBindingException(property.name + " filter " + filter
+                        + " must be a public boolean method");
+
+            boolean include = isIgnoreFilter == negate;
+            return (include ? "" : "!") + "object." + name + "()";
+        }
+
+        private String arrayLengthExpression(Property property) throws UnsupportedBindingException {
+            String name = property.arrayLength;
+
+            // like the reflective binder only members declared on the class itself, field first
+            for (VariableElement fieldOn : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                if (!fieldOn.getSimpleName().contentEquals(name))
+                    continue;
+
+                TypeKind kind = fieldOn.asType().getKind();
+                if (fieldOn.getModifiers().contains(Modifier.PRIVATE) || !(kind == TypeKind.BYTE
+                        || kind == TypeKind.SHORT || kind == TypeKind.CHAR || kind == TypeKind.INT
+                        || kind == TypeKind.LONG))
+                    throw new UnsupportedBindingException(property.name + " array length field " + name
+                            + " must be a non private integer");
+
+                return kind == TypeKind.INT ? "object." + name : "(int) object." + name;
+            }
+
+            List<ExecutableElement> matches = new ArrayList<ExecutableElement>();
+            for (ExecutableElement methodOn : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (methodOn.getSimpleName().toString().contains(name))
+                    matches.add(methodOn);
+            }
+
+            if (matches.size() != 1)
+                throw new UnsupportedBindingException(property.name + " array length " + name
+                        + " must match exactly one field or method");
+
+            ExecutableElement method = matches.get(0);
+            if (method.getModifiers().contains(Modifier.PRIVATE) || !method.getParameters().isEmpty())
+                throw new UnsupportedBindingException(property.name + " array length method " + name
+                        + " must be non private without parameters");
+
+            String call = "object." + method.getSimpleName() + "()";
+            return number(property, call, method.getReturnType(), TypeKind.INT);
+        }
+
+        private void checkAssignable(Property property, TypeMirror from, TypeMirror to)
+                throws UnsupportedBindingException {
+            if (!types.isAssignable(from, to))
+                throw new UnsupportedBindingException(property.name + " " + property.dataType + " value "
+                        + from + " can't be assigned to " + to);
+        }
+
+        private boolean isType(TypeMirror type, String name) {
+            return types.isSameType(type, declaredType(name));
+        }
+
+        private TypeMirror declaredType(String name) {
+            return elements.getTypeElement(name).asType();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.registry.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates org.mabb.fontverter.registry.GeneratedTypeRegistry at compile time with every concrete table class keyed
+ * by its TableTag and every TTF instruction class keyed by each op code in its InstructionCodes, so nothing has to
+ * scan the classpath or create an instance of every type at runtime.
+ * <p>
+ * This class can't reference any other FontVerter classes since it has to be compiled before them, types are
+ * matched by name instead.
+ */
+@SupportedAnnotationTypes("*")
+public class TypeRegistryProcessor extends AbstractProcessor {
+    static final String REGISTRY_PACKAGE = "org.mabb.fontverter.registry";
+    static final String REGISTRY_CLASS = "GeneratedTypeRegistry";
+
+    private static final String TABLE_TYPE = "org.mabb.fontverter.opentype.OpenTypeTable";
+    private static final String INSTRUCTION_TYPE = "org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction";
+    private static final String TABLE_TAG = "org.mabb.fontverter.opentype.TableTag";
+    private static final String INSTRUCTION_CODES =
+            "org.mabb.fontverter.opentype.TtfInstructions.instructions.InstructionCodes";
+
+    private final Map<String, String> tableTypes = new TreeMap<String, String>();
+    private final Map<Integer, String> instructionTypes = new TreeMap<Integer, String>();
+    private boolean generated = false;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // all of our own sources are root elements of the first round, later rounds only hold generated sources
+        if (generated || roundEnv.processingOver() || roundEnv.getRootElements().isEmpty())
+            return false;
+
+        TypeMirror tableType = findType(TABLE_TYPE);
+        TypeMirror instructionType = findType(INSTRUCTION_TYPE);
+        if (tableType == null || instructionType == null)
+            return false;
+
+        for (TypeElement typeOn : ElementFilter.typesIn(roundEnv.getRootElements()))
+            collectTypes(typeOn, tableType, instructionType);
+
+        try {
+            writeRegistry();
+            generated = true;
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not generate FontVerter type registry: " + ex.getMessage());
+        }
+
+        return false;
+    }
+
+    private void collectTypes(TypeElement type, TypeMirror tableType, TypeMirror instructionType) {
+        if (isInstantiable(type)) {
+            TypeMirror typeMirror = type.asType();
+            String name = type.getQualifiedName().toString();
+
+            if (isSubtype(typeMirror, tableType))
+                collectTableType(type, name);
+            else if (isSubtype(typeMirror, instructionType))
+                collectInstructionType(type, name);
+        }
+
+        for (TypeElement nestedOn : ElementFilter.typesIn(type.getEnclosedElements())) {
+            if (nestedOn.getModifiers().contains(Modifier.STATIC))
+                collectTypes(nestedOn, tableType, instructionType);
+        }
+    }
+
+    private void collectTableType(TypeElement type, String name) {
+        AnnotationValue tag = findAnnotationValue(type, TABLE_TAG);
+        if (tag == null) {
+            error(type, name + " needs a @TableTag to be registered");
+            return;
+        }
+
+        String previous = tableTypes.put((String) tag.getValue(), name);
+        if (previous != null)
+            error(type, name + " has the same table tag as " + previous);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectInstructionType(TypeElement type, String name) {
+        AnnotationValue codes = findAnnotationValue(type, INSTRUCTION_CODES);
+        if (codes == null) {
+            error(type, name + " needs @InstructionCodes to be registered");
+            return;
+        }
+
+        // a single op code or the first and last op code of an inclusive range
+        List<? extends AnnotationValue> range = (List<? extends AnnotationValue>) codes.getValue();
+        int first = (Integer) range.get(0).getValue();
+        int last = (Integer) range.get(range.size() - 1).getValue();
+        for (int i = first; i <= last; i++) {
+            String previous = instructionTypes.put(i, name);
+            if (previous != null)
+                error(type, name + " has op code " + i + " already used by " + previous);
+        }
+    }
+
+    private AnnotationValue findAnnotationValue(TypeElement type, String annotationName) {
+        // includes annotations inherited from super classes, both annotations are @Inherited
+        for (AnnotationMirror annotationOn : processingEnv.getElementUtils().getAllAnnotationMirrors(type)) {
+            TypeElement annotationType = (TypeElement) annotationOn.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(annotationName))
+                continue;
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> valueOn :
+                    annotationOn.getElementValues().entrySet()) {
+                if (valueOn.getKey().getSimpleName().contentEquals("value"))
+                    return valueOn.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private boolean isInstantiable(TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (type.getKind() != ElementKind.CLASS || !modifiers.contains(Modifier.PUBLIC)
+                || modifiers.contains(Modifier.ABSTRACT))
+            return false;
+
+        for (ExecutableElement constructorOn : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructorOn.getParameters().isEmpty() && constructorOn.getModifiers().contains(Modifier.PUBLIC))
+                return true;
+        }
+
+        return false;
+    }
+
+    private boolean isSubtype(TypeMirror type, TypeMirror baseType) {
+        return processingEnv.getTypeUtils().isAssignable(type, baseType);
+    }
+
+    private TypeMirror findType(String name) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(name);
+        if (element == null)
+            return null;
+
+        return processingEnv.getTypeUtils().erasure(element.asType());
+    }
+
+    private void writeRegistry() throws IOException {
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(REGISTRY_PACKAGE + "." + REGISTRY_CLASS);
+        Writer writer = file.openWriter();
+        try {
+            writer.write("package " + REGISTRY_PACKAGE + ";\n\n");
+            writer.write("import java.util.HashMap;\n");
+            writer.write("import java.util.Map;\n\n");
+            writer.write("// generated by " + TypeRegistryProcessor.class.getName() + ", do not edit\n");
+            writer.write("public class " + REGISTRY_CLASS + " extends TypeRegistry {\n");
+
+            writeTypeMap(writer, "findTableTypes", "String", TABLE_TYPE, tableTypes);
+            writer.write("\n");
+            writeTypeMap(writer, "findInstructionTypes", "Integer", INSTRUCTION_TYPE, instructionTypes);
+
+            writer.write("}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeTypeMap(Writer writer, String methodName, String keyType, String baseType,
+                              Map<?, String> types) throws IOException {
+        String mapType = "Map<" + keyType + ", Class<? extends " + baseType + ">>";
+
+        writer.write("    protected " + mapType + " " + methodName + "() {\n");
+        writer.write("        " + mapType + " types = new HashMap<" + keyType + ", Class<? extends " + baseType
+                + ">>();\n");
+        for (Map.Entry<?, String> typeOn : types.entrySet())
+            writer.write("        types.put(" + keyLiteral(typeOn.getKey()) + ", " + typeOn.getValue() + ".class);\n");
+        writer.write("        return types;\n");
+        writer.write("    }\n");
+    }
+
+    private static String keyLiteral(Object key) {
+        if (key instanceof String)
+            return "\"" + key + "\"";
+
+        return "0x" + Integer.toHexString((Integer) key).toUpperCase();
+    }
+}
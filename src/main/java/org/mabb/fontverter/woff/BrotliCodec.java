@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Brotli compression for the woff2 data block. The jbrotli JNI codec is used when its native library loads for
+ * this platform, otherwise the pure java {@link JavaBrotliCodec}. Either can be forced with
+ * {@link #setInstance(BrotliCodec)}.
+ */
+public abstract class BrotliCodec {
+    private static final String JNI_CODEC = "org.mabb.fontverter.woff.JBrotliCodec";
+
+    private static BrotliCodec instance;
+    private static Logger log = LoggerFactory.getLogger(BrotliCodec.class);
+
+    public static synchronized BrotliCodec getInstance() {
+        if (instance == null)
+            instance = loadCodec();
+
+        return instance;
+    }
+
+    public static synchronized void setInstance(BrotliCodec codec) {
+        instance = codec;
+    }
+
+    private static BrotliCodec loadCodec() {
+        // loaded by name so jbrotli stays an optional dependency
+        try {
+            return (BrotliCodec) Class.forName(JNI_CODEC).newInstance();
+        } catch (Throwable ex) {
+            log.debug("jbrotli native library not available, using the java brotli codec.", ex);
+        }
+
+        return new JavaBrotliCodec();
+    }
+
+    public abstract byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * @param decompressedLength length the data has to decompress to, woff2 data blocks know this from the
+     *                           table directory
+     * @throws IOException when the data is invalid or doesn't decompress to exactly decompressedLength bytes
+     */
+    public abstract byte[] decompress(byte[] compressed, int decompressedLength) throws IOException;
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.meteogroup.jbrotli.Brotli;
+import org.meteogroup.jbrotli.BrotliDeCompressor;
+import org.meteogroup.jbrotli.BrotliStreamCompressor;
+import org.meteogroup.jbrotli.libloader.BrotliLibraryLoader;
+
+import java.io.IOException;
+
+/**
+ * Brotli codec using the jbrotli JNI bindings, faster than the java codec where jbrotli ships a native library.
+ * Creating one loads the native library and fails if there isn't one for this platform.
+ */
+public class JBrotliCodec extends BrotliCodec {
+    public JBrotliCodec() {
+        BrotliLibraryLoader.loadBrotli();
+    }
+
+    public byte[] compress(byte[] data) throws IOException {
+        Brotli.Parameter param = new Brotli.Parameter()
+                .setMode(Brotli.Mode.TEXT)
+                .setQuality(11)
+                .setLgwin(10)
+                .setLgblock(24);
+        BrotliStreamCompressor streamCompressor = new BrotliStreamCompressor(param);
+        byte[] compressed = streamCompressor.compressArray(data, true);
+        streamCompressor.close();
+
+        return compressed;
+    }
+
+    public byte[] decompress(byte[] compressed, int decompressedLength) throws IOException {
+        // jbrotli decodes the whole stream in one call and fails with a BrotliException when the stream hasn't
+        // ended by the time the output array is full, so the array can be exactly the expected size and data
+        // that's too long still shows up as an error rather than being cut short
+        byte[] decompressed = new byte[decompressedLength];
+        int length;
+        try {
+            length = new BrotliDeCompressor().deCompress(compressed, decompressed);
+        } catch (RuntimeException ex) {
+            throw new IOException("jbrotli could not decompress the data to the expected " + decompressedLength
+                    + " bytes", ex);
+        }
+
+        if (length != decompressedLength)
+            throw new IOException("Brotli data decompressed to " + length + " bytes, expected " + decompressedLength);
+
+        return decompressed;
+    }
+}
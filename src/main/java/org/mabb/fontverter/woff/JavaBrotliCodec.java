@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.mabb.fontverter.brotli.BrotliDecoder;
+import org.mabb.fontverter.brotli.BrotliEncoder;
+
+import java.io.IOException;
+
+/**
+ * Brotli codec that works on any platform, no native library needed.
+ */
+public class JavaBrotliCodec extends BrotliCodec {
+    public byte[] compress(byte[] data) throws IOException {
+        return BrotliEncoder.compress(data);
+    }
+
+    public byte[] decompress(byte[] compressed, int decompressedLength) throws IOException {
+        return BrotliDecoder.decompress(compressed, decompressedLength);
+    }
+}
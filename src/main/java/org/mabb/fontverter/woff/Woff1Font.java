@@ -22,6 +22,7 @@ import org.mabb.fontverter.converter.CombinedFontConverter;
 import org.mabb.fontverter.converter.FontConverter;
 import org.mabb.fontverter.converter.OtfToWoffConverter.OtfToWoff2Converter;
 import org.mabb.fontverter.converter.WoffToOtfConverter;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -43,20 +44,26 @@ public class Woff1Font extends WoffFont {
         tables.add(table);
     }
 
-    byte[] getRawData() throws IOException {
-        calculateOffsets();
-        return super.getRawData();
+    int getTableDataLength() throws IOException {
+        int length = tables.size() * WOFF1_TABLE_DIRECTORY_ENTRY_SIZE;
+        for (WoffTable tableOn : tables)
+            length += tableOn.getCompressedData().length;
+
+        return length;
     }
 
-    private void calculateOffsets() throws IOException {
-        // must calculate table record offsets before we write any table data
-        // start data offsets after sfnt header and table records
-        int offset = tableDirectoryOffsetStart();
+    void writeTableData(FontDataOutputBuffer out) throws IOException {
+        // directory entries need each table's offset so they're reserved and filled in as the tables are written
+        int directoryStart = out.reserve(tables.size() * WOFF1_TABLE_DIRECTORY_ENTRY_SIZE);
+
+        for (int i = 0; i < tables.size(); i++) {
+            Woff1Table tableOn = (Woff1Table) tables.get(i);
+            tableOn.setOffset(out.currentPosition());
+
+            out.write(tableOn.getUnpaddedCompressedData());
+            out.padToFourBytes();
 
-        for (WoffTable table : tables) {
-            Woff1Table tableOn = (Woff1Table) table;
-            tableOn.setOffset(offset);
-            offset += tableOn.getCompressedData().length;
+            out.patch(directoryStart + i * WOFF1_TABLE_DIRECTORY_ENTRY_SIZE, tableOn.getDirectoryData());
         }
     }
 
@@ -106,6 +113,10 @@ public class Woff1Font extends WoffFont {
             return padTableData(super.getCompressedData());
         }
 
+        byte[] getUnpaddedCompressedData() throws IOException {
+            return super.getCompressedData();
+        }
+
         public String getTag() {
             return tag;
         }
@@ -138,7 +149,7 @@ public class Woff1Font extends WoffFont {
 
             writer.writeString(tag);
             writer.writeInt(offset);
-            writer.writeInt(getCompressedData().length - paddingAdded);
+            writer.writeInt(getUnpaddedCompressedData().length);
             writer.writeInt(tableData.length);
             writer.writeUnsignedInt((int) checksum);
 
@@ -17,23 +17,34 @@
 
 package org.mabb.fontverter.woff;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.mabb.fontverter.*;
 import org.mabb.fontverter.converter.CombinedFontConverter;
 import org.mabb.fontverter.converter.FontConverter;
 import org.mabb.fontverter.converter.OtfToWoffConverter;
 import org.mabb.fontverter.converter.WoffToOtfConverter;
-import org.meteogroup.jbrotli.Brotli;
-import org.meteogroup.jbrotli.BrotliStreamCompressor;
-import org.meteogroup.jbrotli.libloader.BrotliLibraryLoader;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.mabb.fontverter.woff.WoffConstants.TableFlagType.arbitrary;
 import static org.mabb.fontverter.woff.WoffConstants.TableFlagType.glyf;
+import static org.mabb.fontverter.woff.WoffConstants.TableFlagType.head;
+import static org.mabb.fontverter.woff.WoffConstants.TableFlagType.hhea;
+import static org.mabb.fontverter.woff.WoffConstants.TableFlagType.hmtx;
 import static org.mabb.fontverter.woff.WoffConstants.TableFlagType.loca;
 
 public class Woff2Font extends WoffFont {
+    private static final Logger log = LoggerFactory.getLogger(Woff2Font.class);
+    private static final int HEAD_FLAGS_OFFSET = 16;
+    private static final int HEAD_FLAG_LOSSLESS_TRANSFORM = 1 << 11;
+    private static final int HEAD_INDEX_TO_LOC_FORMAT_OFFSET = 50;
+    static final int HHEA_NUMBER_OF_HMETRICS_OFFSET = 34;
+
     private byte[] cachedCompressedBlock;
 
     public WoffTable createTable() {
@@ -54,6 +65,133 @@ public class Woff2Font extends WoffFont {
         parser.parse(fontFile, this);
     }
 
+    public byte[] getData() throws IOException {
+        // transforms are written from copies of the tables, the font keeps its tables as they were read or
+        // converted so it can be written again or converted back to sfnt
+        sortTables();
+        List<WoffTable> sourceTables = tables;
+        tables = createTransformedTables();
+        try {
+            return super.getData();
+        } finally {
+            tables = sourceTables;
+            cachedCompressedBlock = null;
+        }
+    }
+
+    /**
+     * Copy of the table list with untransformed glyf and loca replaced by the woff2 glyf transform and hmtx by the
+     * hmtx transform when its left side bearings match the glyph bounding boxes. Transformed tables are copies so
+     * the font's own tables aren't changed. Fonts whose glyphs can't be parsed keep the null transform so they're
+     * still written.
+     */
+    List<WoffTable> createTransformedTables() {
+        List<WoffTable> transformed = new ArrayList<WoffTable>(tables);
+        Woff2Table glyfTable = findTable(transformed, glyf);
+        Woff2Table locaTable = findTable(transformed, loca);
+        Woff2Table headTable = findTable(transformed, head);
+        if (glyfTable == null || locaTable == null || headTable == null)
+            return transformed;
+        if (glyfTable.getTransform() != 3 || locaTable.getTransform() != 3)
+            return transformed;
+
+        try {
+            int indexFormat = (short) readUnsignedShort(headTable.getTableData(), HEAD_INDEX_TO_LOC_FORMAT_OFFSET);
+
+            Woff2GlyfEncoder encoder = new Woff2GlyfEncoder(glyfTable.getTableData(), locaTable.getTableData(),
+                    indexFormat);
+            byte[] transformedGlyf = encoder.encode();
+
+            // woff2 spec requires head flags bit 11 on fonts with a transformed glyf, the decoded font works
+            // the same but isn't byte for byte the input font
+            Woff2Table flaggedHead = headTable.copy();
+            setHeadFlag(flaggedHead, HEAD_FLAG_LOSSLESS_TRANSFORM);
+
+            // origLength stays the source table's length so totalSfntSize is the input font's size, the spec
+            // leaves decoders to size the reconstructed glyf themselves
+            Woff2Table transformedGlyfTable = glyfTable.copy();
+            transformedGlyfTable.setTransformedData(0, transformedGlyf, glyfTable.getTableData().length);
+            Woff2Table transformedLocaTable = locaTable.copy();
+            transformedLocaTable.setTransformedData(0, new byte[0], encoder.getLocaLength());
+
+            replaceTable(transformed, headTable, flaggedHead);
+            replaceTable(transformed, glyfTable, transformedGlyfTable);
+            replaceTable(transformed, locaTable, transformedLocaTable);
+            transformHmtxTable(transformed, encoder.getXMins());
+        } catch (IOException e) {
+            log.warn("Couldn't apply woff2 glyf transform, writing glyf and loca untransformed", e);
+        }
+
+        return transformed;
+    }
+
+    private static void transformHmtxTable(List<WoffTable> tables, int[] xMins) {
+        Woff2Table hmtxTable = findTable(tables, hmtx);
+        Woff2Table hheaTable = findTable(tables, hhea);
+        if (hmtxTable == null || hheaTable == null || hmtxTable.getTransform() != 0)
+            return;
+
+        try {
+            int numberOfHMetrics = readUnsignedShort(hheaTable.getTableData(), HHEA_NUMBER_OF_HMETRICS_OFFSET);
+            byte[] transformed = Woff2HmtxTransform.encode(hmtxTable.getTableData(), numberOfHMetrics, xMins);
+            if (transformed != null) {
+                Woff2Table transformedHmtxTable = hmtxTable.copy();
+                transformedHmtxTable.setTransformedData(1, transformed, hmtxTable.getTableData().length);
+                replaceTable(tables, hmtxTable, transformedHmtxTable);
+            }
+        } catch (IOException e) {
+            log.warn("Couldn't apply woff2 hmtx transform, writing hmtx untransformed", e);
+        }
+    }
+
+    private static void replaceTable(List<WoffTable> tables, Woff2Table table, Woff2Table replacement) {
+        tables.set(tables.indexOf(table), replacement);
+    }
+
+    private static void setHeadFlag(Woff2Table headTable, int flag) throws IOException {
+        byte[] head = headTable.getTableData().clone();
+        int flags = readUnsignedShort(head, HEAD_FLAGS_OFFSET) | flag;
+        head[HEAD_FLAGS_OFFSET] = (byte) (flags >> 8);
+        head[HEAD_FLAGS_OFFSET + 1] = (byte) flags;
+
+        headTable.setTableData(head);
+    }
+
+    static int readUnsignedShort(byte[] table, int offset) throws IOException {
+        if (table.length < offset + 2)
+            throw new IOException("Table is too short to read offset " + offset);
+
+        return ((table[offset] & 0xFF) << 8) | (table[offset + 1] & 0xFF);
+    }
+
+    private Woff2Table findTable(WoffConstants.TableFlagType flag) {
+        return findTable(tables, flag);
+    }
+
+    static Woff2Table findTable(List<WoffTable> tables, WoffConstants.TableFlagType flag) {
+        for (WoffTable tableOn : tables) {
+            if (((Woff2Table) tableOn).getFlag() == flag)
+                return (Woff2Table) tableOn;
+        }
+
+        return null;
+    }
+
+    /**
+     * Table order is by tag except loca directly follows glyf, decoders reconstruct the two tables together.
+     */
+    protected void sortTables() {
+        super.sortTables();
+
+        Woff2Table locaTable = findTable(loca);
+        Woff2Table glyfTable = findTable(glyf);
+        if (locaTable == null || glyfTable == null)
+            return;
+
+        tables.remove(locaTable);
+        tables.add(tables.indexOf(glyfTable) + 1, locaTable);
+    }
+
     byte[] getCompressedDataBlock() throws IOException {
         if (cachedCompressedBlock == null)
             cachedCompressedBlock = brotliCompress(super.getCompressedDataBlock());
@@ -61,27 +199,25 @@ public class Woff2Font extends WoffFont {
         return cachedCompressedBlock;
     }
 
-    byte[] getRawData() throws IOException {
-        byte[] bytes = super.getRawData();
-        byte[] pad = FontVerterUtils.tablePaddingNeeded(bytes);
-        bytes = ArrayUtils.addAll(bytes, pad);
+    int getTableDataLength() throws IOException {
+        int length = getCompressedDataBlock().length;
+        for (WoffTable tableOn : tables)
+            length += tableOn.getDirectoryData().length;
 
-        return bytes;
+        // header is 48 bytes so padding the rest pads the whole file
+        return paddedLength(length);
     }
 
-    private byte[] brotliCompress(byte[] bytes) {
-        BrotliLibraryLoader.loadBrotli();
+    void writeTableData(FontDataOutputBuffer out) throws IOException {
+        for (WoffTable tableOn : tables)
+            out.write(tableOn.getDirectoryData());
 
-        Brotli.Parameter param = new Brotli.Parameter()
-                .setMode(Brotli.Mode.TEXT)
-                .setQuality(11)
-                .setLgwin(10)
-                .setLgblock(24);
-        BrotliStreamCompressor streamCompressor = new BrotliStreamCompressor(param);
-        byte[] compressed = streamCompressor.compressArray(bytes, true);
-        streamCompressor.close();
+        out.write(getCompressedDataBlock());
+        out.padToFourBytes();
+    }
 
-        return compressed;
+    private byte[] brotliCompress(byte[] bytes) throws IOException {
+        return BrotliCodec.getInstance().compress(bytes);
     }
 
     public FontProperties getProperties() {
@@ -104,12 +240,95 @@ public class Woff2Font extends WoffFont {
     public static class Woff2Table extends WoffTable {
         private int transform = -1;
         protected String tag = "";
+        private ByteBuffer blockSlice;
 
         public Woff2Table(byte[] table, String tag) {
             super(table);
             this.tag = tag;
         }
 
+        /**
+         * Points a parsed table at its part of the decompressed data block, the bytes are only copied out if
+         * {@link #getTableData()} is called.
+         */
+        void setBlockSlice(ByteBuffer slice) {
+            blockSlice = slice;
+            tableData = null;
+        }
+
+        ByteBuffer getBlockSlice() {
+            return blockSlice;
+        }
+
+        /**
+         * @return copy for the write path to transform without changing this table, the table data is shared
+         */
+        Woff2Table copy() {
+            Woff2Table copy = new Woff2Table(new byte[0], tag);
+            copy.tableData = tableData;
+            copy.compressedData = compressedData;
+            copy.blockSlice = blockSlice;
+            copy.transform = transform;
+            copy.originalLength = originalLength;
+            copy.transformLength = transformLength;
+            return copy;
+        }
+
+        void setTableData(byte[] data) {
+            tableData = data;
+            compressedData = null;
+            blockSlice = null;
+        }
+
+        /**
+         * @return read only view of the table data, for parsed tables this shares the decompressed data block
+         */
+        public ByteBuffer getTableBuffer() {
+            if (blockSlice != null)
+                return blockSlice.asReadOnlyBuffer();
+
+            return ByteBuffer.wrap(tableData).asReadOnlyBuffer();
+        }
+
+        public ByteBuffer getSharedTableData() {
+            if (tableData == null && blockSlice != null)
+                return blockSlice.duplicate();
+
+            return super.getSharedTableData();
+        }
+
+        public byte[] getTableData() {
+            if (tableData == null && blockSlice != null) {
+                tableData = new byte[blockSlice.remaining()];
+                blockSlice.duplicate().get(tableData);
+            }
+
+            return tableData;
+        }
+
+        /**
+         * @param transformed table data in the transformed form, written to the compressed data block as is
+         * @param origLength  length of the table once a decoder has reversed the transform
+         */
+        void setTransformedData(int transform, byte[] transformed, int origLength) {
+            this.transform = transform;
+            this.compressedData = transformed;
+            this.originalLength = origLength;
+        }
+
+        public byte[] getCompressedData() throws IOException {
+            // a transformed table's data can be larger than the original and still has to be used
+            if (compressedData != null)
+                return compressedData;
+
+            getTableData();
+            return super.getCompressedData();
+        }
+
+        public int origLength() {
+            return originalLength;
+        }
+
         protected byte[] compress(byte[] bytes) throws IOException {
             // woff2 should run compress brotli on full data block not indivudal tables
             // except for special tables and transforms not = 0 which is still todo
@@ -128,7 +347,7 @@ public class Woff2Font extends WoffFont {
                 writer.writeString(tag);
             }
 
-            writer.writeUIntBase128(tableData.length);
+            writer.writeUIntBase128(origLength());
 
             if (isTableTransformed())
                 writer.writeUIntBase128(getCompressedData().length);
@@ -139,7 +358,7 @@ public class Woff2Font extends WoffFont {
         public int getTransformedLength() throws IOException {
             if (isTableTransformed())
                 return getCompressedData().length;
-            return tableData.length;
+            return origLength();
         }
 
         public void setTransform(int transform) {
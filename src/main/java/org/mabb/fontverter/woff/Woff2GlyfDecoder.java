@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+
+import static org.mabb.fontverter.woff.Woff2GlyfEncoder.*;
+
+/**
+ * Rebuilds the glyf and loca tables from a WOFF2 transformed glyf table, transform version 0. Glyphs are written
+ * straight from the streams into the output table, the only per glyph state is a set of point arrays that are
+ * reused for every simple glyph.
+ */
+public class Woff2GlyfDecoder {
+    private final byte[] data;
+    private final int dataStart;
+    private final int dataEnd;
+    private final int glyfLengthHint;
+
+    private int numGlyphs;
+    private int indexFormat;
+    private Stream nContourStream;
+    private Stream nPointsStream;
+    private Stream flagStream;
+    private Stream glyphStream;
+    private Stream compositeStream;
+    private Stream bboxStream;
+    private Stream instructionStream;
+    private int bboxBitmapOffset;
+    private int overlapBitmapOffset = -1;
+
+    private int[] xDeltas = new int[64];
+    private int[] yDeltas = new int[64];
+    private boolean[] onCurve = new boolean[64];
+    private int[] pointFlags = new int[64];
+
+    private byte[] glyf;
+    private byte[] loca;
+    private int[] xMins;
+
+    /**
+     * @param transformed    the transformed glyf table data
+     * @param glyfLengthHint glyf origLength from the table directory, only used as the output's starting size.
+     *                       Encoders can write the source font's glyf length there so the reconstructed table may
+     *                       come out longer or shorter, the output grows as needed.
+     */
+    public Woff2GlyfDecoder(byte[] transformed, int glyfLengthHint) {
+        this(transformed, 0, transformed.length, glyfLengthHint);
+    }
+
+    /**
+     * Decodes the transformed table from part of a larger array, such as the decompressed woff2 data block, without
+     * copying it out first.
+     */
+    public Woff2GlyfDecoder(byte[] data, int offset, int length, int glyfLengthHint) {
+        this.data = data;
+        this.dataStart = offset;
+        this.dataEnd = offset + length;
+        this.glyfLengthHint = glyfLengthHint;
+    }
+
+    public void decode() throws IOException {
+        readHeader();
+
+        xMins = new int[numGlyphs];
+        FontDataOutputBuffer out = new FontDataOutputBuffer(glyfLengthHint);
+        FontDataOutputBuffer locaOut = new FontDataOutputBuffer((numGlyphs + 1) * (indexFormat == 0 ? 2 : 4));
+
+        for (int i = 0; i < numGlyphs; i++) {
+            writeLocaOffset(locaOut, out.currentPosition());
+
+            int numContours = nContourStream.readShort();
+            if (numContours > 0)
+                decodeSimpleGlyph(out, i, numContours);
+            else if (numContours == -1)
+                decodeCompositeGlyph(out, i);
+            else if (numContours != 0)
+                throw new IOException("Invalid contour count " + numContours + " for glyph " + i);
+            else if (isBitSet(bboxBitmapOffset, i))
+                throw new IOException("Empty glyph " + i + " has a bounding box");
+
+            out.padToFourBytes();
+        }
+        writeLocaOffset(locaOut, out.currentPosition());
+
+        glyf = out.toByteArray();
+        loca = locaOut.toByteArray();
+    }
+
+    public byte[] getGlyf() {
+        return glyf;
+    }
+
+    public byte[] getLoca() {
+        return loca;
+    }
+
+    /**
+     * @return bounding box xMin of each reconstructed glyph with 0 for empty glyphs, for the hmtx transform
+     */
+    public int[] getXMins() {
+        return xMins;
+    }
+
+    public int getIndexFormat() {
+        return indexFormat;
+    }
+
+    private void readHeader() throws IOException {
+        Stream header = new Stream(data, dataStart, dataEnd - dataStart);
+        header.readShort();
+        int optionFlags = header.readUnsignedShort();
+        numGlyphs = header.readUnsignedShort();
+        indexFormat = header.readUnsignedShort();
+        if (indexFormat != 0 && indexFormat != 1)
+            throw new IOException("Invalid loca index format " + indexFormat);
+
+        int offset = dataStart + HEADER_SIZE;
+        int[] sizes = new int[7];
+        for (int i = 0; i < sizes.length; i++) {
+            long size = header.readUnsignedInt();
+            if (size > dataEnd - offset)
+                throw new IOException("Transformed glyf stream runs past the end of the table");
+
+            sizes[i] = (int) size;
+            offset += sizes[i];
+        }
+
+        offset = dataStart + HEADER_SIZE;
+        nContourStream = new Stream(data, offset, sizes[0]);
+        nPointsStream = new Stream(data, offset += sizes[0], sizes[1]);
+        flagStream = new Stream(data, offset += sizes[1], sizes[2]);
+        glyphStream = new Stream(data, offset += sizes[2], sizes[3]);
+        compositeStream = new Stream(data, offset += sizes[3], sizes[4]);
+
+        int bboxBitmapLength = 4 * ((numGlyphs + 31) >> 5);
+        if (sizes[5] < bboxBitmapLength)
+            throw new IOException("Transformed glyf bbox stream is shorter than its bitmap");
+        bboxBitmapOffset = offset += sizes[4];
+        bboxStream = new Stream(data, bboxBitmapOffset + bboxBitmapLength, sizes[5] - bboxBitmapLength);
+        instructionStream = new Stream(data, offset += sizes[5], sizes[6]);
+        offset += sizes[6];
+
+        if ((optionFlags & OPTION_OVERLAP_SIMPLE_BITMAP) != 0) {
+            if (dataEnd - offset < (numGlyphs + 7) >> 3)
+                throw new IOException("Transformed glyf overlap bitmap runs past the end of the table");
+            overlapBitmapOffset = offset;
+        }
+    }
+
+    private void decodeSimpleGlyph(FontDataOutputBuffer out, int glyphId, int numContours) throws IOException {
+        int headerStart = out.currentPosition();
+        out.reserve(10);
+
+        int numPoints = 0;
+        for (int i = 0; i < numContours; i++) {
+            numPoints += nPointsStream.read255UInt16();
+            if (numPoints == 0 || numPoints > 0xFFFF)
+                throw new IOException("Invalid point count for glyph " + glyphId);
+            out.writeShort(numPoints - 1);
+        }
+
+        ensurePointCapacity(numPoints);
+        readTriplets(numPoints);
+
+        int instructionLength = glyphStream.read255UInt16();
+        out.writeShort(instructionLength);
+        instructionStream.copyTo(out, instructionLength);
+
+        boolean overlap = overlapBitmapOffset != -1 && isBitSet(overlapBitmapOffset, glyphId);
+        writePoints(out, numPoints, overlap);
+
+        out.patchUnsignedShort(headerStart, numContours);
+        if (isBitSet(bboxBitmapOffset, glyphId)) {
+            xMins[glyphId] = bboxStream.readShort();
+            patchBbox(out, headerStart + 2, xMins[glyphId], bboxStream.readShort(), bboxStream.readShort(),
+                    bboxStream.readShort());
+        } else
+            xMins[glyphId] = patchCalculatedBbox(out, headerStart + 2, numPoints);
+    }
+
+    private void readTriplets(int numPoints) throws IOException {
+        for (int i = 0; i < numPoints; i++) {
+            int flag = flagStream.readUnsignedByte();
+            onCurve[i] = (flag & 0x80) == 0;
+            flag &= 0x7F;
+
+            if (flag < 10) {
+                xDeltas[i] = 0;
+                yDeltas[i] = withSign(flag, ((flag & 14) << 7) + glyphStream.readUnsignedByte());
+            } else if (flag < 20) {
+                xDeltas[i] = withSign(flag, (((flag - 10) & 14) << 7) + glyphStream.readUnsignedByte());
+                yDeltas[i] = 0;
+            } else if (flag < 84) {
+                int b0 = flag - 20;
+                int b1 = glyphStream.readUnsignedByte();
+                xDeltas[i] = withSign(flag, 1 + (b0 & 0x30) + (b1 >> 4));
+                yDeltas[i] = withSign(flag >> 1, 1 + ((b0 & 0x0c) << 2) + (b1 & 0x0f));
+            } else if (flag < 120) {
+                int b0 = flag - 84;
+                xDeltas[i] = withSign(flag, 1 + ((b0 / 12) << 8) + glyphStream.readUnsignedByte());
+                yDeltas[i] = withSign(flag >> 1, 1 + (((b0 % 12) >> 2) << 8) + glyphStream.readUnsignedByte());
+            } else if (flag < 124) {
+                int b0 = glyphStream.readUnsignedByte();
+                int b1 = glyphStream.readUnsignedByte();
+                int b2 = glyphStream.readUnsignedByte();
+                xDeltas[i] = withSign(flag, (b0 << 4) + (b1 >> 4));
+                yDeltas[i] = withSign(flag >> 1, ((b1 & 0x0f) << 8) + b2);
+            } else {
+                xDeltas[i] = withSign(flag, glyphStream.readUnsignedShort());
+                yDeltas[i] = withSign(flag >> 1, glyphStream.readUnsignedShort());
+            }
+        }
+    }
+
+    private static int withSign(int flag, int value) {
+        return (flag & 1) != 0 ? value : -value;
+    }
+
+    /**
+     * Writes flags with repeated flags run length encoded followed by the x and y coordinates in their shortest
+     * form, same layout {@link Woff2GlyfEncoder} assumes when it calculates the reconstructed glyf length.
+     */
+    private void writePoints(FontDataOutputBuffer out, int numPoints, boolean overlap) {
+        for (int i = 0; i < numPoints; i++)
+            pointFlags[i] = reconstructedFlag(onCurve[i] ? FLAG_ON_CURVE : 0, xDeltas[i], yDeltas[i]);
+        if (overlap)
+            pointFlags[0] |= FLAG_OVERLAP_SIMPLE;
+
+        for (int i = 0; i < numPoints; ) {
+            int flag = pointFlags[i];
+            int repeatCount = 0;
+            while (i + repeatCount + 1 < numPoints && pointFlags[i + repeatCount + 1] == flag && repeatCount < 255)
+                repeatCount++;
+
+            if (repeatCount > 0) {
+                out.write(flag | FLAG_REPEAT);
+                out.write(repeatCount);
+            } else
+                out.write(flag);
+
+            i += repeatCount + 1;
+        }
+
+        for (int i = 0; i < numPoints; i++)
+            writeCoordinate(out, pointFlags[i], xDeltas[i], FLAG_X_SHORT);
+        for (int i = 0; i < numPoints; i++)
+            writeCoordinate(out, pointFlags[i], yDeltas[i], FLAG_Y_SHORT);
+    }
+
+    private static void writeCoordinate(FontDataOutputBuffer out, int flag, int delta, int shortFlag) {
+        if ((flag & shortFlag) != 0)
+            out.write(Math.abs(delta));
+        else if (delta != 0)
+            out.writeShort(delta);
+    }
+
+    private int patchCalculatedBbox(FontDataOutputBuffer out, int offset, int numPoints) throws IOException {
+        int x = 0, y = 0;
+        int xMin = 0, yMin = 0, xMax = 0, yMax = 0;
+
+        for (int i = 0; i < numPoints; i++) {
+            x += xDeltas[i];
+            y += yDeltas[i];
+            if (i == 0 || x < xMin)
+                xMin = x;
+            if (i == 0 || x > xMax)
+                xMax = x;
+            if (i == 0 || y < yMin)
+                yMin = y;
+            if (i == 0 || y > yMax)
+                yMax = y;
+        }
+
+        patchBbox(out, offset, xMin, yMin, xMax, yMax);
+        return xMin;
+    }
+
+    private static void patchBbox(FontDataOutputBuffer out, int offset, int xMin, int yMin, int xMax, int yMax)
+            throws IOException {
+        out.patchUnsignedShort(offset, xMin);
+        out.patchUnsignedShort(offset + 2, yMin);
+        out.patchUnsignedShort(offset + 4, xMax);
+        out.patchUnsignedShort(offset + 6, yMax);
+    }
+
+    private void decodeCompositeGlyph(FontDataOutputBuffer out, int glyphId) throws IOException {
+        if (!isBitSet(bboxBitmapOffset, glyphId))
+            throw new IOException("Composite glyph " + glyphId + " has no bounding box");
+
+        out.writeShort(-1);
+        xMins[glyphId] = bboxStream.readShort();
+        out.writeShort(xMins[glyphId]);
+        for (int i = 0; i < 3; i++)
+            out.writeShort(bboxStream.readShort());
+
+        int start = compositeStream.position;
+        boolean hasInstructions = false;
+        int flags = MORE_COMPONENTS;
+        while ((flags & MORE_COMPONENTS) != 0) {
+            flags = compositeStream.readUnsignedShort();
+            hasInstructions |= (flags & WE_HAVE_INSTRUCTIONS) != 0;
+
+            int argsLength = (flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2;
+            int transformLength = 0;
+            if ((flags & WE_HAVE_A_SCALE) != 0)
+                transformLength = 2;
+            else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0)
+                transformLength = 4;
+            else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0)
+                transformLength = 8;
+
+            compositeStream.skip(2 + argsLength + transformLength);
+        }
+        out.write(data, start, compositeStream.position - start);
+
+        if (hasInstructions) {
+            int instructionLength = glyphStream.read255UInt16();
+            out.writeShort(instructionLength);
+            instructionStream.copyTo(out, instructionLength);
+        }
+    }
+
+    private void writeLocaOffset(FontDataOutputBuffer locaOut, int offset) throws IOException {
+        if (indexFormat == 0) {
+            if (offset > 0x1FFFE)
+                throw new IOException("Reconstructed glyf table is too large for short loca offsets");
+            locaOut.writeShort(offset >> 1);
+        } else
+            locaOut.writeInt(offset);
+    }
+
+    private boolean isBitSet(int bitmapOffset, int glyphId) {
+        return (data[bitmapOffset + (glyphId >> 3)] & (0x80 >> (glyphId & 7))) != 0;
+    }
+
+    private void ensurePointCapacity(int numPoints) {
+        if (numPoints <= xDeltas.length)
+            return;
+
+        int capacity = Math.max(numPoints, xDeltas.length * 2);
+        xDeltas = new int[capacity];
+        yDeltas = new int[capacity];
+        onCurve = new boolean[capacity];
+        pointFlags = new int[capacity];
+    }
+
+    /**
+     * Read cursor over one of the transformed glyf streams, reads past the stream's end are errors rather than
+     * running into the next stream.
+     */
+    private static class Stream {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Stream(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        private void require(int length) throws IOException {
+            if (end - position < length)
+                throw new IOException("Read past the end of a transformed glyf stream");
+        }
+
+        int readUnsignedByte() throws IOException {
+            require(1);
+            return data[position++] & 0xFF;
+        }
+
+        int readUnsignedShort() throws IOException {
+            require(2);
+            int value = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            position += 2;
+            return value;
+        }
+
+        int readShort() throws IOException {
+            return (short) readUnsignedShort();
+        }
+
+        long readUnsignedInt() throws IOException {
+            return ((long) readUnsignedShort() << 16) | readUnsignedShort();
+        }
+
+        int read255UInt16() throws IOException {
+            int code = readUnsignedByte();
+            if (code == 253)
+                return readUnsignedShort();
+            if (code == 254)
+                return readUnsignedByte() + 506;
+            if (code == 255)
+                return readUnsignedByte() + 253;
+            return code;
+        }
+
+        void skip(int length) throws IOException {
+            require(length);
+            position += length;
+        }
+
+        void copyTo(FontDataOutputBuffer out, int length) throws IOException {
+            require(length);
+            out.write(data, position, length);
+            position += length;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+
+/**
+ * Encodes the glyf and loca tables into the WOFF2 transformed glyf table, transform version 0. The glyph records
+ * are split into separate streams of contour counts, point counts, point flags, triplet encoded coordinates,
+ * composite records, bounding boxes and instructions which brotli compresses a lot better than the interleaved
+ * sfnt layout. The transformed loca table is empty, decoders rebuild it while reconstructing glyf.
+ */
+public class Woff2GlyfEncoder {
+    static final int HEADER_SIZE = 36;
+    static final int OPTION_OVERLAP_SIMPLE_BITMAP = 1;
+
+    static final int FLAG_ON_CURVE = 0x01;
+    static final int FLAG_X_SHORT = 0x02;
+    static final int FLAG_Y_SHORT = 0x04;
+    static final int FLAG_REPEAT = 0x08;
+    static final int FLAG_X_SAME = 0x10;
+    static final int FLAG_Y_SAME = 0x20;
+    static final int FLAG_OVERLAP_SIMPLE = 0x40;
+
+    static final int ARG_1_AND_2_ARE_WORDS = 0x0001;
+    static final int WE_HAVE_A_SCALE = 0x0008;
+    static final int MORE_COMPONENTS = 0x0020;
+    static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x0040;
+    static final int WE_HAVE_A_TWO_BY_TWO = 0x0080;
+    static final int WE_HAVE_INSTRUCTIONS = 0x0100;
+
+    private final FontDataBuffer glyf;
+    private final long[] offsets;
+    private final int indexFormat;
+    private final int numGlyphs;
+
+    private FontDataOutputBuffer nContourStream;
+    private FontDataOutputBuffer nPointsStream;
+    private FontDataOutputBuffer flagStream;
+    private FontDataOutputBuffer glyphStream;
+    private FontDataOutputBuffer compositeStream;
+    private FontDataOutputBuffer bboxStream;
+    private FontDataOutputBuffer instructionStream;
+    private byte[] bboxBitmap;
+    private byte[] overlapBitmap;
+    private boolean hasOverlapSimple;
+    private long glyfLength;
+    private int[] xMins;
+
+    /**
+     * @param indexFormat loca offset format from the head table, 0 for short offsets and 1 for long
+     */
+    public Woff2GlyfEncoder(byte[] glyf, byte[] loca, int indexFormat) throws IOException {
+        if (indexFormat != 0 && indexFormat != 1)
+            throw new IOException("Invalid loca index format " + indexFormat);
+
+        this.glyf = new FontDataBuffer(glyf);
+        this.indexFormat = indexFormat;
+
+        int entrySize = indexFormat == 0 ? 2 : 4;
+        int numOffsets = loca.length / entrySize;
+        if (numOffsets < 1 || numOffsets - 1 > 0xFFFF)
+            throw new IOException("Invalid loca table length " + loca.length);
+
+        FontDataBuffer locaReader = new FontDataBuffer(loca);
+        offsets = new long[numOffsets];
+        for (int i = 0; i < numOffsets; i++) {
+            if (indexFormat == 0)
+                offsets[i] = locaReader.getUnsignedShort(i * 2) * 2L;
+            else
+                offsets[i] = locaReader.getUnsignedInt(i * 4);
+        }
+
+        numGlyphs = numOffsets - 1;
+    }
+
+    public byte[] encode() throws IOException {
+        int glyfSize = glyf.length();
+        nContourStream = new FontDataOutputBuffer(numGlyphs * 2);
+        nPointsStream = new FontDataOutputBuffer(glyfSize / 8);
+        flagStream = new FontDataOutputBuffer(glyfSize / 4);
+        glyphStream = new FontDataOutputBuffer(glyfSize / 2);
+        compositeStream = new FontDataOutputBuffer();
+        bboxStream = new FontDataOutputBuffer();
+        instructionStream = new FontDataOutputBuffer();
+        bboxBitmap = new byte[4 * ((numGlyphs + 31) >> 5)];
+        overlapBitmap = new byte[(numGlyphs + 7) >> 3];
+        hasOverlapSimple = false;
+        glyfLength = 0;
+        xMins = new int[numGlyphs];
+
+        for (int i = 0; i < numGlyphs; i++)
+            encodeGlyph(i);
+
+        if (indexFormat == 0 && glyfLength > 0x1FFFE)
+            throw new IOException("Reconstructed glyf table is too large for short loca offsets");
+
+        return writeTable();
+    }
+
+    /**
+     * @return length of the loca table a decoder reconstructs for the font's index format
+     */
+    public int getLocaLength() {
+        return (numGlyphs + 1) * (indexFormat == 0 ? 2 : 4);
+    }
+
+    /**
+     * @return bounding box xMin of each glyph with 0 for empty glyphs, for the hmtx transform. Only valid after
+     * {@link #encode()}.
+     */
+    public int[] getXMins() {
+        return xMins;
+    }
+
+    public int getNumGlyphs() {
+        return numGlyphs;
+    }
+
+    private byte[] writeTable() throws IOException {
+        byte[] bboxData = bboxStream.toByteArray();
+        int[] streamSizes = new int[]{nContourStream.currentPosition(), nPointsStream.currentPosition(),
+                flagStream.currentPosition(), glyphStream.currentPosition(), compositeStream.currentPosition(),
+                bboxBitmap.length + bboxData.length, instructionStream.currentPosition()};
+
+        int length = HEADER_SIZE + (hasOverlapSimple ? overlapBitmap.length : 0);
+        for (int sizeOn : streamSizes)
+            length += sizeOn;
+
+        FontDataOutputBuffer out = new FontDataOutputBuffer(length);
+        out.writeUnsignedShort(0);
+        out.writeUnsignedShort(hasOverlapSimple ? OPTION_OVERLAP_SIMPLE_BITMAP : 0);
+        out.writeUnsignedShort(numGlyphs);
+        out.writeUnsignedShort(indexFormat);
+        for (int sizeOn : streamSizes)
+            out.writeUnsignedInt(sizeOn);
+
+        out.write(nContourStream.toByteArray());
+        out.write(nPointsStream.toByteArray());
+        out.write(flagStream.toByteArray());
+        out.write(glyphStream.toByteArray());
+        out.write(compositeStream.toByteArray());
+        out.write(bboxBitmap);
+        out.write(bboxData);
+        out.write(instructionStream.toByteArray());
+        if (hasOverlapSimple)
+            out.write(overlapBitmap);
+
+        return out.toByteArray();
+    }
+
+    private void encodeGlyph(int glyphId) throws IOException {
+        long offset = offsets[glyphId];
+        long length = offsets[glyphId + 1] - offset;
+        if (length < 0 || offset + length > glyf.length())
+            throw new IOException("Invalid loca offset for glyph " + glyphId);
+
+        // 0 length or a glyph without contours has no outline, written as 0 contours with nothing else
+        if (length < 10 || glyf.getShort((int) offset) == 0) {
+            nContourStream.writeShort(0);
+            return;
+        }
+
+        FontDataBuffer glyph = glyf.slice((int) offset, (int) length);
+        int numContours = glyph.readShort();
+        int[] bbox = new int[]{glyph.readShort(), glyph.readShort(), glyph.readShort(), glyph.readShort()};
+        xMins[glyphId] = bbox[0];
+
+        if (numContours > 0)
+            encodeSimpleGlyph(glyphId, glyph, numContours, bbox);
+        else
+            encodeCompositeGlyph(glyphId, glyph, bbox);
+    }
+
+    private void encodeSimpleGlyph(int glyphId, FontDataBuffer glyph, int numContours, int[] bbox)
+            throws IOException {
+        int[] endPoints = glyph.readUnsignedShortArray(numContours);
+        int numPoints = endPoints[numContours - 1] + 1;
+
+        nContourStream.writeShort(numContours);
+        int lastEnd = -1;
+        for (int endOn : endPoints) {
+            if (endOn <= lastEnd)
+                throw new IOException("Invalid contour end points for glyph " + glyphId);
+
+            write255UInt16(nPointsStream, endOn - lastEnd);
+            lastEnd = endOn;
+        }
+
+        int instructionLength = glyph.readUnsignedShort();
+        byte[] instructions = glyph.readBytes(instructionLength);
+
+        int[] flags = new int[numPoints];
+        for (int i = 0; i < numPoints; ) {
+            int flag = glyph.readUnsignedByte();
+            int repeat = (flag & FLAG_REPEAT) != 0 ? glyph.readUnsignedByte() : 0;
+            for (int j = 0; j <= repeat && i < numPoints; j++)
+                flags[i++] = flag;
+        }
+
+        int[] xDeltas = readCoordinates(glyph, flags, FLAG_X_SHORT, FLAG_X_SAME);
+        int[] yDeltas = readCoordinates(glyph, flags, FLAG_Y_SHORT, FLAG_Y_SAME);
+
+        int x = 0, y = 0;
+        int xMin = 0, yMin = 0, xMax = 0, yMax = 0;
+        for (int i = 0; i < numPoints; i++) {
+            writeTriplet(flagStream, glyphStream, (flags[i] & FLAG_ON_CURVE) != 0, xDeltas[i], yDeltas[i]);
+
+            x += xDeltas[i];
+            y += yDeltas[i];
+            if (i == 0 || x < xMin)
+                xMin = x;
+            if (i == 0 || x > xMax)
+                xMax = x;
+            if (i == 0 || y < yMin)
+                yMin = y;
+            if (i == 0 || y > yMax)
+                yMax = y;
+        }
+
+        write255UInt16(glyphStream, instructionLength);
+        instructionStream.write(instructions);
+
+        // bbox is left out when the decoder can calculate the same one from the points
+        if (bbox[0] != xMin || bbox[1] != yMin || bbox[2] != xMax || bbox[3] != yMax)
+            writeBbox(glyphId, bbox);
+
+        if ((flags[0] & FLAG_OVERLAP_SIMPLE) != 0) {
+            overlapBitmap[glyphId >> 3] |= 0x80 >> (glyphId & 7);
+            hasOverlapSimple = true;
+        }
+
+        addGlyphLength(10 + 2 * numContours + 2 + instructionLength + getReconstructedPointsLength(flags, xDeltas,
+                yDeltas));
+    }
+
+    private static int[] readCoordinates(FontDataBuffer glyph, int[] flags, int shortFlag, int sameFlag)
+            throws IOException {
+        int[] deltas = new int[flags.length];
+
+        for (int i = 0; i < flags.length; i++) {
+            int flag = flags[i];
+            if ((flag & shortFlag) != 0) {
+                int delta = glyph.readUnsignedByte();
+                deltas[i] = (flag & sameFlag) != 0 ? delta : -delta;
+            } else if ((flag & sameFlag) == 0)
+                deltas[i] = glyph.readShort();
+        }
+
+        return deltas;
+    }
+
+    private void encodeCompositeGlyph(int glyphId, FontDataBuffer glyph, int[] bbox) throws IOException {
+        int start = glyph.getPosition();
+        boolean hasInstructions = false;
+
+        int flags = MORE_COMPONENTS;
+        while ((flags & MORE_COMPONENTS) != 0) {
+            flags = glyph.readUnsignedShort();
+            hasInstructions |= (flags & WE_HAVE_INSTRUCTIONS) != 0;
+
+            int argsLength = (flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2;
+            int transformLength = 0;
+            if ((flags & WE_HAVE_A_SCALE) != 0)
+                transformLength = 2;
+            else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0)
+                transformLength = 4;
+            else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0)
+                transformLength = 8;
+
+            // glyph index plus arguments and transform
+            glyph.readBytes(2 + argsLength + transformLength);
+        }
+
+        int compositeLength = glyph.getPosition() - start;
+        nContourStream.writeShort(-1);
+        compositeStream.write(glyph.getBytes(start, compositeLength));
+        writeBbox(glyphId, bbox);
+
+        int length = 10 + compositeLength;
+        if (hasInstructions) {
+            int instructionLength = glyph.readUnsignedShort();
+            write255UInt16(glyphStream, instructionLength);
+            instructionStream.write(glyph.readBytes(instructionLength));
+            length += 2 + instructionLength;
+        }
+
+        addGlyphLength(length);
+    }
+
+    private void writeBbox(int glyphId, int[] bbox) {
+        bboxBitmap[glyphId >> 3] |= 0x80 >> (glyphId & 7);
+        for (int valueOn : bbox)
+            bboxStream.writeShort(valueOn);
+    }
+
+    private void addGlyphLength(int length) {
+        glyfLength += (length + 3) & ~3;
+    }
+
+    /**
+     * Length of the flags and coordinates a decoder writes when it rebuilds a simple glyph, it uses the shortest
+     * coordinate form for each delta and run length encodes repeated flags.
+     */
+    static int getReconstructedPointsLength(int[] flags, int[] xDeltas, int[] yDeltas) {
+        int length = 0;
+        int lastFlag = -1;
+        int repeatCount = 0;
+
+        for (int i = 0; i < flags.length; i++) {
+            int flag = reconstructedFlag(flags[i] & FLAG_ON_CURVE, xDeltas[i], yDeltas[i]);
+            if (i == 0)
+                flag |= flags[i] & FLAG_OVERLAP_SIMPLE;
+            length += coordinateLength(xDeltas[i]) + coordinateLength(yDeltas[i]);
+
+            if (flag == lastFlag && repeatCount != 255) {
+                // first repeat adds the repeat count byte, later ones only bump it
+                if (repeatCount == 0)
+                    length++;
+                repeatCount++;
+            } else {
+                length++;
+                repeatCount = 0;
+            }
+            lastFlag = flag;
+        }
+
+        return length;
+    }
+
+    static int reconstructedFlag(int onCurve, int dx, int dy) {
+        int flag = onCurve;
+
+        if (dx == 0)
+            flag |= FLAG_X_SAME;
+        else if (dx > -256 && dx < 256)
+            flag |= FLAG_X_SHORT | (dx > 0 ? FLAG_X_SAME : 0);
+
+        if (dy == 0)
+            flag |= FLAG_Y_SAME;
+        else if (dy > -256 && dy < 256)
+            flag |= FLAG_Y_SHORT | (dy > 0 ? FLAG_Y_SAME : 0);
+
+        return flag;
+    }
+
+    private static int coordinateLength(int delta) {
+        if (delta == 0)
+            return 0;
+        return delta > -256 && delta < 256 ? 1 : 2;
+    }
+
+    /**
+     * Writes a point as a flag byte and 1 to 4 coordinate bytes using the woff2 triplet encoding.
+     *
+     * @param dx x delta from the previous point
+     * @param dy y delta from the previous point
+     */
+    static void writeTriplet(FontDataOutputBuffer flags, FontDataOutputBuffer glyphs, boolean onCurve, int dx,
+                             int dy) {
+        int onCurveBit = onCurve ? 0 : 128;
+        int absX = Math.abs(dx);
+        int absY = Math.abs(dy);
+        int xSignBit = dx < 0 ? 0 : 1;
+        int ySignBit = dy < 0 ? 0 : 1;
+        int xySignBits = xSignBit + 2 * ySignBit;
+
+        if (dx == 0 && absY < 1280) {
+            flags.write(onCurveBit + ((absY & 0xf00) >> 7) + ySignBit);
+            glyphs.write(absY & 0xff);
+        } else if (dy == 0 && absX < 1280) {
+            flags.write(onCurveBit + 10 + ((absX & 0xf00) >> 7) + xSignBit);
+            glyphs.write(absX & 0xff);
+        } else if (absX < 65 && absY < 65) {
+            flags.write(onCurveBit + 20 + ((absX - 1) & 0x30) + (((absY - 1) & 0x30) >> 2) + xySignBits);
+            glyphs.write((((absX - 1) & 0xf) << 4) | ((absY - 1) & 0xf));
+        } else if (absX < 769 && absY < 769) {
+            flags.write(onCurveBit + 84 + 12 * (((absX - 1) & 0x300) >> 8) + (((absY - 1) & 0x300) >> 6)
+                    + xySignBits);
+            glyphs.write((absX - 1) & 0xff);
+            glyphs.write((absY - 1) & 0xff);
+        } else if (absX < 4096 && absY < 4096) {
+            flags.write(onCurveBit + 120 + xySignBits);
+            glyphs.write(absX >> 4);
+            glyphs.write(((absX & 0xf) << 4) | (absY >> 8));
+            glyphs.write(absY & 0xff);
+        } else {
+            flags.write(onCurveBit + 124 + xySignBits);
+            glyphs.writeShort(absX);
+            glyphs.writeShort(absY);
+        }
+    }
+
+    static void write255UInt16(FontDataOutputBuffer out, int value) {
+        if (value < 253) {
+            out.write(value);
+        } else if (value < 506) {
+            out.write(255);
+            out.write(value - 253);
+        } else if (value < 762) {
+            out.write(254);
+            out.write(value - 506);
+        } else {
+            out.write(253);
+            out.writeShort(value);
+        }
+    }
+}
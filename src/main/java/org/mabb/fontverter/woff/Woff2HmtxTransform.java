@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.IOException;
+
+/**
+ * WOFF2 hmtx table transform, version 1. Left side bearings that equal their glyph's xMin are left out and
+ * rebuilt from the glyf table by the decoder. Only usable alongside the transformed glyf table.
+ */
+public class Woff2HmtxTransform {
+    static final int PROPORTIONAL_LSB_ABSENT = 1;
+    static final int MONOSPACE_LSB_ABSENT = 2;
+
+    /**
+     * @param xMins glyph bounding box xMin for each glyph, 0 for empty glyphs
+     * @return the transformed table or null when neither left side bearing array can be left out
+     */
+    public static byte[] encode(byte[] hmtx, int numberOfHMetrics, int[] xMins) throws IOException {
+        int numGlyphs = xMins.length;
+        if (numberOfHMetrics < 1 || numberOfHMetrics > numGlyphs)
+            throw new IOException("Invalid numberOfHMetrics " + numberOfHMetrics);
+        if (hmtx.length != getTableLength(numberOfHMetrics, numGlyphs))
+            return null;
+
+        FontDataBuffer reader = new FontDataBuffer(hmtx);
+        boolean proportionalAbsent = true;
+        for (int i = 0; i < numberOfHMetrics && proportionalAbsent; i++)
+            proportionalAbsent = reader.getShort(i * 4 + 2) == xMins[i];
+
+        // an empty monospace array doesn't count, the transform would only add the flags byte
+        boolean monospaceAbsent = numGlyphs > numberOfHMetrics;
+        for (int i = numberOfHMetrics; i < numGlyphs && monospaceAbsent; i++)
+            monospaceAbsent = reader.getShort(numberOfHMetrics * 4 + (i - numberOfHMetrics) * 2) == xMins[i];
+
+        if (!proportionalAbsent && !monospaceAbsent)
+            return null;
+
+        FontDataOutputBuffer out = new FontDataOutputBuffer(hmtx.length + 1);
+        int flags = (proportionalAbsent ? PROPORTIONAL_LSB_ABSENT : 0) | (monospaceAbsent ? MONOSPACE_LSB_ABSENT : 0);
+        out.writeByte(flags);
+        for (int i = 0; i < numberOfHMetrics; i++)
+            out.writeShort(reader.getUnsignedShort(i * 4));
+        if (!proportionalAbsent) {
+            for (int i = 0; i < numberOfHMetrics; i++)
+                out.writeShort(reader.getShort(i * 4 + 2));
+        }
+        if (!monospaceAbsent)
+            out.write(hmtx, numberOfHMetrics * 4, (numGlyphs - numberOfHMetrics) * 2);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @param xMins glyph bounding box xMin for each glyph from the reconstructed glyf table
+     */
+    public static byte[] decode(byte[] transformed, int numberOfHMetrics, int[] xMins) throws IOException {
+        int numGlyphs = xMins.length;
+        if (numberOfHMetrics < 1 || numberOfHMetrics > numGlyphs)
+            throw new IOException("Invalid numberOfHMetrics " + numberOfHMetrics);
+
+        FontDataBuffer reader = new FontDataBuffer(transformed);
+        int flags = reader.readUnsignedByte();
+        boolean proportionalAbsent = (flags & PROPORTIONAL_LSB_ABSENT) != 0;
+        boolean monospaceAbsent = (flags & MONOSPACE_LSB_ABSENT) != 0;
+        if (!proportionalAbsent && !monospaceAbsent)
+            throw new IOException("Transformed hmtx table has both left side bearing arrays");
+
+        int[] advances = reader.readUnsignedShortArray(numberOfHMetrics);
+
+        FontDataOutputBuffer out = new FontDataOutputBuffer(getTableLength(numberOfHMetrics, numGlyphs));
+        for (int i = 0; i < numberOfHMetrics; i++) {
+            out.writeShort(advances[i]);
+            out.writeShort(proportionalAbsent ? xMins[i] : reader.readShort());
+        }
+        for (int i = numberOfHMetrics; i < numGlyphs; i++)
+            out.writeShort(monospaceAbsent ? xMins[i] : reader.readShort());
+
+        return out.toByteArray();
+    }
+
+    static int getTableLength(int numberOfHMetrics, int numGlyphs) {
+        return numberOfHMetrics * 4 + (numGlyphs - numberOfHMetrics) * 2;
+    }
+}
@@ -19,14 +19,11 @@ package org.mabb.fontverter.woff;
 
 import org.mabb.fontverter.woff.Woff2Font.Woff2Table;
 import org.mabb.fontverter.woff.WoffConstants.TableFlagType;
-import org.meteogroup.jbrotli.BrotliDeCompressor;
-import org.meteogroup.jbrotli.libloader.BrotliLibraryLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 public class Woff2Parser extends WoffParser {
     private static final Logger log = LoggerFactory.getLogger(Woff2Parser.class);
@@ -60,10 +57,11 @@ public class Woff2Parser extends WoffParser {
 
         table.originalLength = input.readUIntBase128();
 
-        // transformLength present IFF non null transform ie something before brotli compress
+        // transformLength present IFF non null transform ie something before brotli compress, a transformed loca
+        // has a 0 transformLength since it's rebuilt from the transformed glyf
         if (table.isTableTransformed())
             table.transformLength = input.readUIntBase128();
-        if (table.transformLength == 0)
+        else
             table.transformLength = table.originalLength;
 
         log.debug("Woff2 parse table dir read: {} {} o-len:" + table.originalLength + " t-len:" + table.transformLength,
@@ -73,30 +71,90 @@ public class Woff2Parser extends WoffParser {
     }
 
     private void parseCompressedBlockTableData() throws IOException {
-        byte[] block = input.readBytes(font.header.totalCompressedSize);
-        block = brotliDecompress(block);
+        // tables are stored back to back without padding so the block's exact length is known up front
+        long blockLength = 0;
+        for (WoffTable tableOn : font.getTables()) {
+            if (tableOn.transformLength < 0)
+                throw new IOException("Invalid woff2 table length for " + tableOn.getTag());
+            blockLength += tableOn.transformLength;
+        }
+        if (blockLength >= Integer.MAX_VALUE)
+            throw new IOException("woff2 table directory declares a " + blockLength + " byte data block");
+
+        byte[] compressed = input.readBytes(font.header.totalCompressedSize);
+        ByteBuffer block = ByteBuffer.wrap(brotliDecompress(compressed, (int) blockLength));
 
         int offset = 0;
         for (WoffTable tableOn : font.getTables()) {
-            try {
-                int end = tableOn.transformLength + offset;
-                if (end > block.length)
-                    end = block.length;
-
-                tableOn.tableData = Arrays.copyOfRange(block, offset, end);
-                offset += tableOn.transformLength;
-            } catch (Exception e) {
-                return;
-            }
+            block.limit(offset + tableOn.transformLength);
+            block.position(offset);
+            ((Woff2Table) tableOn).setBlockSlice(block.slice());
+            offset += tableOn.transformLength;
+        }
+
+        reconstructGlyfTable();
+    }
+
+    private void reconstructGlyfTable() throws IOException {
+        Woff2Table glyfTable = findTable(TableFlagType.glyf);
+        Woff2Table locaTable = findTable(TableFlagType.loca);
+        if (glyfTable == null || !glyfTable.isTableTransformed()) {
+            Woff2Table hmtxTable = findTable(TableFlagType.hmtx);
+            if (hmtxTable != null && hmtxTable.isTableTransformed())
+                throw new IOException("woff2 hmtx transform used without the glyf transform");
+            return;
         }
+
+        if (glyfTable.getTransform() != 0 || locaTable == null || !locaTable.isTableTransformed())
+            throw new IOException("Unsupported woff2 glyf/loca transform");
+
+        // origLength is only a size hint here, it can be the source font's glyf length rather than the
+        // reconstructed one
+        ByteBuffer transformed = glyfTable.getBlockSlice();
+        Woff2GlyfDecoder decoder = new Woff2GlyfDecoder(transformed.array(),
+                transformed.arrayOffset() + transformed.position(), transformed.remaining(), glyfTable.originalLength);
+        decoder.decode();
+
+        setReconstructedData(glyfTable, decoder.getGlyf());
+        setReconstructedData(locaTable, decoder.getLoca());
+        reconstructHmtxTable(decoder.getXMins());
     }
 
-    private byte[] brotliDecompress(byte[] compressed) {
-        BrotliLibraryLoader.loadBrotli();
+    private void reconstructHmtxTable(int[] xMins) throws IOException {
+        Woff2Table hmtxTable = findTable(TableFlagType.hmtx);
+        Woff2Table hheaTable = findTable(TableFlagType.hhea);
+        if (hmtxTable == null || !hmtxTable.isTableTransformed())
+            return;
 
-        byte[] decompressed = new byte[compressed.length * 4];
-        int decompressLength = new BrotliDeCompressor().deCompress(compressed, decompressed);
+        if (hmtxTable.getTransform() != 1 || hheaTable == null)
+            throw new IOException("Unsupported woff2 hmtx transform");
+
+        int numberOfHMetrics = Woff2Font.readUnsignedShort(hheaTable.getTableData(),
+                Woff2Font.HHEA_NUMBER_OF_HMETRICS_OFFSET);
+        byte[] hmtx = Woff2HmtxTransform.decode(hmtxTable.getTableData(), numberOfHMetrics, xMins);
+
+        hmtxTable.setTableData(hmtx);
+        hmtxTable.originalLength = hmtx.length;
+        hmtxTable.setTransform(0);
+    }
+
+    private static void setReconstructedData(Woff2Table table, byte[] data) {
+        // table now holds the plain sfnt table so it's written with the null transform from here on
+        table.setTableData(data);
+        table.originalLength = data.length;
+        table.setTransform(3);
+    }
+
+    private Woff2Table findTable(TableFlagType flag) {
+        for (WoffTable tableOn : font.getTables()) {
+            if (((Woff2Table) tableOn).getFlag() == flag)
+                return (Woff2Table) tableOn;
+        }
+
+        return null;
+    }
 
-        return Arrays.copyOfRange(decompressed, 0, decompressLength);
+    private byte[] brotliDecompress(byte[] compressed, int decompressedLength) throws IOException {
+        return BrotliCodec.getInstance().decompress(compressed, decompressedLength);
     }
 }
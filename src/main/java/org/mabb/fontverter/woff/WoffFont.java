@@ -17,7 +17,7 @@
 
 package org.mabb.fontverter.woff;
 
-import org.mabb.fontverter.io.FontDataOutputStream;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
 import org.mabb.fontverter.FVFont;
 import org.mabb.fontverter.validator.RuleValidator;
 
@@ -27,6 +27,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import static org.mabb.fontverter.opentype.OpenTypeTable.TABLE_RECORD_SIZE;
+import static org.mabb.fontverter.opentype.SfntHeader.SFNT_HEADER_SIZE;
+
 public abstract class WoffFont implements FVFont {
     protected WoffHeader header;
     protected List<WoffTable> tables = new ArrayList<WoffTable>();
@@ -54,14 +57,23 @@ public abstract class WoffFont implements FVFont {
     public abstract void addFontTable(byte[] unpaddedData, String tag, long checksum);
 
     public byte[] getData() throws IOException {
-        // have to write out data twice for header calcs
+        sortTables();
+
         header.calculateValues(this);
-        return getRawData();
-    }
+        byte[] headerData = header.getData();
+
+        FontDataOutputBuffer out = new FontDataOutputBuffer(headerData.length + getTableDataLength());
+        out.write(headerData);
+        writeTableData(out);
+
+        // file length isn't known until everything after the header has been written
+        header.length = out.currentPosition();
+        out.patchUnsignedInt(WoffHeader.LENGTH_OFFSET, header.length);
 
-    byte[] getRawData() throws IOException {
-        FontDataOutputStream out = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+        return out.toByteArray();
+    }
 
+    protected void sortTables() {
         Collections.sort(tables, new Comparator<WoffTable>() {
             public int compare(WoffTable o1, WoffTable o2) {
                 String c1 = o1.getTag();
@@ -69,28 +81,40 @@ public abstract class WoffFont implements FVFont {
                 return c1.compareTo(c2);
             }
         });
+    }
 
-        out.write(header.getData());
-        out.write(getTableDirectoryData());
-        out.write(getCompressedDataBlock());
+    /**
+     * @return length of the table directory and table data that follow the header, used to pre-size the output
+     */
+    abstract int getTableDataLength() throws IOException;
 
-        return out.toByteArray();
-    }
+    abstract void writeTableData(FontDataOutputBuffer out) throws IOException;
 
-    byte[] getTableDirectoryData() throws IOException {
-        FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+    byte[] getCompressedDataBlock() throws IOException {
+        int length = 0;
         for (WoffTable tableOn : tables)
-            writer.write(tableOn.getDirectoryData());
+            length += tableOn.getCompressedData().length;
+
+        FontDataOutputBuffer writer = new FontDataOutputBuffer(length);
+        for (WoffTable tableOn : tables)
+            writer.write(tableOn.getCompressedData());
 
         return writer.toByteArray();
     }
 
-    byte[] getCompressedDataBlock() throws IOException {
-        FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+    /**
+     * @return length of the uncompressed sfnt font, header, table directory and 4 byte aligned tables
+     */
+    int getSfntSize() {
+        int size = SFNT_HEADER_SIZE + tables.size() * TABLE_RECORD_SIZE;
         for (WoffTable tableOn : tables)
-            writer.write(tableOn.getCompressedData());
+            size += paddedLength(tableOn.origLength());
 
-        return writer.toByteArray();
+        return size;
+    }
+
+    static int paddedLength(int length) {
+        return (length + 3) & ~3;
     }
 
     public void addFont(FVFont adapter) {
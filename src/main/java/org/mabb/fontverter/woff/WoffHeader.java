@@ -25,6 +25,7 @@ import java.io.IOException;
 public class WoffHeader {
     static final int WOFF_1_SIGNATURE = 0x774F4646;
     static final int WOFF_2_SIGNATURE = 0x774F4632;
+    static final int LENGTH_OFFSET = 8;
 
     public static WoffHeader createWoff2Header() {
         WoffHeader header = new WoffHeader();
@@ -90,11 +91,12 @@ public class WoffHeader {
     int privLength = 0;
 
     public void calculateValues(WoffFont woffFont) throws IOException {
-        length = woffFont.getRawData().length;
+        // length is back-patched by the font once it has written everything after the header
         numTables = (short) woffFont.getTables().size();
 
-        totalCompressedSize = woffFont.getCompressedSize();
-        totalSfntSize = woffFont.getFonts().get(0).getData().length;
+        if (!isVersionOne())
+            totalCompressedSize = woffFont.getCompressedSize();
+        totalSfntSize = woffFont.getSfntSize();
         flavorSfntVersion = 0x4F54544F;
     }
 
@@ -19,7 +19,7 @@ package org.mabb.fontverter.woff;
 
 import org.mabb.fontverter.io.DataTypeBindingDeserializer;
 import org.mabb.fontverter.io.FontDataInput;
-import org.mabb.fontverter.io.FontDataInputStream;
+import org.mabb.fontverter.io.FontDataBuffer;
 import org.mabb.fontverter.woff.Woff1Font.Woff1Table;
 
 import java.io.IOException;
@@ -36,7 +36,7 @@ public class WoffParser {
         this.font = readTo;
         initalizeFont();
 
-        this.input = new FontDataInputStream(data);
+        this.input = new FontDataBuffer(data);
         font.header = parseHeader();
         parseTables();
 
@@ -22,13 +22,13 @@ import org.mabb.fontverter.FontVerterUtils;
 import org.mabb.fontverter.woff.WoffConstants.TableFlagType;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public abstract class WoffTable {
     int transformLength;
     int originalLength;
     protected byte[] tableData;
     protected byte[] compressedData;
-    protected int paddingAdded = 0;
 
     public WoffTable(byte[] table) {
         this.tableData = table;
@@ -51,8 +51,6 @@ public abstract class WoffTable {
 
     protected byte[] padTableData(byte[] tableData) {
         byte[] padding = FontVerterUtils.tablePaddingNeeded(tableData);
-        if (padding.length != 0)
-            paddingAdded = padding.length;
         return ArrayUtils.addAll(tableData, padding);
     }
 
@@ -64,5 +62,13 @@ public abstract class WoffTable {
         return tableData;
     }
 
+    /**
+     * @return the table data without copying it, the buffer shares the array the table was read into so it
+     * mustn't be modified
+     */
+    public ByteBuffer getSharedTableData() {
+        return ByteBuffer.wrap(getTableData());
+    }
+
     public abstract String getTag();
 }
@@ -44,6 +44,18 @@ public class TestCFFToOtfConverter {
         TestUtils.runAllOtfValidators(font);
     }
 
+    @Test
+    public void convertWithSubroutinize_fontValidatorsPassAndCffTableSmaller() throws Exception {
+        byte[] cff = TestUtils.readTestFile("cff/DCJOKN+Omsym4.cff");
+        CFFToOpenTypeConverter converter = new CFFToOpenTypeConverter(cff);
+        converter.setSubroutinize(true);
+        OpenTypeFont font = converter.generateFont();
+
+        TestUtils.runAllOtfValidators(font);
+        int unsubroutinizedLength = convert("cff/DCJOKN+Omsym4").getCffTable().getData().length;
+        Assert.assertTrue(font.getCffTable().getData().length < unsubroutinizedLength);
+    }
+
     @Test
     public void convert_CFF_fullAlphabetFont_then_OTF_has94Glyphs() throws Exception {
         OpenTypeFont font = convert("cff/FontVerter+FullAlphabetFont");
@@ -19,7 +19,9 @@ package org.mabb.fontverter;
 
 import org.apache.commons.io.FileUtils;
 import org.mabb.fontverter.cff.CffFontAdapter;
+import org.mabb.fontverter.eot.EotFont;
 import org.mabb.fontverter.opentype.OpenTypeFont;
+import org.mabb.fontverter.woff.Woff1Font;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -45,6 +47,34 @@ public class TestFontVerter {
         Assert.assertEquals(OpenTypeFont.class, font.getClass());
     }
 
+    @Test
+    public void givenWoff1File_detectsWoff1FontFormat() throws IOException {
+        FVFont font = FontVerter.readFont(TestUtils.TEST_PATH + "Open-Sans-WOFF-1.0.woff");
+
+        Assert.assertEquals(Woff1Font.class, font.getClass());
+    }
+
+    @Test
+    public void givenEotFile_detectsEotFontFormat() throws IOException {
+        FVFont font = FontVerter.readFont(TestUtils.TEST_PATH + "eot/fontverterfullalphabetfont-webfont.eot");
+
+        Assert.assertEquals(EotFont.class, font.getClass());
+    }
+
+    @Test
+    public void givenFontFiles_sniffFormat_returnsFormatFromMagicNumber() throws IOException {
+        Assert.assertEquals(FontVerter.FontFormat.OTF, FontFormatSniffer.sniff(TestUtils.readTestFile("ttf/arial.ttf")));
+        Assert.assertEquals(FontVerter.FontFormat.OTF, FontFormatSniffer.sniff(TestUtils.readTestFile("FontVerter+SimpleTestFont.otf")));
+        Assert.assertEquals(FontVerter.FontFormat.WOFF2, FontFormatSniffer.sniff(TestUtils.readTestFile("Open-Sans-WOFF-2.0.woff2")));
+        Assert.assertEquals(FontVerter.FontFormat.EOT, FontFormatSniffer.sniff(TestUtils.readTestFile("eot/arial.eot")));
+        Assert.assertEquals(FontVerter.FontFormat.BARE_CFF, FontFormatSniffer.sniff(TestUtils.readTestFile("cff/test.cff")));
+    }
+
+    @Test(expected = IOException.class)
+    public void givenUnknownData_readFont_throwsException() throws IOException {
+        FontVerter.readFont(new byte[]{'n', 'o', 't', 'a', 'f', 'o', 'n', 't'});
+    }
+
     @Test
     public void givenCffFont_convertWithFontVerterApi_fontValidatorsPass() throws Exception {
         File file = new File(TestUtils.TEST_PATH + "cff/FontVerter+SimpleTestFont.cff");
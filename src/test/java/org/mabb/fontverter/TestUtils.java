@@ -60,6 +60,21 @@ public class TestUtils {
         return FileUtils.readFileToByteArray(new File(TEST_PATH + filePath));
     }
 
+    /**
+     * @return the test font's data with the glyph's contour count set higher than its data holds so the glyph
+     * can't be parsed, the rest of the font is left as is
+     */
+    public static byte[] corruptGlyph(String filePath, int glyphId) throws IOException {
+        byte[] data = readTestFile(filePath);
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(data);
+
+        int glyphOffset = (int) (font.getGlyfTable().record.offset + font.getLocaTable().getOffsetValues()[glyphId]);
+        data[glyphOffset] = 0x7F;
+        data[glyphOffset + 1] = (byte) 0xFF;
+
+        return data;
+    }
+
     public static void saveTempFile(byte[] data, String fileName) throws Exception {
         File outputFile = new File(tempOutputPath + fileName);
         if (outputFile.exists())
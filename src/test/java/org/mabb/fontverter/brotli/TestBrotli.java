@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.brotli;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.TestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.lessThan;
+
+public class TestBrotli {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /* reference encoder output at quality 11 in text mode, uses static dictionary words and transforms */
+    private static final byte[] REFERENCE_TEXT_STREAM = {
+            27, 98, 0, -32, 29, -119, 113, 76, -54, 70, 69, -65, -12, 100, -87, 126, -35, 94, 18, -110, 73, 66, -73,
+            -82, -96, -111, -62, -48, -34, 68, -103, 78, 14, -40, -1, 125, -1, 2, 44, -79, -128, 114, 11, 60, -122,
+            -27, 59, 28, 94, -75, -104, -118, 49, 102, 17, -46, -2, -18, 22, -41, 0, -62, 127, -123, -16, 15, 122,
+            -109, 21, 62, -7, -12, 50, 0, 114, -128, -120, 97, 99, -80, 84, 2};
+    private static final String REFERENCE_TEXT = "The Quick Brown Fox Jumps Over The Lazy Dog. Something about the "
+            + "weather in the mountains, THE END.";
+
+    @Test
+    public void decompressReferenceEncoderStream_thenTextMatches() throws IOException {
+        byte[] decompressed = BrotliDecoder.decompress(REFERENCE_TEXT_STREAM);
+        Assert.assertEquals(REFERENCE_TEXT, new String(decompressed, ASCII));
+    }
+
+    @Test
+    public void compressFont_thenDecompressesToSameData() throws IOException {
+        byte[] font = FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + "comic.ttf"));
+
+        byte[] compressed = BrotliEncoder.compress(font);
+
+        Assert.assertThat(compressed.length, lessThan(font.length * 3 / 4));
+        Assert.assertArrayEquals(font, BrotliDecoder.decompress(compressed));
+    }
+
+    @Test
+    public void compressEmptyAndSingleByte_thenRoundTrips() throws IOException {
+        Assert.assertArrayEquals(new byte[0], BrotliDecoder.decompress(BrotliEncoder.compress(new byte[0])));
+        Assert.assertArrayEquals(new byte[]{42}, BrotliDecoder.decompress(BrotliEncoder.compress(new byte[]{42})));
+    }
+
+    @Test
+    public void compressRandomData_thenStoredUncompressedAndRoundTrips() throws IOException {
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        byte[] compressed = BrotliEncoder.compress(data);
+
+        Assert.assertThat(compressed.length, lessThan(data.length + 16));
+        Assert.assertArrayEquals(data, BrotliDecoder.decompress(compressed));
+    }
+
+    @Test
+    public void compressDataLongerThanOneMetaBlock_thenRoundTrips() throws IOException {
+        Random random = new Random(2);
+        byte[] data = new byte[3000000];
+        for (int i = 0; i < 1000; i++)
+            data[i] = (byte) random.nextInt();
+
+        // random bytes then repeats of earlier data, roughly like a font's repeated structures
+        for (int i = 1000; i < data.length; ) {
+            int from = i - 1 - random.nextInt(1000);
+            for (int end = Math.min(i + 8 + random.nextInt(32), data.length); i < end; i++)
+                data[i] = data[from++];
+            if (i < data.length)
+                data[i++] = (byte) random.nextInt();
+        }
+
+        byte[] compressed = BrotliEncoder.compress(data);
+
+        Assert.assertThat(compressed.length, lessThan(data.length / 2));
+        Assert.assertArrayEquals(data, BrotliDecoder.decompress(compressed));
+    }
+
+    @Test
+    public void compressLongRuns_thenRoundTrips() throws IOException {
+        byte[] data = new byte[200000];
+        Arrays.fill(data, 100000, 150000, (byte) 7);
+
+        byte[] compressed = BrotliEncoder.compress(data);
+
+        Assert.assertThat(compressed.length, lessThan(100));
+        Assert.assertArrayEquals(data, BrotliDecoder.decompress(compressed));
+    }
+
+    @Test
+    public void decompressWithExpectedLength_thenReturnsExactSizeArray() throws IOException {
+        byte[] decompressed = BrotliDecoder.decompress(REFERENCE_TEXT_STREAM, REFERENCE_TEXT.length());
+        Assert.assertEquals(REFERENCE_TEXT, new String(decompressed, ASCII));
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressLongerThanExpectedLength_thenThrowsException() throws IOException {
+        BrotliDecoder.decompress(REFERENCE_TEXT_STREAM, REFERENCE_TEXT.length() - 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressShorterThanExpectedLength_thenThrowsException() throws IOException {
+        BrotliDecoder.decompress(REFERENCE_TEXT_STREAM, REFERENCE_TEXT.length() + 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressTruncatedStream_thenThrowsException() throws IOException {
+        BrotliDecoder.decompress(Arrays.copyOf(REFERENCE_TEXT_STREAM, REFERENCE_TEXT_STREAM.length / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressInvalidWindowSize_thenThrowsException() throws IOException {
+        // window bits 1 then 000 then 001 is reserved
+        BrotliDecoder.decompress(new byte[]{0x11, 0x00});
+    }
+}
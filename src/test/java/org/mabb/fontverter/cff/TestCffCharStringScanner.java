@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.io.FontDataBuffer;
+
+public class TestCffCharStringScanner {
+    private static final byte[] EMPTY_INDEX = new byte[]{0, 0};
+
+    @Test
+    public void givenVerticalFlex1_thenEndsBackAtStartX() throws Exception {
+        // 100 0 rmoveto, flex1 with dx1-5 summing to 50 and larger dy, -120 hlineto, endchar
+        byte[] charString = new byte[]{
+                (byte) 239, (byte) 139, 21,
+                (byte) 149, (byte) 139, (byte) 149, (byte) 239, (byte) 149, (byte) 139, (byte) 149, (byte) 139,
+                (byte) 149, (byte) 139, (byte) 144, 12, 37,
+                (byte) 251, 12, 6,
+                14};
+
+        Assert.assertEquals(-20, scanLeftSideBearing(charString));
+    }
+
+    @Test
+    public void givenHorizontalFlex1_thenLastArgumentIsFinalDx() throws Exception {
+        // 100 0 rmoveto, flex1 with dx1-5 summing to 50 and a final dx6 of -50, -120 hlineto, endchar
+        byte[] charString = new byte[]{
+                (byte) 239, (byte) 139, 21,
+                (byte) 149, (byte) 139, (byte) 149, (byte) 149, (byte) 149, (byte) 139, (byte) 149, (byte) 139,
+                (byte) 149, (byte) 139, 89, 12, 37,
+                (byte) 251, 12, 6,
+                14};
+
+        Assert.assertEquals(-20, scanLeftSideBearing(charString));
+    }
+
+    @Test
+    public void givenRealNominalWidth_thenAdvanceWidthRoundedAfterAddingIt() throws Exception {
+        // 100 endchar, the width operand is added to nominalWidthX
+        Assert.assertEquals(601, scanAdvanceWidth(new byte[]{(byte) 239, 14}, 0, 500.6));
+    }
+
+    @Test
+    public void givenRealDefaultWidth_thenAdvanceWidthRounded() throws Exception {
+        // endchar without a width operand uses defaultWidthX
+        Assert.assertEquals(500, scanAdvanceWidth(new byte[]{14}, 499.5, 0));
+    }
+
+    private static int scanLeftSideBearing(byte[] charString) throws Exception {
+        return scan(charString, 0, 0).getLeftSideBearing();
+    }
+
+    private static int scanAdvanceWidth(byte[] charString, double defaultWidth, double nominalWidth)
+            throws Exception {
+        return scan(charString, defaultWidth, nominalWidth).getAdvanceWidth();
+    }
+
+    private static CffCharStringScanner scan(byte[] charString, double defaultWidth, double nominalWidth)
+            throws Exception {
+        byte[] index = new byte[5 + charString.length];
+        index[1] = 1;
+        index[2] = 1;
+        index[3] = 1;
+        index[4] = (byte) (charString.length + 1);
+        System.arraycopy(charString, 0, index, 5, charString.length);
+
+        CffIndex charStrings = CffIndex.read(new FontDataBuffer(index), 0);
+        CffIndex globalSubrs = CffIndex.read(new FontDataBuffer(EMPTY_INDEX), 0);
+
+        CffCharStringScanner scanner = new CffCharStringScanner(index, globalSubrs);
+        scanner.setPrivate(null, defaultWidth, nominalWidth);
+        scanner.scan(charStrings, 0);
+        return scanner;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.opentype.CffTable;
+import org.mabb.fontverter.opentype.HorizontalMetricsTable;
+import org.mabb.fontverter.opentype.OpenTypeFont;
+
+import java.io.File;
+import java.util.Map;
+
+public class TestCffReader {
+    @Test
+    public void givenCffFont_whenRead_thenTopDictEntriesRead() throws Exception {
+        CffFontAdapter cff = CffFontAdapter.parse(readFile("cff/FontVerter+FullAlphabetFont.cff"));
+
+        Assert.assertEquals("FontVerter+FullAlphabetFont", cff.getName());
+        Assert.assertEquals("FullAlphabetFont", cff.getFullName());
+        Assert.assertEquals("FullAlphabetFont", cff.getFamilyName());
+        Assert.assertEquals("Medium", cff.getSubFamilyName());
+        Assert.assertEquals("001.000", cff.getVersion());
+        Assert.assertEquals(-133, cff.getUnderLinePosition().intValue());
+        Assert.assertEquals(26, cff.getMinX());
+        Assert.assertEquals(793, cff.getMaxY());
+    }
+
+    @Test
+    public void givenCffFont_whenRead_thenPrivateDictWidthsRead() throws Exception {
+        CffFontAdapter cff = CffFontAdapter.parse(readFile("cff/FontVerter+FullAlphabetFont.cff"));
+
+        Assert.assertEquals(1000, cff.getDefaultWidth().intValue());
+        Assert.assertEquals(1323, cff.getNominalWidth().intValue());
+    }
+
+    @Test
+    public void givenCustomCharset_whenGlyphNamesRead_thenNamesFromStringIndex() throws Exception {
+        CffFontAdapter cff = CffFontAdapter.parse(readFile("cff/test.cff"));
+        Map<Integer, String> names = cff.getGlyphIdsToNames();
+
+        Assert.assertEquals(5, names.size());
+        Assert.assertEquals(".notdef", names.get(0));
+        Assert.assertEquals("semicolon", names.get(1));
+        Assert.assertEquals("braceleft", names.get(4));
+    }
+
+    @Test
+    public void givenCustomEncoding_whenEncodingRead_thenCodesMapToCharsetNames() throws Exception {
+        CffFontAdapter cff = CffFontAdapter.parse(readFile("cff/test.cff"));
+        Map<Integer, String> codes = cff.getEncoding().getCodeToNameMap();
+
+        Assert.assertEquals(5, codes.size());
+        Assert.assertEquals("semicolon", codes.get(59));
+        Assert.assertEquals("Z", codes.get(90));
+    }
+
+    @Test
+    public void givenCharstrings_whenMetricsRead_thenWidthsAndSideBearingsFromOutlines() throws Exception {
+        CffFontAdapter cff = CffFontAdapter.parse(readFile("cff/test.cff"));
+        int[] advanceWidths = new int[cff.getGlyphCount()];
+        short[] leftSideBearings = new short[cff.getGlyphCount()];
+
+        cff.readMetrics(advanceWidths, leftSideBearings);
+
+        // .notdef is just endchar so has the default width and no outline
+        Assert.assertEquals(1000, advanceWidths[0]);
+        Assert.assertEquals(0, leftSideBearings[0]);
+        Assert.assertEquals(1292, advanceWidths[1]);
+        Assert.assertEquals(10, leftSideBearings[1]);
+    }
+
+    @Test
+    public void givenOtfWithSubroutines_whenCffTableMetricsRead_thenSameAsFontsHmtx() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "NameReadTestFont.otf");
+        CffTable cff = font.getCffTable();
+        HorizontalMetricsTable hmtx = font.getHmtx();
+
+        for (int i = 0; i < cff.getGlyphCount(); i++) {
+            Assert.assertEquals(hmtx.getAdvanceWidth(i), cff.getAdvanceWidth(i));
+            Assert.assertEquals(hmtx.getLeftSideBearing(i), cff.getLeftSideBearing(i));
+        }
+    }
+
+    @Test
+    public void givenCffFont_whenSubsetAfterReading_thenSubsetHasKeptGlyphsMetrics() throws Exception {
+        byte[] data = readFile("cff/FontVerter+FullAlphabetFont.cff");
+        CffFontAdapter cff = CffFontAdapter.parse(data);
+        int[] advanceWidths = new int[cff.getGlyphCount()];
+        cff.readMetrics(advanceWidths, new short[advanceWidths.length]);
+
+        CffFontAdapter subset = CffFontAdapter.parse(new CffSubsetter(data).subset(new int[]{0, 40, 41}));
+        int[] subsetWidths = new int[subset.getGlyphCount()];
+        subset.readMetrics(subsetWidths, new short[subsetWidths.length]);
+
+        Assert.assertArrayEquals(new int[]{advanceWidths[0], advanceWidths[40], advanceWidths[41]}, subsetWidths);
+        Assert.assertEquals(cff.getGlyphIdsToNames().get(40), subset.getGlyphIdsToNames().get(1));
+    }
+
+    private static byte[] readFile(String path) throws Exception {
+        return FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + path));
+    }
+}
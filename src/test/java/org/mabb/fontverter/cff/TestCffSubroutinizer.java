@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.cff;
+
+import org.apache.fontbox.cff.CFFParser;
+import org.apache.fontbox.cff.CFFType1Font;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.TestUtils;
+
+public class TestCffSubroutinizer {
+    private static final String UNSUBROUTINIZED_FONT = "cff/DCJOKN+Omsym4.cff";
+
+    @Test
+    public void givenFontWithoutSubrs_whenSubroutinized_thenFontSmaller() throws Exception {
+        byte[] cff = TestUtils.readTestFile(UNSUBROUTINIZED_FONT);
+        byte[] subroutinized = new CffSubroutinizer(cff).subroutinize();
+
+        Assert.assertTrue(subroutinized.length < cff.length);
+    }
+
+    @Test
+    public void givenFontWithoutSubrs_whenSubroutinized_thenSubrIndexesWritten() throws Exception {
+        byte[] subroutinized = new CffSubroutinizer(TestUtils.readTestFile(UNSUBROUTINIZED_FONT)).subroutinize();
+        CffReader reader = new CffReader(subroutinized);
+
+        boolean hasLocalSubrs = reader.getPrivateDicts().get(0).contains(CffDict.SUBRS);
+        Assert.assertTrue(reader.getGlobalSubrs().getCount() > 0 || hasLocalSubrs);
+    }
+
+    @Test
+    public void givenFontWithoutSubrs_whenSubroutinized_thenOutlinesSame() throws Exception {
+        byte[] cff = TestUtils.readTestFile(UNSUBROUTINIZED_FONT);
+        byte[] subroutinized = new CffSubroutinizer(cff).subroutinize();
+
+        CFFType1Font before = (CFFType1Font) new CFFParser().parse(cff).get(0);
+        CFFType1Font after = (CFFType1Font) new CFFParser().parse(subroutinized).get(0);
+
+        Assert.assertEquals(before.getNumCharStrings(), after.getNumCharStrings());
+        for (int glyphOn = 0; glyphOn < before.getNumCharStrings(); glyphOn++) {
+            Assert.assertEquals(before.getType2CharString(glyphOn).getType1Sequence(),
+                    after.getType2CharString(glyphOn).getType1Sequence());
+            Assert.assertEquals(before.getType2CharString(glyphOn).getWidth(),
+                    after.getType2CharString(glyphOn).getWidth());
+        }
+    }
+
+    @Test
+    public void givenFontWithoutSubrs_whenSubroutinized_thenMetricsSame() throws Exception {
+        CffFontAdapter before = CffFontAdapter.parse(TestUtils.readTestFile(UNSUBROUTINIZED_FONT));
+        CffFontAdapter after = CffFontAdapter.parse(new CffSubroutinizer(before.getData()).subroutinize());
+
+        int glyphCount = before.getGlyphCount();
+        int[] widthsBefore = new int[glyphCount];
+        short[] bearingsBefore = new short[glyphCount];
+        before.readMetrics(widthsBefore, bearingsBefore);
+
+        int[] widthsAfter = new int[glyphCount];
+        short[] bearingsAfter = new short[glyphCount];
+        after.readMetrics(widthsAfter, bearingsAfter);
+
+        Assert.assertArrayEquals(widthsBefore, widthsAfter);
+        Assert.assertArrayEquals(bearingsBefore, bearingsAfter);
+    }
+
+    @Test
+    public void givenFontWithSubrs_whenSubroutinized_thenFontDataUnchanged() throws Exception {
+        byte[] cff = TestUtils.readTestFile("cff/FontVerter+FullAlphabetFont.cff");
+        Assert.assertSame(cff, new CffSubroutinizer(cff).subroutinize());
+    }
+
+    @Test
+    public void givenSmallCandidateTable_whenSubroutinized_thenOutlinesStillReadable() throws Exception {
+        byte[] cff = TestUtils.readTestFile(UNSUBROUTINIZED_FONT);
+        CffSubroutinizer subroutinizer = new CffSubroutinizer(cff);
+        subroutinizer.setMaxCandidates(16);
+        subroutinizer.setMaxSequenceLength(4);
+
+        byte[] subroutinized = subroutinizer.subroutinize();
+        CffFontAdapter font = CffFontAdapter.parse(subroutinized);
+
+        Assert.assertTrue(subroutinized.length <= cff.length);
+        Assert.assertEquals(CffFontAdapter.parse(cff).getGlyphCount(), font.getGlyphCount());
+    }
+}
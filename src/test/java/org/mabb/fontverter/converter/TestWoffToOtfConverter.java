@@ -22,7 +22,13 @@ import org.junit.Test;
 import org.mabb.fontverter.FVFont;
 import org.mabb.fontverter.FontVerter;
 import org.mabb.fontverter.opentype.OpenTypeFont;
+import org.mabb.fontverter.opentype.OpenTypeTable;
 import org.mabb.fontverter.opentype.SfntHeader;
+import org.mabb.fontverter.woff.WoffFont;
+import org.mabb.fontverter.woff.WoffTable;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.mabb.fontverter.TestUtils.TEST_PATH;
 import static org.mabb.fontverter.TestUtils.saveTempFile;
@@ -38,6 +44,34 @@ public class TestWoffToOtfConverter {
         Assert.assertTrue(otfFont.isValid());
     }
 
+    @Test
+    public void givenWoff1_whenConvertedToOtf_thenEachTableHasTheWoffTableData() throws Exception {
+        assertTablesHaveWoffTableData(TEST_PATH + "Open-Sans-WOFF-1.0.woff");
+    }
+
+    @Test
+    public void givenWoff2_whenConvertedToOtf_thenEachTableHasTheWoffTableData() throws Exception {
+        // woff2 tables are slices of one decompressed block so this checks each table's offset into it
+        assertTablesHaveWoffTableData(TEST_PATH + "Open-Sans-WOFF-2.0.woff2");
+    }
+
+    private static void assertTablesHaveWoffTableData(String woffFile) throws Exception {
+        WoffFont woffFont = (WoffFont) FontVerter.readFont(woffFile);
+        OpenTypeFont otfFont = (OpenTypeFont) new WoffToOtfConverter().convertFont(woffFont);
+
+        Map<String, byte[]> woffTableData = new HashMap<String, byte[]>();
+        for (WoffTable tableOn : woffFont.getTables())
+            woffTableData.put(tableOn.getTag(), tableOn.getTableData());
+
+        Assert.assertEquals(woffTableData.size(), otfFont.getTables().size());
+        for (OpenTypeTable tableOn : otfFont.getTables()) {
+            // head gets the converted font's checksum adjustment
+            String tag = tableOn.getTableType();
+            if (!tag.equals("head"))
+                Assert.assertArrayEquals(tag, woffTableData.get(tag), tableOn.getUnpaddedData());
+        }
+    }
+
 
     // Woff2 de compress broken, woff2->otf not supported yet
 //    @Test
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mabb.fontverter.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.opentype.HeadTable;
+import org.mabb.fontverter.opentype.NameRecord;
+import org.mabb.fontverter.opentype.OpenTypeTable;
+import org.mabb.fontverter.woff.WoffHeader;
+
+import java.util.Arrays;
+
+public class TestDataTypeCodec {
+    @Test
+    public void givenAnnotatedFontClasses_thenGeneratedCodecsAreRegistered() {
+        Assert.assertNotNull(DataTypeCodec.find(HeadTable.class));
+        Assert.assertNotNull(DataTypeCodec.find(NameRecord.class));
+        Assert.assertNotNull(DataTypeCodec.find(WoffHeader.class));
+        Assert.assertNotNull(DataTypeCodec.find(OpenTypeTable.OtfTableRecord.class));
+    }
+
+    @Test
+    public void givenClassWithoutGeneratedCodec_thenReflectiveBindingStillUsed() throws Exception {
+        // test sources aren't annotation processed so this class only has the reflective fallback
+        Assert.assertNull(DataTypeCodec.find(TestRecord.class));
+
+        TestRecord record = new TestRecord();
+        record.version = 2;
+        record.count = 3;
+        record.extra = 0x01020304;
+
+        byte[] data = new DataTypeBindingSerializer().serialize(record);
+        Assert.assertArrayEquals(new byte[]{0, 2, 0, 3, 1, 2, 3, 4}, data);
+
+        TestRecord read = (TestRecord) new DataTypeBindingDeserializer().deserialize(data, TestRecord.class);
+        Assert.assertEquals(0x01020304, read.extra);
+    }
+
+    @Test
+    public void givenOrderedProperties_whenSerializedWithCodec_thenWrittenInAnnotationOrder() throws Exception {
+        NameRecord record = new NameRecord();
+        record.setNameID(4);
+        record.setOffset(10);
+        record.setStringData("ab");
+
+        byte[] data = record.getRecordData();
+
+        // platform, encoding, language, name id, length, offset
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 0, 4, 0, 2, 0, 10}, data);
+    }
+
+    @Test
+    public void givenWoffHeader_whenRoundTripped_thenConditionalPropertyReadAndWrittenTheSame() throws Exception {
+        WoffHeader header = WoffHeader.createWoff2Header();
+        byte[] data = header.getData();
+
+        WoffHeader readHeader = new WoffHeader();
+        new DataTypeBindingDeserializer().deserialize(data, readHeader);
+
+        // woff 2 headers have the extra total compressed size field
+        Assert.assertEquals(48, data.length);
+        Assert.assertArrayEquals(data, readHeader.getData());
+    }
+
+    @Test
+    public void givenTruncatedArray_whenRecoveringFromEOF_thenPartialArrayKept() throws Exception {
+        byte[] data = new byte[]{0, 1, 0, 5, 0, 7};
+
+        DataTypeBindingDeserializer deserializer = new DataTypeBindingDeserializer();
+        deserializer.setRecoverFromEOF(true);
+        TestArrayRecord record = (TestArrayRecord) deserializer.deserialize(data, TestArrayRecord.class);
+
+        Assert.assertEquals(5, record.length);
+        Assert.assertEquals(Arrays.asList(7, null, null, null, null), Arrays.asList(record.values));
+    }
+
+    @Test
+    public void givenPrimitiveArray_whenRoundTrippedReflectively_thenValuesKept() throws Exception {
+        TestPrimitiveArrayRecord record = new TestPrimitiveArrayRecord();
+        record.length = 3;
+        record.values = new int[]{1, 0xFFFF, 7};
+
+        byte[] data = new DataTypeBindingSerializer().serialize(record);
+        Assert.assertArrayEquals(new byte[]{0, 3, 0, 1, (byte) 0xFF, (byte) 0xFF, 0, 7}, data);
+
+        TestPrimitiveArrayRecord read = (TestPrimitiveArrayRecord) new DataTypeBindingDeserializer()
+                .deserialize(data, TestPrimitiveArrayRecord.class);
+        Assert.assertArrayEquals(record.values, read.values);
+    }
+
+    @Test
+    public void givenHeadTable_whenRoundTripped_thenDatesReadAndWrittenAsRawSeconds() throws Exception {
+        byte[] data = HeadTable.createDefaultTable().getUnpaddedData();
+
+        // created and modified follow version, revision, checksum adjustment, magic number, flags and units per em
+        FontDataBuffer reader = new FontDataBuffer(data);
+        reader.seek(20);
+        Assert.assertEquals(2752358400L, reader.readLong());
+
+        HeadTable read = new HeadTable();
+        new DataTypeBindingDeserializer().deserialize(data, read);
+        Assert.assertArrayEquals(data, read.getUnpaddedData());
+    }
+
+    public static class TestRecord {
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
+        int version;
+
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
+        int count;
+
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.INT, includeIf = "isVersionTwo")
+        int extra;
+
+        public boolean isVersionTwo() {
+            return version == 2;
+        }
+    }
+
+    public static class TestArrayRecord {
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
+        int version;
+
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
+        int length;
+
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, isArray = true, arrayLength = "length")
+        Integer[] values;
+    }
+
+    public static class TestPrimitiveArrayRecord {
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT)
+        int length;
+
+        @DataTypeProperty(dataType = DataTypeProperty.DataType.USHORT, isArray = true, arrayLength = "length")
+        int[] values;
+    }
+}
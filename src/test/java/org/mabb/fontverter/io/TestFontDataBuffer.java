@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+public class TestFontDataBuffer {
+    @Test
+    public void givenSameData_thenBufferReadsSameValuesAsStreamReader() throws Exception {
+        FontDataOutputStream writer = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+        writer.writeString("head");
+        writer.writeUnsignedInt(0xF1234567);
+        writer.writeUnsignedShort(65000);
+        writer.writeShort(-20);
+        writer.write32Fixed(1.5f);
+        byte[] data = writer.toByteArray();
+
+        FontDataInput stream = new FontDataInputStream(data);
+        FontDataInput buffer = new FontDataBuffer(data);
+
+        Assert.assertEquals(stream.readString(4), buffer.readString(4));
+        Assert.assertEquals(stream.readUnsignedInt(), buffer.readUnsignedInt());
+        Assert.assertEquals(stream.readUnsignedShort(), buffer.readUnsignedShort());
+        Assert.assertEquals(stream.readShort(), buffer.readShort());
+        Assert.assertEquals(stream.readFixed32(), buffer.readFixed32(), 0);
+        Assert.assertEquals(stream.getPosition(), buffer.getPosition());
+    }
+
+    @Test
+    public void givenShortArray_thenBulkReadGivesUnsignedValues() throws Exception {
+        FontDataBuffer buffer = new FontDataBuffer(new byte[]{0, 1, (byte) 0xFF, (byte) 0xFE, 0x12, 0x34});
+
+        int[] values = buffer.readUnsignedShortArray(3);
+
+        Assert.assertArrayEquals(new int[]{1, 0xFFFE, 0x1234}, values);
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void givenAbsoluteRead_thenPositionDoesNotMove() throws Exception {
+        FontDataBuffer buffer = new FontDataBuffer(new byte[]{0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0});
+
+        Assert.assertEquals(0xFFFFFF00L, buffer.getUnsignedInt(4));
+        Assert.assertEquals(0, buffer.getPosition());
+    }
+
+    @Test
+    public void givenSlice_thenReadsStartAtSliceOffsetAndShareData() throws Exception {
+        byte[] data = new byte[]{1, 2, 3, 4, 5, 6};
+        FontDataBuffer slice = new FontDataBuffer(data).slice(2, 3);
+
+        data[3] = 9;
+
+        Assert.assertEquals(3, slice.length());
+        Assert.assertArrayEquals(new byte[]{3, 9, 5}, slice.readBytes(3));
+    }
+
+    @Test
+    public void givenDirectBuffer_thenReadsFromBufferPosition() throws Exception {
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put(new byte[]{7, 0, 1, 0});
+        direct.position(1);
+
+        Assert.assertEquals(1, new FontDataBuffer(direct).readUnsignedShort());
+    }
+
+    @Test(expected = EOFException.class)
+    public void givenReadPastEnd_thenThrowsEOF() throws Exception {
+        new FontDataBuffer(new byte[]{1, 2, 3}).readInt();
+    }
+
+    @Test(expected = EOFException.class)
+    public void givenNegativeSeekOffset_thenThrowsEOF() throws Exception {
+        new FontDataBuffer(new byte[]{1, 2, 3}).seek(-1);
+    }
+
+    @Test(expected = EOFException.class)
+    public void givenNegativeReadBytesLength_thenThrowsEOF() throws Exception {
+        new FontDataBuffer(new byte[]{1, 2, 3}).readBytes(-1);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mabb.fontverter.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerterUtils;
+
+import java.io.IOException;
+
+public class TestFontDataOutputBuffer {
+    @Test
+    public void givenSameWrites_thenBufferOutputMatchesStreamOutput() throws Exception {
+        FontDataOutputStream stream = new FontDataOutputStream(FontDataOutputStream.OPEN_TYPE_CHARSET);
+        FontDataOutputBuffer buffer = new FontDataOutputBuffer(4);
+
+        FontDataOutput[] writers = new FontDataOutput[]{stream, buffer};
+        for (FontDataOutput writerOn : writers) {
+            writerOn.writeString("cmap");
+            writerOn.writeUnsignedInt(0xF1234567);
+            writerOn.writeUnsignedShort(65000);
+            writerOn.writeShort(-20);
+            writerOn.write32Fixed(1.5f);
+            writerOn.writeUnsignedInt8(0x7F000000);
+        }
+
+        Assert.assertArrayEquals(stream.toByteArray(), buffer.toByteArray());
+        Assert.assertEquals(stream.currentPosition(), buffer.currentPosition());
+    }
+
+    @Test
+    public void givenReservedFields_whenPatched_thenValuesWrittenInPlace() throws Exception {
+        FontDataOutputBuffer buffer = new FontDataOutputBuffer();
+        buffer.writeUnsignedShort(4);
+        int lengthPosition = buffer.reserveUnsignedShort();
+        int offsetPosition = buffer.reserveUnsignedInt();
+        buffer.write(new byte[]{1, 2});
+
+        buffer.patchUnsignedShort(lengthPosition, buffer.currentPosition());
+        buffer.patchUnsignedInt(offsetPosition, 0xFFFFFFFEL);
+
+        Assert.assertArrayEquals(new byte[]{0, 4, 0, 10, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE, 1, 2},
+                buffer.toByteArray());
+    }
+
+    @Test
+    public void givenExactCapacity_thenBufferReturnedWithoutCopy() throws Exception {
+        FontDataOutputBuffer buffer = new FontDataOutputBuffer(4);
+        buffer.writeInt(1);
+
+        Assert.assertSame(buffer.toByteArray(), buffer.toByteArray());
+    }
+
+    @Test
+    public void givenWritesPastCapacity_thenBufferGrows() throws Exception {
+        FontDataOutputBuffer buffer = new FontDataOutputBuffer(1);
+        buffer.writeLong(0x0102030405060708L);
+
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, buffer.toByteArray());
+    }
+
+    @Test
+    public void givenUnalignedData_thenPaddedToFourBytesAndChecksumMatchesTableChecksum() throws Exception {
+        byte[] data = new byte[]{1, 2, 3, 4, 5, 6, 7};
+        FontDataOutputBuffer buffer = new FontDataOutputBuffer();
+        buffer.write(new byte[]{9, 9});
+        buffer.write(data);
+
+        long checksum = buffer.checksum(2, buffer.currentPosition());
+        buffer.padToFourBytes();
+
+        Assert.assertEquals(FontVerterUtils.getTableChecksum(data), checksum);
+        Assert.assertEquals(12, buffer.currentPosition());
+    }
+
+    @Test(expected = IOException.class)
+    public void givenPatchPastWrittenData_thenThrowsException() throws Exception {
+        FontDataOutputBuffer buffer = new FontDataOutputBuffer(16);
+        buffer.writeShort(1);
+
+        buffer.patchUnsignedInt(0, 1);
+    }
+}
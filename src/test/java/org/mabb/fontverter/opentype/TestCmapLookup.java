@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+
+import java.io.File;
+import java.util.List;
+
+public class TestCmapLookup {
+    @Test
+    public void givenParsedFont_whenLookedUp_thenSameGlyphIdsAsParsedMappings() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+        CmapLookup lookup = font.getCmapLookup();
+
+        List<GlyphMapReader.GlyphMapping> mappings = font.getCmap().getGlyphMappings();
+        int[] codePoints = new int[mappings.size()];
+        for (int i = 0; i < mappings.size(); i++) {
+            codePoints[i] = mappings.get(i).charCode;
+            Assert.assertEquals(mappings.get(i).glyphId.intValue(), lookup.getGlyphId(codePoints[i]));
+        }
+
+        int[] glyphIds = lookup.getGlyphIds(codePoints);
+        for (int i = 0; i < mappings.size(); i++)
+            Assert.assertEquals(mappings.get(i).glyphId.intValue(), glyphIds[i]);
+    }
+
+    @Test
+    public void givenUnmappedCodePoints_whenLookedUp_thenGlyphIdIsZero() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+        CmapLookup lookup = font.getCmapLookup();
+
+        Assert.assertEquals(0, lookup.getGlyphId(0xFFFF));
+        Assert.assertEquals(0, lookup.getGlyphId(0x10FFFF));
+        Assert.assertEquals(0, lookup.getGlyphId(-1));
+        Assert.assertEquals(0, lookup.getGlyphId(0x4E00));
+    }
+
+    @Test
+    public void givenLazilyReadFont_whenLookupCreated_thenCmapTableNotParsed() throws Exception {
+        byte[] fontData = FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + "comic.ttf"));
+        OpenTypeFont font = new OpenTypeParser(true).parse(fontData);
+
+        CmapLookup lookup = font.getCmapLookup();
+        int glyphId = lookup.getGlyphId('A');
+
+        Assert.assertFalse(font.getTables().get(tableIndex(font, "cmap")).isParsed());
+        Assert.assertEquals(font.getCmap().getGlyphMappings().size(), countMapped(lookup));
+        Assert.assertTrue(glyphId > 0);
+    }
+
+    @Test
+    public void givenSupplementaryPlaneMappings_whenLookedUp_thenFormat12GroupsUsed() throws Exception {
+        CmapTable cmap = CmapTable.createDefaultTable();
+        cmap.addGlyphMapping(0x41, 1);
+        cmap.addGlyphMapping(0x1F600, 2);
+        cmap.addGlyphMapping(0x1F601, 3);
+        cmap.addGlyphMapping(0x1F680, 9);
+
+        CmapLookup lookup = CmapLookup.read(cmap.getUnpaddedData());
+
+        Assert.assertEquals(12, lookup.getFormat());
+        Assert.assertArrayEquals(new int[]{1, 2, 3, 9, 0}, lookup.getGlyphIds(
+                new int[]{0x41, 0x1F600, 0x1F601, 0x1F680, 0x1F602}));
+    }
+
+    @Test
+    public void givenText_whenLookedUp_thenOneGlyphIdPerCodePoint() throws Exception {
+        CmapTable cmap = CmapTable.createDefaultTable();
+        cmap.addGlyphMapping(0x61, 5);
+        cmap.addGlyphMapping(0x62, 7);
+        cmap.addGlyphMapping(0x1F600, 8);
+
+        CmapLookup lookup = CmapLookup.read(cmap.getUnpaddedData());
+        int[] glyphIds = lookup.getGlyphIds("ab\uD83D\uDE00c");
+
+        Assert.assertArrayEquals(new int[]{5, 7, 8, 0}, glyphIds);
+    }
+
+    @Test
+    public void givenScatteredGlyphIds_whenLookedUp_thenGlyphIdArrayRead() throws Exception {
+        CmapTable cmap = CmapTable.createDefaultTable();
+        int[] glyphIds = {9, 3, 7, 1, 5, 2, 8, 4};
+        for (int i = 0; i < glyphIds.length; i++)
+            cmap.addGlyphMapping(0x100 + i, glyphIds[i]);
+
+        CmapLookup lookup = CmapLookup.read(cmap.getUnpaddedData());
+
+        Assert.assertEquals(4, lookup.getFormat());
+        for (int i = 0; i < glyphIds.length; i++)
+            Assert.assertEquals(glyphIds[i], lookup.getGlyphId(0x100 + i));
+        Assert.assertEquals(0, lookup.getGlyphId(0x108));
+    }
+
+    @Test
+    public void givenFormat13SubTable_whenLookedUp_thenEveryCodePointInGroupGetsSameGlyph() throws Exception {
+        FontDataOutputBuffer writer = new FontDataOutputBuffer();
+        writer.writeUnsignedShort(0);
+        writer.writeUnsignedShort(1);
+        writer.writeUnsignedShort(3);
+        writer.writeUnsignedShort(10);
+        writer.writeUnsignedInt(12);
+        // format 13 subtable with 2 groups
+        writer.writeUnsignedShort(13);
+        writer.writeUnsignedShort(0);
+        writer.writeUnsignedInt(16 + 2 * 12);
+        writer.writeUnsignedInt(0);
+        writer.writeUnsignedInt(2);
+        writer.writeUnsignedInt(0x20);
+        writer.writeUnsignedInt(0x7E);
+        writer.writeUnsignedInt(1);
+        writer.writeUnsignedInt(0x10000);
+        writer.writeUnsignedInt(0x10FFFF);
+        writer.writeUnsignedInt(2);
+
+        CmapLookup lookup = CmapLookup.read(writer.toByteArray());
+
+        Assert.assertArrayEquals(new int[]{0, 1, 1, 0, 2, 2}, lookup.getGlyphIds(
+                new int[]{0x1F, 0x20, 0x7E, 0x7F, 0x10000, 0x10FFFF}));
+    }
+
+    private static int tableIndex(OpenTypeFont font, String tag) {
+        for (int i = 0; i < font.getTables().size(); i++) {
+            if (font.getTables().get(i).getTableType().equals(tag))
+                return i;
+        }
+
+        throw new AssertionError("No " + tag + " table");
+    }
+
+    private static int countMapped(CmapLookup lookup) {
+        int mapped = 0;
+        for (int codePoint = 0; codePoint < 0xFFFF; codePoint++) {
+            if (lookup.getGlyphId(codePoint) != 0)
+                mapped++;
+        }
+
+        return mapped;
+    }
+}
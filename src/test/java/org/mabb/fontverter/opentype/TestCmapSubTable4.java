@@ -20,32 +20,128 @@ package org.mabb.fontverter.opentype;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.io.FontDataBuffer;
 import org.mabb.fontverter.io.FontDataInputStream;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 public class TestCmapSubTable4 {
     @Test
-    public void givenSubTableWithIdGreaterThanCharCode_whenCalcSegments_thenIdRangeOffsetNot0() throws Exception {
+    public void givenSubTableWithIdLessThanCharCode_whenCalcSegments_thenDeltaSegmentWithWrappedDelta()
+            throws Exception {
         Format4SubTable table = new Format4SubTable();
         table.addGlyphMapping(55, 1);
         // force calc segments
         table.getData();
 
-        Assert.assertEquals(2, table.idRangeOffsets.get(0).intValue());
+        Assert.assertEquals(0, table.idRangeOffsets[0]);
+        Assert.assertEquals(65536 - 54, table.deltas[0]);
     }
 
     @Test
-    public void givenSubTableWithIdGreaterThanCharCode_whenReadt0() throws Exception {
+    public void givenSubTableWithIdLessThanCharCode_whenRead_thenSameMapping() throws Exception {
         Format4SubTable table = new Format4SubTable();
         table.addGlyphMapping(55, 1);
-        // force calc segments
+
+        Map<Integer, Integer> mappings = readMappings(table.getData());
+
+        Assert.assertEquals(1, mappings.size());
+        Assert.assertEquals(Integer.valueOf(1), mappings.get(55));
+    }
+
+    @Test
+    public void givenConsecutiveCharCodesWithScatteredGlyphIds_whenWritten_thenOneGlyphIdArraySegment()
+            throws Exception {
+        Format4SubTable table = new Format4SubTable();
+        int[] glyphIds = {9, 3, 7, 1, 5, 2, 8, 4};
+        for (int i = 0; i < glyphIds.length; i++)
+            table.addGlyphMapping(65 + i, glyphIds[i]);
+
+        byte[] data = table.getData();
+
+        Assert.assertEquals(1, table.starts.length);
+        Assert.assertEquals(4, table.idRangeOffsets[0]);
+        Assert.assertEquals(16 + 2 * 8 + glyphIds.length * 2, data.length);
+
+        Map<Integer, Integer> mappings = readMappings(data);
+        for (int i = 0; i < glyphIds.length; i++)
+            Assert.assertEquals(Integer.valueOf(glyphIds[i]), mappings.get(65 + i));
+    }
+
+    @Test
+    public void givenSmallGapBetweenScatteredRuns_whenWritten_thenGapFilledWithNotdefInOneSegment()
+            throws Exception {
+        Format4SubTable table = new Format4SubTable();
+        table.addGlyphMapping(65, 10);
+        table.addGlyphMapping(66, 4);
+        table.addGlyphMapping(68, 12);
+        table.addGlyphMapping(69, 2);
+
+        Map<Integer, Integer> mappings = readMappings(table.getData());
+
+        Assert.assertEquals(1, table.starts.length);
+        Assert.assertEquals(0, table.glyphIdArray[2]);
+        Assert.assertEquals(4, mappings.size());
+        Assert.assertNull(mappings.get(67));
+        Assert.assertEquals(Integer.valueOf(12), mappings.get(68));
+    }
+
+    @Test
+    public void givenRunsFarApart_whenWritten_thenDeltaSegmentsUsed() throws Exception {
+        Format4SubTable table = new Format4SubTable();
+        for (int i = 0; i < 26; i++) {
+            table.addGlyphMapping(0x41 + i, 1 + i);
+            table.addGlyphMapping(0x4E00 + i, 100 + i);
+        }
+
+        Map<Integer, Integer> mappings = readMappings(table.getData());
+
+        Assert.assertEquals(2, table.starts.length);
+        Assert.assertEquals(0, table.glyphIdArray.length);
+        Assert.assertEquals(52, mappings.size());
+        Assert.assertEquals(Integer.valueOf(125), mappings.get(0x4E19));
+    }
+
+    @Test
+    public void givenParsedFontMapping_whenReencoded_thenSameMappingAndNoLargerThanOriginal() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+        Format4SubTable table = new Format4SubTable();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (GlyphMapReader.GlyphMapping mappingOn : font.getCmap().getGlyphMappings()) {
+            table.addGlyphMapping(mappingOn.charCode, mappingOn.glyphId);
+            expected.put(mappingOn.charCode, mappingOn.glyphId);
+        }
 
         byte[] data = table.getData();
-        data = Arrays.copyOfRange(data, 2, data.length);
 
+        Assert.assertEquals(expected, readMappings(data));
+        Assert.assertTrue(data.length <= originalFormat4Length(font));
+    }
+
+    private static Map<Integer, Integer> readMappings(byte[] data) throws Exception {
         Format4SubTable readTable = new Format4SubTable();
-        readTable.readData(new FontDataInputStream(data));
-        Assert.assertEquals(2, table.idRangeOffsets.get(0).intValue());
+        readTable.readData(new FontDataInputStream(Arrays.copyOfRange(data, 2, data.length)));
+
+        Map<Integer, Integer> mappings = new HashMap<Integer, Integer>();
+        for (GlyphMapReader.GlyphMapping mappingOn : readTable.getGlyphMappings())
+            mappings.put(mappingOn.charCode, mappingOn.glyphId);
+
+        return mappings;
+    }
+
+    private static int originalFormat4Length(OpenTypeFont font) throws Exception {
+        // parsed subtables are passed through as is so the written cmap holds the original format 4 subtable
+        FontDataBuffer cmap = new FontDataBuffer(font.getCmap().getUnpaddedData());
+        for (int i = 0; i < cmap.getUnsignedShort(2); i++) {
+            int offset = (int) cmap.getUnsignedInt(4 + i * 8 + 4);
+            if (cmap.getUnsignedShort(offset) == 4)
+                return cmap.getUnsignedShort(offset + 2);
+        }
+
+        throw new AssertionError("No format 4 subtable");
     }
 }
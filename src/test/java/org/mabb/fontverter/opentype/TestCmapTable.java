@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.io.FontDataBuffer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestCmapTable {
+    @Test
+    public void givenDefaultTable_whenWritten_thenUnicodeAndWindowsRecordsShareOneSubTable() throws Exception {
+        CmapTable table = CmapTable.createDefaultTable();
+        table.addGlyphMapping(0x41, 1);
+        table.addGlyphMapping(0x42, 2);
+
+        FontDataBuffer data = new FontDataBuffer(table.getUnpaddedData());
+
+        Assert.assertEquals(3, data.getUnsignedShort(2));
+        Assert.assertEquals(recordOffset(data, 0), recordOffset(data, 2));
+        Assert.assertNotEquals(recordOffset(data, 0), recordOffset(data, 1));
+    }
+
+    @Test
+    public void givenDefaultTable_whenWritten_thenMacRecordIsTrimmedAsciiFormat6() throws Exception {
+        CmapTable table = CmapTable.createDefaultTable();
+        table.addGlyphMapping(0x41, 1);
+        table.addGlyphMapping(0x43, 3);
+        table.addGlyphMapping(0xE9, 4);
+
+        FontDataBuffer data = new FontDataBuffer(table.getUnpaddedData());
+        int macOffset = recordOffset(data, 1);
+
+        Assert.assertEquals(1, data.getUnsignedShort(4 + 8));
+        Assert.assertEquals(6, data.getUnsignedShort(macOffset));
+        Assert.assertEquals(10 + 3 * 2, data.getUnsignedShort(macOffset + 2));
+        Assert.assertEquals(0x41, data.getUnsignedShort(macOffset + 6));
+        Assert.assertEquals(3, data.getUnsignedShort(macOffset + 8));
+        Assert.assertEquals(1, data.getUnsignedShort(macOffset + 10));
+        Assert.assertEquals(0, data.getUnsignedShort(macOffset + 12));
+        Assert.assertEquals(3, data.getUnsignedShort(macOffset + 14));
+    }
+
+    @Test
+    public void givenSupplementaryPlaneMapping_whenWrittenAndRead_thenFormat12RecordsAddedAndMappingsKept()
+            throws Exception {
+        CmapTable table = CmapTable.createDefaultTable();
+        table.addGlyphMapping(0x41, 1);
+        table.addGlyphMapping(0x1F600, 2);
+        table.addGlyphMapping(0x1F601, 3);
+        table.addGlyphMapping(0x42, 4);
+
+        byte[] written = table.getUnpaddedData();
+        FontDataBuffer data = new FontDataBuffer(written);
+
+        int[][] expectedRecords = {{0, 3}, {0, 4}, {1, 0}, {3, 1}, {3, 10}};
+        Assert.assertEquals(expectedRecords.length, data.getUnsignedShort(2));
+        for (int i = 0; i < expectedRecords.length; i++) {
+            Assert.assertEquals(expectedRecords[i][0], data.getUnsignedShort(4 + i * 8));
+            Assert.assertEquals(expectedRecords[i][1], data.getUnsignedShort(4 + i * 8 + 2));
+        }
+        Assert.assertEquals(recordOffset(data, 1), recordOffset(data, 4));
+        Assert.assertEquals(12, data.getUnsignedShort(recordOffset(data, 1)));
+        // 3 groups, the two supplementary plane code points are one group
+        Assert.assertEquals(3, data.getUnsignedInt(recordOffset(data, 1) + 12));
+
+        CmapTable read = new CmapTable();
+        read.readData(written);
+        Map<Integer, Integer> mappings = new HashMap<Integer, Integer>();
+        for (GlyphMapReader.GlyphMapping mappingOn : read.getGlyphMappings())
+            mappings.put(mappingOn.charCode, mappingOn.glyphId);
+
+        Assert.assertEquals(4, mappings.size());
+        Assert.assertEquals(Integer.valueOf(3), mappings.get(0x1F601));
+        Assert.assertEquals(Integer.valueOf(4), mappings.get(0x42));
+    }
+
+    private static int recordOffset(FontDataBuffer data, int record) throws Exception {
+        return (int) data.getUnsignedInt(4 + record * 8 + 4);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.io.FontDataBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+public class TestCompositeGlyphs {
+    @Test
+    public void givenTtfWithComposites_whenParsed_thenComponentsRead() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+
+        int composites = 0;
+        for (TtfGlyph glyphOn : glyphs) {
+            if (!glyphOn.isComposite())
+                continue;
+
+            composites++;
+            Assert.assertFalse(glyphOn.getComponents().isEmpty());
+            for (CompositeGlyphComponent componentOn : glyphOn.getComponents())
+                Assert.assertTrue(componentOn.getGlyphIndex() < glyphs.size());
+        }
+
+        Assert.assertEquals(1960, composites);
+    }
+
+    @Test
+    public void givenTtfWithComposites_whenRegeneratedAndReparsed_thenComponentsMatch() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+        OpenTypeFont reparsedFont = (OpenTypeFont) FontVerter.readFont(font.getData());
+
+        List<TtfGlyph> originals = font.getGlyfTable().getGlyphs();
+        List<TtfGlyph> reparseds = reparsedFont.getGlyfTable().getGlyphs();
+        Assert.assertEquals(originals.size(), reparseds.size());
+
+        for (int i = 0; i < originals.size(); i++) {
+            List<CompositeGlyphComponent> originalOn = originals.get(i).getComponents();
+            List<CompositeGlyphComponent> reparsedOn = reparseds.get(i).getComponents();
+
+            Assert.assertEquals(originalOn.size(), reparsedOn.size());
+            for (int j = 0; j < originalOn.size(); j++) {
+                Assert.assertEquals(originalOn.get(j).getGlyphIndex(), reparsedOn.get(j).getGlyphIndex());
+                Assert.assertEquals(originalOn.get(j).getArgument1(), reparsedOn.get(j).getArgument1());
+                Assert.assertEquals(originalOn.get(j).getArgument2(), reparsedOn.get(j).getArgument2());
+            }
+        }
+    }
+
+    @Test
+    public void givenCompositeWithWordArgsScaleAndInstructions_whenRegenerated_thenSmallArgsWrittenAsBytes()
+            throws Exception {
+        byte[] data = new byte[]{
+                -1, -1, 0, 0, 0, 0, 0, 0, 0, 0,
+                // words, xy values, scale, more components
+                0, 0x2B, 0, 5, 0, 10, (byte) 0xFF, (byte) 0xF6, 0x20, 0,
+                // words, xy values, instructions
+                0x01, 0x03, 0, 6, 0x01, 0, 0, 0,
+                0, 2, 0x4B, 0x4C};
+
+        TtfGlyph glyph = TtfGlyph.parse(new FontDataBuffer(data), null, 0);
+        List<CompositeGlyphComponent> components = glyph.getComponents();
+
+        Assert.assertEquals(2, components.size());
+        Assert.assertEquals(-10, components.get(0).getArgument2());
+        Assert.assertEquals(0.5, components.get(0).getTransform()[3], 0);
+        Assert.assertEquals(256, components.get(1).getArgument1());
+        Assert.assertArrayEquals(new byte[]{0x4B, 0x4C}, glyph.instructions);
+
+        byte[] expected = new byte[]{
+                -1, -1, 0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0x2A, 0, 5, 10, (byte) 0xF6, 0x20, 0,
+                0x01, 0x03, 0, 6, 0x01, 0, 0, 0,
+                0, 2, 0x4B, 0x4C};
+        Assert.assertArrayEquals(expected, glyph.generateData());
+    }
+
+    @Test
+    public void givenNestedComposites_whenClosureTaken_thenAllComponentsIncluded() throws Exception {
+        GlyphDependencyGraph graph = new GlyphDependencyGraph(createGlyphs(
+                new int[0], new int[0], new int[]{1}, new int[]{2, 0}, new int[0]));
+
+        SortedSet<Integer> closure = graph.getClosure(Arrays.asList(3));
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), new ArrayList<Integer>(closure));
+        Assert.assertArrayEquals(new int[]{3}, graph.getDependents(2));
+    }
+
+    @Test
+    public void givenNestedComposites_whenComponentOrderTaken_thenComponentsComeBeforeParents() throws Exception {
+        GlyphDependencyGraph graph = new GlyphDependencyGraph(createGlyphs(
+                new int[]{2}, new int[]{0}, new int[0], new int[]{1}));
+
+        Assert.assertArrayEquals(new int[]{2, 0, 1, 3}, graph.getComponentOrder());
+    }
+
+    @Test
+    public void givenDeepCompositeChain_whenClosureAndOrderTaken_thenNoStackOverflow() throws Exception {
+        int[][] chain = new int[100000][];
+        chain[0] = new int[0];
+        for (int i = 1; i < chain.length; i++)
+            chain[i] = new int[]{i - 1};
+
+        GlyphDependencyGraph graph = new GlyphDependencyGraph(createGlyphs(chain));
+
+        Assert.assertEquals(chain.length, graph.getClosure(Arrays.asList(chain.length - 1)).size());
+        Assert.assertEquals(chain.length - 1, graph.getComponentOrder()[chain.length - 1]);
+    }
+
+    @Test
+    public void givenGlyfTable_whenComponentsRenumbered_thenGraphUsesNewIds() throws Exception {
+        GlyphTable glyf = new GlyphTable();
+        glyf.glyphs = createGlyphs(new int[0], new int[0], new int[]{1});
+        Assert.assertArrayEquals(new int[]{1}, glyf.getDependencyGraph().getComponents(2));
+
+        glyf.renumberComponents(new int[]{2, 0, 1});
+
+        Assert.assertEquals(0, glyf.glyphs.get(2).getComponents().get(0).getGlyphIndex());
+        Assert.assertArrayEquals(new int[]{0}, glyf.getDependencyGraph().getComponents(2));
+    }
+
+    private static List<TtfGlyph> createGlyphs(int[]... componentIds) {
+        List<TtfGlyph> glyphs = new ArrayList<TtfGlyph>();
+        for (int[] idsOn : componentIds) {
+            TtfGlyph glyph = new TtfGlyph();
+            for (int idOn : idsOn) {
+                CompositeGlyphComponent component = new CompositeGlyphComponent();
+                component.glyphIndex = idOn;
+                glyph.components.add(component);
+            }
+
+            if (idsOn.length > 0)
+                glyph.numberOfContours = -1;
+            glyphs.add(glyph);
+        }
+
+        return glyphs;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.apache.fontbox.encoding.Encoding;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.cff.CffFontAdapter;
+import org.mabb.fontverter.opentype.GlyphMapReader.GlyphMapping;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TestGlyphMapReader {
+    @Test
+    public void givenNameWithSeveralCodes_whenGlyphsReadToNames_thenEachGlyphGetsAnUnusedCode() {
+        TestEncoding encoding = new TestEncoding();
+        encoding.add(10, "a");
+        encoding.add(20, "a");
+        encoding.add(30, "b");
+
+        Map<Integer, String> idToNames = new TreeMap<Integer, String>();
+        idToNames.put(1, "a");
+        idToNames.put(2, "a");
+        idToNames.put(3, "b");
+        idToNames.put(4, "c");
+        List<GlyphMapping> mappings = GlyphMapReader.readGlyphsToNames(idToNames, encoding);
+
+        Assert.assertEquals(3, mappings.size());
+        Assert.assertEquals(20, mappings.get(0).charCode.intValue());
+        Assert.assertEquals(10, mappings.get(1).charCode.intValue());
+        Assert.assertEquals(30, mappings.get(2).charCode.intValue());
+    }
+
+    @Test
+    public void givenSameEncoding_whenNameIndexRequestedTwice_thenIndexReused() {
+        TestEncoding encoding = new TestEncoding();
+        encoding.add(65, "A");
+
+        Map<String, int[]> first = GlyphMapReader.getNameIndex(encoding);
+        Map<String, int[]> second = GlyphMapReader.getNameIndex(encoding);
+
+        Assert.assertSame(first, second);
+        Assert.assertArrayEquals(new int[]{65}, first.get("A"));
+    }
+
+    @Test
+    public void givenEncodingChangedAfterIndexed_whenNameIndexRequested_thenIndexRebuilt() {
+        TestEncoding encoding = new TestEncoding();
+        encoding.add(65, "A");
+        GlyphMapReader.getNameIndex(encoding);
+
+        encoding.add(66, "B");
+        Map<String, int[]> index = GlyphMapReader.getNameIndex(encoding);
+
+        Assert.assertArrayEquals(new int[]{66}, index.get("B"));
+    }
+
+    @Test
+    public void givenCffFont_whenGlyphMapsRequestedTwice_thenSameMappingsInSeparateLists() throws Exception {
+        CffFontAdapter cff = (CffFontAdapter) FontVerter.readFont(TestUtils.TEST_PATH + "cff/FontVerter+FullAlphabetFont.cff");
+
+        List<GlyphMapping> first = cff.getGlyphMaps();
+        first.remove(0);
+        List<GlyphMapping> second = cff.getGlyphMaps();
+
+        Assert.assertEquals(first.size() + 1, second.size());
+        Assert.assertSame(first.get(0), second.get(1));
+    }
+
+    private static class TestEncoding extends Encoding {
+        void add(int code, String name) {
+            addCharacterEncoding(code, name);
+        }
+    }
+}
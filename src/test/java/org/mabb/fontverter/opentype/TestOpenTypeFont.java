@@ -23,10 +23,12 @@ import org.junit.Test;
 import org.mabb.fontverter.FVFont;
 import org.mabb.fontverter.FontProperties;
 import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.FontVerterUtils;
 import org.mabb.fontverter.TestUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -133,6 +135,98 @@ public class TestOpenTypeFont {
         Assert.assertEquals("Copyright (c) 1996 Microsoft Corporation. All rights reserved.", properties.getTrademarkNotice());
     }
 
+    @Test
+    public void given_parsedTTF_thenTableGettersReturnTableForTag() throws IOException {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "KJJTAM+TrebuchetMS.ttf");
+
+        Assert.assertEquals("head", font.getHead().getTableType());
+        Assert.assertEquals("cvt ", font.getCvt().getTableType());
+        Assert.assertEquals("OS/2", font.getOs2().getTableType());
+        Assert.assertNull(font.getCffTable());
+    }
+
+    @Test
+    public void given_blankFont_whenTableReplaced_thenGetterReturnsNewTable() throws IOException {
+        OpenTypeFont font = OpenTypeFont.createBlankFont();
+        int tableCount = font.getTables().size();
+
+        PostScriptTable post = PostScriptTable.createDefaultTable(2);
+        font.setPost(post);
+
+        Assert.assertSame(post, font.getPost());
+        Assert.assertEquals(tableCount, font.getTables().size());
+    }
+
+    @Test
+    public void given_parsedTTF_whenGetData_thenWholeFontChecksumMatchesHeadAdjustmentMagic() throws IOException {
+        FVFont font = FontVerter.readFont(TestUtils.TEST_PATH + "KJJTAM+TrebuchetMS.ttf");
+        byte[] data = font.getData();
+
+        Assert.assertEquals(0xB1B0AFBAL, FontVerterUtils.getTableChecksum(data) & 0xFFFFFFFFL);
+    }
+
+    @Test
+    public void given_parsedOTF_whenGetData_thenTablesAreFourByteAlignedAndLaidOutBackToBack() throws IOException {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "FontVerter+SimpleTestFont.otf");
+        byte[] data = font.getData();
+
+        long expectedOffset = SfntHeader.SFNT_HEADER_SIZE + font.getTables().size() * OpenTypeTable.TABLE_RECORD_SIZE;
+        for (OpenTypeTable tableOn : font.getTables()) {
+            Assert.assertEquals(expectedOffset, tableOn.getOffset());
+            expectedOffset += tableOn.getData().length;
+        }
+        Assert.assertEquals(expectedOffset, data.length);
+    }
+
+    @Test
+    public void given_parsedTTF_whenGetData_thenUntouchedTablesWrittenAsOriginalBytes() throws IOException {
+        byte[] fontData = TestUtils.readTestFile("ttf/GKQXJT+Timetable.ttf");
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(fontData);
+        font.getData();
+
+        for (String tag : new String[]{"glyf", "loca", "hmtx", "cmap", "maxp"}) {
+            OpenTypeTable table = findTable(font, tag);
+            int start = (int) table.record.offset;
+            byte[] original = Arrays.copyOfRange(fontData, start, start + (int) table.record.length);
+
+            Assert.assertFalse(table.isDirty());
+            Assert.assertArrayEquals(original, table.getUnpaddedData());
+            Assert.assertEquals(table.record.checksum, table.getChecksum() & 0xFFFFFFFFL);
+        }
+    }
+
+    @Test
+    public void given_parsedTTF_whenTableChangedBySetter_thenTableGeneratedAgain() throws IOException {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "KJJTAM+TrebuchetMS.ttf");
+        font.getNameTable().setFontFamily("ChangedFamily");
+
+        OpenTypeFont readBack = (OpenTypeFont) FontVerter.readFont(font.getData());
+
+        Assert.assertTrue(font.getNameTable().isDirty());
+        Assert.assertEquals("ChangedFamily", readBack.getNameTable().getName(OtfNameConstants.RecordType.FONT_FAMILY));
+    }
+
+    @Test
+    public void given_newNameTable_whenWrittenAndReadBack_thenStringOffsetsPointAtEachName() throws IOException {
+        NameTable table = NameTable.createDefaultTable();
+        table.setFontFamily("OffsetFamily");
+
+        NameTable readTable = new NameTable();
+        readTable.readData(table.getUnpaddedData());
+
+        Assert.assertEquals("OffsetFamily", readTable.getName(OtfNameConstants.RecordType.FONT_FAMILY));
+        Assert.assertEquals("Default Copyright", readTable.getName(OtfNameConstants.RecordType.COPYRIGHT));
+    }
+
+    private static OpenTypeTable findTable(OpenTypeFont font, String tag) {
+        for (OpenTypeTable tableOn : font.getTables()) {
+            if (tableOn.getTableType().equals(tag))
+                return tableOn;
+        }
+
+        return null;
+    }
+
     private FontValidatorError findErrorContaining(FVFont font, String containing) {
         Assert.assertFalse(font.isValid());
         List<FontValidatorError> errors = font.getValidationErrors();
@@ -125,4 +125,46 @@ public class TestOpenTypeParser {
         Assert.assertEquals(5, font.getHmtx().getAdvanceWidths().length);
     }
 
+    @Test
+    public void givenLazyParse_whenOnlyNameRead_thenGlyphTablesAreNotParsed() throws Exception {
+        byte[] fontData = FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + "KJJTAM+TrebuchetMS.ttf"));
+        OpenTypeFont font = new OpenTypeParser(true).parse(fontData);
+
+        Assert.assertEquals("Trebuchet MS", font.getName());
+        for (OpenTypeTable tableOn : font.getTables()) {
+            if (tableOn.getTableType().equals("glyf") || tableOn.getTableType().equals("loca"))
+                Assert.assertFalse(tableOn.isParsed());
+        }
+    }
+
+    @Test
+    public void givenLazyParse_whenGlyfTableFetched_thenLocaTableParsedFirst() throws Exception {
+        byte[] fontData = FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + "KJJTAM+TrebuchetMS.ttf"));
+        OpenTypeFont font = new OpenTypeParser(true).parse(fontData);
+        OpenTypeFont eagerFont = new OpenTypeParser().parse(fontData);
+
+        Assert.assertEquals(eagerFont.getGlyfTable().getGlyphs().size(), font.getGlyfTable().getGlyphs().size());
+    }
+
+    @Test
+    public void givenLazyParse_whenFontDataGenerated_thenSameAsEagerParse() throws Exception {
+        byte[] fontData = FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + "FontVerter+SimpleTestFont.otf"));
+        OpenTypeFont font = new OpenTypeParser(true).parse(fontData);
+        OpenTypeFont eagerFont = new OpenTypeParser().parse(fontData);
+
+        Assert.assertArrayEquals(eagerFont.getData(), font.getData());
+    }
+
+    @Test
+    public void givenLazyParse_whenFontDataGenerated_thenGlyphTablesAreNotParsed() throws Exception {
+        byte[] fontData = FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + "KJJTAM+TrebuchetMS.ttf"));
+        OpenTypeFont font = new OpenTypeParser(true).parse(fontData);
+        OpenTypeFont eagerFont = new OpenTypeParser().parse(fontData);
+
+        Assert.assertArrayEquals(eagerFont.getData(), font.getData());
+        for (OpenTypeTable tableOn : font.getTables()) {
+            if (tableOn.getTableType().equals("glyf") || tableOn.getTableType().equals("loca"))
+                Assert.assertFalse(tableOn.isParsed());
+        }
+    }
 }
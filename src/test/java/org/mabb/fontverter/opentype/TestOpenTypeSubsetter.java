@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.apache.fontbox.cff.CFFFont;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FVFont;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.converter.OtfToWoffConverter;
+import org.mabb.fontverter.woff.WoffFont;
+
+import java.util.*;
+
+public class TestOpenTypeSubsetter {
+    @Test
+    public void givenTtf_whenSubset_thenOnlyNotdefAndMappedGlyphsKept() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+
+        OpenTypeFont subset = new OpenTypeSubsetter(font).subset(codePoints("Hello"));
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(subset.getData());
+
+        Assert.assertEquals(5, reparsed.getMxap().getNumGlyphs());
+        Assert.assertEquals(5, reparsed.getGlyfTable().getGlyphs().size());
+        Assert.assertEquals(5, reparsed.getLocaTable().getOffsets().length - 1);
+        for (OpenTypeTable tableOn : reparsed.getTables())
+            Assert.assertNotEquals("GSUB", tableOn.getTableType());
+    }
+
+    @Test
+    public void givenTtf_whenSubset_thenCmapMapsToRenumberedGlyphsInCodePointOrder() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+
+        OpenTypeFont subset = new OpenTypeSubsetter(font).subset(codePoints("olHe"));
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(subset.getData());
+
+        Map<Integer, Integer> mappings = new HashMap<Integer, Integer>();
+        for (GlyphMapReader.GlyphMapping mappingOn : reparsed.getCmap().getGlyphMappings())
+            mappings.put(mappingOn.charCode, mappingOn.glyphId);
+
+        Assert.assertEquals(4, mappings.size());
+        Assert.assertEquals(Integer.valueOf(1), mappings.get((int) 'H'));
+        Assert.assertEquals(Integer.valueOf(2), mappings.get((int) 'e'));
+        Assert.assertEquals(Integer.valueOf(3), mappings.get((int) 'l'));
+        Assert.assertEquals(Integer.valueOf(4), mappings.get((int) 'o'));
+    }
+
+    @Test
+    public void givenTtf_whenSubset_thenMetricsFollowRenumberedGlyphs() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+        int originalGlyphId = glyphIdFor(font, 'W');
+
+        OpenTypeFont subset = new OpenTypeSubsetter(font).subset(codePoints("W"));
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(subset.getData());
+
+        Assert.assertEquals(font.getHmtx().getAdvanceWidth(originalGlyphId), reparsed.getHmtx().getAdvanceWidth(1));
+        Assert.assertEquals(font.getHmtx().getLeftSideBearing(originalGlyphId),
+                reparsed.getHmtx().getLeftSideBearing(1));
+        Assert.assertEquals(font.getHmtx().getAdvanceWidth(0), reparsed.getHmtx().getAdvanceWidth(0));
+    }
+
+    @Test
+    public void givenCompositeGlyph_whenSubset_thenComponentsKeptAndRenumbered() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+        TtfGlyph original = font.getGlyfTable().getGlyphs().get(glyphIdFor(font, 'Ä'));
+        Assert.assertTrue(original.isComposite());
+
+        OpenTypeFont subset = new OpenTypeSubsetter(font).subset(codePoints("Ä"));
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(subset.getData());
+        List<TtfGlyph> glyphs = reparsed.getGlyfTable().getGlyphs();
+
+        Assert.assertEquals(glyphs.size(), reparsed.getMxap().getNumGlyphs());
+        TtfGlyph composite = glyphs.get(glyphIdFor(reparsed, 'Ä'));
+        Assert.assertEquals(original.getComponents().size(), composite.getComponents().size());
+
+        for (CompositeGlyphComponent componentOn : composite.getComponents()) {
+            Assert.assertTrue(componentOn.getGlyphIndex() < glyphs.size());
+            Assert.assertFalse(glyphs.get(componentOn.getGlyphIndex()).isEmpty());
+        }
+    }
+
+    @Test
+    public void givenFont_whenSubsetTwice_thenSourceFontUnchanged() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+        int glyphCount = font.getGlyfTable().getGlyphs().size();
+
+        OpenTypeSubsetter subsetter = new OpenTypeSubsetter(font);
+        OpenTypeFont first = subsetter.subset(codePoints("abc"));
+        OpenTypeFont second = subsetter.subset(codePoints("xyz"));
+
+        Assert.assertEquals(glyphCount, font.getGlyfTable().getGlyphs().size());
+        Assert.assertEquals(4, first.getMxap().getNumGlyphs());
+        Assert.assertEquals(4, second.getMxap().getNumGlyphs());
+    }
+
+    @Test
+    public void givenFont_whenSubsetterCreated_thenSourceFontNotFinalized() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+        OpenTypeSubsetter subsetter = new OpenTypeSubsetter(font);
+        subsetter.subset(codePoints("Hello"));
+
+        for (OpenTypeTable tableOn : font.getTables())
+            Assert.assertFalse(tableOn.getTableType() + " was changed", tableOn.isDirty());
+    }
+
+    @Test
+    public void givenFontWithCorruptGlyph_whenSubset_thenLaterGlyphsKeepTheirOutlines() throws Exception {
+        OpenTypeFont original = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+        int corruptId = glyphIdFor(original, 'b');
+        int keptId = glyphIdFor(original, 'c');
+        Assert.assertTrue(keptId > corruptId);
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.corruptGlyph("comic.ttf", corruptId));
+
+        OpenTypeFont subset = new OpenTypeSubsetter(font).subset(codePoints("bc"));
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(subset.getData());
+
+        Assert.assertEquals(3, reparsed.getMxap().getNumGlyphs());
+        Assert.assertTrue(reparsed.getGlyfTable().getGlyphs().get(glyphIdFor(reparsed, 'b')).isEmpty());
+        Assert.assertArrayEquals(original.getGlyfTable().getGlyphs().get(keptId).generateData(),
+                reparsed.getGlyfTable().getGlyphs().get(glyphIdFor(reparsed, 'c')).generateData());
+    }
+
+    @Test
+    public void givenCffFont_whenSubset_thenCharStringsAndCharsetSubset() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "NameReadTestFont.otf");
+        CFFFont originalCff = font.getCffTable().getCffFont().getFont();
+
+        OpenTypeFont subset = new OpenTypeSubsetter(font).subset(codePoints("Hello"));
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(subset.getData());
+        CFFFont cff = reparsed.getCffTable().getCffFont().getFont();
+
+        Assert.assertEquals(5, cff.getNumCharStrings());
+        Assert.assertEquals(5, reparsed.getMxap().getNumGlyphs());
+        Assert.assertEquals(".notdef", cff.getCharset().getNameForGID(0));
+        Assert.assertEquals("H", cff.getCharset().getNameForGID(1));
+
+        int originalGlyphId = glyphIdFor(font, 'H');
+        Assert.assertEquals(originalCff.getType2CharString(originalGlyphId).getPath().getBounds2D(),
+                cff.getType2CharString(1).getPath().getBounds2D());
+    }
+
+    @Test
+    public void givenSubset_whenConvertedToWoff_thenWoffHasSubsetTables() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/arial.ttf");
+        OpenTypeFont subset = new OpenTypeSubsetter(font).subset(codePoints("Hello"));
+
+        FVFont woff = new OtfToWoffConverter().convertFont(subset);
+        WoffFont reparsed = (WoffFont) FontVerter.readFont(woff.getData());
+
+        Assert.assertTrue(woff.getData().length < font.getData().length / 10);
+        Assert.assertEquals(subset.getTables().size(), reparsed.getTables().size());
+    }
+
+    private static List<Integer> codePoints(String text) {
+        List<Integer> codePoints = new ArrayList<Integer>();
+        for (int i = 0; i < text.length(); i++)
+            codePoints.add((int) text.charAt(i));
+
+        return codePoints;
+    }
+
+    private static int glyphIdFor(OpenTypeFont font, char character) {
+        for (GlyphMapReader.GlyphMapping mappingOn : font.getCmap().getGlyphMappings()) {
+            if (mappingOn.charCode == character)
+                return mappingOn.glyphId;
+        }
+
+        throw new AssertionError("No glyph for " + character);
+    }
+}
@@ -102,13 +102,51 @@ public class TestOpenTypeTable {
         Assert.assertEquals(55 << 16, checksum);
     }
 
+    @Test
+    public void givenTableReadFromSource_whenDataFetched_thenSourceBytesWrittenWithoutGenerating() throws Exception {
+        CannedOpenTypeTable table = new CannedOpenTypeTable();
+        table.readSourceData(new byte[]{0, 0, 0, 7});
+        table.fillerData = new byte[]{1};
+
+        table.finalizeRecord();
+
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 7}, table.getUnpaddedData());
+        Assert.assertEquals(7, table.getChecksum());
+        Assert.assertEquals(0, table.generateCount);
+        Assert.assertFalse(table.isDirty());
+    }
+
+    @Test
+    public void givenTableReadFromSource_whenMarkedDirty_thenDataGenerated() throws Exception {
+        CannedOpenTypeTable table = new CannedOpenTypeTable();
+        table.readSourceData(new byte[]{0, 0, 0, 7});
+        table.fillerData = new byte[]{0, 0, 0, 5};
+
+        table.markDirty();
+        table.finalizeRecord();
+
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 5}, table.getUnpaddedData());
+        Assert.assertEquals(5, table.getChecksum());
+        Assert.assertTrue(table.isDirty());
+    }
+
+    @Test
+    public void givenNewTable_thenTableIsDirty() throws Exception {
+        Assert.assertTrue(new CannedOpenTypeTable().isDirty());
+    }
+
     private class CannedOpenTypeTable extends OpenTypeTable {
         byte[] fillerData;
+        int generateCount;
 
         protected byte[] generateUnpaddedData() throws IOException {
+            generateCount++;
             return fillerData;
         }
 
+        public void readData(byte[] data) {
+        }
+
         public long checksum() throws IOException {
             return FontVerterUtils.getTableChecksum(getData());
         }
@@ -17,15 +17,20 @@
 
 package org.mabb.fontverter.opentype;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mabb.fontverter.FontVerter;
 import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.io.FontDataBuffer;
 
 import java.awt.geom.Point2D;
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class TestTrueTypeGlyphs {
     @Test
@@ -102,6 +107,152 @@ public class TestTrueTypeGlyphs {
         }
     }
 
+    @Test
+    public void givenRepeatedFlagsAndByteDeltas_whenParsed_thenPointArraysExpanded() throws Exception {
+        byte[] data = new byte[]{
+                0, 1, 0, 0, 0, 0, 0, 0, 0, 0,
+                0, 3, 0, 0,
+                // repeated on curve positive x byte, negative x byte, on curve same x/y
+                0x1B, 1, 0x02, 0x31,
+                10, 20, 5,
+                0, 100, (byte) 0xFF, (byte) 0x9C, 0, 7};
+
+        TtfGlyph glyph = TtfGlyph.parse(new FontDataBuffer(data), null, 0);
+
+        Assert.assertEquals(4, glyph.getNumberOfPoints());
+        Assert.assertArrayEquals(new byte[]{0x13, 0x13, 0x02, 0x31}, glyph.pointFlags);
+        Assert.assertArrayEquals(new short[]{10, 20, -5, 0}, glyph.xCoordinates);
+        Assert.assertArrayEquals(new short[]{100, -100, 7, 0}, glyph.yCoordinates);
+        Assert.assertTrue(glyph.getCoordinates().get(3).isOnCurve());
+        Assert.assertFalse(glyph.getCoordinates().get(2).isOnCurve());
+    }
+
+    @Test
+    public void givenCoordinateFlagSet_whenWrittenAndReadBack_thenSameFlags() throws Exception {
+        TtfGlyph.CoordinateFlagSet flags = TtfGlyph.CoordinateFlagSet.flagsFromByte((byte) 0x33);
+
+        Assert.assertEquals(4, flags.size());
+        Assert.assertEquals(0x33, flags.write());
+    }
+
+    @Test
+    public void givenGlyfTable_whenParsedAndEncodedInParallelChunks_thenSameAsSequential() throws Exception {
+        byte[] fontData = FileUtils.readFileToByteArray(new File(TestUtils.TEST_PATH + "ttf/GKQXJT+Timetable.ttf"));
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(fontData);
+        GlyphTable sequential = font.getGlyfTable();
+        int start = (int) sequential.record.offset;
+        byte[] glyfData = Arrays.copyOfRange(fontData, start, start + (int) sequential.record.length);
+
+        GlyphTable parallel = new GlyphTable();
+        parallel.font = font;
+        parallel.parallelThreshold = 1;
+        parallel.readData(glyfData);
+
+        Assert.assertEquals(sequential.glyphs.size(), parallel.glyphs.size());
+        for (int i = 0; i < sequential.glyphs.size(); i++)
+            assertCoordsEqual(sequential.glyphs.get(i).getCoordinates(), parallel.glyphs.get(i).getCoordinates());
+
+        // parsed tables write back their source bytes unless they're dirty
+        sequential.markDirty();
+        Assert.assertArrayEquals(sequential.getUnpaddedData(), parallel.getUnpaddedData());
+    }
+
+    @Test
+    public void givenGlyphPoints_whenGenerated_thenSmallestCoordinateFormsAndRepeatedFlagsUsed() throws Exception {
+        TtfGlyph glyph = new TtfGlyph();
+        glyph.numberOfContours = 1;
+        glyph.contourEndPoints = new int[]{4};
+        glyph.pointFlags = new byte[]{1, 1, 1, 1, 0};
+        glyph.xCoordinates = new short[]{0, 0, 0, 0, -300};
+        glyph.yCoordinates = new short[]{5, 6, 7, 8, -9};
+
+        byte[] expected = new byte[]{
+                0, 1, 0, 0, 0, 0, 0, 0, 0, 0,
+                0, 4, 0, 0,
+                // x same and positive y byte repeated 3 more times, then x short and negative y byte
+                0x3D, 3, 0x04,
+                (byte) 0xFE, (byte) 0xD4,
+                5, 6, 7, 8, 9};
+        Assert.assertArrayEquals(expected, glyph.generateData());
+    }
+
+    @Test
+    public void givenGlyphWithLongInstructions_whenGeneratedAndReparsed_thenInstructionsAndPointsPreserved()
+            throws Exception {
+        byte[] instructions = new byte[300];
+        for (int i = 0; i < instructions.length; i++)
+            instructions[i] = (byte) i;
+
+        TtfGlyph glyph = new TtfGlyph();
+        glyph.numberOfContours = 1;
+        glyph.contourEndPoints = new int[]{2};
+        glyph.instructions = instructions;
+        glyph.pointFlags = new byte[]{1, 0, 1};
+        glyph.xCoordinates = new short[]{1000, -20, 255};
+        glyph.yCoordinates = new short[]{-256, 0, 30};
+
+        TtfGlyph reparsed = TtfGlyph.parse(new FontDataBuffer(glyph.generateData()), null, 0);
+
+        Assert.assertArrayEquals(instructions, reparsed.instructions);
+        Assert.assertArrayEquals(glyph.xCoordinates, reparsed.xCoordinates);
+        Assert.assertArrayEquals(glyph.yCoordinates, reparsed.yCoordinates);
+        Assert.assertEquals(1, reparsed.pointFlags[2] & TtfGlyph.ON_CURVE_FLAG);
+    }
+
+    @Test
+    public void givenTtf_whenGlyfTableRegenerated_thenNotLargerThanOriginal() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "ttf/GKQXJT+Timetable.ttf");
+        GlyphTable glyf = font.getGlyfTable();
+
+        Assert.assertThat((long) glyf.getUnpaddedData().length, lessThanOrEqualTo(glyf.record.length));
+    }
+
+    @Test
+    public void givenGlyfGrownPastShortOffsetRange_whenWritten_thenLocaSwitchesToLongOffsets() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+        Assert.assertFalse(font.getHead().isLongIndexToLocFormat());
+
+        GlyphTable glyf = font.getGlyfTable();
+        TtfGlyph grown = glyf.getNonEmptyGlyphs().get(0);
+        int glyphId = glyf.getGlyphs().indexOf(grown);
+        grown.instructions = new byte[50000];
+        glyf.markDirty();
+
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(font.getData());
+
+        Assert.assertTrue(reparsed.getHead().isLongIndexToLocFormat());
+        Assert.assertEquals(glyf.getGlyphs().size(), reparsed.getGlyfTable().getGlyphs().size());
+        Assert.assertEquals(50000, reparsed.getGlyfTable().getGlyphs().get(glyphId).instructions.length);
+    }
+
+    @Test
+    public void givenGlyphChangedWithoutMarkingDirty_whenWritten_thenChangeKept() throws Exception {
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+        int glyphId = glyphs.indexOf(font.getGlyfTable().getNonEmptyGlyphs().get(0));
+        glyphs.get(glyphId).instructions = new byte[1000];
+
+        OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(font.getData());
+
+        Assert.assertEquals(1000, reparsed.getGlyfTable().getGlyphs().get(glyphId).instructions.length);
+    }
+
+    @Test
+    public void givenCorruptGlyph_whenParsed_thenGlyphLeftEmptyAndLaterGlyphsKeepTheirIds() throws Exception {
+        OpenTypeFont original = (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+        List<TtfGlyph> originalGlyphs = original.getGlyfTable().getGlyphs();
+        int corruptId = originalGlyphs.indexOf(original.getGlyfTable().getNonEmptyGlyphs().get(0));
+
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TestUtils.corruptGlyph("comic.ttf", corruptId));
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+
+        Assert.assertEquals(font.getMxap().getNumGlyphs(), glyphs.size());
+        Assert.assertTrue(glyphs.get(corruptId).isEmpty());
+        for (int i = corruptId + 1; i < glyphs.size(); i++)
+            Assert.assertArrayEquals(originalGlyphs.get(i).generateData(), glyphs.get(i).generateData());
+    }
+
     private void assertCoordsEqual(List<TtfGlyph.GlyphCoordinate> originalOn, List<TtfGlyph.GlyphCoordinate> reparsedOn) {
         for (int j = 0; j < originalOn.size(); j++) {
             TtfGlyph.GlyphCoordinate originalCoord = originalOn.get(j);
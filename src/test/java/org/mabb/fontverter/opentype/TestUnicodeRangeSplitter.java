@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.opentype;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.TestUtils;
+import org.mabb.fontverter.opentype.UnicodeRangeSplitter.FontChunk;
+import org.mabb.fontverter.woff.WoffFont;
+
+import java.util.*;
+
+public class TestUnicodeRangeSplitter {
+    @Test
+    public void givenFont_whenSplitContiguous_thenChunksCoverEveryCodePointOnceInOrder() throws Exception {
+        UnicodeRangeSplitter splitter = new UnicodeRangeSplitter(readComic());
+
+        List<FontChunk> chunks = splitter.splitContiguous(4);
+
+        Assert.assertEquals(4, chunks.size());
+        SortedSet<Integer> covered = new TreeSet<Integer>();
+        int previousLast = -1;
+        for (FontChunk chunkOn : chunks) {
+            Assert.assertTrue(chunkOn.getCodePoints().first() > previousLast);
+            previousLast = chunkOn.getCodePoints().last();
+            covered.addAll(chunkOn.getCodePoints());
+
+            int sizeDifference = chunkOn.getCodePoints().size() - chunks.get(0).getCodePoints().size();
+            Assert.assertTrue(Math.abs(sizeDifference) <= 1);
+        }
+
+        Assert.assertEquals(splitter.getCodePoints(), covered);
+    }
+
+    @Test
+    public void givenFont_whenSplit_thenEachChunkFontMapsOnlyItsCodePoints() throws Exception {
+        UnicodeRangeSplitter splitter = new UnicodeRangeSplitter(readComic());
+
+        for (FontChunk chunkOn : splitter.splitContiguous(3)) {
+            OpenTypeFont reparsed = (OpenTypeFont) FontVerter.readFont(chunkOn.getFont().getData());
+
+            SortedSet<Integer> mapped = new TreeSet<Integer>();
+            for (GlyphMapReader.GlyphMapping mappingOn : reparsed.getCmap().getGlyphMappings())
+                mapped.add(mappingOn.charCode);
+
+            Assert.assertEquals(chunkOn.getCodePoints(), mapped);
+        }
+    }
+
+    @Test
+    public void givenFrequencyRanking_whenSplit_thenMostUsedCodePointsInFirstChunk() throws Exception {
+        UnicodeRangeSplitter splitter = new UnicodeRangeSplitter(readComic());
+        List<Integer> ranking = Arrays.asList((int) 'e', (int) 't', (int) 'a', 0x10FFFF, (int) 'o');
+
+        List<FontChunk> chunks = splitter.splitByFrequency(ranking, 50);
+
+        Assert.assertEquals(50, chunks.size());
+        SortedSet<Integer> first = chunks.get(0).getCodePoints();
+        Assert.assertTrue(first.containsAll(Arrays.asList((int) 'e', (int) 't', (int) 'a', (int) 'o')));
+        Assert.assertFalse(first.contains(0x10FFFF));
+    }
+
+    @Test
+    public void givenCodePoints_whenToUnicodeRange_thenConsecutiveCodePointsMerged() {
+        SortedSet<Integer> codePoints = new TreeSet<Integer>(Arrays.asList(0x20, 0x21, 0x22, 0x41, 0x4E00, 0x4E01));
+
+        String range = UnicodeRangeSplitter.toUnicodeRange(codePoints);
+
+        Assert.assertEquals("U+20-22, U+41, U+4E00-4E01", range);
+    }
+
+    @Test
+    public void givenChunks_whenManifestCreated_thenOneFontFaceRulePerChunk() throws Exception {
+        UnicodeRangeSplitter splitter = new UnicodeRangeSplitter(readComic());
+        List<Collection<Integer>> groups = new ArrayList<Collection<Integer>>();
+        groups.add(Arrays.asList((int) 'a', (int) 'b', (int) 'c'));
+        groups.add(Arrays.asList(0x10FFFF));
+        groups.add(Arrays.asList((int) 'x'));
+
+        List<FontChunk> chunks = splitter.split(groups);
+        String manifest = UnicodeRangeSplitter.createManifest(chunks, "Comic", "comic");
+
+        Assert.assertEquals(2, chunks.size());
+        Assert.assertTrue(manifest.contains("src: url('comic.0.woff2') format('woff2');\n"
+                + "  unicode-range: U+61-63;"));
+        Assert.assertTrue(manifest.contains("src: url('comic.1.woff2') format('woff2');\n"
+                + "  unicode-range: U+78;"));
+        Assert.assertEquals(2, manifest.split("@font-face").length - 1);
+    }
+
+    @Test
+    public void givenChunk_whenConvertedToWoff2_thenWoff2HasChunkTables() throws Exception {
+        UnicodeRangeSplitter splitter = new UnicodeRangeSplitter(readComic());
+        FontChunk chunk = splitter.splitContiguous(2).get(0);
+
+        WoffFont woff2 = chunk.toWoff2();
+
+        Assert.assertEquals(chunk.getFont().getTables().size(), woff2.getTables().size());
+    }
+
+    @Test
+    public void givenChunk_whenConvertedToWoff2Twice_thenConvertedOnce() throws Exception {
+        UnicodeRangeSplitter splitter = new UnicodeRangeSplitter(readComic());
+        FontChunk chunk = splitter.splitContiguous(2).get(1);
+
+        Assert.assertSame(chunk.toWoff2(), chunk.toWoff2());
+        Assert.assertSame(chunk.getWoff2Data(), chunk.getWoff2Data());
+        Assert.assertSame(chunk.getFont(), chunk.getFont());
+    }
+
+    private static OpenTypeFont readComic() throws Exception {
+        return (OpenTypeFont) FontVerter.readFont(TestUtils.TEST_PATH + "comic.ttf");
+    }
+}
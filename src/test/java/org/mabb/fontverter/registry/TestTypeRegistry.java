@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.registry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.opentype.HeadTable;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.TtfInstruction;
+import org.mabb.fontverter.opentype.TtfInstructions.instructions.control.PushBytes;
+
+import java.util.Map;
+
+public class TestTypeRegistry {
+    @Test
+    public void getInstance_thenBuildTimeGeneratedRegistryIsUsed() throws Exception {
+        TypeRegistry registry = TypeRegistry.getInstance();
+
+        Assert.assertEquals("GeneratedTypeRegistry", registry.getClass().getSimpleName());
+    }
+
+    @Test
+    public void getTableTypes_thenTablesAreKeyedByTag() throws Exception {
+        TypeRegistry registry = TypeRegistry.getInstance();
+
+        Assert.assertEquals(HeadTable.class, registry.getTableTypes().get("head"));
+    }
+
+    @Test
+    public void getTableTypes_thenSameAsClasspathScan() throws Exception {
+        TypeRegistry registry = TypeRegistry.getInstance();
+
+        Assert.assertEquals(new ReflectionsTypeRegistry().getTableTypes().keySet(),
+                registry.getTableTypes().keySet());
+    }
+
+    @Test
+    public void getInstructionTypes_thenEveryOpCodeInARangeIsMapped() throws Exception {
+        Map<Integer, Class<? extends TtfInstruction>> types = TypeRegistry.getInstance().getInstructionTypes();
+
+        for (int code = 0xB0; code <= 0xB7; code++)
+            Assert.assertEquals(PushBytes.class, types.get(code));
+    }
+
+    @Test
+    public void getInstructionTypes_thenSameAsClasspathScan() throws Exception {
+        Map<Integer, Class<? extends TtfInstruction>> generated = TypeRegistry.getInstance().getInstructionTypes();
+        Map<Integer, Class<? extends TtfInstruction>> scanned = new ReflectionsTypeRegistry().getInstructionTypes();
+
+        Assert.assertEquals(scanned, generated);
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.FontVerter.FontFormat;
+import org.mabb.fontverter.io.FontDataBuffer;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+import org.mabb.fontverter.opentype.OpenTypeFont;
+import org.mabb.fontverter.opentype.TtfGlyph;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mabb.fontverter.TestUtils.TEST_PATH;
+
+public class TestWoff2GlyfTransform {
+    private BrotliCodec previousCodec;
+
+    @Before
+    public void useJavaBrotliCodec() {
+        // written fonts go through brotli, the java codec keeps these tests independent of jbrotli's native library
+        previousCodec = BrotliCodec.getInstance();
+        BrotliCodec.setInstance(new JavaBrotliCodec());
+    }
+
+    @After
+    public void restoreBrotliCodec() {
+        BrotliCodec.setInstance(previousCodec);
+    }
+
+    @Test
+    public void givenTtfFont_whenGlyfTransformed_thenHeaderHasGlyphCountAndIndexFormat() throws Exception {
+        OpenTypeFont font = readFont("ttf/arial.ttf");
+        byte[] transformed = encode(font);
+
+        FontDataBuffer reader = new FontDataBuffer(transformed);
+        Assert.assertEquals(0, reader.getUnsignedShort(0));
+        Assert.assertEquals(font.getGlyfTable().getGlyphs().size(), reader.getUnsignedShort(4));
+        Assert.assertEquals((font.getHead().isLongIndexToLocFormat() ? 1 : 0), reader.getUnsignedShort(6));
+    }
+
+    @Test
+    public void givenTtfFont_whenGlyfTransformed_thenStreamSizesAddUpToTableLength() throws Exception {
+        byte[] transformed = encode(readFont("comic.ttf"));
+
+        FontDataBuffer reader = new FontDataBuffer(transformed);
+        long length = Woff2GlyfEncoder.HEADER_SIZE;
+        for (int i = 0; i < 7; i++)
+            length += reader.getUnsignedInt(8 + i * 4);
+
+        Assert.assertEquals(transformed.length, length);
+    }
+
+    @Test
+    public void givenCompositeGlyph_whenGlyfTransformed_thenContourCountIsMinusOneAndBboxIsExplicit()
+            throws Exception {
+        OpenTypeFont font = readFont("ttf/arial.ttf");
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+        int compositeId = 0;
+        while (!glyphs.get(compositeId).isComposite())
+            compositeId++;
+
+        FontDataBuffer reader = new FontDataBuffer(encode(font));
+        Assert.assertEquals(-1, reader.getShort(Woff2GlyfEncoder.HEADER_SIZE + compositeId * 2));
+
+        int bboxStreamStart = Woff2GlyfEncoder.HEADER_SIZE;
+        for (int i = 0; i < 5; i++)
+            bboxStreamStart += reader.getUnsignedInt(8 + i * 4);
+
+        int bitmapByte = reader.getUnsignedByte(bboxStreamStart + (compositeId >> 3));
+        Assert.assertTrue((bitmapByte & (0x80 >> (compositeId & 7))) != 0);
+    }
+
+    @Test
+    public void givenEmptyGlyph_whenGlyfTransformed_thenContourCountIsZero() throws Exception {
+        OpenTypeFont font = readFont("ttf/arial.ttf");
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+        int emptyId = 0;
+        while (!glyphs.get(emptyId).isEmpty())
+            emptyId++;
+
+        FontDataBuffer reader = new FontDataBuffer(encode(font));
+        Assert.assertEquals(0, reader.getShort(Woff2GlyfEncoder.HEADER_SIZE + emptyId * 2));
+    }
+
+    @Test
+    public void givenPointDeltas_whenTripletEncoded_thenUsesSmallestForm() throws Exception {
+        assertTriplet(true, 0, 5, 1, 5);
+        assertTriplet(true, 0, -5, 0, 5);
+        assertTriplet(false, 0, 5, 129, 5);
+        assertTriplet(true, 300, 0, 13, 44);
+        assertTriplet(true, 3, -4, 21, 0x23);
+        assertTriplet(true, 100, 200, 87, 99, 199);
+        assertTriplet(true, 1000, -2000, 121, 62, 0x87, 0xD0);
+        assertTriplet(true, 5000, 5000, 127, 0x13, 0x88, 0x13, 0x88);
+    }
+
+    @Test
+    public void given255UInt16Values_whenWritten_thenUsesOneTwoOrThreeBytes() throws Exception {
+        assert255UInt16(252, 252);
+        assert255UInt16(253, 255, 0);
+        assert255UInt16(506, 254, 0);
+        assert255UInt16(762, 253, 2, 250);
+    }
+
+    @Test
+    public void givenTtfConvertedToWoff2_whenGlyfTransformed_thenLocaHasZeroTransformLengthAndFollowsGlyf()
+            throws Exception {
+        Woff2Font woffFont = (Woff2Font) FontVerter.convertFont(TEST_PATH + "comic.ttf", FontFormat.WOFF2);
+        woffFont.sortTables();
+
+        List<WoffTable> tables = woffFont.createTransformedTables();
+        int glyfIndex = 0;
+        while (((Woff2Font.Woff2Table) tables.get(glyfIndex)).getFlag() != WoffConstants.TableFlagType.glyf)
+            glyfIndex++;
+        Woff2Font.Woff2Table glyfTable = (Woff2Font.Woff2Table) tables.get(glyfIndex);
+        Woff2Font.Woff2Table locaTable = (Woff2Font.Woff2Table) tables.get(glyfIndex + 1);
+
+        Assert.assertEquals(WoffConstants.TableFlagType.loca, locaTable.getFlag());
+        Assert.assertEquals(0, glyfTable.getTransform());
+        Assert.assertEquals(0, locaTable.getTransform());
+
+        FontDataBuffer locaDirectory = new FontDataBuffer(locaTable.getDirectoryData());
+        Assert.assertEquals(WoffConstants.TableFlagType.loca.getValue(), locaDirectory.readUnsignedByte());
+        Assert.assertEquals(locaTable.getTableData().length, locaDirectory.readUIntBase128());
+        Assert.assertEquals(0, locaDirectory.readUIntBase128());
+
+        FontDataBuffer glyfDirectory = new FontDataBuffer(glyfTable.getDirectoryData());
+        glyfDirectory.readUnsignedByte();
+        glyfDirectory.readUIntBase128();
+        Assert.assertEquals(glyfTable.getCompressedData().length, glyfDirectory.readUIntBase128());
+    }
+
+    @Test
+    public void givenTtfConvertedToWoff2_whenGlyfTransformed_thenGlyfOrigLengthIsSourceTableLength()
+            throws Exception {
+        Woff2Font woffFont = (Woff2Font) FontVerter.convertFont(TEST_PATH + "comic.ttf", FontFormat.WOFF2);
+        int sourceLength = findTable(woffFont.getTables(), WoffConstants.TableFlagType.glyf).getTableData().length;
+
+        Woff2Font.Woff2Table glyfTable = findTable(woffFont.createTransformedTables(),
+                WoffConstants.TableFlagType.glyf);
+
+        FontDataBuffer glyfDirectory = new FontDataBuffer(glyfTable.getDirectoryData());
+        glyfDirectory.readUnsignedByte();
+        Assert.assertEquals(sourceLength, glyfDirectory.readUIntBase128());
+    }
+
+    @Test
+    public void givenTtfConvertedToWoff2_whenGlyfTransformed_thenHeadFlagsBit11Set() throws Exception {
+        Woff2Font woffFont = (Woff2Font) FontVerter.convertFont(TEST_PATH + "comic.ttf", FontFormat.WOFF2);
+        Woff2Font.Woff2Table headTable = findTable(woffFont.getTables(), WoffConstants.TableFlagType.head);
+        int flagsBefore = Woff2Font.readUnsignedShort(headTable.getTableData(), 16);
+
+        Woff2Font.Woff2Table transformedHead = findTable(woffFont.createTransformedTables(),
+                WoffConstants.TableFlagType.head);
+
+        int flags = Woff2Font.readUnsignedShort(transformedHead.getTableData(), 16);
+        Assert.assertEquals(0, flagsBefore & 0x0800);
+        Assert.assertEquals(flagsBefore | 0x0800, flags);
+    }
+
+    @Test
+    public void givenWoff2Font_whenWrittenTwice_thenFontTablesUntransformedAndOutputSame() throws Exception {
+        Woff2Font woffFont = (Woff2Font) FontVerter.convertFont(TEST_PATH + "comic.ttf", FontFormat.WOFF2);
+        Woff2Font.Woff2Table headTable = findTable(woffFont.getTables(), WoffConstants.TableFlagType.head);
+        byte[] head = headTable.getTableData().clone();
+
+        byte[] first = woffFont.getData();
+        byte[] second = woffFont.getData();
+
+        Assert.assertArrayEquals(first, second);
+        Assert.assertArrayEquals(head, headTable.getTableData());
+        Assert.assertEquals(3, findTable(woffFont.getTables(), WoffConstants.TableFlagType.glyf).getTransform());
+        Assert.assertEquals(0, findTable(woffFont.getTables(), WoffConstants.TableFlagType.hmtx).getTransform());
+    }
+
+    @Test
+    public void givenTtfConvertedToWoff2_whenWrittenAndRead_thenGlyphsAreUnchanged() throws Exception {
+        OpenTypeFont font = readFont("comic.ttf");
+        byte[] woff2 = FontVerter.convertFont(TEST_PATH + "comic.ttf", FontFormat.WOFF2).getData();
+
+        OpenTypeFont decoded = (OpenTypeFont) FontVerter.convertFont(woff2, FontFormat.OTF);
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+        List<TtfGlyph> decodedGlyphs = decoded.getGlyfTable().getGlyphs();
+
+        Assert.assertEquals(glyphs.size(), decodedGlyphs.size());
+        for (int i = 0; i < glyphs.size(); i++)
+            Assert.assertArrayEquals(glyphs.get(i).generateData(), decodedGlyphs.get(i).generateData());
+    }
+
+    @Test
+    public void givenTransformedGlyf_whenDecoded_thenReencodesToSameData() throws Exception {
+        OpenTypeFont font = readFont("ttf/arial.ttf");
+        int indexFormat = font.getHead().isLongIndexToLocFormat() ? 1 : 0;
+        Woff2GlyfEncoder encoder = new Woff2GlyfEncoder(font.getGlyfTable().getUnpaddedData(),
+                font.getLocaTable().getUnpaddedData(), indexFormat);
+        byte[] transformed = encoder.encode();
+
+        Woff2GlyfDecoder decoder = new Woff2GlyfDecoder(transformed, font.getGlyfTable().getUnpaddedData().length);
+        decoder.decode();
+        byte[] reencoded = new Woff2GlyfEncoder(decoder.getGlyf(), decoder.getLoca(), indexFormat).encode();
+
+        Assert.assertArrayEquals(transformed, reencoded);
+    }
+
+    @Test
+    public void givenTransformedGlyf_whenDecoded_thenTablesHaveReconstructedLengths() throws Exception {
+        OpenTypeFont font = readFont("comic.ttf");
+        int indexFormat = font.getHead().isLongIndexToLocFormat() ? 1 : 0;
+        Woff2GlyfEncoder encoder = new Woff2GlyfEncoder(font.getGlyfTable().getUnpaddedData(),
+                font.getLocaTable().getUnpaddedData(), indexFormat);
+
+        Woff2GlyfDecoder decoder = new Woff2GlyfDecoder(encoder.encode(), 0);
+        decoder.decode();
+
+        FontDataBuffer loca = new FontDataBuffer(decoder.getLoca());
+        long lastOffset = indexFormat == 0 ? loca.getUnsignedShort(loca.length() - 2) * 2L
+                : loca.getUnsignedInt(loca.length() - 4);
+        Assert.assertEquals(lastOffset, decoder.getGlyf().length);
+        Assert.assertEquals(encoder.getLocaLength(), decoder.getLoca().length);
+        Assert.assertEquals(indexFormat, decoder.getIndexFormat());
+    }
+
+    @Test
+    public void givenWrongGlyfLengthHint_whenDecoded_thenSameTablesAsWithoutHint() throws Exception {
+        byte[] transformed = encode(readFont("comic.ttf"));
+        Woff2GlyfDecoder unhinted = new Woff2GlyfDecoder(transformed, 0);
+        unhinted.decode();
+
+        int length = unhinted.getGlyf().length;
+        for (int hintOn : new int[]{length - 1000, length + 1000}) {
+            Woff2GlyfDecoder hinted = new Woff2GlyfDecoder(transformed, hintOn);
+            hinted.decode();
+
+            Assert.assertArrayEquals(unhinted.getGlyf(), hinted.getGlyf());
+            Assert.assertArrayEquals(unhinted.getLoca(), hinted.getLoca());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void givenEmptyGlyphWithBbox_whenDecoded_thenThrowsException() throws Exception {
+        OpenTypeFont font = readFont("ttf/arial.ttf");
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+        int emptyId = 0;
+        while (!glyphs.get(emptyId).isEmpty())
+            emptyId++;
+
+        byte[] transformed = encode(font);
+        FontDataBuffer reader = new FontDataBuffer(transformed);
+        int bboxStreamStart = Woff2GlyfEncoder.HEADER_SIZE;
+        for (int i = 0; i < 5; i++)
+            bboxStreamStart += reader.getUnsignedInt(8 + i * 4);
+        transformed[bboxStreamStart + (emptyId >> 3)] |= 0x80 >> (emptyId & 7);
+
+        new Woff2GlyfDecoder(transformed, 0).decode();
+    }
+
+    @Test
+    public void givenCompositeGlyph_whenDecoded_thenComponentRecordsAreUnchanged() throws Exception {
+        OpenTypeFont font = readFont("ttf/arial.ttf");
+        List<TtfGlyph> glyphs = font.getGlyfTable().getGlyphs();
+        int compositeId = 0;
+        while (!glyphs.get(compositeId).isComposite())
+            compositeId++;
+
+        long[] offsets = font.getLocaTable().getOffsetValues();
+        byte[] original = new FontDataBuffer(font.getGlyfTable().getUnpaddedData()).getBytes(
+                (int) offsets[compositeId], (int) (offsets[compositeId + 1] - offsets[compositeId]));
+
+        Woff2GlyfDecoder decoder = new Woff2GlyfDecoder(encode(font), 0);
+        decoder.decode();
+        FontDataBuffer loca = new FontDataBuffer(decoder.getLoca());
+        int offset = decoder.getIndexFormat() == 1
+                ? loca.getInt(compositeId * 4) : loca.getUnsignedShort(compositeId * 2) * 2;
+
+        byte[] decoded = new FontDataBuffer(decoder.getGlyf()).getBytes(offset, original.length);
+        Assert.assertArrayEquals(original, decoded);
+    }
+
+    @Test(expected = IOException.class)
+    public void givenTruncatedTransformedGlyf_whenDecoded_thenThrowsException() throws Exception {
+        byte[] transformed = encode(readFont("comic.ttf"));
+
+        Woff2GlyfDecoder decoder = new Woff2GlyfDecoder(Arrays.copyOf(transformed, transformed.length / 2), 0);
+        decoder.decode();
+    }
+
+    private static Woff2Font.Woff2Table findTable(List<WoffTable> tables, WoffConstants.TableFlagType flag) {
+        for (WoffTable tableOn : tables) {
+            if (((Woff2Font.Woff2Table) tableOn).getFlag() == flag)
+                return (Woff2Font.Woff2Table) tableOn;
+        }
+
+        throw new AssertionError("Font has no " + flag + " table");
+    }
+
+    private static OpenTypeFont readFont(String file) throws Exception {
+        return (OpenTypeFont) FontVerter.readFont(TEST_PATH + file);
+    }
+
+    private static byte[] encode(OpenTypeFont font) throws Exception {
+        Woff2GlyfEncoder encoder = new Woff2GlyfEncoder(font.getGlyfTable().getUnpaddedData(),
+                font.getLocaTable().getUnpaddedData(), (font.getHead().isLongIndexToLocFormat() ? 1 : 0));
+        return encoder.encode();
+    }
+
+    private static void assertTriplet(boolean onCurve, int dx, int dy, int flag, int... coordinates) {
+        FontDataOutputBuffer flags = new FontDataOutputBuffer();
+        FontDataOutputBuffer glyphs = new FontDataOutputBuffer();
+        Woff2GlyfEncoder.writeTriplet(flags, glyphs, onCurve, dx, dy);
+
+        Assert.assertArrayEquals(new byte[]{(byte) flag}, flags.toByteArray());
+        Assert.assertArrayEquals(toBytes(coordinates), glyphs.toByteArray());
+    }
+
+    private static void assert255UInt16(int value, int... expected) {
+        FontDataOutputBuffer out = new FontDataOutputBuffer();
+        Woff2GlyfEncoder.write255UInt16(out, value);
+
+        Assert.assertArrayEquals(toBytes(expected), out.toByteArray());
+    }
+
+    private static byte[] toBytes(int[] values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            bytes[i] = (byte) values[i];
+        return bytes;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) Maddie Abboud 2016
+ *
+ * FontVerter is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FontVerter is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with FontVerter. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mabb.fontverter.woff;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mabb.fontverter.FontVerter;
+import org.mabb.fontverter.FontVerter.FontFormat;
+import org.mabb.fontverter.io.FontDataOutputBuffer;
+import org.mabb.fontverter.opentype.OpenTypeFont;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.mabb.fontverter.TestUtils.TEST_PATH;
+
+public class TestWoff2HmtxTransform {
+    @Test
+    public void givenBearingsEqualToXMin_whenTransformed_thenBothBearingArraysAreLeftOut() throws Exception {
+        int[] xMins = new int[]{0, 10, -5, 30, 7};
+        byte[] hmtx = createHmtx(3, new int[]{500, 600, 700}, xMins);
+
+        byte[] transformed = Woff2HmtxTransform.encode(hmtx, 3, xMins);
+
+        Assert.assertEquals(1 + 3 * 2, transformed.length);
+        Assert.assertEquals(Woff2HmtxTransform.PROPORTIONAL_LSB_ABSENT | Woff2HmtxTransform.MONOSPACE_LSB_ABSENT,
+                transformed[0]);
+    }
+
+    @Test
+    public void givenOnlyMonospaceBearingsDiffer_whenTransformedAndDecoded_thenTableIsUnchanged() throws Exception {
+        int[] xMins = new int[]{0, 10, -5, 30, 7};
+        int[] bearings = new int[]{0, 10, -5, 31, 7};
+        byte[] hmtx = createHmtx(3, new int[]{500, 600, 700}, bearings);
+
+        byte[] transformed = Woff2HmtxTransform.encode(hmtx, 3, xMins);
+        Assert.assertEquals(Woff2HmtxTransform.PROPORTIONAL_LSB_ABSENT, transformed[0]);
+
+        Assert.assertArrayEquals(hmtx, Woff2HmtxTransform.decode(transformed, 3, xMins));
+    }
+
+    @Test
+    public void givenAllGlyphsProportional_whenBearingsDiffer_thenNotTransformed() throws Exception {
+        int[] xMins = new int[]{0, 10, -5};
+        byte[] hmtx = createHmtx(3, new int[]{500, 600, 700}, new int[]{0, 11, -5});
+
+        Assert.assertNull(Woff2HmtxTransform.encode(hmtx, 3, xMins));
+    }
+
+    @Test(expected = IOException.class)
+    public void givenTransformWithBothBearingArrays_whenDecoded_thenThrowsException() throws Exception {
+        Woff2HmtxTransform.decode(new byte[]{0, 1, 0, 0, 0}, 1, new int[]{0});
+    }
+
+    @Test
+    public void givenTtfConvertedToWoff2_whenBearingsEqualXMin_thenHmtxUsesTransformOne() throws Exception {
+        Woff2Font woffFont = (Woff2Font) FontVerter.convertFont(TEST_PATH + "comic.ttf", FontFormat.WOFF2);
+        OpenTypeFont font = (OpenTypeFont) FontVerter.readFont(TEST_PATH + "comic.ttf");
+        Woff2GlyfEncoder encoder = new Woff2GlyfEncoder(font.getGlyfTable().getUnpaddedData(),
+                font.getLocaTable().getUnpaddedData(), font.getHead().isLongIndexToLocFormat() ? 1 : 0);
+        encoder.encode();
+
+        int[] xMins = encoder.getXMins();
+        int[] advances = new int[xMins.length];
+        byte[] hmtx = createHmtx(xMins.length, advances, xMins);
+        Woff2Font.Woff2Table hmtxTable = findTable(woffFont.getTables(), WoffConstants.TableFlagType.hmtx);
+        woffFont.getTables().set(woffFont.getTables().indexOf(hmtxTable), new Woff2Font.Woff2Table(hmtx, "hmtx"));
+
+        hmtxTable = findTable(woffFont.createTransformedTables(), WoffConstants.TableFlagType.hmtx);
+        Assert.assertEquals(1, hmtxTable.getTransform());
+        Assert.assertEquals(hmtx.length, hmtxTable.origLength());
+        Assert.assertEquals(1 + xMins.length * 2, hmtxTable.getTransformedLength());
+    }
+
+    private static Woff2Font.Woff2Table findTable(List<WoffTable> tables, WoffConstants.TableFlagType flag) {
+        for (WoffTable tableOn : tables) {
+            if (((Woff2Font.Woff2Table) tableOn).getFlag() == flag)
+                return (Woff2Font.Woff2Table) tableOn;
+        }
+
+        return null;
+    }
+
+    private static byte[] createHmtx(int numberOfHMetrics, int[] advances, int[] bearings) {
+        FontDataOutputBuffer out = new FontDataOutputBuffer();
+        for (int i = 0; i < bearings.length; i++) {
+            if (i < numberOfHMetrics)
+                out.writeShort(advances[i]);
+            out.writeShort(bearings[i]);
+        }
+
+        return out.toByteArray();
+    }
+}
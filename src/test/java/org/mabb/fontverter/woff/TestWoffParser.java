@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.CoreMatchers.instanceOf;
@@ -74,6 +75,32 @@ public class TestWoffParser {
 //            Assert.assertThat(tableOn.getTag(), tableOn.tableData.length, greaterThan(0));
     }
 
+    @Test
+    public void parseWoff2WithJavaBrotliCodec_thenTablesHaveOriginalLengths() throws IOException {
+        BrotliCodec previous = BrotliCodec.getInstance();
+        BrotliCodec.setInstance(new JavaBrotliCodec());
+        try {
+            WoffFont font = parseWoff2Font(TestUtils.TEST_PATH + "Open-Sans-WOFF-2.0.woff2");
+
+            for (WoffTable tableOn : font.getTables())
+                Assert.assertEquals(tableOn.getTag(), tableOn.originalLength, tableOn.getTableData().length);
+        } finally {
+            BrotliCodec.setInstance(previous);
+        }
+    }
+
+    @Test
+    public void parseWoff2_thenTableBuffersViewTheSameDataAsTableData() throws IOException {
+        WoffFont font = parseWoff2Font(TestUtils.TEST_PATH + "Open-Sans-WOFF-2.0.woff2");
+
+        for (WoffTable tableOn : font.getTables()) {
+            ByteBuffer view = ((Woff2Font.Woff2Table) tableOn).getTableBuffer();
+            byte[] viewData = new byte[view.remaining()];
+            view.get(viewData);
+
+            Assert.assertArrayEquals(tableOn.getTag(), tableOn.getTableData(), viewData);
+        }
+    }
 
     private WoffFont parseWoff1Font(String file) throws IOException {
         byte[] data = FileUtils.readFileToByteArray(new File(file));